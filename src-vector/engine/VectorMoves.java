@@ -0,0 +1,134 @@
+package engine;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This finds moves and flips for a batch of positions with
+ *         the Vector API, doing as many positions per instruction as the
+ *         CPU's widest vector holds longs. It gives the same answers as
+ *         BatchMoves, working on the same shifts and masks, but each lane of
+ *         a LongVector is one position, so it doesn't depend on the JIT
+ *         compiler spotting the loops.
+ *
+ *         The Vector API is still an incubator module, so this class needs
+ *         --add-modules jdk.incubator.vector when it is compiled and when it
+ *         is run. It lives in src-vector instead of src so the rest of the
+ *         program compiles without the flag. Nothing refers to it by name: BatchMoves.best() loads it by
+ *         reflection when the module is there and uses BatchMoves.SCALAR
+ *         when it isn't, so the rest of the program doesn't need the flag.
+ *
+ */
+public final class VectorMoves implements BatchMoveGenerator {
+	private static final VectorSpecies<Long> SPECIES =
+			LongVector.SPECIES_PREFERRED;
+
+	// The same directions and edge masks as Bitboards, in the same order.
+	private static final int[] SHIFTS = {-8, 8, 1, -1, 9, -9, -7, 7};
+	private static final long NOT_A_FILE = 0xFEFEFEFEFEFEFEFEL;
+	private static final long NOT_H_FILE = 0x7F7F7F7F7F7F7F7FL;
+	private static final long[] MASKS = {-1L, -1L, NOT_A_FILE, NOT_H_FILE,
+			NOT_A_FILE, NOT_H_FILE, NOT_A_FILE, NOT_H_FILE};
+
+	/**
+	 * This is the constructor for the vector move finder. It is public so
+	 * BatchMoves.best() can make one by reflection.
+	 */
+	public VectorMoves() {
+
+	}
+
+	@Override
+	public void moves(long[] own, long[] opp, long[] out, int count) {
+		int bound = SPECIES.loopBound(count);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			LongVector o = LongVector.fromArray(SPECIES, own, i);
+			LongVector p = LongVector.fromArray(SPECIES, opp, i);
+			LongVector empty = o.or(p).not();
+			LongVector found = LongVector.zero(SPECIES);
+			for (int direction = 0; direction < 8; direction++) {
+				// A line can hold at most six of the other player's pieces.
+				LongVector line = shift(o, direction).and(p);
+				line = line.or(shift(line, direction).and(p));
+				line = line.or(shift(line, direction).and(p));
+				line = line.or(shift(line, direction).and(p));
+				line = line.or(shift(line, direction).and(p));
+				line = line.or(shift(line, direction).and(p));
+				found = found.or(shift(line, direction).and(empty));
+			}
+			found.intoArray(out, i);
+		}
+
+		// The positions left over don't fill a whole vector.
+		for (; i < count; i++) {
+			out[i] = Bitboards.moves(own[i], opp[i]);
+		}
+	}
+
+	@Override
+	public void flips(long[] own, long[] opp, int[] squares, long[] out,
+			int count) {
+		long[] lanes = new long[SPECIES.length()];
+		int bound = SPECIES.loopBound(count);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			for (int lane = 0; lane < lanes.length; lane++) {
+				lanes[lane] = 1L << squares[i + lane];
+			}
+			LongVector placed = LongVector.fromArray(SPECIES, lanes, 0);
+			LongVector o = LongVector.fromArray(SPECIES, own, i);
+			LongVector p = LongVector.fromArray(SPECIES, opp, i);
+			LongVector found = LongVector.zero(SPECIES);
+			for (int direction = 0; direction < 8; direction++) {
+				LongVector run = shift(placed, direction).and(p);
+				run = run.or(shift(run, direction).and(p));
+				run = run.or(shift(run, direction).and(p));
+				run = run.or(shift(run, direction).and(p));
+				run = run.or(shift(run, direction).and(p));
+				run = run.or(shift(run, direction).and(p));
+				LongVector end = shift(run, direction).and(o);
+				// This is all ones where end has a bit set and zero if not.
+				LongVector closed = end.or(end.neg())
+						.lanewise(VectorOperators.ASHR, 63);
+				found = found.or(run.and(closed));
+			}
+			found.intoArray(out, i);
+		}
+
+		for (; i < count; i++) {
+			out[i] = Bitboards.flips(own[i], opp[i], squares[i]);
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "vector";
+	}
+
+	/**
+	 * This is a helper that shifts every lane one step in a direction,
+	 * dropping anything that wraps around the edge of the board.
+	 *
+	 * @param bits
+	 *            is a bitboard in each lane.
+	 * @param direction
+	 *            is an index into SHIFTS.
+	 * @return is the shifted bitboards.
+	 */
+	private static LongVector shift(LongVector bits, int direction) {
+		int amount = SHIFTS[direction];
+		LongVector shifted;
+		if (amount > 0) {
+			shifted = bits.lanewise(VectorOperators.LSHL, amount);
+		} else {
+			shifted = bits.lanewise(VectorOperators.LSHR, -amount);
+		}
+		return shifted.and(MASKS[direction]);
+	}
+
+}
@@ -0,0 +1,112 @@
+package engine;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This runs the inner loops of NeuralEvaluator with the
+ *         Vector API, as many hidden values per instruction as the CPU's
+ *         widest vector holds shorts. It gives the same answers as
+ *         NeuralEvaluator.SCALAR, wrapping around on overflow the same way.
+ *
+ *         Like VectorMoves, this class is in src-vector and needs
+ *         --add-modules jdk.incubator.vector when it is compiled and when it
+ *         is run.
+ *         Nothing refers to it by name: NeuralEvaluator.best() loads it by
+ *         reflection when the module is there.
+ *
+ */
+public final class VectorNeuralKernel implements NeuralKernel {
+	private static final VectorSpecies<Short> SHORTS =
+			ShortVector.SPECIES_PREFERRED;
+
+	// These are the same width as SHORTS, so a vector of bytes widens into
+	// two of shorts, and a vector of shorts into two of ints.
+	private static final VectorSpecies<Byte> BYTES =
+			ByteVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> INTS =
+			IntVector.SPECIES_PREFERRED;
+
+	/**
+	 * This is the constructor for the vector kernel. It is public so
+	 * NeuralEvaluator.best() can make one by reflection.
+	 */
+	public VectorNeuralKernel() {
+
+	}
+
+	@Override
+	public void add(short[] accumulator, short[] weights, int base,
+			int count) {
+		int bound = SHORTS.loopBound(count);
+		int i = 0;
+		for (; i < bound; i += SHORTS.length()) {
+			ShortVector.fromArray(SHORTS, accumulator, i)
+					.add(ShortVector.fromArray(SHORTS, weights, base + i))
+					.intoArray(accumulator, i);
+		}
+		for (; i < count; i++) {
+			accumulator[i] += weights[base + i];
+		}
+	}
+
+	@Override
+	public void subtract(short[] accumulator, short[] weights, int base,
+			int count) {
+		int bound = SHORTS.loopBound(count);
+		int i = 0;
+		for (; i < bound; i += SHORTS.length()) {
+			ShortVector.fromArray(SHORTS, accumulator, i)
+					.sub(ShortVector.fromArray(SHORTS, weights, base + i))
+					.intoArray(accumulator, i);
+		}
+		for (; i < count; i++) {
+			accumulator[i] -= weights[base + i];
+		}
+	}
+
+	@Override
+	public int dot(short[] accumulator, byte[] outputWeights, int clip,
+			int count) {
+		IntVector sums = IntVector.zero(INTS);
+		int bound = BYTES.loopBound(count);
+		int i = 0;
+		for (; i < bound; i += BYTES.length()) {
+			ByteVector weights = ByteVector.fromArray(BYTES, outputWeights, i);
+			for (int half = 0; half < 2; half++) {
+				ShortVector wide = (ShortVector) weights
+						.convertShape(VectorOperators.B2S, SHORTS, half);
+				ShortVector values = ShortVector
+						.fromArray(SHORTS, accumulator,
+								i + half * SHORTS.length())
+						.max((short) 0).min((short) clip);
+				// A clipped value times an int8 weight still fits a short,
+				// but the sum doesn't, so it is widened before adding.
+				ShortVector products = values.mul(wide);
+				sums = sums.add((IntVector) products
+						.convertShape(VectorOperators.S2I, INTS, 0));
+				sums = sums.add((IntVector) products
+						.convertShape(VectorOperators.S2I, INTS, 1));
+			}
+		}
+
+		int sum = sums.reduceLanes(VectorOperators.ADD);
+		for (; i < count; i++) {
+			int value = Math.min(Math.max(accumulator[i], 0), clip);
+			sum += value * outputWeights[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public String getName() {
+		return "vector";
+	}
+
+}
@@ -1,4 +1,24 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+import controller.GameJournal;
+import controller.ReversiController;
+import engine.CachingEvaluator;
+import engine.EvalCache;
+import engine.Engines;
+import engine.Evaluator;
+import engine.NeuralEvaluator;
+import engine.TranspositionTable;
+import view.BoardRenderer;
 import view.ReversiView;
+import view.ScriptedGames;
 
 /**
  * 
@@ -12,6 +32,29 @@ import view.ReversiView;
  *         where you would like to move. The computer will then take a turn.
  *         Play will continue until neither player can make any moves, at which
  *         time a winner will be determined.
+ * 
+ *         Options: --weights FILE makes the computer score its moves with the
+ *         neural network stored in FILE. --eval-cache MB keeps up to MB
+ *         megabytes of its scores so repeated positions are not scored twice.
+ *         --depth N makes the computer look N moves ahead and --time MS
+ *         limits how long it thinks about each move. --hash MB lets the look
+ *         ahead remember up to MB megabytes of positions it has searched.
+ *         --hash-file FILE loads those positions from FILE at start up and
+ *         saves them back when the program ends. --journal FILE records
+ *         every move in FILE as it is made, and picks up the last unfinished
+ *         game in it if the program was stopped part way through one.
+ *         --size N plays on an NxN board, where N is even and no more than
+ *         16. --engine SPEC has the computer play with the engine SPEC
+ *         describes, like greedy, depth:8, mcts:5000 or book:FILE (see
+ *         engine.Engines), instead of the options above.
+ * 
+ *         --script FILE replays the games in FILE, one per line, instead of
+ *         playing, and prints a line for each game and the totals. A FILE of
+ *         - reads the games from standard input. --totals only prints the
+ *         totals and --boards also prints the board after every move.
+ * 
+ *         --ansi keeps the board in place at the top of the terminal and
+ *         only redraws the squares that change.
  *
  */
 public class Reversi {
@@ -20,12 +63,217 @@ public class Reversi {
 	 * This is main. It makes the program go.
 	 * 
 	 * @param args
-	 *            is a command line argument split on spaces. It is unused here.
+	 *            is a command line argument split on spaces. It may hold the
+	 *            options listed above.
 	 */
 	public static void main(String[] args) {
-		ReversiView myView = new ReversiView();
+		Evaluator evaluator = null;
+		int size = 8;
+		long cacheBytes = 0;
+		long hashBytes = 0;
+		Path hashFile = null;
+		Path journalFile = null;
+		int depth = 0;
+		long millis = 0;
+		String scriptFile = null;
+		boolean summaries = true;
+		boolean showBoards = false;
+		boolean ansi = false;
+		String engineSpec = null;
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--weights") && (i + 1 < args.length)) {
+				i++;
+				try {
+					evaluator = NeuralEvaluator.load(Paths.get(args[i]));
+				} catch (IOException e) {
+					System.out.println("Could not load weights: "
+							+ e.getMessage());
+					return;
+				}
+			} else if (args[i].equals("--eval-cache")
+					&& (i + 1 < args.length)) {
+				i++;
+				cacheBytes = Long.parseLong(args[i]) << 20;
+			} else if (args[i].equals("--hash") && (i + 1 < args.length)) {
+				i++;
+				hashBytes = Long.parseLong(args[i]) << 20;
+			} else if (args[i].equals("--hash-file")
+					&& (i + 1 < args.length)) {
+				i++;
+				hashFile = Paths.get(args[i]);
+			} else if (args[i].equals("--journal")
+					&& (i + 1 < args.length)) {
+				i++;
+				journalFile = Paths.get(args[i]);
+			} else if (args[i].equals("--depth") && (i + 1 < args.length)) {
+				i++;
+				depth = Integer.parseInt(args[i]);
+			} else if (args[i].equals("--time") && (i + 1 < args.length)) {
+				i++;
+				millis = Long.parseLong(args[i]);
+			} else if (args[i].equals("--size") && (i + 1 < args.length)) {
+				i++;
+				size = Integer.parseInt(args[i]);
+			} else if (args[i].equals("--script") && (i + 1 < args.length)) {
+				i++;
+				scriptFile = args[i];
+			} else if (args[i].equals("--totals")) {
+				summaries = false;
+			} else if (args[i].equals("--boards")) {
+				showBoards = true;
+			} else if (args[i].equals("--ansi")) {
+				ansi = true;
+			} else if (args[i].equals("--engine")
+					&& (i + 1 < args.length)) {
+				i++;
+				engineSpec = args[i];
+			} else {
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		if ((size < 4) || (size > 16) || (size % 2 != 0)) {
+			System.out.println("The board size must be even and from 4 to 16.");
+			return;
+		}
+		if (scriptFile != null) {
+			runScript(scriptFile, size, summaries, showBoards, ansi);
+			return;
+		}
+		GameJournal journal = null;
+		ReversiController myController = null;
+		long session = 0;
+		if (journalFile != null) {
+			try {
+				journal = new GameJournal(journalFile);
+				HashMap<Long, ReversiController> games = journal.recover();
+				for (long unfinished : games.keySet()) {
+					session = Math.max(session, unfinished);
+				}
+				myController = games.get(session);
+			} catch (IOException e) {
+				System.out.println("Could not open the journal: "
+						+ e.getMessage());
+				return;
+			}
+		}
+		if (myController == null) {
+			myController = new ReversiController(size);
+			if (journal != null) {
+				session = journal.newSession(myController);
+			}
+		} else {
+			System.out.println("Picking up your last game.");
+			size = myController.getSize();
+		}
+
+		if ((evaluator != null) && (cacheBytes > 0)) {
+			evaluator = new CachingEvaluator(evaluator,
+					new EvalCache(cacheBytes));
+		}
+		if ((evaluator != null) && (size != 8)) {
+			System.out.println("Weights only work on an 8x8 board.");
+			return;
+		}
+		myController.setEvaluator(evaluator);
+		if ((millis > 0) && (depth == 0)) {
+			// A time limit on its own means look as far ahead as time allows.
+			depth = 64;
+		}
+		myController.setSearch(depth, millis);
+		if (engineSpec != null) {
+			if (size != 8) {
+				System.out.println("Engines only work on an 8x8 board.");
+				return;
+			}
+			try {
+				myController.setEngine(Engines.create(engineSpec));
+			} catch (IOException | IllegalArgumentException e) {
+				System.out.println("Could not make the engine: "
+						+ e.getMessage());
+				return;
+			}
+		}
+		boolean loaded = false;
+		if ((hashFile != null) && Files.exists(hashFile)) {
+			try {
+				myController.loadTable(hashFile);
+				loaded = true;
+			} catch (IOException e) {
+				System.out.println("Could not load the table, starting "
+						+ "fresh: " + e.getMessage());
+			}
+		}
+		if ((hashFile != null) && (hashBytes == 0)) {
+			hashBytes = 64L << 20;
+		}
+		if ((hashBytes > 0) && !loaded) {
+			myController.setTranspositionTable(
+					new TranspositionTable(hashBytes));
+		}
+		if (hashFile != null) {
+			// Saving on shutdown also keeps the table when the game is quit
+			// part way through.
+			Path saveFile = hashFile;
+			ReversiController saveController = myController;
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					saveController.saveTable(saveFile);
+				} catch (IOException e) {
+					System.out.println("Could not save the table: "
+							+ e.getMessage());
+				}
+			}));
+		}
+
+		ReversiView myView = new ReversiView(myController, ansi);
 		myView.playGame();
 
+		if (journal != null) {
+			journal.endSession(session);
+			try {
+				journal.close();
+			} catch (IOException e) {
+				System.out.println("Could not finish the journal: "
+						+ e.getMessage());
+			}
+		}
+
+	}
+
+	/**
+	 * This replays the games in a script file instead of playing one.
+	 * 
+	 * @param scriptFile
+	 *            is the path of the script, or - for standard input.
+	 * @param size
+	 *            is the number of squares along each side of the board.
+	 * @param summaries
+	 *            is true to print a line for every game.
+	 * @param showBoards
+	 *            is true to print the board after every move.
+	 * @param ansi
+	 *            is true to draw the board in place with ANSI escape codes.
+	 */
+	private static void runScript(String scriptFile, int size,
+			boolean summaries, boolean showBoards, boolean ansi) {
+		BufferedWriter out = new BufferedWriter(
+				new OutputStreamWriter(System.out), 1 << 16);
+		BoardRenderer boards = null;
+		if (showBoards) {
+			boards = new BoardRenderer(size, ansi, out);
+		}
+		ScriptedGames games = new ScriptedGames(size, summaries, boards, out);
+		try (BufferedReader in = scriptFile.equals("-")
+				? new BufferedReader(new InputStreamReader(System.in))
+				: Files.newBufferedReader(Paths.get(scriptFile))) {
+			games.playAll(in);
+		} catch (IOException e) {
+			System.out.println("Could not replay the script: "
+					+ e.getMessage());
+		}
 	}
 
 }
@@ -0,0 +1,219 @@
+package controller;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import model.BoardDelta;
+import model.BoardSnapshot;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This sends a game's moves to any number of spectators.
+ *         Instead of the whole board after every move, each spectator gets a
+ *         BoardDelta: the square played and the pieces it flipped. One delta
+ *         is made per move and shared by every spectator, so a move costs one
+ *         small object and one reference per spectator.
+ *
+ *         Each spectator has a Subscription with its own fixed size ring of
+ *         updates, so a slow spectator never holds up the game or the other
+ *         spectators. When a spectator's ring is full, everything waiting in
+ *         it is thrown away and replaced by one keyframe of the current
+ *         board, which is all the spectator needs to catch up. A new
+ *         spectator starts with a keyframe, and every so many moves everyone
+ *         gets a keyframe instead of a delta, so a spectator that missed
+ *         something is never wrong for long.
+ *
+ *         The controller calls publish() after every move it makes. Passes
+ *         don't change the board, so they aren't sent.
+ *
+ */
+public class DeltaBroadcaster {
+
+	/**
+	 * This is one spectator's queue of updates.
+	 */
+	public static final class Subscription {
+		private final DeltaBroadcaster broadcaster;
+		private final BoardDelta[] ring;
+		private long head;
+		private long tail;
+		private long coalesced;
+		private boolean closed;
+
+		/**
+		 * This is the constructor used by subscribe().
+		 *
+		 * @param broadcaster
+		 *            is the broadcaster it is subscribed to.
+		 * @param capacity
+		 *            is how many updates can wait at once.
+		 */
+		Subscription(DeltaBroadcaster broadcaster, int capacity) {
+			this.broadcaster = broadcaster;
+			this.ring = new BoardDelta[capacity];
+		}
+
+		/**
+		 * This takes the next update without waiting.
+		 *
+		 * @return is the next BoardDelta, or null if there is none.
+		 */
+		public synchronized BoardDelta poll() {
+			if (head == tail) {
+				return null;
+			}
+			int slot = (int) (head % ring.length);
+			BoardDelta update = ring[slot];
+			ring[slot] = null;
+			head++;
+			return update;
+		}
+
+		/**
+		 * This takes the next update, waiting for one if there is none.
+		 *
+		 * @return is the next BoardDelta, or null once the subscription is
+		 *         closed.
+		 * @throws InterruptedException
+		 *             This is thrown if the thread is interrupted while it
+		 *             waits.
+		 */
+		public synchronized BoardDelta take() throws InterruptedException {
+			while ((head == tail) && !closed) {
+				wait();
+			}
+			return poll();
+		}
+
+		/**
+		 * This returns how many times the spectator fell so far behind that
+		 * its waiting updates were replaced by a keyframe.
+		 *
+		 * @return is the number of times.
+		 */
+		public synchronized long getCoalesced() {
+			return coalesced;
+		}
+
+		/**
+		 * This stops sending updates to the spectator and wakes it if it is
+		 * waiting in take().
+		 */
+		public void close() {
+			broadcaster.subscriptions.remove(this);
+			synchronized (this) {
+				closed = true;
+				notifyAll();
+			}
+		}
+
+		/**
+		 * This adds an update, or replaces everything waiting with a
+		 * keyframe if the ring is full.
+		 *
+		 * @param update
+		 *            is the update to add.
+		 */
+		synchronized void offer(BoardDelta update) {
+			if (tail - head == ring.length) {
+				while (head < tail) {
+					ring[(int) (head % ring.length)] = null;
+					head++;
+				}
+				update = broadcaster.currentKeyframe();
+				coalesced++;
+			}
+			ring[(int) (tail % ring.length)] = update;
+			tail++;
+			notifyAll();
+		}
+	}
+
+	private final int keyframeInterval;
+	private final CopyOnWriteArrayList<Subscription> subscriptions;
+	private BoardSnapshot last;
+	private BoardDelta keyframe;
+
+	/**
+	 * This is the constructor for a broadcaster.
+	 *
+	 * @param keyframeInterval
+	 *            is how many moves apart keyframes are sent to everyone, or 0
+	 *            for only when they are needed.
+	 */
+	public DeltaBroadcaster(int keyframeInterval) {
+		this.keyframeInterval = keyframeInterval;
+		this.subscriptions = new CopyOnWriteArrayList<Subscription>();
+	}
+
+	/**
+	 * This adds a spectator. Its first update is a keyframe of the board as
+	 * of the last move, if there has been one.
+	 *
+	 * @param capacity
+	 *            is how many updates can wait for the spectator at once.
+	 * @return is the spectator's Subscription.
+	 */
+	public Subscription subscribe(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException(
+					"A subscription needs room for at least one update.");
+		}
+		Subscription subscription = new Subscription(this, capacity);
+		synchronized (this) {
+			if (last != null) {
+				subscription.offer(currentKeyframe());
+			}
+			subscriptions.add(subscription);
+		}
+		return subscription;
+	}
+
+	/**
+	 * This sends a new board to every spectator, as a delta from the last
+	 * board if it is one move on from it and as a keyframe otherwise.
+	 *
+	 * @param snapshot
+	 *            is the board after the move.
+	 */
+	public synchronized void publish(BoardSnapshot snapshot) {
+		BoardDelta update = null;
+		if ((last != null) && ((keyframeInterval <= 0)
+				|| (snapshot.getVersion() % keyframeInterval != 0))) {
+			update = BoardDelta.between(last, snapshot);
+		}
+		last = snapshot;
+		keyframe = null;
+		if (update == null) {
+			update = currentKeyframe();
+		}
+
+		for (Subscription subscription : subscriptions) {
+			subscription.offer(update);
+		}
+	}
+
+	/**
+	 * This returns the number of spectators.
+	 *
+	 * @return is the number of subscriptions.
+	 */
+	public int getSubscriberCount() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * This is a helper that returns a keyframe of the last board, making it
+	 * the first time it is needed after each move.
+	 *
+	 * @return is the keyframe.
+	 */
+	private synchronized BoardDelta currentKeyframe() {
+		if (keyframe == null) {
+			keyframe = BoardDelta.keyframe(last);
+		}
+		return keyframe;
+	}
+
+}
@@ -0,0 +1,408 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import customExceptions.ReversiCantPlaceException;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This keeps a record of every game being played in a file,
+ *         so games can be picked up again if the program dies. Each game is a
+ *         session with its own number, and every move or pass in it is one
+ *         16 byte record added to the end of the file.
+ *
+ *         Writing a record never waits for the disk. Records are collected in
+ *         memory and a writer thread writes everything collected so far in
+ *         one go and then forces it to disk once, so one slow force covers
+ *         the moves of every game made while the last one was going on. If
+ *         the program dies, at most the last batch is lost.
+ *
+ *         When a journal is opened it reads the file back. A record that was
+ *         only partly written when the program died fails its checksum, and
+ *         the file is cut off there. recover() then replays every game that
+ *         hadn't ended.
+ *
+ *         Each record is the session number (a long), the record type, the
+ *         player, x and y (a byte each), then a CRC32 of those 12 bytes.
+ *
+ */
+public class GameJournal implements Closeable {
+	private static final int RECORD = 16;
+
+	// The record types. A game starts with START, whose x is the board size,
+	// and ends with END.
+	private static final byte START = 1;
+	private static final byte MOVE = 2;
+	private static final byte PASS = 3;
+	private static final byte END = 4;
+
+	private final FileChannel channel;
+	private final Thread writer;
+	private final Object lock = new Object();
+
+	// Records being collected, and records being written by the writer.
+	private ByteBuffer filling = ByteBuffer.allocate(64 * RECORD);
+	private ByteBuffer writing = ByteBuffer.allocate(64 * RECORD);
+	private long appended;
+	private long durable;
+	private boolean closed;
+	private IOException failure;
+
+	private long nextSession;
+	private HashMap<Long, ArrayList<byte[]>> unfinished;
+
+	/**
+	 * This opens a journal, reading back any games already in the file, and
+	 * starts its writer thread.
+	 *
+	 * @param file
+	 *            is the journal file. It is made if it doesn't exist.
+	 * @throws IOException
+	 *             This is thrown if the file can't be opened or read.
+	 */
+	public GameJournal(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.unfinished = new HashMap<Long, ArrayList<byte[]>>();
+		this.nextSession = 1;
+
+		try {
+			read();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		this.writer = new Thread(this::writeLoop, "journal");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * This starts a new game in the journal. Every move the controller makes
+	 * from now on is recorded under the session number returned.
+	 *
+	 * @param controller
+	 *            is the controller of the new game.
+	 * @return is the new game's session number.
+	 */
+	public long newSession(ReversiController controller) {
+		long session;
+		synchronized (lock) {
+			session = nextSession;
+			nextSession++;
+		}
+		append(session, START, '_', controller.getSize(), 0);
+		controller.setJournal(this, session);
+		return session;
+	}
+
+	/**
+	 * This records that a game is over, so it won't be picked up again.
+	 *
+	 * @param session
+	 *            is the game's session number.
+	 */
+	public void endSession(long session) {
+		append(session, END, '_', 0, 0);
+	}
+
+	/**
+	 * This rebuilds every game in the file that hadn't ended, by replaying
+	 * its moves on a new controller. The controllers keep recording to this
+	 * journal under their old session numbers. It can only be called once.
+	 *
+	 * @return is a HashMap from session number to the game's controller.
+	 * @throws IOException
+	 *             This is thrown if a recorded move can't be played, which
+	 *             means the file doesn't match this program.
+	 */
+	public HashMap<Long, ReversiController> recover() throws IOException {
+		HashMap<Long, ReversiController> games;
+		games = new HashMap<Long, ReversiController>();
+		if (unfinished == null) {
+			return games;
+		}
+
+		for (Map.Entry<Long, ArrayList<byte[]>> game : unfinished.entrySet()) {
+			ArrayList<byte[]> records = game.getValue();
+			ReversiController controller = new ReversiController(
+					records.get(0)[2]);
+
+			for (int i = 1; i < records.size(); i++) {
+				byte[] record = records.get(i);
+				char player = (char) record[1];
+				try {
+					if (record[0] == MOVE) {
+						controller.replayMove(player, record[2], record[3]);
+					} else if (player == 'W') {
+						controller.humanSkipped();
+					} else {
+						controller.computerSkipped();
+					}
+				} catch (ReversiCantPlaceException e) {
+					throw new IOException("Session " + game.getKey()
+							+ " has a move that can't be played.");
+				}
+			}
+
+			controller.setJournal(this, game.getKey());
+			games.put(game.getKey(), controller);
+		}
+		unfinished = null;
+		return games;
+	}
+
+	/**
+	 * This waits until every record added so far is safely on disk.
+	 *
+	 * @throws IOException
+	 *             This is thrown if the writer couldn't write the file.
+	 */
+	public void sync() throws IOException {
+		synchronized (lock) {
+			long target = appended;
+			while ((durable < target) && (failure == null)) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(
+							"Interrupted waiting for the journal.");
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * This writes out every record and closes the file.
+	 *
+	 * @throws IOException
+	 *             This is thrown if the last records couldn't be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			sync();
+		} finally {
+			synchronized (lock) {
+				closed = true;
+				lock.notifyAll();
+			}
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			channel.close();
+		}
+	}
+
+	/**
+	 * This records a move. It is called by the controller.
+	 *
+	 * @param session
+	 *            is the game's session number.
+	 * @param player
+	 *            is the player who moved.
+	 * @param x
+	 *            is the x position of the placed piece.
+	 * @param y
+	 *            is the y position of the placed piece.
+	 */
+	void recordMove(long session, char player, int x, int y) {
+		append(session, MOVE, player, x, y);
+	}
+
+	/**
+	 * This records a pass. It is called by the controller.
+	 *
+	 * @param session
+	 *            is the game's session number.
+	 * @param player
+	 *            is the player who had to pass.
+	 */
+	void recordPass(long session, char player) {
+		append(session, PASS, player, 0, 0);
+	}
+
+	/**
+	 * This is a helper that adds a record for the writer to write. It only
+	 * waits for other threads adding records, never for the disk.
+	 *
+	 * @param session
+	 *            is the game's session number.
+	 * @param type
+	 *            is the record type.
+	 * @param player
+	 *            is the player, or '_'.
+	 * @param x
+	 *            is the record's x.
+	 * @param y
+	 *            is the record's y.
+	 */
+	private void append(long session, byte type, char player, int x, int y) {
+		ByteBuffer record = ByteBuffer.allocate(RECORD);
+		record.putLong(session);
+		record.put(type);
+		record.put((byte) player);
+		record.put((byte) x);
+		record.put((byte) y);
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 0, RECORD - 4);
+		record.putInt((int) crc.getValue());
+		record.flip();
+
+		synchronized (lock) {
+			if (filling.remaining() < RECORD) {
+				ByteBuffer bigger = ByteBuffer
+						.allocate(filling.capacity() * 2);
+				filling.flip();
+				bigger.put(filling);
+				filling = bigger;
+			}
+			filling.put(record);
+			appended++;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * This is the writer thread. It waits for records, swaps the buffers so
+	 * more can be collected while it writes, and forces each batch to disk
+	 * once.
+	 */
+	private void writeLoop() {
+		while (true) {
+			long target;
+			synchronized (lock) {
+				while ((filling.position() == 0) && !closed) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if ((filling.position() == 0) && closed) {
+					return;
+				}
+				ByteBuffer full = filling;
+				filling = writing;
+				writing = full;
+				target = appended;
+			}
+
+			try {
+				writing.flip();
+				while (writing.hasRemaining()) {
+					channel.write(writing);
+				}
+				channel.force(false);
+			} catch (IOException e) {
+				synchronized (lock) {
+					failure = e;
+					lock.notifyAll();
+				}
+				return;
+			}
+			writing.clear();
+
+			synchronized (lock) {
+				durable = target;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * This is a helper that reads the file back when the journal is opened.
+	 * It collects the records of every game that hasn't ended and cuts the
+	 * file off after the last whole record.
+	 *
+	 * @throws IOException
+	 *             This is thrown if the file can't be read.
+	 */
+	private void read() throws IOException {
+		ByteBuffer in = ByteBuffer.allocate(4096 * RECORD);
+		byte[] record = new byte[RECORD];
+		CRC32 crc = new CRC32();
+		long good = 0;
+		long position = 0;
+
+		reading: while (true) {
+			in.clear();
+			int read = channel.read(in, position);
+			if (read <= 0) {
+				break;
+			}
+			position += read;
+			in.flip();
+
+			while (in.remaining() >= RECORD) {
+				in.get(record);
+				crc.reset();
+				crc.update(record, 0, RECORD - 4);
+				if ((int) crc.getValue() != ByteBuffer.wrap(record)
+						.getInt(RECORD - 4)) {
+					break reading;
+				}
+				good += RECORD;
+				readRecord(record);
+			}
+			if (in.position() == 0) {
+				// What is left is less than a record, cut off by the crash.
+				break;
+			}
+			// Go back for a record cut in half by the end of the buffer.
+			position -= in.remaining();
+		}
+
+		channel.truncate(good);
+		channel.position(good);
+	}
+
+	/**
+	 * This is a helper that files one record read from the journal under
+	 * its game.
+	 *
+	 * @param record
+	 *            is the 16 bytes of the record.
+	 */
+	private void readRecord(byte[] record) {
+		ByteBuffer buffer = ByteBuffer.wrap(record);
+		long session = buffer.getLong();
+		byte type = buffer.get();
+		nextSession = Math.max(nextSession, session + 1);
+
+		if (type == START) {
+			unfinished.put(session, new ArrayList<byte[]>());
+		} else if (type == END) {
+			unfinished.remove(session);
+			return;
+		}
+		ArrayList<byte[]> records = unfinished.get(session);
+		if (records != null) {
+			byte[] kept = new byte[4];
+			kept[0] = type;
+			kept[1] = buffer.get();
+			kept[2] = buffer.get();
+			kept[3] = buffer.get();
+			records.add(kept);
+		}
+	}
+
+}
@@ -1,10 +1,22 @@
 package controller;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.concurrent.ThreadLocalRandom;
 
 import customExceptions.ReversiCantPlaceException;
+import engine.DiscCountEvaluator;
+import engine.Engine;
+import engine.Evaluator;
+import engine.GreedyEngine;
+import engine.Search;
+import engine.SearchResult;
+import engine.TranspositionTable;
+import engine.WideBoard;
+import engine.WideSearch;
+import model.BoardSnapshot;
 import model.ReversiModel;
 
 /**
@@ -17,9 +29,46 @@ import model.ReversiModel;
  *
  */
 public class ReversiController {
+	// These translate the direction flag in move[5] into a step along x and y.
+	private static final int[] STEP_X = {0, 0, 1, -1, 1, -1, 1, -1};
+	private static final int[] STEP_Y = {-1, 1, 0, 0, 1, -1, -1, 1};
+
+	// Hints share their work between depths through a table of their own,
+	// so they don't change what the computer's look-ahead remembers.
+	private static final long HINT_TABLE_BYTES = 16L << 20;
+
+	// With nothing else set, the computer plays like this on an 8x8 board.
+	private static final Engine GREEDY = new GreedyEngine();
+
 	private ReversiModel myModel;
+	private int size;
+	private WideBoard geometry;
+	private long[] scratch;
 	private boolean humanSkip;
 	private boolean computerSkip;
+	private Evaluator evaluator;
+	private Engine engine;
+	private Search search;
+	private WideSearch wideSearch;
+	private TranspositionTable table;
+	private TranspositionTable hintTable;
+	private Search hintSearch;
+	private Thread hintThread;
+	private volatile SearchResult[] hints;
+	private volatile BoardSnapshot snapshot;
+	private char toMove;
+	private GameJournal journal;
+	private long session;
+	private DeltaBroadcaster broadcaster;
+	private int searchDepth;
+	private long searchMillis;
+
+	// The legal moves of each player, and the model's change count when
+	// they were found. They are found again once the board has changed.
+	private HashMap<ArrayList<Integer>, ArrayList<int[]>> whiteMoves;
+	private HashMap<ArrayList<Integer>, ArrayList<int[]>> blackMoves;
+	private long whiteMovesAt;
+	private long blackMovesAt;
 
 	/**
 	 * This is a constructor used for actually running the program. It
@@ -27,12 +76,21 @@ public class ReversiController {
 	 * the view never has to interact with the model.
 	 */
 	public ReversiController() {
-		this.myModel = new ReversiModel();
-		this.humanSkip = false;
-		this.computerSkip = false;
+		this(new ReversiModel());
 
 	}
 
+	/**
+	 * This is a constructor for playing on a board of a different size.
+	 * 
+	 * @param size
+	 *            is the number of squares along each side of the board. It
+	 *            must be even and no more than 16.
+	 */
+	public ReversiController(int size) {
+		this(new ReversiModel(size));
+	}
+
 	/**
 	 * This is a constructor used only for testing.
 	 * 
@@ -45,8 +103,49 @@ public class ReversiController {
 	 */
 	public ReversiController(ReversiModel myModel) {
 		this.myModel = myModel;
+		this.size = myModel.getSize();
+		this.geometry = new WideBoard(size);
+		this.scratch = geometry.newBits();
 		this.humanSkip = false;
 		this.computerSkip = false;
+		this.snapshot = new BoardSnapshot(myModel, 0);
+		this.toMove = 'W';
+		this.whiteMovesAt = -1;
+		this.blackMovesAt = -1;
+	}
+
+	/**
+	 * This is a constructor used by the SessionStore to bring back a
+	 * hibernated 8x8 game exactly as it was left.
+	 * 
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @param toMove
+	 *            is the player to move, 'W' or 'B'.
+	 * @param humanSkip
+	 *            is whether the human's last turn was a pass.
+	 * @param computerSkip
+	 *            is whether the computer's last turn was a pass.
+	 */
+	ReversiController(long black, long white, char toMove, boolean humanSkip,
+			boolean computerSkip) {
+		this(new ReversiModel());
+		for (int square = 0; square < 64; square++) {
+			long bit = 1L << square;
+			char piece = '_';
+			if ((black & bit) != 0) {
+				piece = 'B';
+			} else if ((white & bit) != 0) {
+				piece = 'W';
+			}
+			myModel.setAt(square % 8, square / 8, piece);
+		}
+		this.snapshot = new BoardSnapshot(myModel, 0);
+		this.toMove = toMove;
+		this.humanSkip = humanSkip;
+		this.computerSkip = computerSkip;
 	}
 
 	/**
@@ -59,27 +158,27 @@ public class ReversiController {
 	}
 
 	/**
-	 * This checks each position on the board and adds up the score of each
-	 * player.
+	 * This counts the pieces belonging to each player, using the model's
+	 * bitsets so it doesn't have to look at every square.
 	 * 
 	 * @return is an int[] representation of the scores of each player.
 	 */
 	public int[] getScore() {
 		int[] score = new int[2];
-		score[0] = 0;
-		score[1] = 0;
-		for (int i = 0; i < 8; i++) {
-			for (int j = 0; j < 8; j++) {
-				if (myModel.getAt(i, j) == 'W') {
-					score[0]++;
-				} else if (myModel.getAt(i, j) == 'B') {
-					score[1]++;
-				}
-			}
-		}
+		score[0] = WideBoard.count(myModel.getBits('W'));
+		score[1] = WideBoard.count(myModel.getBits('B'));
 		return score;
 	}
 
+	/**
+	 * This returns the number of squares along each side of the board.
+	 * 
+	 * @return is the board size.
+	 */
+	public int getSize() {
+		return size;
+	}
+
 	/**
 	 * This is a method for the controller to hand a representation of the board
 	 * to the view so that the view never has to interact directly with the
@@ -91,11 +190,26 @@ public class ReversiController {
 		return myModel.getBoard();
 	}
 
+	/**
+	 * This returns an unchanging picture of the board as of the last move.
+	 * Unlike getBoard() it is safe to read from any thread while the game
+	 * goes on, and it never changes after it is handed out.
+	 * 
+	 * @return is the BoardSnapshot published after the last move.
+	 */
+	public BoardSnapshot getSnapshot() {
+		return snapshot;
+	}
+
 	/**
 	 * This is a setter the view can use if the human has skipped its turn.
 	 */
 	public void humanSkipped() {
 		humanSkip = true;
+		toMove = 'B';
+		if (journal != null) {
+			journal.recordPass(session, 'W');
+		}
 	}
 
 	/**
@@ -104,10 +218,305 @@ public class ReversiController {
 	 */
 	public void computerSkipped() {
 		computerSkip = true;
+		toMove = 'W';
+		if (journal != null) {
+			journal.recordPass(session, 'B');
+		}
+	}
+
+	/**
+	 * This returns whose turn it is. The human moves first and the players
+	 * take turns, passing when they have to.
+	 * 
+	 * @return is 'W' for the human or 'B' for the computer.
+	 */
+	public char getPlayerToMove() {
+		return toMove;
+	}
+
+	/**
+	 * This plays a move that was already made once, like a move read back
+	 * from a GameJournal, for either player. It is checked like the human's
+	 * moves but not recorded in the journal again.
+	 * 
+	 * @param playerChar
+	 *            is the player who made the move.
+	 * @param x
+	 *            is the x position of the placed piece.
+	 * @param y
+	 *            is the y position of the placed piece.
+	 * @throws ReversiCantPlaceException
+	 *             This exception is thrown if the move isn't legal.
+	 */
+	public void replayMove(char playerChar, int x, int y)
+			throws ReversiCantPlaceException {
+		ArrayList<int[]> moves = getFlips(x, y, playerChar);
+		if (moves.isEmpty()) {
+			throw new ReversiCantPlaceException();
+		}
+		makeMoves(moves, playerChar);
+		if (playerChar == 'W') {
+			humanSkip = false;
+			toMove = 'B';
+		} else {
+			computerSkip = false;
+			toMove = 'W';
+		}
+	}
+
+	/**
+	 * This is a getter the SessionStore uses to pack an 8x8 game away.
+	 * 
+	 * @param playerChar
+	 *            is 'B' or 'W'.
+	 * @return is the bitboard of that player's pieces.
+	 */
+	long getBitboard(char playerChar) {
+		return myModel.getBits(playerChar)[0];
+	}
+
+	/**
+	 * This is a getter the SessionStore uses to pack a game away.
+	 * 
+	 * @return is whether the human's last turn was a pass.
+	 */
+	boolean hasHumanSkipped() {
+		return humanSkip;
+	}
+
+	/**
+	 * This is a getter the SessionStore uses to pack a game away.
+	 * 
+	 * @return is whether the computer's last turn was a pass.
+	 */
+	boolean hasComputerSkipped() {
+		return computerSkip;
+	}
+
+	/**
+	 * This is a setter the GameJournal uses to have this game's moves
+	 * recorded.
+	 * 
+	 * @param journal
+	 *            is the GameJournal to record to.
+	 * @param session
+	 *            is the game's session number in the journal.
+	 */
+	void setJournal(GameJournal journal, long session) {
+		this.journal = journal;
+		this.session = session;
+	}
+
+	/**
+	 * This sets the broadcaster this game's moves are sent to spectators
+	 * through. The board as it is now is sent straight away, so spectators
+	 * have something to start from.
+	 * 
+	 * @param broadcaster
+	 *            is the DeltaBroadcaster, or null to stop sending moves.
+	 */
+	public void setBroadcaster(DeltaBroadcaster broadcaster) {
+		this.broadcaster = broadcaster;
+		if (broadcaster != null) {
+			broadcaster.publish(snapshot);
+		}
+	}
+
+	/**
+	 * This sets the evaluator the computer uses to pick its moves. With no
+	 * evaluator the computer just takes the move that flips the most pieces.
+	 * 
+	 * @param evaluator
+	 *            is the Evaluator to score positions with, or null to go back
+	 *            to counting flipped pieces.
+	 */
+	public void setEvaluator(Evaluator evaluator) {
+		if ((evaluator != null) && (size != 8)) {
+			throw new IllegalArgumentException(
+					"Evaluators only work on an 8x8 board.");
+		}
+		this.evaluator = evaluator;
+		this.search = null;
+	}
+
+	/**
+	 * This has an Engine pick the computer's moves, in place of the
+	 * evaluator and look-ahead settings.
+	 * 
+	 * @param engine
+	 *            is the Engine, or null to go back to the evaluator and
+	 *            look-ahead settings.
+	 */
+	public void setEngine(Engine engine) {
+		if ((engine != null) && (size != 8)) {
+			throw new IllegalArgumentException(
+					"Engines only work on an 8x8 board.");
+		}
+		this.engine = engine;
+	}
+
+	/**
+	 * This makes the computer look ahead before it moves instead of only
+	 * looking at the move in front of it. Positions at the end of the look
+	 * ahead are scored by the evaluator, or by counting pieces if no
+	 * evaluator has been set or the board isn't 8x8.
+	 * 
+	 * @param depth
+	 *            is how many moves ahead the computer looks, or 0 to stop
+	 *            looking ahead.
+	 * @param millis
+	 *            is how long the computer may think in milliseconds, or 0 for
+	 *            no limit.
+	 */
+	public void setSearch(int depth, long millis) {
+		this.searchDepth = depth;
+		this.searchMillis = millis;
+	}
+
+	/**
+	 * This gives the look-ahead a table to remember positions in, so it
+	 * doesn't search the same position twice. The table is kept from move
+	 * to move. It is only used on an 8x8 board.
+	 * 
+	 * @param table
+	 *            is the TranspositionTable, or null to use none.
+	 */
+	public void setTranspositionTable(TranspositionTable table) {
+		this.table = table;
+		if (search != null) {
+			search.setTable(table);
+		}
+	}
+
+	/**
+	 * This saves the look-ahead's table to a snapshot file so a later game
+	 * can start with everything it has learned.
+	 * 
+	 * @param file
+	 *            is the path of the snapshot file.
+	 * @throws IOException
+	 *             This is thrown if the file can't be written.
+	 */
+	public void saveTable(Path file) throws IOException {
+		if (table == null) {
+			throw new IllegalStateException(
+					"No transposition table has been set.");
+		}
+		table.save(file, searchEvaluatorFingerprint());
+	}
+
+	/**
+	 * This loads a snapshot file saved by saveTable() and makes it the
+	 * look-ahead's table.
+	 * 
+	 * @param file
+	 *            is the path of the snapshot file.
+	 * @throws IOException
+	 *             This is thrown if the file can't be read, doesn't match
+	 *             this version of the program or was saved with a different
+	 *             evaluator.
+	 */
+	public void loadTable(Path file) throws IOException {
+		setTranspositionTable(TranspositionTable.load(file,
+				searchEvaluatorFingerprint()));
+	}
+
+	/**
+	 * This is a helper that gets the fingerprint of the evaluator the
+	 * look-ahead scores positions with, so a saved table is only loaded
+	 * with the same one. Set the evaluator before loading a table.
+	 * 
+	 * @return is the evaluator's fingerprint.
+	 */
+	private long searchEvaluatorFingerprint() {
+		if (evaluator == null) {
+			return new DiscCountEvaluator().fingerprint();
+		}
+		return evaluator.fingerprint();
 	}
 
 	/**
-	 * This checks if the current player has a valid move to make.
+	 * This starts looking for the human's best moves in the background, so
+	 * hints are ready by the time the human asks for them. The search looks
+	 * deeper and deeper until stopHints() is called or the human moves, and
+	 * getHints() always returns the moves from the deepest finished look.
+	 * The hints keep their own table, so they don't change the table the
+	 * computer's look-ahead uses.
+	 * 
+	 * @param count
+	 *            is how many moves to give hints for.
+	 */
+	public void startHints(int count) {
+		stopHints();
+		if (size != 8) {
+			throw new IllegalStateException(
+					"Hints only work on an 8x8 board.");
+		}
+		if (hintTable == null) {
+			hintTable = new TranspositionTable(HINT_TABLE_BYTES);
+		}
+
+		Evaluator hintEvaluator = new DiscCountEvaluator();
+		if (evaluator != null) {
+			hintEvaluator = evaluator.copy();
+		}
+		Search lines = new Search(hintEvaluator);
+		lines.setTable(hintTable);
+		long black = myModel.getBits('B')[0];
+		long white = myModel.getBits('W')[0];
+
+		hints = new SearchResult[0];
+		hintSearch = lines;
+		hintThread = new Thread(() -> lines.searchLines(black, white, 'W',
+				count, 64, 0, found -> hints = found), "hints");
+		hintThread.setDaemon(true);
+		hintThread.start();
+	}
+
+	/**
+	 * This gets the best moves the hint search has found so far.
+	 * 
+	 * @return is an ArrayList of int[] holding the x and y of each move, its
+	 *         score and how many moves ahead it was looked at, best move
+	 *         first. It is empty if the search hasn't finished its first look
+	 *         yet.
+	 */
+	public ArrayList<int[]> getHints() {
+		ArrayList<int[]> found = new ArrayList<int[]>();
+		SearchResult[] current = hints;
+		if (current == null) {
+			return found;
+		}
+		for (SearchResult hint : current) {
+			found.add(new int[]{hint.getMove() % size, hint.getMove() / size,
+					hint.getScore(), hint.getDepth()});
+		}
+		return found;
+	}
+
+	/**
+	 * This stops the hint search and waits for it to finish. It does
+	 * nothing if no hint search is running.
+	 */
+	public void stopHints() {
+		if (hintThread == null) {
+			return;
+		}
+		hintSearch.cancel();
+		try {
+			hintThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		hintThread = null;
+		hintSearch = null;
+	}
+
+	/**
+	 * This checks if the current player has a valid move to make. If the
+	 * player's moves have already been found for this board they are used,
+	 * and otherwise the bitsets are checked, which is much cheaper than
+	 * finding every move.
 	 * 
 	 * @param playerChar
 	 *            is the char representing the pieces belonging to the current
@@ -116,7 +525,18 @@ public class ReversiController {
 	 *         make.
 	 */
 	public boolean canMove(char playerChar) {
-		boolean canMove = !(findValidMoves(playerChar).isEmpty());
+		HashMap<ArrayList<Integer>, ArrayList<int[]>> cached = cachedMoves(
+				playerChar);
+		if (cached != null) {
+			return !cached.isEmpty();
+		}
+
+		char otherChar = 'B';
+		if (playerChar == 'B') {
+			otherChar = 'W';
+		}
+		boolean canMove = geometry.hasMove(myModel.getBits(playerChar),
+				myModel.getBits(otherChar), scratch);
 		return canMove;
 
 	}
@@ -125,9 +545,9 @@ public class ReversiController {
 	 * This takes user input from the view and uses it for the player to make a
 	 * move.
 	 * 
-	 * The player's input is fed in from the ReversiView and checked against the
-	 * HashMap of valid moves. If the chosen move is not on the HashMap the
-	 * player will be asked to choose again in the view.
+	 * The player's input is fed in from the ReversiView and checked by looking
+	 * along the eight lines out from the chosen square. If it doesn't capture
+	 * anything the player will be asked to choose again in the view.
 	 * 
 	 * @param row
 	 *            is the int representation of the Y position the player has
@@ -140,21 +560,72 @@ public class ReversiController {
 	 *             move.
 	 */
 	public void humanTurn(int row, int col) throws ReversiCantPlaceException {
-		HashMap<ArrayList<Integer>, ArrayList<int[]>> movesMap = findValidMoves(
-				'W');
+		ArrayList<int[]> moves = getFlips(row, col, 'W');
 
-		ArrayList<Integer> playerMove = new ArrayList<Integer>();
-		playerMove.add(col);
-		playerMove.add(row);
-
-		if (!(movesMap.containsKey(playerMove))) {
+		if (moves.isEmpty()) {
 			throw new ReversiCantPlaceException();
 
 		} else {
-			makeMoves(movesMap.get(playerMove), 'W');
+			// An illegal move leaves the hints running for the next try.
+			stopHints();
+			makeMoves(moves, 'W');
 			humanSkip = false;
+			toMove = 'B';
+			if (journal != null) {
+				journal.recordMove(session, 'W', row, col);
+			}
+		}
+
+	}
+
+	/**
+	 * This finds what placing a piece on one square would capture, by
+	 * walking the eight lines out from that square and nowhere else. It is
+	 * much cheaper than finding every legal move when only one square
+	 * matters, like checking the human's choice.
+	 * 
+	 * @param x
+	 *            is the x position of the square.
+	 * @param y
+	 *            is the y position of the square.
+	 * @param playerChar
+	 *            is the player placing the piece.
+	 * @return is an ArrayList of int[] in the same form as the moves found
+	 *         for the whole board, one for each line that would be captured:
+	 *         the x and y of the player's piece at the far end, the x and y
+	 *         of the placed piece, how many pieces are captured and the
+	 *         direction flag. It is empty if the move isn't legal.
+	 */
+	public ArrayList<int[]> getFlips(int x, int y, char playerChar) {
+		ArrayList<int[]> moves = new ArrayList<int[]>();
+		if ((x < 0) || (y < 0) || (x >= size) || (y >= size)
+				|| (myModel.getAt(x, y) != '_')) {
+			return moves;
+		}
+		char otherChar = 'B';
+		if (playerChar == 'B') {
+			otherChar = 'W';
 		}
 
+		for (int direction = 0; direction < 8; direction++) {
+			int currX = x + STEP_X[direction];
+			int currY = y + STEP_Y[direction];
+			int score = 0;
+			while (onBoard(currX, currY)
+					&& (myModel.getAt(currX, currY) == otherChar)) {
+				score++;
+				currX += STEP_X[direction];
+				currY += STEP_Y[direction];
+			}
+			if ((score > 0) && onBoard(currX, currY)
+					&& (myModel.getAt(currX, currY) == playerChar)) {
+				// The flags pair up opposite directions, so flipping the low
+				// bit gives the direction from the far piece back to x, y.
+				moves.add(new int[]{currX, currY, x, y, score,
+						direction ^ 1});
+			}
+		}
+		return moves;
 	}
 
 	/**
@@ -176,29 +647,63 @@ public class ReversiController {
 		chosenMove[1] = bestMoves.get(0)[3];
 
 		computerSkip = false;
+		toMove = 'W';
+		if (journal != null) {
+			journal.recordMove(session, 'B', chosenMove[0], chosenMove[1]);
+		}
 		return chosenMove;
 	}
 
 	/**
 	 * This is a helper method that allows the computer to pick the best move.
 	 * 
-	 * This method checks each move in the HashMap and adds up how many pieces
-	 * will be captured and picks the move that will capture the most pieces. If
+	 * If an engine has been set, or the computer looks ahead, the move comes
+	 * from that. Otherwise an 8x8 board is played by GreedyEngine, which takes
+	 * the move that captures the most pieces.
+	 * 
+	 * If an evaluator has been set, or the board is another size, this method
+	 * checks each move in the HashMap instead. Each move is scored by the
+	 * evaluator, or by how many pieces it captures, and the best is picked. If
 	 * two moves are of equal value, a move is chosen at random.
 	 * 
 	 * @return is an ArrayList<int[]> that represents the best move.
 	 */
 	private ArrayList<int[]> chooseBestMove() {
-		HashMap<ArrayList<Integer>, ArrayList<int[]>> movesMap = findValidMoves(
+		HashMap<ArrayList<Integer>, ArrayList<int[]>> movesMap = validMoves(
 				'B');
 		ArrayList<Integer> bestKey = new ArrayList<Integer>();
 		int currMax = 0;
 
+		SearchResult result = null;
+		if (engine != null) {
+			result = engine.chooseMove(myModel.getBits('B')[0],
+					myModel.getBits('W')[0], 'B');
+		} else if (searchDepth > 0) {
+			result = searchBestMove('B');
+		} else if ((evaluator == null) && (size == 8)) {
+			result = GREEDY.chooseMove(myModel.getBits('B')[0],
+					myModel.getBits('W')[0], 'B');
+		}
+		if (result != null) {
+			bestKey.add(result.getMove() / size);
+			bestKey.add(result.getMove() % size);
+			return movesMap.get(bestKey);
+		}
+
+		if (evaluator != null) {
+			evaluator.reset(myModel.getBoard());
+			currMax = Integer.MIN_VALUE;
+		}
+
 		for (ArrayList<Integer> key : movesMap.keySet()) {
 			int currTotal = 0;
 			ArrayList<int[]> currMoves = movesMap.get(key);
-			for (int[] move : currMoves) {
-				currTotal += move[4];
+			if (evaluator != null) {
+				currTotal = evaluateMove(currMoves, 'B');
+			} else {
+				for (int[] move : currMoves) {
+					currTotal += move[4];
+				}
 			}
 			if (currTotal > currMax) {
 				currMax = currTotal;
@@ -220,6 +725,95 @@ public class ReversiController {
 
 	}
 
+	/**
+	 * This is a helper method that runs the look-ahead search on the current
+	 * board.
+	 * 
+	 * @param playerChar
+	 *            is the player to find a move for.
+	 * @return is the SearchResult for the best move.
+	 */
+	private SearchResult searchBestMove(char playerChar) {
+		if (size != 8) {
+			if (wideSearch == null) {
+				wideSearch = new WideSearch(size);
+			}
+			return wideSearch.search(myModel.getBits('B'),
+					myModel.getBits('W'), playerChar, searchDepth,
+					searchMillis);
+		}
+
+		if (search == null) {
+			Evaluator searchEvaluator = evaluator;
+			if (searchEvaluator == null) {
+				searchEvaluator = new DiscCountEvaluator();
+			}
+			search = new Search(searchEvaluator);
+			search.setTable(table);
+		}
+
+		return search.search(myModel.getBits('B')[0], myModel.getBits('W')[0],
+				playerChar, searchDepth, searchMillis);
+	}
+
+	/**
+	 * This is a helper method that scores a move with the evaluator without
+	 * touching the model. The evaluator is told about the placed piece and
+	 * every flipped piece, asked for a score, and then told to put everything
+	 * back.
+	 * 
+	 * @param moves
+	 *            is a list of all directions where pieces will be captured.
+	 * @param playerChar
+	 *            is the character of the player who's turn it is.
+	 * @return is the evaluator's score for playerChar after the move.
+	 */
+	private int evaluateMove(ArrayList<int[]> moves, char playerChar) {
+		char otherChar = 'B';
+		if (playerChar == 'B') {
+			otherChar = 'W';
+		}
+
+		updateEvaluator(moves, otherChar, playerChar, '_', playerChar);
+		int score = evaluator.evaluate(playerChar);
+		updateEvaluator(moves, playerChar, otherChar, playerChar, '_');
+
+		return score;
+	}
+
+	/**
+	 * This is a helper method that walks each captured line of a move and
+	 * tells the evaluator about every square that changes along it.
+	 * 
+	 * @param moves
+	 *            is a list of all directions where pieces will be captured.
+	 * @param oldFlip
+	 *            is the char on the captured squares before the change.
+	 * @param newFlip
+	 *            is the char on the captured squares after the change.
+	 * @param oldPlaced
+	 *            is the char on the placement square before the change.
+	 * @param newPlaced
+	 *            is the char on the placement square after the change.
+	 */
+	private void updateEvaluator(ArrayList<int[]> moves, char oldFlip,
+			char newFlip, char oldPlaced, char newPlaced) {
+		// Every direction in a move ends on the same placement square.
+		evaluator.update(moves.get(0)[2], moves.get(0)[3], oldPlaced,
+				newPlaced);
+
+		for (int[] currMove : moves) {
+			int currX = currMove[0] + STEP_X[currMove[5]];
+			int currY = currMove[1] + STEP_Y[currMove[5]];
+
+			while ((currX != currMove[2]) || (currY != currMove[3])) {
+				evaluator.update(currX, currY, oldFlip, newFlip);
+				currX += STEP_X[currMove[5]];
+				currY += STEP_Y[currMove[5]];
+			}
+		}
+	}
+
 	/**
 	 * This executes a valid move from either the player or the computer.
 	 * 
@@ -302,6 +896,72 @@ public class ReversiController {
 
 			}
 		}
+
+		// Readers only ever see whole moves, since the new snapshot is only
+		// published once every piece has been placed.
+		snapshot = new BoardSnapshot(myModel, snapshot.getVersion() + 1);
+		if (broadcaster != null) {
+			broadcaster.publish(snapshot);
+		}
+	}
+
+	/**
+	 * This is a helper method that checks whether a position is on the board.
+	 * 
+	 * @param x
+	 *            is the x position.
+	 * @param y
+	 *            is the y position.
+	 * @return is true if the position is on the board.
+	 */
+	private boolean onBoard(int x, int y) {
+		return (x >= 0) && (y >= 0) && (x < size) && (y < size);
+	}
+
+	/**
+	 * This is a helper method that returns the valid moves for a player,
+	 * only finding them again if the board has changed since they were last
+	 * found.
+	 * 
+	 * @param playerChar
+	 *            is the color piece belonging to the current player
+	 * @return is the HashMap made by findValidMoves(). It is shared, so it
+	 *         must not be changed.
+	 */
+	private HashMap<ArrayList<Integer>, ArrayList<int[]>> validMoves(
+			char playerChar) {
+		HashMap<ArrayList<Integer>, ArrayList<int[]>> moves = cachedMoves(
+				playerChar);
+		if (moves != null) {
+			return moves;
+		}
+
+		moves = findValidMoves(playerChar);
+		if (playerChar == 'W') {
+			whiteMoves = moves;
+			whiteMovesAt = myModel.getModCount();
+		} else {
+			blackMoves = moves;
+			blackMovesAt = myModel.getModCount();
+		}
+		return moves;
+	}
+
+	/**
+	 * This is a helper method that returns a player's valid moves if they
+	 * were found on the board as it is now.
+	 * 
+	 * @param playerChar
+	 *            is the color piece belonging to the current player
+	 * @return is the player's moves, or null if they need to be found again.
+	 */
+	private HashMap<ArrayList<Integer>, ArrayList<int[]>> cachedMoves(
+			char playerChar) {
+		long now = myModel.getModCount();
+		if (playerChar == 'W') {
+			return (whiteMovesAt == now) ? whiteMoves : null;
+		}
+		return (blackMovesAt == now) ? blackMoves : null;
 	}
 
 	/**
@@ -329,8 +989,8 @@ public class ReversiController {
 
 		// This checks for possible moves using a player's piece as a starting
 		// point and adds the results to a list of moves.
-		for (int i = 0; i < 8; i++) {
-			for (int j = 0; j < 8; j++) {
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
 				ArrayList<int[]> tempList = new ArrayList<int[]>();
 				if (myModel.getAt(i, j) == playerChar) {
 					tempList.add(checkUp(i, j, playerChar));
@@ -445,7 +1105,7 @@ public class ReversiController {
 	 *         in in that order.
 	 */
 	private int[] checkDown(int startX, int startY, char playerChar) {
-		if (startY > 5) {
+		if (startY > size - 3) {
 			return null; // It is impossible to make a legal move if there is
 							// only one blank space below one of your pieces.
 
@@ -464,12 +1124,12 @@ public class ReversiController {
 
 		// Start at startY + 2 since we have checked
 		// everything before it above.
-		for (int i = startY + 2; i < 8; i++) {
+		for (int i = startY + 2; i < size; i++) {
 			char thisChar = myModel.getAt(startX, i);
 
 			// return null if we hit a piece belonging to the current player
 			// or we run out of board.
-			if ((thisChar == playerChar) || ((i == 7) && (thisChar != '_'))) {
+			if ((thisChar == playerChar) || ((i == size - 1) && (thisChar != '_'))) {
 				return null;
 
 			} else if (thisChar == '_') {
@@ -508,7 +1168,7 @@ public class ReversiController {
 	 *         in in that order.
 	 */
 	private int[] checkRight(int startX, int startY, char playerChar) {
-		if (startX > 5) {
+		if (startX > size - 3) {
 			return null;
 
 		} else if ((myModel.getAt(startX + 1, startY) == '_')
@@ -526,17 +1186,17 @@ public class ReversiController {
 		int i = startX + 2;
 
 		// for (int i = startX + 2; i <= 7; i++) {
-		while (i <= 7) {
+		while (i <= size - 1) {
 			char thisChar = myModel.getAt(i, startY);
 
 			// return null if we hit a piece belonging to the current player
 			// or we run out of board.
-			if ((thisChar == playerChar) || ((i == 7) && (thisChar != '_'))) {
+			if ((thisChar == playerChar) || ((i == size - 1) && (thisChar != '_'))) {
 				return null;
 
 			} else if (thisChar == '_') {
 				endX = i;
-				i = 8;
+				i = size;
 				// break;
 
 			} else {
@@ -636,7 +1296,7 @@ public class ReversiController {
 	private int[] checkDownRightDiag(int startX, int startY, char playerChar) {
 		int farthest = Math.max(startX, startY);
 
-		if (farthest > 5) {
+		if (farthest > size - 3) {
 			return null;
 
 		} else if ((myModel.getAt(startX + 1, startY + 1) == '_')
@@ -650,11 +1310,11 @@ public class ReversiController {
 		int endX = startX;
 		int endY = startY;
 
-		for (int i = 2; i < 8 - farthest; i++) {
+		for (int i = 2; i < size - farthest; i++) {
 			char thisChar = myModel.getAt(startX + i, startY + i);
 
 			if ((thisChar == playerChar)
-					|| ((i == 7 - farthest) && (thisChar != '_'))) {
+					|| ((i == size - 1 - farthest) && (thisChar != '_'))) {
 				return null;
 
 			} else if (thisChar == '_') {
@@ -758,7 +1418,7 @@ public class ReversiController {
 	 *         in in that order.
 	 */
 	private int[] checkUpRightDiag(int startX, int startY, char playerChar) {
-		if ((startY < 2) || (startX > 5)) {
+		if ((startY < 2) || (startX > size - 3)) {
 			return null;
 
 		} else if ((myModel.getAt(startX + 1, startY - 1) == '_')
@@ -774,20 +1434,20 @@ public class ReversiController {
 
 		int i = 2;
 
-		while ((startX + i < 8) && (startY - i >= 0)) {
+		while ((startX + i < size) && (startY - i >= 0)) {
 			char thisChar = myModel.getAt(startX + i, startY - i);
 
 			// This if block checks to see if the player will hit it's own
 			// piece or the edge of the board.
 			if ((thisChar == playerChar)
-					|| (((startX + i == 7) || (startY - i == 0))
+					|| (((startX + i == size - 1) || (startY - i == 0))
 							&& (thisChar != '_'))) {
 				return null;
 
 			} else if (thisChar == '_') {
 				endX = startX + i;
 				endY = startY - i;
-				i = 100;
+				i = size;
 
 			} else {
 				score++;
@@ -822,7 +1482,7 @@ public class ReversiController {
 	 *         in in that order.
 	 */
 	private int[] checkDownLeftDiag(int startX, int startY, char playerChar) {
-		if ((startX < 2) || (startY > 5)) {
+		if ((startX < 2) || (startY > size - 3)) {
 			return null;
 
 		} else if ((myModel.getAt(startX - 1, startY + 1) == '_')
@@ -838,13 +1498,13 @@ public class ReversiController {
 
 		int i = 2;
 
-		while ((startY + i < 8) && (startX - i >= 0)) {
+		while ((startY + i < size) && (startX - i >= 0)) {
 			char thisChar = myModel.getAt(startX - i, startY + i);
 
 			// This if block checks to see if the player will hit it's own
 			// piece or the edge of the board.
 			if ((thisChar == playerChar)
-					|| (((startY + i == 7) || (startX - i == 0))
+					|| (((startY + i == size - 1) || (startX - i == 0))
 							&& (thisChar != '_'))) {
 				return null;
 
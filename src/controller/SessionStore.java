@@ -0,0 +1,277 @@
+package controller;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This keeps idle games packed away so far more of them fit
+ *         in memory. A live game is a controller, a model and a char[][]
+ *         board, all with their own object headers, but all it takes to
+ *         carry on an 8x8 game is two bitboards, whose turn it is and which
+ *         players passed last. That is all that is kept here, so a game that
+ *         nobody is playing costs well under a hundred bytes instead of a few
+ *         kilobytes.
+ *
+ *         Games are stored by session number. hibernate() packs a game away
+ *         and the caller drops its controller, and wake() builds a new
+ *         controller from the record when the game is next played. Settings
+ *         like the engine are the same for every game, so they are not kept
+ *         and must be set on the woken controller again. If the store was
+ *         given a journal, woken games record to it under their session
+ *         number again.
+ *
+ *         The records live in parallel arrays, and the session numbers are
+ *         looked up in an open addressing table of longs that holds each
+ *         game's index in the arrays. Nothing is allocated per game, so the
+ *         garbage collector has only a handful of big arrays to look at no
+ *         matter how many games are stored. Indexes freed by wake() are
+ *         reused. Every method locks the store, since looking up or packing
+ *         a game takes well under a microsecond.
+ *
+ */
+public class SessionStore {
+	// The bits of a record's flags.
+	private static final byte BLACK_TO_MOVE = 1;
+	private static final byte HUMAN_SKIPPED = 2;
+	private static final byte COMPUTER_SKIPPED = 4;
+
+	// Multiplying by this spreads session numbers, which are usually one
+	// after another, over the whole table.
+	private static final long SPREAD = 0x9E3779B97F4A7C15L;
+
+	private final GameJournal journal;
+
+	// The table: a session number and its record's index plus one, with 0
+	// marking an empty slot. It is kept at most half full.
+	private long[] sessions;
+	private int[] slots;
+	private int shift;
+
+	// The records, and a stack of indexes freed by wake().
+	private long[] blacks;
+	private long[] whites;
+	private byte[] flags;
+	private int[] free;
+	private int freeCount;
+	private int used;
+	private int size;
+
+	/**
+	 * This is the constructor for an empty store whose games don't record
+	 * to a journal.
+	 */
+	public SessionStore() {
+		this(null);
+	}
+
+	/**
+	 * This is the constructor for an empty store.
+	 *
+	 * @param journal
+	 *            is the GameJournal woken games record to, or null. The
+	 *            store's session numbers must then be the journal's.
+	 */
+	public SessionStore(GameJournal journal) {
+		this.journal = journal;
+		this.sessions = new long[16];
+		this.slots = new int[16];
+		this.shift = 64 - 4;
+		this.blacks = new long[8];
+		this.whites = new long[8];
+		this.flags = new byte[8];
+		this.free = new int[8];
+	}
+
+	/**
+	 * This packs a game away. Any hint search it has running is stopped, and
+	 * the controller shouldn't be used again afterwards. A game already
+	 * stored under the same session number is replaced.
+	 *
+	 * @param session
+	 *            is the game's session number.
+	 * @param controller
+	 *            is the game's controller. Its board must be 8x8.
+	 */
+	public void hibernate(long session, ReversiController controller) {
+		if (controller.getSize() != 8) {
+			throw new IllegalArgumentException(
+					"Only 8x8 games can be hibernated.");
+		}
+		controller.stopHints();
+
+		byte packed = 0;
+		if (controller.getPlayerToMove() == 'B') {
+			packed |= BLACK_TO_MOVE;
+		}
+		if (controller.hasHumanSkipped()) {
+			packed |= HUMAN_SKIPPED;
+		}
+		if (controller.hasComputerSkipped()) {
+			packed |= COMPUTER_SKIPPED;
+		}
+		long black = controller.getBitboard('B');
+		long white = controller.getBitboard('W');
+
+		synchronized (this) {
+			int index = find(session);
+			if (slots[index] == 0) {
+				if ((size + 1) * 2 > sessions.length) {
+					resize(sessions.length * 2);
+					index = find(session);
+				}
+				sessions[index] = session;
+				slots[index] = newRecord() + 1;
+				size++;
+			}
+			int record = slots[index] - 1;
+			blacks[record] = black;
+			whites[record] = white;
+			flags[record] = packed;
+		}
+	}
+
+	/**
+	 * This takes a game out of the store and builds a controller for it.
+	 *
+	 * @param session
+	 *            is the game's session number.
+	 * @return is a new ReversiController in the same state the game was
+	 *         packed away in, or null if no game is stored under the number.
+	 */
+	public ReversiController wake(long session) {
+		long black;
+		long white;
+		byte packed;
+		synchronized (this) {
+			int index = find(session);
+			if (slots[index] == 0) {
+				return null;
+			}
+			int record = slots[index] - 1;
+			black = blacks[record];
+			white = whites[record];
+			packed = flags[record];
+			delete(index);
+			free[freeCount] = record;
+			freeCount++;
+			size--;
+		}
+
+		ReversiController controller = new ReversiController(black, white,
+				((packed & BLACK_TO_MOVE) != 0) ? 'B' : 'W',
+				(packed & HUMAN_SKIPPED) != 0,
+				(packed & COMPUTER_SKIPPED) != 0);
+		if (journal != null) {
+			controller.setJournal(journal, session);
+		}
+		return controller;
+	}
+
+	/**
+	 * This checks if a game is stored.
+	 *
+	 * @param session
+	 *            is the game's session number.
+	 * @return is true if the game is stored.
+	 */
+	public synchronized boolean contains(long session) {
+		return slots[find(session)] != 0;
+	}
+
+	/**
+	 * This returns the number of games stored.
+	 *
+	 * @return is the number of games.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * This is a helper that finds a session number's slot in the table.
+	 *
+	 * @param session
+	 *            is the session number.
+	 * @return is the slot holding it, or the empty slot it would go in.
+	 */
+	private int find(long session) {
+		int mask = sessions.length - 1;
+		int index = (int) ((session * SPREAD) >>> shift);
+		while ((slots[index] != 0) && (sessions[index] != session)) {
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	/**
+	 * This is a helper that empties a slot in the table, moving later
+	 * entries of the same run back so find() still reaches them.
+	 *
+	 * @param index
+	 *            is the slot to empty.
+	 */
+	private void delete(int index) {
+		int mask = sessions.length - 1;
+		int hole = index;
+		int next = (hole + 1) & mask;
+		while (slots[next] != 0) {
+			int home = (int) ((sessions[next] * SPREAD) >>> shift);
+			// An entry can fill the hole if its home slot isn't between the
+			// hole and where it sits now.
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				sessions[hole] = sessions[next];
+				slots[hole] = slots[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		slots[hole] = 0;
+	}
+
+	/**
+	 * This is a helper that makes the table bigger and puts every entry
+	 * back in.
+	 *
+	 * @param capacity
+	 *            is the new number of slots, a power of two.
+	 */
+	private void resize(int capacity) {
+		long[] oldSessions = sessions;
+		int[] oldSlots = slots;
+		sessions = new long[capacity];
+		slots = new int[capacity];
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
+		for (int i = 0; i < oldSlots.length; i++) {
+			if (oldSlots[i] != 0) {
+				int index = find(oldSessions[i]);
+				sessions[index] = oldSessions[i];
+				slots[index] = oldSlots[i];
+			}
+		}
+	}
+
+	/**
+	 * This is a helper that hands out a free record index, growing the
+	 * record arrays if none is free.
+	 *
+	 * @return is the record's index.
+	 */
+	private int newRecord() {
+		if (freeCount > 0) {
+			freeCount--;
+			return free[freeCount];
+		}
+		if (used == blacks.length) {
+			int capacity = blacks.length * 2;
+			blacks = Arrays.copyOf(blacks, capacity);
+			whites = Arrays.copyOf(whites, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+			free = Arrays.copyOf(free, capacity);
+		}
+		used++;
+		return used - 1;
+	}
+
+}
@@ -0,0 +1,86 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is the look-ahead as an Engine. It runs a Search to a
+ *         fixed depth, or for as long as it is allowed, and plays the best
+ *         move found.
+ *
+ */
+public class AlphaBetaEngine implements Engine {
+	private final Evaluator evaluator;
+	private final int depth;
+	private final long millis;
+	private final Search search;
+
+	/**
+	 * This is the constructor for a look-ahead engine.
+	 *
+	 * @param evaluator
+	 *            is the Evaluator to score positions with. The engine keeps
+	 *            it, so give each engine its own.
+	 * @param depth
+	 *            is how many moves ahead to look.
+	 * @param millis
+	 *            is how long each move may take, or 0 for no limit.
+	 */
+	public AlphaBetaEngine(Evaluator evaluator, int depth, long millis) {
+		this.evaluator = evaluator;
+		this.depth = depth;
+		this.millis = millis;
+		this.search = new Search(evaluator);
+	}
+
+	/**
+	 * This gives the look-ahead a table to remember positions in. Copies of
+	 * this engine share it.
+	 *
+	 * @param table
+	 *            is the TranspositionTable, or null to use none.
+	 */
+	public void setTable(TranspositionTable table) {
+		search.setTable(table);
+	}
+
+	/**
+	 * This runs the look-ahead and returns what it found.
+	 *
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @param playerChar
+	 *            is the player to move, 'B' or 'W'.
+	 * @return is the Search's result.
+	 */
+	@Override
+	public SearchResult chooseMove(long black, long white, char playerChar) {
+		return search.search(black, white, playerChar, depth, millis);
+	}
+
+	/**
+	 * @return is "depth:D", or "time:MS" if the engine has a time limit.
+	 */
+	@Override
+	public String getName() {
+		if (millis > 0) {
+			return "time:" + millis;
+		}
+		return "depth:" + depth;
+	}
+
+	/**
+	 * @return is a new AlphaBetaEngine with a copy of the evaluator and the
+	 *         same table.
+	 */
+	@Override
+	public AlphaBetaEngine copy() {
+		AlphaBetaEngine copy = new AlphaBetaEngine(evaluator.copy(), depth,
+				millis);
+		copy.setTable(search.getTable());
+		return copy;
+	}
+
+}
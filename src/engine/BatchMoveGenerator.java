@@ -0,0 +1,55 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is the interface for anything that finds moves and
+ *         flips for a batch of 8x8 positions at once. BatchMoves.SCALAR works
+ *         everywhere, and VectorMoves uses the Vector API when the JVM has
+ *         it. BatchMoves.best() picks the fastest one this JVM can run.
+ *
+ */
+public interface BatchMoveGenerator {
+
+	/**
+	 * This finds every legal move in a batch of positions.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move in each position.
+	 * @param opp
+	 *            is the bitboard of the other player in each position.
+	 * @param out
+	 *            is where the bitboard of legal moves for each position is
+	 *            written.
+	 * @param count
+	 *            is how many positions, from the start of the arrays, to do.
+	 */
+	void moves(long[] own, long[] opp, long[] out, int count);
+
+	/**
+	 * This finds the pieces flipped by one move in each of a batch of
+	 * positions.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move in each position.
+	 * @param opp
+	 *            is the bitboard of the other player in each position.
+	 * @param squares
+	 *            is the square played in each position.
+	 * @param out
+	 *            is where the bitboard of flipped pieces for each position is
+	 *            written. It is empty where the move isn't legal.
+	 * @param count
+	 *            is how many positions, from the start of the arrays, to do.
+	 */
+	void flips(long[] own, long[] opp, int[] squares, long[] out, int count);
+
+	/**
+	 * This returns a short name for the generator, for reports.
+	 *
+	 * @return is the generator's name.
+	 */
+	String getName();
+
+}
@@ -0,0 +1,294 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This finds moves and flips for many positions at once, for
+ *         bulk work like self-play, training data and batch analysis. It
+ *         gives the same answers as Bitboards, but takes the positions as
+ *         arrays (one array of bitboards for the players to move and one for
+ *         the other players) instead of one position at a time.
+ *
+ *         Each direction is one tight loop over every position with a fixed
+ *         shift, no branches and no calls. That is the kind of loop the JIT
+ *         compiler turns into vector instructions by itself, working on
+ *         several positions per instruction, which Bitboards can't do since
+ *         it loops over the directions of one position.
+ *
+ *         VectorMoves does the same work with the Vector API, for JVMs
+ *         started with that module. best() hands out whichever of the two
+ *         this JVM can run, and SCALAR is these loops on their own.
+ *
+ */
+public final class BatchMoves {
+	// The same directions and edge masks as Bitboards, in the same order.
+	private static final int[] SHIFTS = {-8, 8, 1, -1, 9, -9, -7, 7};
+	private static final long NOT_A_FILE = 0xFEFEFEFEFEFEFEFEL;
+	private static final long NOT_H_FILE = 0x7F7F7F7F7F7F7F7FL;
+	private static final long[] MASKS = {-1L, -1L, NOT_A_FILE, NOT_H_FILE,
+			NOT_A_FILE, NOT_H_FILE, NOT_A_FILE, NOT_H_FILE};
+
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+	private static final String VECTOR_CLASS = "engine.VectorMoves";
+
+	/**
+	 * This is the move finder that uses the loops in this class. It runs on
+	 * every JVM.
+	 */
+	public static final BatchMoveGenerator SCALAR = new BatchMoveGenerator() {
+		@Override
+		public void moves(long[] own, long[] opp, long[] out, int count) {
+			BatchMoves.moves(own, opp, out, count);
+		}
+
+		@Override
+		public void flips(long[] own, long[] opp, int[] squares, long[] out,
+				int count) {
+			BatchMoves.flips(own, opp, squares, out, count);
+		}
+
+		@Override
+		public String getName() {
+			return "batch";
+		}
+	};
+
+	/**
+	 * This class only holds static helpers.
+	 */
+	private BatchMoves() {
+
+	}
+
+	/**
+	 * This gets the vector move finder if the JVM was started with the
+	 * Vector API module. It is looked up by reflection so the rest of the
+	 * program builds and runs without that module.
+	 *
+	 * @return is a VectorMoves, or null if this JVM can't run one.
+	 */
+	public static BatchMoveGenerator vector() {
+		if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+			return null;
+		}
+		try {
+			return (BatchMoveGenerator) Class.forName(VECTOR_CLASS)
+					.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// The class was left out of the build, or can't be loaded here.
+			return null;
+		}
+	}
+
+	/**
+	 * This gets the fastest move finder this JVM can run: the vector one if
+	 * it is there and these loops if not.
+	 *
+	 * @return is a BatchMoveGenerator.
+	 */
+	public static BatchMoveGenerator best() {
+		BatchMoveGenerator vector = vector();
+		if (vector == null) {
+			return SCALAR;
+		}
+		return vector;
+	}
+
+	/**
+	 * This finds every legal move in a batch of positions.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move in each position.
+	 * @param opp
+	 *            is the bitboard of the other player in each position.
+	 * @param out
+	 *            is where the bitboard of legal moves for each position is
+	 *            written.
+	 * @param count
+	 *            is how many positions, from the start of the arrays, to do.
+	 */
+	public static void moves(long[] own, long[] opp, long[] out, int count) {
+		for (int i = 0; i < count; i++) {
+			out[i] = 0;
+		}
+		for (int direction = 0; direction < 8; direction++) {
+			int amount = SHIFTS[direction];
+			long mask = MASKS[direction];
+			if (amount > 0) {
+				movesUp(own, opp, out, count, amount, mask);
+			} else {
+				movesDown(own, opp, out, count, -amount, mask);
+			}
+		}
+	}
+
+	/**
+	 * This finds the pieces flipped by one move in each of a batch of
+	 * positions.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move in each position.
+	 * @param opp
+	 *            is the bitboard of the other player in each position.
+	 * @param squares
+	 *            is the square played in each position.
+	 * @param out
+	 *            is where the bitboard of flipped pieces for each position is
+	 *            written. It is empty where the move isn't legal.
+	 * @param count
+	 *            is how many positions, from the start of the arrays, to do.
+	 */
+	public static void flips(long[] own, long[] opp, int[] squares,
+			long[] out, int count) {
+		for (int i = 0; i < count; i++) {
+			out[i] = 0;
+		}
+		for (int direction = 0; direction < 8; direction++) {
+			int amount = SHIFTS[direction];
+			long mask = MASKS[direction];
+			if (amount > 0) {
+				flipsUp(own, opp, squares, out, count, amount, mask);
+			} else {
+				flipsDown(own, opp, squares, out, count, -amount, mask);
+			}
+		}
+	}
+
+	/**
+	 * This is a helper that adds the moves along one direction that shifts
+	 * bits up.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move in each position.
+	 * @param opp
+	 *            is the bitboard of the other player in each position.
+	 * @param out
+	 *            is the moves found so far for each position.
+	 * @param count
+	 *            is how many positions to do.
+	 * @param amount
+	 *            is how far to shift.
+	 * @param mask
+	 *            clears the squares the shift wraps into.
+	 */
+	private static void movesUp(long[] own, long[] opp, long[] out,
+			int count, int amount, long mask) {
+		for (int i = 0; i < count; i++) {
+			long o = own[i];
+			long p = opp[i];
+			// A line can hold at most six of the other player's pieces.
+			long line = (o << amount) & mask & p;
+			line |= (line << amount) & mask & p;
+			line |= (line << amount) & mask & p;
+			line |= (line << amount) & mask & p;
+			line |= (line << amount) & mask & p;
+			line |= (line << amount) & mask & p;
+			out[i] |= (line << amount) & mask & ~(o | p);
+		}
+	}
+
+	/**
+	 * This is a helper that adds the moves along one direction that shifts
+	 * bits down.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move in each position.
+	 * @param opp
+	 *            is the bitboard of the other player in each position.
+	 * @param out
+	 *            is the moves found so far for each position.
+	 * @param count
+	 *            is how many positions to do.
+	 * @param amount
+	 *            is how far to shift.
+	 * @param mask
+	 *            clears the squares the shift wraps into.
+	 */
+	private static void movesDown(long[] own, long[] opp, long[] out,
+			int count, int amount, long mask) {
+		for (int i = 0; i < count; i++) {
+			long o = own[i];
+			long p = opp[i];
+			long line = (o >>> amount) & mask & p;
+			line |= (line >>> amount) & mask & p;
+			line |= (line >>> amount) & mask & p;
+			line |= (line >>> amount) & mask & p;
+			line |= (line >>> amount) & mask & p;
+			line |= (line >>> amount) & mask & p;
+			out[i] |= (line >>> amount) & mask & ~(o | p);
+		}
+	}
+
+	/**
+	 * This is a helper that adds the flips along one direction that shifts
+	 * bits up. The run of the other player's pieces next to the placed
+	 * piece is flipped if the square after it holds one of the player's own.
+	 * That test is done with a mask instead of a branch.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move in each position.
+	 * @param opp
+	 *            is the bitboard of the other player in each position.
+	 * @param squares
+	 *            is the square played in each position.
+	 * @param out
+	 *            is the flips found so far for each position.
+	 * @param count
+	 *            is how many positions to do.
+	 * @param amount
+	 *            is how far to shift.
+	 * @param mask
+	 *            clears the squares the shift wraps into.
+	 */
+	private static void flipsUp(long[] own, long[] opp, int[] squares,
+			long[] out, int count, int amount, long mask) {
+		for (int i = 0; i < count; i++) {
+			long p = opp[i];
+			long run = ((1L << squares[i]) << amount) & mask & p;
+			run |= (run << amount) & mask & p;
+			run |= (run << amount) & mask & p;
+			run |= (run << amount) & mask & p;
+			run |= (run << amount) & mask & p;
+			run |= (run << amount) & mask & p;
+			long end = (run << amount) & mask & own[i];
+			// This is all ones if end has a bit set and zero if not.
+			out[i] |= run & ((end | -end) >> 63);
+		}
+	}
+
+	/**
+	 * This is a helper that adds the flips along one direction that shifts
+	 * bits down.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move in each position.
+	 * @param opp
+	 *            is the bitboard of the other player in each position.
+	 * @param squares
+	 *            is the square played in each position.
+	 * @param out
+	 *            is the flips found so far for each position.
+	 * @param count
+	 *            is how many positions to do.
+	 * @param amount
+	 *            is how far to shift.
+	 * @param mask
+	 *            clears the squares the shift wraps into.
+	 */
+	private static void flipsDown(long[] own, long[] opp, int[] squares,
+			long[] out, int count, int amount, long mask) {
+		for (int i = 0; i < count; i++) {
+			long p = opp[i];
+			long run = ((1L << squares[i]) >>> amount) & mask & p;
+			run |= (run >>> amount) & mask & p;
+			run |= (run >>> amount) & mask & p;
+			run |= (run >>> amount) & mask & p;
+			run |= (run >>> amount) & mask & p;
+			run |= (run >>> amount) & mask & p;
+			long end = (run >>> amount) & mask & own[i];
+			out[i] |= run & ((end | -end) >> 63);
+		}
+	}
+
+}
@@ -0,0 +1,243 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: These are the bitboard helpers the engine uses when it
+ *         needs to look at a lot of positions quickly. A bitboard is a long
+ *         with one bit for every square, where square = y * 8 + x uses the
+ *         same x and y as the model. A position is two bitboards: one for the
+ *         pieces of the player to move and one for the other player.
+ *
+ */
+public final class Bitboards {
+
+	/**
+	 * This is the square a move is placed on when the player has to pass.
+	 */
+	public static final int PASS = -1;
+
+	/**
+	 * These are the pieces each player starts with, matching the model.
+	 */
+	public static final long START_BLACK = (1L << 28) | (1L << 35);
+	public static final long START_WHITE = (1L << 27) | (1L << 36);
+
+	// These are the eight directions in the same order as the direction
+	// flags in the controller: up, down, right, left, down-right, up-left,
+	// up-right and down-left.
+	private static final int[] SHIFTS = {-8, 8, 1, -1, 9, -9, -7, 7};
+
+	// A shift that moves pieces along x wraps around the edge of the board,
+	// so these masks clear the column the wrapped pieces land in.
+	private static final long NOT_A_FILE = 0xFEFEFEFEFEFEFEFEL;
+	private static final long NOT_H_FILE = 0x7F7F7F7F7F7F7F7FL;
+	private static final long[] MASKS = {-1L, -1L, NOT_A_FILE, NOT_H_FILE,
+			NOT_A_FILE, NOT_H_FILE, NOT_A_FILE, NOT_H_FILE};
+
+	// RAYS[direction][square] is every square from square to the edge of
+	// the board in that direction, not counting square itself.
+	private static final long[][] RAYS = new long[8][64];
+
+	static {
+		for (int direction = 0; direction < 8; direction++) {
+			for (int square = 0; square < 64; square++) {
+				long next = shift(1L << square, direction);
+				while (next != 0) {
+					RAYS[direction][square] |= next;
+					next = shift(next, direction);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This class only holds static helpers.
+	 */
+	private Bitboards() {
+
+	}
+
+	/**
+	 * This moves every piece on a bitboard one square in a direction. Pieces
+	 * that would fall off the board are dropped.
+	 *
+	 * @param board
+	 *            is the bitboard to shift.
+	 * @param direction
+	 *            is a direction flag from 0 to 7.
+	 * @return is the shifted bitboard.
+	 */
+	public static long shift(long board, int direction) {
+		int amount = SHIFTS[direction];
+		if (amount > 0) {
+			return (board << amount) & MASKS[direction];
+		}
+		return (board >>> -amount) & MASKS[direction];
+	}
+
+	/**
+	 * This finds every square the player to move could place a piece on.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @return is a bitboard with a bit set for every legal move.
+	 */
+	public static long moves(long own, long opp) {
+		long empty = ~(own | opp);
+		long moves = 0;
+
+		for (int direction = 0; direction < 8; direction++) {
+			// A line can hold at most six of the other player's pieces.
+			long line = shift(own, direction) & opp;
+			line |= shift(line, direction) & opp;
+			line |= shift(line, direction) & opp;
+			line |= shift(line, direction) & opp;
+			line |= shift(line, direction) & opp;
+			line |= shift(line, direction) & opp;
+			moves |= shift(line, direction) & empty;
+		}
+		return moves;
+	}
+
+	/**
+	 * This finds every piece that would be flipped by a move.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @param square
+	 *            is the square the piece is placed on.
+	 * @return is a bitboard of the flipped pieces. It is empty if the move is
+	 *         not legal.
+	 */
+	public static long flips(long own, long opp, int square) {
+		long flips = 0;
+		for (int direction = 0; direction < 8; direction++) {
+			// The first square along the ray that isn't the other player's
+			// ends the run; if it is the player's own the run is flipped.
+			long ray = RAYS[direction][square];
+			long blockers = ray & ~opp;
+			if (SHIFTS[direction] > 0) {
+				long first = blockers & -blockers;
+				if ((first & own) != 0) {
+					flips |= ray & (first - 1);
+				}
+			} else {
+				long first = Long.highestOneBit(blockers);
+				if ((first & own) != 0) {
+					flips |= ray & ~((first << 1) - 1);
+				}
+			}
+		}
+		return flips;
+	}
+
+	/**
+	 * This builds a bitboard from the model's char[][] board.
+	 *
+	 * @param board
+	 *            is the char[][] representation of an 8x8 board.
+	 * @param piece
+	 *            is the char of the pieces to collect.
+	 * @return is a bitboard with a bit set for every square holding piece.
+	 */
+	public static long fromBoard(char[][] board, char piece) {
+		long bits = 0;
+		for (int y = 0; y < 8; y++) {
+			for (int x = 0; x < 8; x++) {
+				if (board[y][x] == piece) {
+					bits |= 1L << (y * 8 + x);
+				}
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * This builds the model's char[][] board from bitboards.
+	 *
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @return is the char[][] representation of the board, indexed
+	 *         board[y][x].
+	 */
+	public static char[][] toBoard(long black, long white) {
+		char[][] board = new char[8][8];
+		for (int y = 0; y < 8; y++) {
+			for (int x = 0; x < 8; x++) {
+				long bit = 1L << (y * 8 + x);
+				if ((black & bit) != 0) {
+					board[y][x] = 'B';
+				} else if ((white & bit) != 0) {
+					board[y][x] = 'W';
+				} else {
+					board[y][x] = '_';
+				}
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * This turns a square into the letter and number the player types, like
+	 * "d3".
+	 *
+	 * @param square
+	 *            is a square from 0 to 63, or PASS.
+	 * @return is the name of the square, or "pass".
+	 */
+	public static String name(int square) {
+		if (square == PASS) {
+			return "pass";
+		}
+		return "" + (char) ('a' + (square & 7)) + ((square >> 3) + 1);
+	}
+
+	/**
+	 * This reads a game transcript into a list of squares. Moves are written
+	 * the way the player types them, either run together ("d3c5f6") or with
+	 * spaces between them. Passes are left out of transcripts because they
+	 * are never a choice.
+	 *
+	 * @param transcript
+	 *            is the text of the game.
+	 * @return is an int[] of squares, or null if the text is not a
+	 *         transcript.
+	 */
+	public static int[] parseMoves(String transcript) {
+		int[] moves = new int[transcript.length() / 2];
+		int count = 0;
+		int i = 0;
+
+		while (i < transcript.length()) {
+			char colChar = Character.toLowerCase(transcript.charAt(i));
+			if (Character.isWhitespace(colChar)) {
+				i++;
+				continue;
+			}
+			if ((i + 1 >= transcript.length()) || (colChar < 'a')
+					|| (colChar > 'h')) {
+				return null;
+			}
+			int row = transcript.charAt(i + 1) - '1';
+			if ((row < 0) || (row > 7)) {
+				return null;
+			}
+			moves[count] = row * 8 + (colChar - 'a');
+			count++;
+			i += 2;
+		}
+
+		int[] result = new int[count];
+		System.arraycopy(moves, 0, result, 0, count);
+		return result;
+	}
+
+}
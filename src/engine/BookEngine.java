@@ -0,0 +1,136 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This plays from an OpeningBook. Every legal move is looked
+ *         up by the position it leads to, and the move that did best for the
+ *         player making it is played. Once no move is in the book it asks
+ *         another engine instead.
+ *
+ *         Moves are ranked by the lowest score they are likely to have, not
+ *         the score they had, so a move won once in one game doesn't beat a
+ *         move that won nine games in ten.
+ *
+ */
+public class BookEngine implements Engine {
+	// The normal distribution's 95% point, for the lower bound of a score.
+	private static final double Z = 1.96;
+
+	private final OpeningBook book;
+	private final Engine fallback;
+
+	/**
+	 * This is the constructor for a book engine.
+	 *
+	 * @param book
+	 *            is the OpeningBook to play from. Copies of this engine share
+	 *            it.
+	 * @param fallback
+	 *            is the Engine to ask once the game leaves the book.
+	 */
+	public BookEngine(OpeningBook book, Engine fallback) {
+		this.book = book;
+		this.fallback = fallback;
+	}
+
+	/**
+	 * This plays the book move with the best lower bound on its score, or
+	 * asks the fallback engine if there is none.
+	 *
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @param playerChar
+	 *            is the player to move, 'B' or 'W'.
+	 * @return is a SearchResult whose score is the move's winning chance in
+	 *         percent and whose nodes are the number of moves looked up, or
+	 *         the fallback engine's result.
+	 */
+	@Override
+	public SearchResult chooseMove(long black, long white, char playerChar) {
+		long started = System.nanoTime();
+		long own = (playerChar == 'B') ? black : white;
+		long opp = (playerChar == 'B') ? white : black;
+		char otherChar = (playerChar == 'B') ? 'W' : 'B';
+
+		long legal = Bitboards.moves(own, opp);
+		int best = Bitboards.PASS;
+		double bestBound = -1;
+		double bestScore = 0;
+		int bestGames = 0;
+		for (long bits = legal; bits != 0; bits &= bits - 1) {
+			int square = Long.numberOfTrailingZeros(bits);
+			long flips = Bitboards.flips(own, opp, square);
+			long newOwn = own | flips | (1L << square);
+			long newOpp = opp & ~flips;
+			long key = (playerChar == 'B')
+					? OpeningBook.key(newOwn, newOpp, otherChar)
+					: OpeningBook.key(newOpp, newOwn, otherChar);
+
+			int index = book.find(key);
+			if (index < 0) {
+				continue;
+			}
+			// The book scores the position for the other player, who moves
+			// next, so this player's share is what is left.
+			int games = book.getGames(index);
+			double score = (2.0 * games - book.getPoints(index))
+					/ (2.0 * games);
+			double bound = lowerBound(score, games);
+			if ((bound > bestBound)
+					|| ((bound == bestBound) && (games > bestGames))) {
+				best = square;
+				bestBound = bound;
+				bestScore = score;
+				bestGames = games;
+			}
+		}
+
+		if (best == Bitboards.PASS) {
+			return fallback.chooseMove(black, white, playerChar);
+		}
+		return new SearchResult(best, (int) Math.round(100 * bestScore), 0,
+				Long.bitCount(legal),
+				(System.nanoTime() - started) / 1000000);
+	}
+
+	/**
+	 * This is a helper that works out the Wilson lower bound of a score: the
+	 * lowest it is likely to be, given how many games it comes from. Draws
+	 * are counted as half a win, which makes the bound a little cautious.
+	 *
+	 * @param score
+	 *            is the share of the points won, from 0 to 1.
+	 * @param games
+	 *            is how many games the score comes from.
+	 * @return is the lower bound, from 0 to 1.
+	 */
+	private static double lowerBound(double score, int games) {
+		double spread = Z * Z / games;
+		return (score + spread / 2
+				- Z * Math.sqrt(score * (1 - score) / games
+						+ spread / (4 * games)))
+				/ (1 + spread);
+	}
+
+	/**
+	 * @return is "book:FILE".
+	 */
+	@Override
+	public String getName() {
+		return "book:" + book.getFile();
+	}
+
+	/**
+	 * @return is a new BookEngine sharing the book, with a copy of the
+	 *         fallback engine.
+	 */
+	@Override
+	public BookEngine copy() {
+		return new BookEngine(book, fallback.copy());
+	}
+
+}
@@ -0,0 +1,108 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This sits in front of another evaluator and only asks it
+ *         for a score when the position is not already in an EvalCache. It
+ *         keeps the hash of the board up to date from the same square updates
+ *         it passes on, so looking up a position costs nothing extra.
+ *
+ *         The cache can be shared between threads but a CachingEvaluator
+ *         can't, because it and the evaluator behind it track one board.
+ *
+ */
+public class CachingEvaluator implements Evaluator {
+	private final Evaluator evaluator;
+	private final EvalCache cache;
+	private long hash;
+
+	/**
+	 * This is the constructor for a caching evaluator.
+	 *
+	 * @param evaluator
+	 *            is the evaluator that scores positions missing from the
+	 *            cache.
+	 * @param cache
+	 *            is the cache scores are kept in.
+	 */
+	public CachingEvaluator(Evaluator evaluator, EvalCache cache) {
+		this.evaluator = evaluator;
+		this.cache = cache;
+	}
+
+	/**
+	 * This rehashes the board and resets the evaluator behind the cache.
+	 *
+	 * @param board
+	 *            is the char[][] representation of the board.
+	 */
+	@Override
+	public void reset(char[][] board) {
+		hash = Zobrist.hash(board);
+		evaluator.reset(board);
+	}
+
+	/**
+	 * This updates the hash for a changed square and passes the change on.
+	 *
+	 * @param x
+	 *            is the x position of the square.
+	 * @param y
+	 *            is the y position of the square.
+	 * @param oldPiece
+	 *            is the char that was on the square.
+	 * @param newPiece
+	 *            is the char that is on the square now.
+	 */
+	@Override
+	public void update(int x, int y, char oldPiece, char newPiece) {
+		hash ^= Zobrist.piece(x, y, oldPiece) ^ Zobrist.piece(x, y, newPiece);
+		evaluator.update(x, y, oldPiece, newPiece);
+	}
+
+	/**
+	 * This returns the cached score if there is one and otherwise scores the
+	 * position and caches the result.
+	 *
+	 * @param playerChar
+	 *            is the player the score is for.
+	 * @return is the score for playerChar.
+	 */
+	@Override
+	public int evaluate(char playerChar) {
+		long key = hash;
+		if (playerChar == 'W') {
+			key ^= Zobrist.WHITE_TO_MOVE;
+		}
+
+		int score = cache.get(key);
+		if (score == EvalCache.MISS) {
+			score = evaluator.evaluate(playerChar);
+			cache.put(key, score);
+		}
+		return score;
+	}
+
+	/**
+	 * This makes a new caching evaluator around a copy of the evaluator
+	 * behind this one that shares the same cache.
+	 *
+	 * @return is the new CachingEvaluator.
+	 */
+	@Override
+	public CachingEvaluator copy() {
+		return new CachingEvaluator(evaluator.copy(), cache);
+	}
+
+	/**
+	 * @return is the fingerprint of the evaluator behind this one, since the
+	 *         cache doesn't change any scores.
+	 */
+	@Override
+	public long fingerprint() {
+		return evaluator.fingerprint();
+	}
+
+}
@@ -0,0 +1,100 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This scores a position by how many more pieces the player
+ *         has than the other player. It is what the computer has always done
+ *         when it picks the move that flips the most pieces, so it is the
+ *         evaluator the search uses when it isn't given a better one.
+ *
+ */
+public class DiscCountEvaluator implements Evaluator {
+	// "DISC" in ASCII, since every DiscCountEvaluator scores the same way.
+	private static final long FINGERPRINT = 0x44495343L;
+
+	// Black pieces minus white pieces.
+	private int difference;
+
+	/**
+	 * This counts the pieces on the board.
+	 *
+	 * @param board
+	 *            is the char[][] representation of the board.
+	 */
+	@Override
+	public void reset(char[][] board) {
+		difference = 0;
+		for (char[] row : board) {
+			for (char piece : row) {
+				difference += value(piece);
+			}
+		}
+	}
+
+	/**
+	 * This updates the count for one changed square.
+	 *
+	 * @param x
+	 *            is the x position of the square.
+	 * @param y
+	 *            is the y position of the square.
+	 * @param oldPiece
+	 *            is the char that was on the square.
+	 * @param newPiece
+	 *            is the char that is on the square now.
+	 */
+	@Override
+	public void update(int x, int y, char oldPiece, char newPiece) {
+		difference += value(newPiece) - value(oldPiece);
+	}
+
+	/**
+	 * This returns how many pieces playerChar is ahead by.
+	 *
+	 * @param playerChar
+	 *            is the player the score is for.
+	 * @return is the player's pieces minus the other player's pieces.
+	 */
+	@Override
+	public int evaluate(char playerChar) {
+		if (playerChar == 'B') {
+			return difference;
+		}
+		return -difference;
+	}
+
+	/**
+	 * @return is a new DiscCountEvaluator for an empty board.
+	 */
+	@Override
+	public DiscCountEvaluator copy() {
+		return new DiscCountEvaluator();
+	}
+
+	/**
+	 * @return is the same number for every DiscCountEvaluator.
+	 */
+	@Override
+	public long fingerprint() {
+		return FINGERPRINT;
+	}
+
+	/**
+	 * This is a helper that says how a piece counts towards the difference.
+	 *
+	 * @param piece
+	 *            is 'B', 'W' or '_'.
+	 * @return is 1 for black, -1 for white and 0 for an empty square.
+	 */
+	private static int value(char piece) {
+		if (piece == 'B') {
+			return 1;
+		} else if (piece == 'W') {
+			return -1;
+		}
+		return 0;
+	}
+
+}
@@ -0,0 +1,282 @@
+package engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is a transposition table for solves too big for the
+ *         table to fit in memory. The in-memory table is the hot tier as
+ *         usual, and entries it pushes out go to a much bigger cold tier in a
+ *         file instead of being thrown away. A position that isn't in memory
+ *         is looked for in the file and brought back into memory if found.
+ *
+ *         The file is memory-mapped and split into one slot per hash, so a
+ *         look-up is one read with no seeking. Writes are the slow part, so
+ *         pushed-out entries wait in a batch; when the batch is full it is
+ *         sorted by slot and written in one pass through the file. Entries
+ *         still waiting in the batch aren't found by look-ups, which only
+ *         costs a search that could have been saved.
+ *
+ *         flush() writes everything, in memory too, to the file, so a long
+ *         solve can be stopped and picked up later by opening the same file.
+ *         Scores from the search depend on the evaluator, so a file should
+ *         only be picked up again with the same weights.
+ *
+ */
+public class DiskTranspositionTable extends TranspositionTable
+		implements
+			Closeable {
+	// "RVTT" at the start of the file.
+	private static final int MAGIC = 0x52565454;
+	private static final int VERSION = 1;
+	private static final int HEADER = 64;
+
+	// Each slot is the key XORed with the entry, then the entry.
+	private static final int SLOT = 16;
+
+	// A mapped buffer can't be bigger than 2GB, so the file is mapped in
+	// pieces. A slot never crosses from one piece to the next.
+	private static final long SEGMENT = 1L << 30;
+
+	// How many pushed-out entries are collected before they are written.
+	private static final int BATCH = 4096;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer[] segments;
+	private final long coldMask;
+
+	private final long[] pendingHashes = new long[BATCH];
+	private final long[] pendingEntries = new long[BATCH];
+	private final long[] order = new long[BATCH];
+	private int pending;
+
+	private final LongAdder coldHits = new LongAdder();
+	private final LongAdder written = new LongAdder();
+
+	/**
+	 * This is the constructor for a table backed by a file. If the file
+	 * already holds a table it is picked up where it was left, keeping its
+	 * own size.
+	 *
+	 * @param hotBytes
+	 *            is the most memory the in-memory table may use.
+	 * @param file
+	 *            is the file the cold tier is kept in.
+	 * @param coldBytes
+	 *            is how big to make the file if it is new. The number of slots
+	 *            is rounded down to a power of two.
+	 * @throws IOException
+	 *             This is thrown if the file can't be opened or holds
+	 *             something other than a table.
+	 */
+	public DiskTranspositionTable(long hotBytes, Path file, long coldBytes)
+			throws IOException {
+		super(hotBytes);
+		this.channel = FileChannel.open(file, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+		long slots;
+		try {
+			if (channel.size() == 0) {
+				slots = Long.highestOneBit(Math.max(1, coldBytes / SLOT));
+				ByteBuffer header = ByteBuffer.allocate(HEADER);
+				header.putInt(MAGIC).putInt(VERSION).putLong(slots);
+				header.rewind();
+				channel.write(header, 0);
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(HEADER);
+				channel.read(header, 0);
+				header.flip();
+				if ((header.remaining() < 16) || (header.getInt() != MAGIC)) {
+					throw new IOException(file + " is not a table file.");
+				}
+				if (header.getInt() != VERSION) {
+					throw new IOException(file + " is from another version.");
+				}
+				slots = header.getLong();
+				if ((slots <= 0) || (Long.bitCount(slots) != 1)
+						|| (channel.size() < HEADER + slots * SLOT)) {
+					throw new IOException(file + " is damaged.");
+				}
+			}
+
+			long bytes = slots * SLOT;
+			this.segments = new MappedByteBuffer[(int) ((bytes + SEGMENT - 1)
+					/ SEGMENT)];
+			for (int i = 0; i < segments.length; i++) {
+				long start = i * SEGMENT;
+				segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+						HEADER + start, Math.min(SEGMENT, bytes - start));
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		this.coldMask = slots - 1;
+	}
+
+	/**
+	 * This writes every entry, in memory or waiting in a batch, to the file
+	 * and waits for the file to reach the disk.
+	 *
+	 * @throws IOException
+	 *             This is thrown if the file can't be written.
+	 */
+	public synchronized void flush() throws IOException {
+		writeBatch();
+
+		long[] slot = new long[2];
+		for (int i = 0; i < getCapacity(); i++) {
+			slot(i, slot);
+			if (slot[1] != NONE) {
+				writeCold(slot[0], slot[1]);
+			}
+		}
+		for (MappedByteBuffer segment : segments) {
+			segment.force();
+		}
+		channel.force(true);
+	}
+
+	/**
+	 * This flushes the table and closes the file. The table can't be used
+	 * after this.
+	 *
+	 * @throws IOException
+	 *             This is thrown if the file can't be written.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * This empties the table, in memory and in the file.
+	 */
+	@Override
+	public synchronized void clear() {
+		super.clear();
+		pending = 0;
+		for (MappedByteBuffer segment : segments) {
+			for (int i = 0; i < segment.capacity(); i += 8) {
+				segment.putLong(i, 0);
+			}
+		}
+	}
+
+	/**
+	 * @return is the number of entries the file can hold.
+	 */
+	public long getColdCapacity() {
+		return coldMask + 1;
+	}
+
+	/**
+	 * This returns a summary of how the file has been used.
+	 *
+	 * @return is a String with the file's size, hits and writes.
+	 */
+	@Override
+	public String toString() {
+		return "DiskTranspositionTable: " + getColdCapacity() + " slots, "
+				+ coldHits.sum() + " hits, " + written.sum() + " writes";
+	}
+
+	/**
+	 * This keeps an entry pushed out of memory so it can be written to the
+	 * file with the rest of its batch.
+	 *
+	 * @param hash
+	 *            is the evicted position's hash.
+	 * @param entry
+	 *            is the evicted packed entry.
+	 */
+	@Override
+	protected synchronized void evicted(long hash, long entry) {
+		pendingHashes[pending] = hash;
+		pendingEntries[pending] = entry;
+		pending++;
+		if (pending == BATCH) {
+			writeBatch();
+		}
+	}
+
+	/**
+	 * This looks for a position in the file.
+	 *
+	 * @param hash
+	 *            is the position's hash.
+	 * @return is the packed entry, or NONE if it isn't in the file.
+	 */
+	@Override
+	protected long missed(long hash) {
+		long offset = (hash & coldMask) * SLOT;
+		MappedByteBuffer segment = segments[(int) (offset / SEGMENT)];
+		int position = (int) (offset % SEGMENT);
+
+		long entry = segment.getLong(position + 8);
+		if ((entry != NONE) && ((segment.getLong(position) ^ entry) == hash)) {
+			coldHits.increment();
+			return entry;
+		}
+		return NONE;
+	}
+
+	/**
+	 * This is a helper that writes the waiting batch to the file in slot
+	 * order, so the writes go through the file from front to back.
+	 */
+	private void writeBatch() {
+		// Each entry's slot and its place in the batch share one long, so a
+		// plain sort puts them in slot order.
+		for (int i = 0; i < pending; i++) {
+			order[i] = ((pendingHashes[i] & coldMask) << 12) | i;
+		}
+		Arrays.sort(order, 0, pending);
+
+		for (int i = 0; i < pending; i++) {
+			int index = (int) (order[i] & (BATCH - 1));
+			writeCold(pendingHashes[index], pendingEntries[index]);
+		}
+		pending = 0;
+	}
+
+	/**
+	 * This is a helper that writes one entry to its slot in the file. A
+	 * deeper entry for another position already in the slot is kept.
+	 *
+	 * @param hash
+	 *            is the position's hash.
+	 * @param entry
+	 *            is the packed entry.
+	 */
+	private void writeCold(long hash, long entry) {
+		long offset = (hash & coldMask) * SLOT;
+		MappedByteBuffer segment = segments[(int) (offset / SEGMENT)];
+		int position = (int) (offset % SEGMENT);
+
+		long old = segment.getLong(position + 8);
+		if ((old != NONE) && ((segment.getLong(position) ^ old) != hash)
+				&& (depth(old) > depth(entry))) {
+			return;
+		}
+		segment.putLong(position, hash ^ entry);
+		segment.putLong(position + 8, entry);
+		written.increment();
+	}
+
+}
@@ -0,0 +1,51 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is the interface for anything that can play the
+ *         computer's side of a game. The controller, the tools and anything
+ *         else that needs a move ask an Engine for one, so a different kind
+ *         of player can be swapped in without changing them. Engines are made
+ *         from a short text spec by Engines.create().
+ *
+ *         An Engine belongs to one thread, like a Search. Use copy() to get
+ *         one for each thread.
+ *
+ */
+public interface Engine {
+
+	/**
+	 * This picks a move for a player on an 8x8 board.
+	 *
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @param playerChar
+	 *            is the player to move, 'B' or 'W'.
+	 * @return is a SearchResult for the chosen move, with as much as the
+	 *         engine knows about its score, depth and nodes. The move is
+	 *         Bitboards.PASS if the player has no move.
+	 */
+	SearchResult chooseMove(long black, long white, char playerChar);
+
+	/**
+	 * This returns the spec the engine can be made from again with
+	 * Engines.create(), for reports.
+	 *
+	 * @return is the engine's name.
+	 */
+	String getName();
+
+	/**
+	 * This makes a new engine that plays the same way but can be used on
+	 * another thread. Anything that never changes, like weights or a book,
+	 * is shared.
+	 *
+	 * @return is the new Engine.
+	 */
+	Engine copy();
+
+}
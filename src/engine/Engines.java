@@ -0,0 +1,160 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This makes engines from short text specs, so which engine
+ *         plays can be chosen on the command line or in a config file. A spec
+ *         is a name, then a colon and the engine's settings if it has any:
+ *
+ *         greedy takes the move that flips the most pieces.
+ *
+ *         depth:D[:FILE] and time:MS[:FILE] look ahead D moves or for MS
+ *         milliseconds a move, scoring positions with the weights in FILE or
+ *         by counting pieces.
+ *
+ *         mcts:N and mcts-time:MS run a tree search of N random games or MS
+ *         milliseconds a move.
+ *
+ *         book:FILE plays from the opening book in FILE, and looks four moves
+ *         ahead once the game leaves the book.
+ *
+ *         Other engines can be added with register().
+ *
+ */
+public final class Engines {
+
+	/**
+	 * This makes an engine from the settings in a spec, the part after the
+	 * first colon.
+	 */
+	public interface Factory {
+
+		/**
+		 * @param settings
+		 *            is the rest of the spec, or "" if there is none.
+		 * @return is the new Engine.
+		 * @throws IOException
+		 *             This is thrown if a file the engine needs can't be
+		 *             read.
+		 */
+		Engine create(String settings) throws IOException;
+	}
+
+	// How far the book engine looks ahead once it is out of the book.
+	private static final int BOOK_FALLBACK_DEPTH = 4;
+
+	private static final LinkedHashMap<String, Factory> FACTORIES;
+	private static final ArrayList<String> BENCHMARKS;
+
+	static {
+		FACTORIES = new LinkedHashMap<String, Factory>();
+		BENCHMARKS = new ArrayList<String>();
+		register("greedy", settings -> new GreedyEngine(), "greedy");
+		register("depth", settings -> lookAhead(settings, true), "depth:6");
+		register("time", settings -> lookAhead(settings, false), "time:100");
+		register("mcts", settings -> new MctsEngine(
+				Integer.parseInt(settings), 0, 1), "mcts:5000");
+		register("mcts-time", settings -> new MctsEngine(0,
+				Long.parseLong(settings), 1), null);
+		register("book", settings -> new BookEngine(
+				OpeningBook.open(Paths.get(settings)),
+				new AlphaBetaEngine(new DiscCountEvaluator(),
+						BOOK_FALLBACK_DEPTH, 0)),
+				null);
+	}
+
+	/**
+	 * This class only holds static helpers.
+	 */
+	private Engines() {
+
+	}
+
+	/**
+	 * This adds a kind of engine that specs can name.
+	 *
+	 * @param name
+	 *            is the name specs start with.
+	 * @param factory
+	 *            makes engines of this kind.
+	 * @param benchmark
+	 *            is a spec for this kind of engine that the engine benchmark
+	 *            runs by default, or null to leave it out.
+	 */
+	public static synchronized void register(String name, Factory factory,
+			String benchmark) {
+		FACTORIES.put(name, factory);
+		if (benchmark != null) {
+			BENCHMARKS.add(benchmark);
+		}
+	}
+
+	/**
+	 * This makes an engine from a spec.
+	 *
+	 * @param spec
+	 *            is the spec, as listed at the top of the class.
+	 * @return is the new Engine.
+	 * @throws IOException
+	 *             This is thrown if a file named in the spec can't be read.
+	 */
+	public static Engine create(String spec) throws IOException {
+		String[] parts = spec.split(":", 2);
+		Factory factory;
+		synchronized (Engines.class) {
+			factory = FACTORIES.get(parts[0]);
+		}
+		if (factory == null) {
+			throw new IllegalArgumentException("Unknown engine " + spec);
+		}
+		try {
+			return factory.create((parts.length == 2) ? parts[1] : "");
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Bad settings in " + spec);
+		}
+	}
+
+	/**
+	 * This returns the specs the engine benchmark runs by default, one for
+	 * each kind of engine that doesn't need a file.
+	 *
+	 * @return is a new list of specs.
+	 */
+	public static synchronized ArrayList<String> getBenchmarks() {
+		return new ArrayList<String>(BENCHMARKS);
+	}
+
+	/**
+	 * This is a helper that makes a look-ahead engine from "N[:FILE]".
+	 *
+	 * @param settings
+	 *            is the depth or time, then optionally a weight file.
+	 * @param byDepth
+	 *            is true if the number is a depth and false if it is a time.
+	 * @return is the new AlphaBetaEngine.
+	 * @throws IOException
+	 *             This is thrown if the weight file can't be read.
+	 */
+	private static Engine lookAhead(String settings, boolean byDepth)
+			throws IOException {
+		String[] parts = settings.split(":", 2);
+		Evaluator evaluator = new DiscCountEvaluator();
+		if (parts.length == 2) {
+			evaluator = NeuralEvaluator.load(Paths.get(parts[1]));
+		}
+		if (byDepth) {
+			return new AlphaBetaEngine(evaluator, Integer.parseInt(parts[0]),
+					0);
+		}
+		// A time limit on its own means look as far ahead as time allows.
+		return new AlphaBetaEngine(evaluator, 64, Long.parseLong(parts[0]));
+	}
+
+}
@@ -0,0 +1,212 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is a fixed size cache of evaluations keyed by position
+ *         hash. It never grows past the memory it is given, so it can be left
+ *         running for a whole session and shared by every search thread.
+ *
+ *         The cache is split into small sets of WAYS entries and a hash can
+ *         only live in one set. When a set is full the entry to throw out is
+ *         picked with the CLOCK (second chance) rule: a hand goes around the
+ *         set, clearing the referenced flag of any entry that has been used
+ *         since the hand last passed it, and evicts the first entry whose flag
+ *         is already clear. Sets are guarded by a fixed pool of locks so
+ *         threads only wait on each other when they land on the same stripe.
+ *
+ */
+public class EvalCache {
+
+	/**
+	 * This is what get() returns when a hash is not in the cache.
+	 */
+	public static final int MISS = Integer.MIN_VALUE;
+
+	private static final int WAYS = 4;
+	private static final int LOCKS = 256;
+
+	// Each entry is a long key, an int value and a byte referenced flag, and
+	// each set has a byte for its clock hand.
+	private static final int BYTES_PER_SET = WAYS * (8 + 4 + 1) + 1;
+
+	private final int setMask;
+	private final long[] keys;
+	private final int[] values;
+	private final byte[] referenced;
+	private final byte[] hands;
+	private final Object[] locks;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder evictions;
+
+	/**
+	 * This is the constructor for an empty cache.
+	 *
+	 * @param maxBytes
+	 *            is the most memory the cache's tables may use. The number of
+	 *            sets is rounded down to a power of two so it may use less.
+	 */
+	public EvalCache(long maxBytes) {
+		long sets = Long.highestOneBit(Math.max(1, maxBytes / BYTES_PER_SET));
+		sets = Math.min(sets, 1L << 28);
+
+		this.setMask = (int) sets - 1;
+		this.keys = new long[(int) sets * WAYS];
+		this.values = new int[(int) sets * WAYS];
+		this.referenced = new byte[(int) sets * WAYS];
+		this.hands = new byte[(int) sets];
+		this.locks = new Object[LOCKS];
+		for (int i = 0; i < LOCKS; i++) {
+			locks[i] = new Object();
+		}
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.evictions = new LongAdder();
+	}
+
+	/**
+	 * This looks up the evaluation stored for a hash.
+	 *
+	 * @param hash
+	 *            is the hash of the position and player.
+	 * @return is the stored evaluation, or MISS if there isn't one.
+	 */
+	public int get(long hash) {
+		long key = keyOf(hash);
+		int set = (int) key & setMask;
+		int base = set * WAYS;
+
+		synchronized (locks[set & (LOCKS - 1)]) {
+			for (int i = base; i < base + WAYS; i++) {
+				if (keys[i] == key) {
+					referenced[i] = 1;
+					hits.increment();
+					return values[i];
+				}
+			}
+		}
+		misses.increment();
+		return MISS;
+	}
+
+	/**
+	 * This stores an evaluation, evicting an older one if the set is full.
+	 *
+	 * @param hash
+	 *            is the hash of the position and player.
+	 * @param value
+	 *            is the evaluation.
+	 */
+	public void put(long hash, int value) {
+		long key = keyOf(hash);
+		int set = (int) key & setMask;
+		int base = set * WAYS;
+
+		synchronized (locks[set & (LOCKS - 1)]) {
+			for (int i = base; i < base + WAYS; i++) {
+				if ((keys[i] == key) || (keys[i] == 0)) {
+					keys[i] = key;
+					values[i] = value;
+					referenced[i] = 1;
+					return;
+				}
+			}
+
+			// The set is full, so give every recently used entry a second
+			// chance until one that hasn't been used turns up.
+			int hand = hands[set];
+			while (referenced[base + hand] != 0) {
+				referenced[base + hand] = 0;
+				hand = (hand + 1) % WAYS;
+			}
+			keys[base + hand] = key;
+			values[base + hand] = value;
+			referenced[base + hand] = 1;
+			hands[set] = (byte) ((hand + 1) % WAYS);
+		}
+		evictions.increment();
+	}
+
+	/**
+	 * This empties the cache. The counters are left alone.
+	 */
+	public void clear() {
+		for (int stripe = 0; stripe < LOCKS; stripe++) {
+			synchronized (locks[stripe]) {
+				for (int set = stripe; set <= setMask; set += LOCKS) {
+					Arrays.fill(keys, set * WAYS, (set + 1) * WAYS, 0);
+					Arrays.fill(referenced, set * WAYS, (set + 1) * WAYS,
+							(byte) 0);
+					hands[set] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return is the number of lookups that found an evaluation.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return is the number of lookups that found nothing.
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return is the number of evaluations thrown out to make room.
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return is the number of evaluations the cache can hold.
+	 */
+	public int getCapacity() {
+		return keys.length;
+	}
+
+	/**
+	 * This describes the cache counters for logging.
+	 *
+	 * @return is a one line summary of the counters.
+	 */
+	@Override
+	public String toString() {
+		long hitCount = getHits();
+		long lookups = hitCount + getMisses();
+		return String.format(
+				"eval cache: %d hits, %d misses (%.1f%% hit rate), "
+						+ "%d evictions, %d entries",
+				hitCount, lookups - hitCount,
+				lookups == 0 ? 0.0 : 100.0 * hitCount / lookups,
+				getEvictions(), getCapacity());
+	}
+
+	/**
+	 * This is a helper that keeps keys away from 0, which marks an empty
+	 * entry.
+	 *
+	 * @param hash
+	 *            is the hash being looked up or stored.
+	 * @return is the key stored in the tables.
+	 */
+	private static long keyOf(long hash) {
+		if (hash == 0) {
+			return 1;
+		}
+		return hash;
+	}
+
+}
@@ -0,0 +1,70 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is the interface for anything that can put a number on
+ *         a board position for the computer. The controller tells the
+ *         evaluator about every square that changes so that evaluators which
+ *         keep running totals never have to look at the whole board again.
+ *
+ */
+public interface Evaluator {
+
+	/**
+	 * This throws away whatever the evaluator has worked out so far and
+	 * rebuilds it from the board as it currently stands.
+	 *
+	 * @param board
+	 *            is the char[][] representation of the board, indexed
+	 *            board[y][x] the same way as the model.
+	 */
+	void reset(char[][] board);
+
+	/**
+	 * This tells the evaluator that a single square has changed. Placing a
+	 * piece is a change from '_' and flipping is a change from the other
+	 * player's char, so undoing a change is the same call with the two chars
+	 * swapped.
+	 *
+	 * @param x
+	 *            is the x position of the square.
+	 * @param y
+	 *            is the y position of the square.
+	 * @param oldPiece
+	 *            is the char that was on the square.
+	 * @param newPiece
+	 *            is the char that is on the square now.
+	 */
+	void update(int x, int y, char oldPiece, char newPiece);
+
+	/**
+	 * This scores the current position.
+	 *
+	 * @param playerChar
+	 *            is the player the score is for.
+	 * @return is an int where bigger numbers are better for playerChar.
+	 */
+	int evaluate(char playerChar);
+
+	/**
+	 * This makes a new evaluator that scores positions the same way but
+	 * tracks its own board, so each search thread can have one. Anything
+	 * that never changes, like weights or a cache, is shared.
+	 *
+	 * @return is the new Evaluator, reset to an empty board.
+	 */
+	Evaluator copy();
+
+	/**
+	 * This returns a number that only depends on how the evaluator scores
+	 * positions. Saved search results hold scores from one evaluator, so
+	 * they are checked against this before they are used with another.
+	 *
+	 * @return is the same number for evaluators that score positions the
+	 *         same way, and almost certainly a different one otherwise.
+	 */
+	long fingerprint();
+
+}
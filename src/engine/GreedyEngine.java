@@ -0,0 +1,63 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is the computer's original way of playing as an
+ *         Engine: take the move that flips the most pieces, the first one on
+ *         a tie. It is about as fast as a player can be.
+ *
+ */
+public class GreedyEngine implements Engine {
+
+	/**
+	 * This picks the move that flips the most pieces.
+	 *
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @param playerChar
+	 *            is the player to move, 'B' or 'W'.
+	 * @return is a SearchResult whose score is the number of pieces flipped
+	 *         and whose nodes are the number of moves looked at.
+	 */
+	@Override
+	public SearchResult chooseMove(long black, long white, char playerChar) {
+		long started = System.nanoTime();
+		long own = (playerChar == 'B') ? black : white;
+		long opp = (playerChar == 'B') ? white : black;
+
+		long legal = Bitboards.moves(own, opp);
+		int best = Bitboards.PASS;
+		int bestFlips = 0;
+		for (long bits = legal; bits != 0; bits &= bits - 1) {
+			int square = Long.numberOfTrailingZeros(bits);
+			int flips = Long.bitCount(Bitboards.flips(own, opp, square));
+			if (flips > bestFlips) {
+				best = square;
+				bestFlips = flips;
+			}
+		}
+		return new SearchResult(best, bestFlips, 1, Long.bitCount(legal),
+				(System.nanoTime() - started) / 1000000);
+	}
+
+	/**
+	 * @return is "greedy".
+	 */
+	@Override
+	public String getName() {
+		return "greedy";
+	}
+
+	/**
+	 * @return is this engine, since it keeps nothing between moves.
+	 */
+	@Override
+	public GreedyEngine copy() {
+		return this;
+	}
+
+}
@@ -0,0 +1,373 @@
+package engine;
+
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is a Monte Carlo tree search player. Instead of
+ *         scoring positions with an evaluator it plays many random games from
+ *         the position and grows a tree towards the moves that win the most
+ *         of them, trying less played moves now and then in case they are
+ *         better than they look (UCT). It needs no evaluator and no tuning,
+ *         and can be stopped at any time.
+ *
+ *         The tree is kept in parallel arrays that are reused from move to
+ *         move, so a search allocates nothing once the arrays are big enough.
+ *         Each node holds the position with the player to move first, the
+ *         move that led to it, links to its parent, first child and next
+ *         sibling, the moves not tried yet, and how many games went through
+ *         it and how many of them the player who moved into it won.
+ *
+ */
+public class MctsEngine implements Engine {
+	// How much less played moves are favoured. This is the usual sqrt(2).
+	private static final double EXPLORATION = 1.41;
+
+	// How many games are played between looks at the clock.
+	private static final int CLOCK_INTERVAL = 64;
+
+	private final int playouts;
+	private final long millis;
+	private final long seed;
+	private final SplittableRandom random;
+
+	private long[] own;
+	private long[] opp;
+	private long[] untried;
+	private int[] move;
+	private int[] parent;
+	private int[] firstChild;
+	private int[] sibling;
+	private int[] visits;
+	private double[] wins;
+	private int count;
+
+	/**
+	 * This is the constructor for a tree search engine.
+	 *
+	 * @param playouts
+	 *            is how many random games to play for each move, or 0 for no
+	 *            limit.
+	 * @param millis
+	 *            is how long each move may take, or 0 for no limit. At least
+	 *            one of the limits must be set.
+	 * @param seed
+	 *            is the seed for the random games.
+	 */
+	public MctsEngine(int playouts, long millis, long seed) {
+		if ((playouts <= 0) && (millis <= 0)) {
+			throw new IllegalArgumentException(
+					"The tree search needs a playout or time limit.");
+		}
+		this.playouts = playouts;
+		this.millis = millis;
+		this.seed = seed;
+		this.random = new SplittableRandom(seed);
+		grow(1024);
+	}
+
+	/**
+	 * This grows the tree with random games and plays the move that was
+	 * tried the most.
+	 *
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @param playerChar
+	 *            is the player to move, 'B' or 'W'.
+	 * @return is a SearchResult whose score is the move's winning chance in
+	 *         percent, whose depth is the deepest the tree grew and whose
+	 *         nodes are the random games played.
+	 */
+	@Override
+	public SearchResult chooseMove(long black, long white, char playerChar) {
+		long started = System.nanoTime();
+		long deadline = Long.MAX_VALUE;
+		if (millis > 0) {
+			deadline = started + millis * 1000000L;
+		}
+
+		count = 0;
+		int root = (playerChar == 'B') ? addNode(black, white, -1, 0)
+				: addNode(white, black, -1, 0);
+		long legal = Bitboards.moves(own[root], opp[root]);
+		if (Long.bitCount(legal) < 2) {
+			int only = (legal == 0) ? Bitboards.PASS
+					: Long.numberOfTrailingZeros(legal);
+			return new SearchResult(only, 0, 0, 0, elapsed(started));
+		}
+
+		int games = 0;
+		int deepest = 0;
+		while ((playouts <= 0) || (games < playouts)) {
+			if ((games % CLOCK_INTERVAL == 0)
+					&& (System.nanoTime() >= deadline) && (games > 0)) {
+				break;
+			}
+
+			// Walk down through nodes whose moves have all been tried.
+			int node = root;
+			int depth = 0;
+			while ((untried[node] == 0) && (firstChild[node] >= 0)) {
+				node = bestChild(node);
+				depth++;
+			}
+			if (untried[node] != 0) {
+				node = expand(node);
+				depth++;
+			}
+			deepest = Math.max(deepest, depth);
+
+			// result is for the player to move at node, and flips at every
+			// step up since the players take turns.
+			double result = playout(own[node], opp[node]);
+			for (int up = node; up >= 0; up = parent[up]) {
+				visits[up]++;
+				wins[up] += 1 - result;
+				result = 1 - result;
+			}
+			games++;
+		}
+
+		int best = firstChild[root];
+		for (int child = sibling[best]; child >= 0; child = sibling[child]) {
+			if (visits[child] > visits[best]) {
+				best = child;
+			}
+		}
+		int score = (int) Math.round(100 * wins[best] / visits[best]);
+		return new SearchResult(move[best], score, deepest, games,
+				elapsed(started));
+	}
+
+	/**
+	 * @return is "mcts:PLAYOUTS" or, with a time limit, "mcts-time:MS".
+	 */
+	@Override
+	public String getName() {
+		if (millis > 0) {
+			return "mcts-time:" + millis;
+		}
+		return "mcts:" + playouts;
+	}
+
+	/**
+	 * @return is a new MctsEngine with the same limits and its own tree.
+	 */
+	@Override
+	public MctsEngine copy() {
+		return new MctsEngine(playouts, millis, seed);
+	}
+
+	/**
+	 * This is a helper that picks the child with the best UCT score.
+	 *
+	 * @param node
+	 *            is a node whose moves have all been tried.
+	 * @return is the child to go down to.
+	 */
+	private int bestChild(int node) {
+		double logVisits = Math.log(visits[node]);
+		int best = firstChild[node];
+		double bestScore = -1;
+		for (int child = best; child >= 0; child = sibling[child]) {
+			if (visits[child] == 0) {
+				// Only a pass is added before it is played through.
+				return child;
+			}
+			double score = wins[child] / visits[child] + EXPLORATION
+					* Math.sqrt(logVisits / visits[child]);
+			if (score > bestScore) {
+				best = child;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * This is a helper that adds a child for one untried move, picked at
+	 * random.
+	 *
+	 * @param node
+	 *            is a node with untried moves.
+	 * @return is the new child.
+	 */
+	private int expand(int node) {
+		int square = pick(untried[node]);
+		untried[node] &= ~(1L << square);
+		long flips = Bitboards.flips(own[node], opp[node], square);
+		return addNode(opp[node] & ~flips, own[node] | flips | (1L << square),
+				node, square);
+	}
+
+	/**
+	 * This is a helper that adds a node to the tree. A position where the
+	 * player to move has to pass gets its only child, the pass, straight
+	 * away.
+	 *
+	 * @param mover
+	 *            is the bitboard of the player to move.
+	 * @param other
+	 *            is the bitboard of the other player.
+	 * @param up
+	 *            is the parent node, or -1 for the root.
+	 * @param square
+	 *            is the move that led here.
+	 * @return is the new node.
+	 */
+	private int addNode(long mover, long other, int up, int square) {
+		if (count + 2 > move.length) {
+			grow(move.length * 2);
+		}
+		int node = count;
+		count++;
+		own[node] = mover;
+		opp[node] = other;
+		untried[node] = Bitboards.moves(mover, other);
+		move[node] = square;
+		parent[node] = up;
+		firstChild[node] = -1;
+		sibling[node] = -1;
+		visits[node] = 0;
+		wins[node] = 0;
+		if (up >= 0) {
+			sibling[node] = firstChild[up];
+			firstChild[up] = node;
+		}
+
+		if ((untried[node] == 0) && (Bitboards.moves(other, mover) != 0)) {
+			addNode(other, mover, node, Bitboards.PASS);
+		}
+		return node;
+	}
+
+	/**
+	 * This is a helper that plays random moves to the end of the game.
+	 *
+	 * @param mover
+	 *            is the bitboard of the player to move.
+	 * @param other
+	 *            is the bitboard of the other player.
+	 * @return is 1 if the player to move wins, 0.5 for a draw and 0 for a
+	 *         loss.
+	 */
+	private double playout(long mover, long other) {
+		boolean swapped = false;
+		int passes = 0;
+		while (passes < 2) {
+			long legal = Bitboards.moves(mover, other);
+			if (legal != 0) {
+				int square = pick(legal);
+				long flips = Bitboards.flips(mover, other, square);
+				mover |= flips | (1L << square);
+				other &= ~flips;
+				passes = 0;
+			} else {
+				passes++;
+			}
+			long swap = mover;
+			mover = other;
+			other = swap;
+			swapped = !swapped;
+		}
+
+		int difference = Long.bitCount(mover) - Long.bitCount(other);
+		if (swapped) {
+			difference = -difference;
+		}
+		if (difference > 0) {
+			return 1;
+		} else if (difference < 0) {
+			return 0;
+		}
+		return 0.5;
+	}
+
+	/**
+	 * This is a helper that picks one set bit at random.
+	 *
+	 * @param bits
+	 *            is a bitboard with at least one bit set.
+	 * @return is the square of the chosen bit.
+	 */
+	private int pick(long bits) {
+		int skip = random.nextInt(Long.bitCount(bits));
+		for (int i = 0; i < skip; i++) {
+			bits &= bits - 1;
+		}
+		return Long.numberOfTrailingZeros(bits);
+	}
+
+	/**
+	 * This is a helper that makes the tree's arrays bigger, keeping what is
+	 * in them.
+	 *
+	 * @param capacity
+	 *            is the new number of nodes.
+	 */
+	private void grow(int capacity) {
+		own = copyOf(own, capacity);
+		opp = copyOf(opp, capacity);
+		untried = copyOf(untried, capacity);
+		move = copyOf(move, capacity);
+		parent = copyOf(parent, capacity);
+		firstChild = copyOf(firstChild, capacity);
+		sibling = copyOf(sibling, capacity);
+		visits = copyOf(visits, capacity);
+		double[] newWins = new double[capacity];
+		if (wins != null) {
+			System.arraycopy(wins, 0, newWins, 0, count);
+		}
+		wins = newWins;
+	}
+
+	/**
+	 * This is a helper for grow().
+	 *
+	 * @param array
+	 *            is the old array, or null.
+	 * @param capacity
+	 *            is the new length.
+	 * @return is a new array holding the first count entries of the old one.
+	 */
+	private long[] copyOf(long[] array, int capacity) {
+		long[] bigger = new long[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, bigger, 0, count);
+		}
+		return bigger;
+	}
+
+	/**
+	 * This is a helper for grow().
+	 *
+	 * @param array
+	 *            is the old array, or null.
+	 * @param capacity
+	 *            is the new length.
+	 * @return is a new array holding the first count entries of the old one.
+	 */
+	private int[] copyOf(int[] array, int capacity) {
+		int[] bigger = new int[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, bigger, 0, count);
+		}
+		return bigger;
+	}
+
+	/**
+	 * This is a helper that works out how long a search took.
+	 *
+	 * @param started
+	 *            is System.nanoTime() when the search started.
+	 * @return is the time taken in milliseconds.
+	 */
+	private static long elapsed(long started) {
+		return (System.nanoTime() - started) / 1000000;
+	}
+
+}
@@ -0,0 +1,435 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is a small quantized neural network that scores
+ *         positions for the computer. It has one input for every colour on
+ *         every square (128 in all), one hidden layer and a single output.
+ *
+ *         The hidden layer is kept in an int16 accumulator that is never
+ *         rebuilt during play. When a piece is placed or flipped only the
+ *         weights of the inputs that turned on or off are added or taken away,
+ *         so scoring a position after a move costs a few hundred additions
+ *         instead of a full pass over the board.
+ *
+ *         The hot loops are behind NeuralKernel. VectorNeuralKernel runs
+ *         them with the Vector API on JVMs started with that module, and
+ *         SCALAR runs them as flat loops with no branches inside, which the
+ *         JIT can still vectorize by itself. best() picks one when the class
+ *         is loaded and both give the same answer.
+ *
+ */
+public class NeuralEvaluator implements Evaluator {
+
+	/**
+	 * This is the number of inputs to the network. Squares 0-63 are black
+	 * pieces and squares 64-127 are white pieces, with square = y * 8 + x.
+	 */
+	public static final int FEATURES = 128;
+
+	// "RVNN" in ASCII. The first four bytes of every weight file.
+	private static final int MAGIC = 0x52564E4E;
+	private static final int VERSION = 1;
+
+	// Hidden values are clipped to 0-127 so they fit in the int8 range of the
+	// output weights.
+	private static final int CLIP = 127;
+
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+	private static final String VECTOR_CLASS = "engine.VectorNeuralKernel";
+
+	/**
+	 * This is the kernel that uses plain loops. It runs on every JVM.
+	 */
+	public static final NeuralKernel SCALAR = new NeuralKernel() {
+		@Override
+		public void add(short[] accumulator, short[] weights, int base,
+				int count) {
+			for (int i = 0; i < count; i++) {
+				accumulator[i] += weights[base + i];
+			}
+		}
+
+		@Override
+		public void subtract(short[] accumulator, short[] weights, int base,
+				int count) {
+			for (int i = 0; i < count; i++) {
+				accumulator[i] -= weights[base + i];
+			}
+		}
+
+		@Override
+		public int dot(short[] accumulator, byte[] outputWeights, int clip,
+				int count) {
+			int sum = 0;
+			for (int i = 0; i < count; i++) {
+				int value = Math.min(Math.max(accumulator[i], 0), clip);
+				sum += value * outputWeights[i];
+			}
+			return sum;
+		}
+
+		@Override
+		public String getName() {
+			return "scalar";
+		}
+	};
+
+	private static final NeuralKernel KERNEL = best();
+
+	private final int hidden;
+	private final int outputShift;
+	private final short[] biases;
+	private final short[] featureWeights;
+	private final byte[] outputWeights;
+	private final int outputBias;
+
+	private final short[] accumulator;
+
+	/**
+	 * This builds a network from weights that have already been quantized.
+	 *
+	 * @param biases
+	 *            is one int16 bias for every hidden unit.
+	 * @param featureWeights
+	 *            is FEATURES * hidden int16 weights, all the weights for
+	 *            feature 0 first, then feature 1 and so on.
+	 * @param outputWeights
+	 *            is one int8 weight for every hidden unit.
+	 * @param outputBias
+	 *            is added to the output before it is scaled.
+	 * @param outputShift
+	 *            is how far the output is shifted right to bring it back to
+	 *            the scale of a score.
+	 */
+	public NeuralEvaluator(short[] biases, short[] featureWeights,
+			byte[] outputWeights, int outputBias, int outputShift) {
+		if ((featureWeights.length != FEATURES * biases.length)
+				|| (outputWeights.length != biases.length)) {
+			throw new IllegalArgumentException(
+					"Weight arrays do not match the hidden layer size.");
+		}
+		this.hidden = biases.length;
+		this.biases = biases;
+		this.featureWeights = featureWeights;
+		this.outputWeights = outputWeights;
+		this.outputBias = outputBias;
+		this.outputShift = outputShift;
+		this.accumulator = new short[hidden];
+		clearAccumulator();
+	}
+
+	/**
+	 * This reads a network from a weight file.
+	 *
+	 * The file is big-endian and laid out as the magic number, the version,
+	 * the hidden layer size and the output shift (all ints), then the hidden
+	 * biases and the feature weights as shorts, then the output weights as
+	 * bytes and finally the output bias as an int.
+	 *
+	 * @param file
+	 *            is the path of the weight file.
+	 * @return is a NeuralEvaluator with an empty board loaded.
+	 * @throws IOException
+	 *             This is thrown when the file can't be read or is not a
+	 *             weight file.
+	 */
+	public static NeuralEvaluator load(Path file) throws IOException {
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+
+		if ((in.remaining() < 16) || (in.getInt() != MAGIC)) {
+			throw new IOException(file + " is not a Reversi weight file.");
+		}
+		int version = in.getInt();
+		if (version != VERSION) {
+			throw new IOException(
+					"Unsupported weight file version " + version + ".");
+		}
+		int hidden = in.getInt();
+		int outputShift = in.getInt();
+
+		long expected = (long) hidden * (2 + FEATURES * 2 + 1) + 4;
+		if ((hidden <= 0) || (in.remaining() != expected)) {
+			throw new IOException(file + " is the wrong size for a network "
+					+ "with " + hidden + " hidden units.");
+		}
+
+		short[] biases = new short[hidden];
+		short[] featureWeights = new short[FEATURES * hidden];
+		byte[] outputWeights = new byte[hidden];
+
+		in.asShortBuffer().get(biases).get(featureWeights);
+		in.position(
+				in.position() + (biases.length + featureWeights.length) * 2);
+		in.get(outputWeights);
+		int outputBias = in.getInt();
+
+		return new NeuralEvaluator(biases, featureWeights, outputWeights,
+				outputBias, outputShift);
+	}
+
+	/**
+	 * This builds a network that scores positions exactly like a linear model
+	 * with one weight per input. Every hidden unit copies one input (it holds
+	 * CLIP when the input is on and 0 when it is off), and the output weights
+	 * carry the linear weights. This lets weights fitted by the trainer be
+	 * loaded by the same evaluator as a full network.
+	 *
+	 * @param weights
+	 *            is one weight for each of the FEATURES inputs.
+	 * @param bias
+	 *            is added to every score.
+	 * @return is the equivalent NeuralEvaluator.
+	 */
+	public static NeuralEvaluator fromLinear(double[] weights, double bias) {
+		double largest = 0;
+		for (double weight : weights) {
+			largest = Math.max(largest, Math.abs(weight));
+		}
+
+		// Use the largest shift that still keeps every output weight inside
+		// the int8 range so as little precision as possible is lost.
+		int outputShift = 0;
+		while ((outputShift < 16)
+				&& (largest * (1 << (outputShift + 1)) / CLIP <= Byte.MAX_VALUE)) {
+			outputShift++;
+		}
+
+		short[] biases = new short[FEATURES];
+		short[] featureWeights = new short[FEATURES * FEATURES];
+		byte[] outputWeights = new byte[FEATURES];
+
+		for (int i = 0; i < FEATURES; i++) {
+			featureWeights[i * FEATURES + i] = CLIP;
+			outputWeights[i] = (byte) Math
+					.round(weights[i] * (1 << outputShift) / CLIP);
+		}
+		int outputBias = (int) Math.round(bias * (1 << outputShift));
+
+		return new NeuralEvaluator(biases, featureWeights, outputWeights,
+				outputBias, outputShift);
+	}
+
+	/**
+	 * This writes the network to a weight file that load() can read back.
+	 *
+	 * @param file
+	 *            is the path of the weight file.
+	 * @throws IOException
+	 *             This is thrown when the file can't be written.
+	 */
+	public void save(Path file) throws IOException {
+		ByteBuffer out = ByteBuffer
+				.allocate(16 + hidden * (2 + FEATURES * 2 + 1) + 4);
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		out.putInt(hidden);
+		out.putInt(outputShift);
+		out.asShortBuffer().put(biases).put(featureWeights);
+		out.position(
+				out.position() + (biases.length + featureWeights.length) * 2);
+		out.put(outputWeights);
+		out.putInt(outputBias);
+
+		Files.write(file, out.array());
+	}
+
+	/**
+	 * This gets the vector kernel if the JVM was started with the Vector API
+	 * module. It is looked up by reflection so the rest of the program builds
+	 * and runs without that module.
+	 *
+	 * @return is a VectorNeuralKernel, or null if this JVM can't run one.
+	 */
+	public static NeuralKernel vector() {
+		if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+			return null;
+		}
+		try {
+			return (NeuralKernel) Class.forName(VECTOR_CLASS)
+					.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// The class was left out of the build, or can't be loaded here.
+			return null;
+		}
+	}
+
+	/**
+	 * This gets the fastest kernel this JVM can run: the vector one if it is
+	 * there and SCALAR if not.
+	 *
+	 * @return is a NeuralKernel.
+	 */
+	public static NeuralKernel best() {
+		NeuralKernel vector = vector();
+		if (vector == null) {
+			return SCALAR;
+		}
+		return vector;
+	}
+
+	/**
+	 * This rebuilds the accumulator from every piece on the board.
+	 *
+	 * @param board
+	 *            is the char[][] representation of the board.
+	 */
+	@Override
+	public void reset(char[][] board) {
+		clearAccumulator();
+		for (int y = 0; y < 8; y++) {
+			for (int x = 0; x < 8; x++) {
+				if (board[y][x] != '_') {
+					addFeature(feature(x, y, board[y][x]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * This updates the accumulator for one changed square by taking away the
+	 * weights of the old piece and adding the weights of the new one.
+	 *
+	 * @param x
+	 *            is the x position of the square.
+	 * @param y
+	 *            is the y position of the square.
+	 * @param oldPiece
+	 *            is the char that was on the square.
+	 * @param newPiece
+	 *            is the char that is on the square now.
+	 */
+	@Override
+	public void update(int x, int y, char oldPiece, char newPiece) {
+		if (oldPiece != '_') {
+			subtractFeature(feature(x, y, oldPiece));
+		}
+		if (newPiece != '_') {
+			addFeature(feature(x, y, newPiece));
+		}
+	}
+
+	/**
+	 * This runs the output layer on the accumulator. The network always
+	 * scores from black's side, so white gets the negated score.
+	 *
+	 * @param playerChar
+	 *            is the player the score is for.
+	 * @return is the score for playerChar.
+	 */
+	@Override
+	public int evaluate(char playerChar) {
+		int sum = KERNEL.dot(accumulator, outputWeights, CLIP, hidden);
+		int score = (sum + outputBias) >> outputShift;
+
+		if (playerChar == 'B') {
+			return score;
+		}
+		return -score;
+	}
+
+	/**
+	 * This makes a new network that shares this one's weights but has its own
+	 * accumulator.
+	 *
+	 * @return is the new NeuralEvaluator.
+	 */
+	@Override
+	public NeuralEvaluator copy() {
+		return new NeuralEvaluator(biases, featureWeights, outputWeights,
+				outputBias, outputShift);
+	}
+
+	/**
+	 * This hashes every weight of the network with 64-bit FNV-1a, so two
+	 * networks only share a fingerprint if they have the same weights.
+	 *
+	 * @return is the hash of the weights.
+	 */
+	@Override
+	public long fingerprint() {
+		long hash = mix(0xCBF29CE484222325L, MAGIC);
+		hash = mix(hash, hidden);
+		hash = mix(hash, outputShift);
+		hash = mix(hash, outputBias);
+		for (short bias : biases) {
+			hash = mix(hash, bias);
+		}
+		for (short weight : featureWeights) {
+			hash = mix(hash, weight);
+		}
+		for (byte weight : outputWeights) {
+			hash = mix(hash, weight);
+		}
+		return hash;
+	}
+
+	/**
+	 * This is a helper that adds one value to an FNV-1a hash.
+	 *
+	 * @param hash
+	 *            is the hash so far.
+	 * @param value
+	 *            is the value to add.
+	 * @return is the new hash.
+	 */
+	private static long mix(long hash, int value) {
+		return (hash ^ value) * 0x100000001B3L;
+	}
+
+	/**
+	 * This sets the accumulator back to the hidden biases, which is what it
+	 * holds for an empty board.
+	 */
+	private void clearAccumulator() {
+		System.arraycopy(biases, 0, accumulator, 0, hidden);
+	}
+
+	/**
+	 * This adds the weights of one input to the accumulator.
+	 *
+	 * @param feature
+	 *            is the index of the input that turned on.
+	 */
+	private void addFeature(int feature) {
+		KERNEL.add(accumulator, featureWeights, feature * hidden, hidden);
+	}
+
+	/**
+	 * This takes the weights of one input away from the accumulator.
+	 *
+	 * @param feature
+	 *            is the index of the input that turned off.
+	 */
+	private void subtractFeature(int feature) {
+		KERNEL.subtract(accumulator, featureWeights, feature * hidden,
+				hidden);
+	}
+
+	/**
+	 * This works out which input a piece on a square belongs to.
+	 *
+	 * @param x
+	 *            is the x position of the piece.
+	 * @param y
+	 *            is the y position of the piece.
+	 * @param piece
+	 *            is 'B' or 'W'.
+	 * @return is the index of the input.
+	 */
+	private static int feature(int x, int y, char piece) {
+		int square = y * 8 + x;
+		if (piece == 'W') {
+			return square + 64;
+		}
+		return square;
+	}
+
+}
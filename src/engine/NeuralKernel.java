@@ -0,0 +1,69 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is the interface for the inner loops of
+ *         NeuralEvaluator: adding an input's weights to the accumulator,
+ *         taking them away, and running the output layer.
+ *         NeuralEvaluator.SCALAR works everywhere, and VectorNeuralKernel
+ *         uses the Vector API when the JVM has it. NeuralEvaluator.best()
+ *         picks the fastest one this JVM can run.
+ *
+ */
+public interface NeuralKernel {
+
+	/**
+	 * This adds a run of weights to the accumulator.
+	 *
+	 * @param accumulator
+	 *            is the hidden layer, changed in place.
+	 * @param weights
+	 *            is the array holding the weights.
+	 * @param base
+	 *            is where in weights the run starts.
+	 * @param count
+	 *            is how many values to add, from the start of accumulator.
+	 */
+	void add(short[] accumulator, short[] weights, int base, int count);
+
+	/**
+	 * This takes a run of weights away from the accumulator.
+	 *
+	 * @param accumulator
+	 *            is the hidden layer, changed in place.
+	 * @param weights
+	 *            is the array holding the weights.
+	 * @param base
+	 *            is where in weights the run starts.
+	 * @param count
+	 *            is how many values to take away, from the start of
+	 *            accumulator.
+	 */
+	void subtract(short[] accumulator, short[] weights, int base, int count);
+
+	/**
+	 * This clips every accumulator value to 0-clip and adds up each one
+	 * times its output weight.
+	 *
+	 * @param accumulator
+	 *            is the hidden layer.
+	 * @param outputWeights
+	 *            is one weight for every hidden value.
+	 * @param clip
+	 *            is the largest a hidden value can be. It is at most 127.
+	 * @param count
+	 *            is how many hidden values there are.
+	 * @return is the sum.
+	 */
+	int dot(short[] accumulator, byte[] outputWeights, int clip, int count);
+
+	/**
+	 * This returns a short name for the kernel, for reports.
+	 *
+	 * @return is the kernel's name.
+	 */
+	String getName();
+
+}
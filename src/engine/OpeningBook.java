@@ -0,0 +1,365 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is an opening book: how often each early position
+ *         was reached in a pile of games, and how well the player to move did
+ *         from it. It is read straight from a memory-mapped file, so opening
+ *         even a big book costs nothing and every thread and process using
+ *         the same file shares one copy in memory.
+ *
+ *         The file starts with a 32 byte header: a magic number, the version,
+ *         the number of entries and a hash that checks the file was made with
+ *         the same Zobrist numbers. Each entry is 16 bytes: the position's
+ *         key, the number of games and the points the player to move scored
+ *         in them, two for a win and one for a draw. Entries are sorted by key
+ *         so a position is found by binary search.
+ *
+ */
+public final class OpeningBook {
+	private static final int MAGIC = 0x52564F42;
+	private static final int VERSION = 1;
+	private static final int HEADER = 32;
+	private static final int ENTRY = 16;
+
+	/**
+	 * This is the most entries a book can hold, since the file is mapped in
+	 * one piece.
+	 */
+	public static final int MAX_ENTRIES = (Integer.MAX_VALUE - HEADER)
+			/ ENTRY;
+
+	private final Path file;
+	private final ByteBuffer entries;
+	private final int size;
+
+	/**
+	 * This is the constructor used by open().
+	 *
+	 * @param file
+	 *            is the book's file.
+	 * @param entries
+	 *            is the mapped entries.
+	 * @param size
+	 *            is the number of entries.
+	 */
+	private OpeningBook(Path file, ByteBuffer entries, int size) {
+		this.file = file;
+		this.entries = entries;
+		this.size = size;
+	}
+
+	/**
+	 * This opens a book file written by write().
+	 *
+	 * @param file
+	 *            is the path of the book.
+	 * @return is the OpeningBook.
+	 * @throws IOException
+	 *             This is thrown if the file can't be read or isn't a book
+	 *             made by this version of the program.
+	 */
+	public static OpeningBook open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			channel.read(header, 0);
+			header.flip();
+
+			if ((header.remaining() < HEADER) || (header.getInt() != MAGIC)) {
+				throw new IOException(file + " is not an opening book.");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException(
+						"Unsupported opening book version " + version + ".");
+			}
+			long size = header.getLong();
+			if (header.getLong() != checkHash()) {
+				throw new IOException(
+						file + " was made with different hash numbers.");
+			}
+			if ((size < 0) || (size > MAX_ENTRIES)
+					|| (channel.size() != HEADER + size * ENTRY)) {
+				throw new IOException(file + " is the wrong size.");
+			}
+
+			// The mapping stays valid after the channel is closed.
+			ByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY,
+					HEADER, size * ENTRY);
+			return new OpeningBook(file, entries, (int) size);
+		}
+	}
+
+	/**
+	 * This writes a book file. The entries are sorted by key first, which
+	 * reorders the arrays passed in.
+	 *
+	 * @param file
+	 *            is the path of the book. It is written next to it and then
+	 *            moved over it, so a reader never sees half a book.
+	 * @param keys
+	 *            is the key of each position, from key(). No key may appear
+	 *            twice.
+	 * @param games
+	 *            is the number of games that reached each position.
+	 * @param points
+	 *            is the points the player to move scored from each position.
+	 * @param count
+	 *            is how many entries, from the start of the arrays, to write.
+	 * @throws IOException
+	 *             This is thrown if the file can't be written.
+	 */
+	public static void write(Path file, long[] keys, int[] games,
+			int[] points, int count) throws IOException {
+		if (count > MAX_ENTRIES) {
+			throw new IllegalArgumentException("A book can't hold more than "
+					+ MAX_ENTRIES + " entries.");
+		}
+		sort(keys, games, points, count);
+
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent == null) {
+			parent = Paths.get(".");
+		}
+		Path temp = Files.createTempFile(parent, "book", ".tmp");
+
+		try {
+			try (FileChannel channel = FileChannel.open(temp,
+					StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+				buffer.putInt(MAGIC);
+				buffer.putInt(VERSION);
+				buffer.putLong(count);
+				buffer.putLong(checkHash());
+				buffer.position(HEADER);
+
+				for (int i = 0; i < count; i++) {
+					if (!buffer.hasRemaining()) {
+						drain(channel, buffer);
+					}
+					buffer.putLong(keys[i]);
+					buffer.putInt(games[i]);
+					buffer.putInt(points[i]);
+				}
+				drain(channel, buffer);
+				channel.force(true);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * This makes the key a position is stored under in a book. It is the
+	 * same hash the look-ahead uses.
+	 *
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @param playerChar
+	 *            is the player to move, 'B' or 'W'.
+	 * @return is the position's key.
+	 */
+	public static long key(long black, long white, char playerChar) {
+		long key = Zobrist.hash(black, white);
+		if (playerChar == 'W') {
+			key ^= Zobrist.WHITE_TO_MOVE;
+		}
+		return key;
+	}
+
+	/**
+	 * This looks up a position.
+	 *
+	 * @param key
+	 *            is the position's key, from key().
+	 * @return is the index of the position's entry, or -1 if the position
+	 *         isn't in the book.
+	 */
+	public int find(long key) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long found = entries.getLong(middle * ENTRY);
+			if (found < key) {
+				low = middle + 1;
+			} else if (found > key) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * This returns how many games reached a position.
+	 *
+	 * @param index
+	 *            is the index from find().
+	 * @return is the number of games.
+	 */
+	public int getGames(int index) {
+		return entries.getInt(index * ENTRY + 8);
+	}
+
+	/**
+	 * This returns how well the player to move did from a position.
+	 *
+	 * @param index
+	 *            is the index from find().
+	 * @return is the points scored, two for each win and one for each draw.
+	 */
+	public int getPoints(int index) {
+		return entries.getInt(index * ENTRY + 12);
+	}
+
+	/**
+	 * This returns the number of positions in the book.
+	 *
+	 * @return is the number of entries.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * This returns the file the book was read from.
+	 *
+	 * @return is the book's path.
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * This is a helper that writes out what is in the buffer.
+	 *
+	 * @param channel
+	 *            is the file.
+	 * @param buffer
+	 *            is the buffer, which is left empty.
+	 * @throws IOException
+	 *             This is thrown if the file can't be written.
+	 */
+	private static void drain(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * This is a helper that heap sorts the entries by key in place, moving
+	 * the games and points along with their keys. It needs no memory beyond
+	 * the arrays, which matters for books of many millions of positions.
+	 *
+	 * @param keys
+	 *            is the keys.
+	 * @param games
+	 *            is the games.
+	 * @param points
+	 *            is the points.
+	 * @param count
+	 *            is how many entries to sort.
+	 */
+	private static void sort(long[] keys, int[] games, int[] points,
+			int count) {
+		for (int i = count / 2 - 1; i >= 0; i--) {
+			siftDown(keys, games, points, i, count);
+		}
+		for (int end = count - 1; end > 0; end--) {
+			swap(keys, games, points, 0, end);
+			siftDown(keys, games, points, 0, end);
+		}
+	}
+
+	/**
+	 * This is a helper for sort() that moves an entry down the heap until
+	 * both entries under it have smaller keys.
+	 *
+	 * @param keys
+	 *            is the keys.
+	 * @param games
+	 *            is the games.
+	 * @param points
+	 *            is the points.
+	 * @param i
+	 *            is the entry to move.
+	 * @param count
+	 *            is the size of the heap.
+	 */
+	private static void siftDown(long[] keys, int[] games, int[] points,
+			int i, int count) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= count) {
+				return;
+			}
+			if ((child + 1 < count) && (keys[child + 1] > keys[child])) {
+				child++;
+			}
+			if (keys[i] >= keys[child]) {
+				return;
+			}
+			swap(keys, games, points, i, child);
+			i = child;
+		}
+	}
+
+	/**
+	 * This is a helper for sort() that swaps two entries.
+	 *
+	 * @param keys
+	 *            is the keys.
+	 * @param games
+	 *            is the games.
+	 * @param points
+	 *            is the points.
+	 * @param i
+	 *            is one entry.
+	 * @param j
+	 *            is the other entry.
+	 */
+	private static void swap(long[] keys, int[] games, int[] points, int i,
+			int j) {
+		long key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		int swap = games[i];
+		games[i] = games[j];
+		games[j] = swap;
+		swap = points[i];
+		points[i] = points[j];
+		points[j] = swap;
+	}
+
+	/**
+	 * This is a helper that makes the hash stored in the header, so a book
+	 * made with different Zobrist numbers is turned down.
+	 *
+	 * @return is the hash of the starting position.
+	 */
+	private static long checkHash() {
+		return Zobrist.hash(Bitboards.START_BLACK, Bitboards.START_WHITE);
+	}
+
+}
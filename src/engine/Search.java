@@ -0,0 +1,985 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is the computer's look-ahead. It is an alpha-beta
+ *         search over bitboard positions that searches one move deeper at a
+ *         time until it reaches the depth it was asked for or runs out of
+ *         time, and always has the best move from the last finished depth to
+ *         fall back on.
+ *
+ *         Once few enough squares are left it stops guessing and solves the
+ *         rest of the game exactly, scoring by final disc difference. Both
+ *         parts cut off lines where the stable pieces on the board already
+ *         decide the result.
+ *
+ *         Positions at the bottom of the search are scored by an Evaluator,
+ *         which is kept up to date square by square as moves are made and
+ *         taken back. A Search and its evaluator belong to one thread; make
+ *         one per thread with Evaluator.copy() to search in parallel.
+ *
+ *         With a TranspositionTable the search remembers positions it has
+ *         seen before, reached by another order of moves or in an earlier,
+ *         shallower pass. The table can be shared by searches on different
+ *         threads.
+ *
+ *         searchLines() finds the best few moves instead of just the best
+ *         one, for hints. Every move after the first few only has to be
+ *         proved worse than the ones already kept, which is much cheaper than
+ *         scoring it exactly.
+ *
+ */
+public class Search {
+
+	/**
+	 * This is bigger than any score a search can return.
+	 */
+	public static final int INFINITY = 1 << 30;
+
+	/**
+	 * This is added to the disc difference of a finished game so a won game
+	 * always scores higher than any evaluation.
+	 */
+	public static final int WIN = 1 << 24;
+
+	// How many positions are searched between looks at the clock.
+	private static final int CLOCK_INTERVAL = 1024;
+
+	// Below this many empty squares the solver stops sorting moves, since
+	// sorting costs more than it saves near the end of the game.
+	private static final int SORT_EMPTIES = 7;
+
+	// With this many empty squares or fewer the solver tries each empty
+	// square in turn instead of finding the legal moves first.
+	private static final int LATE_EMPTIES = 6;
+
+	private static final long CORNERS = 0x8100000000000081L;
+
+	// NEIGHBOURS[square] is every square next to square.
+	private static final long[] NEIGHBOURS = new long[64];
+
+	static {
+		for (int square = 0; square < 64; square++) {
+			for (int direction = 0; direction < 8; direction++) {
+				NEIGHBOURS[square] |= Bitboards.shift(1L << square, direction);
+			}
+		}
+	}
+
+	// The solver only uses the table with at least this many empty squares.
+	// Nearer the end a position is quicker to solve again than to look up.
+	private static final int TABLE_EMPTIES = 7;
+
+	// This is XORed into the hash of solver positions so their exact disc
+	// differences are never mixed up with the search's scores.
+	private static final long SOLVE_KEY = 0x2E7E_2505_5EEDL;
+
+	private final Evaluator evaluator;
+	private TranspositionTable table;
+	private int solveEmpties;
+	private long nodes;
+	private long deadline;
+	private boolean stopped;
+	private volatile boolean cancelled;
+
+	/**
+	 * This is the constructor for a search.
+	 *
+	 * @param evaluator
+	 *            is the evaluator used to score positions. The search owns it
+	 *            from now on.
+	 */
+	public Search(Evaluator evaluator) {
+		this.evaluator = evaluator;
+		this.solveEmpties = 12;
+	}
+
+	/**
+	 * This sets how few empty squares there must be before the search solves
+	 * the rest of the game exactly.
+	 *
+	 * @param solveEmpties
+	 *            is the number of empty squares, or 0 to never solve.
+	 */
+	public void setSolveEmpties(int solveEmpties) {
+		this.solveEmpties = solveEmpties;
+	}
+
+	/**
+	 * This sets the table the search remembers positions in.
+	 *
+	 * @param table
+	 *            is the TranspositionTable, or null to use none.
+	 */
+	public void setTable(TranspositionTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * This stops a search running on another thread as soon as it next
+	 * looks at the clock. The search returns what it had found by then.
+	 * Every later search on this Search stops straight away too, so make a
+	 * new one to search again.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return is the table the search remembers positions in, or null.
+	 */
+	public TranspositionTable getTable() {
+		return table;
+	}
+
+	/**
+	 * This finds the best move for a player.
+	 *
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @param playerChar
+	 *            is the player to move, 'B' or 'W'.
+	 * @param maxDepth
+	 *            is how many moves ahead to look.
+	 * @param millis
+	 *            is how long the search may take, or 0 for no limit.
+	 * @return is a SearchResult for the best move found.
+	 */
+	public SearchResult search(long black, long white, char playerChar,
+			int maxDepth, long millis) {
+		long started = System.nanoTime();
+		deadline = Long.MAX_VALUE;
+		if (millis > 0) {
+			deadline = started + millis * 1000000L;
+		}
+		stopped = false;
+		nodes = 0;
+		evaluator.reset(Bitboards.toBoard(black, white));
+
+		char otherChar = other(playerChar);
+		long own = black;
+		long opp = white;
+		long hash = Zobrist.hash(black, white);
+		if (playerChar == 'W') {
+			own = white;
+			opp = black;
+			hash ^= Zobrist.WHITE_TO_MOVE;
+		}
+
+		int[] rootMoves = squares(Bitboards.moves(own, opp));
+		if (rootMoves.length == 0) {
+			return new SearchResult(Bitboards.PASS,
+					evaluator.evaluate(playerChar), 0, 0, elapsed(started));
+		}
+
+		int empties = Long.bitCount(~(own | opp));
+		if (empties <= solveEmpties) {
+			return solveRoot(own, opp, rootMoves, started);
+		}
+
+		int bestMove = rootMoves[0];
+		int bestScore = evaluator.evaluate(playerChar);
+		int finishedDepth = 0;
+
+		for (int depth = 1; depth <= maxDepth; depth++) {
+			int alpha = -INFINITY;
+			int depthBest = 0;
+
+			for (int i = 0; i < rootMoves.length; i++) {
+				int square = rootMoves[i];
+				long flips = Bitboards.flips(own, opp, square);
+
+				makeMove(square, flips, playerChar, otherChar);
+				int score = -negamax(opp & ~flips,
+						own | flips | (1L << square), otherChar,
+						child(hash, square, flips, playerChar), depth - 1,
+						-INFINITY, -alpha);
+				undoMove(square, flips, playerChar, otherChar);
+
+				if (stopped) {
+					break;
+				}
+				if (score > alpha) {
+					alpha = score;
+					depthBest = i;
+				}
+			}
+			if (stopped) {
+				break;
+			}
+
+			// Search the best move first next time so the window is as
+			// narrow as possible for every other move.
+			bestMove = rootMoves[depthBest];
+			bestScore = alpha;
+			finishedDepth = depth;
+			System.arraycopy(rootMoves, 0, rootMoves, 1, depthBest);
+			rootMoves[0] = bestMove;
+
+			if (depth >= empties) {
+				// The whole rest of the game has been searched.
+				break;
+			}
+		}
+
+		return new SearchResult(bestMove, bestScore, finishedDepth, nodes,
+				elapsed(started));
+	}
+
+	/**
+	 * This finds the best few moves for a player, each with its score. It
+	 * searches one move deeper at a time like search(), and hands the moves
+	 * found at each finished depth to progress so they can be shown while
+	 * the search goes on.
+	 *
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @param playerChar
+	 *            is the player to move, 'B' or 'W'.
+	 * @param count
+	 *            is how many moves to find.
+	 * @param maxDepth
+	 *            is how many moves ahead to look.
+	 * @param millis
+	 *            is how long the search may take, or 0 for no limit.
+	 * @param progress
+	 *            is given the moves after every finished depth, or is null.
+	 * @return is a SearchResult[] of up to count moves from best to worst,
+	 *         from the last finished depth. It is empty if the player has no
+	 *         move or no depth was finished.
+	 */
+	public SearchResult[] searchLines(long black, long white, char playerChar,
+			int count, int maxDepth, long millis,
+			Consumer<SearchResult[]> progress) {
+		long started = System.nanoTime();
+		deadline = Long.MAX_VALUE;
+		if (millis > 0) {
+			deadline = started + millis * 1000000L;
+		}
+		stopped = false;
+		nodes = 0;
+		evaluator.reset(Bitboards.toBoard(black, white));
+
+		char otherChar = other(playerChar);
+		long own = black;
+		long opp = white;
+		long hash = Zobrist.hash(black, white);
+		if (playerChar == 'W') {
+			own = white;
+			opp = black;
+			hash ^= Zobrist.WHITE_TO_MOVE;
+		}
+
+		int[] rootMoves = squares(Bitboards.moves(own, opp));
+		int[] scores = new int[rootMoves.length];
+		int empties = Long.bitCount(~(own | opp));
+		SearchResult[] lines = new SearchResult[0];
+		if (rootMoves.length == 0) {
+			return lines;
+		}
+
+		for (int depth = 1; depth <= maxDepth; depth++) {
+			for (int i = 0; i < rootMoves.length; i++) {
+				// The first count moves are scored exactly. After that a move
+				// only matters if it beats the worst move being kept.
+				int alpha = -INFINITY;
+				if (i >= count) {
+					alpha = kthBest(scores, i, count);
+				}
+
+				int square = rootMoves[i];
+				long flips = Bitboards.flips(own, opp, square);
+				makeMove(square, flips, playerChar, otherChar);
+				scores[i] = -negamax(opp & ~flips,
+						own | flips | (1L << square), otherChar,
+						child(hash, square, flips, playerChar), depth - 1,
+						-INFINITY, -alpha);
+				undoMove(square, flips, playerChar, otherChar);
+
+				if (stopped) {
+					break;
+				}
+			}
+			if (stopped) {
+				break;
+			}
+
+			// Sort best first, which is also the best order to search them
+			// in at the next depth.
+			for (int i = 1; i < rootMoves.length; i++) {
+				for (int j = i; (j > 0) && (scores[j] > scores[j - 1]); j--) {
+					int swap = scores[j];
+					scores[j] = scores[j - 1];
+					scores[j - 1] = swap;
+					swap = rootMoves[j];
+					rootMoves[j] = rootMoves[j - 1];
+					rootMoves[j - 1] = swap;
+				}
+			}
+
+			lines = new SearchResult[Math.min(count, rootMoves.length)];
+			for (int i = 0; i < lines.length; i++) {
+				lines[i] = new SearchResult(rootMoves[i], scores[i], depth,
+						nodes, elapsed(started));
+			}
+			if (progress != null) {
+				progress.accept(lines);
+			}
+
+			if (depth >= empties) {
+				break;
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * This finds the count-th highest of the first few scores.
+	 *
+	 * @param scores
+	 *            is the list of scores.
+	 * @param length
+	 *            is how many scores from the front of the list to look at.
+	 * @param count
+	 *            is which highest score to find, from 1.
+	 * @return is the count-th highest score.
+	 */
+	private static int kthBest(int[] scores, int length, int count) {
+		int[] sorted = new int[length];
+		System.arraycopy(scores, 0, sorted, 0, length);
+		Arrays.sort(sorted);
+		return sorted[length - count];
+	}
+
+	/**
+	 * This solves the rest of the game exactly from the root.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @param rootMoves
+	 *            is the list of legal moves.
+	 * @param started
+	 *            is the System.nanoTime() the search started at.
+	 * @return is a SearchResult whose score is the final disc difference,
+	 *         with empty squares going to the winner, and whose depth is the
+	 *         number of empty squares. If time ran out the best move found so
+	 *         far is returned with a depth of 0.
+	 */
+	private SearchResult solveRoot(long own, long opp, int[] rootMoves,
+			long started) {
+		// The root is ordered the same way as every other position.
+		int[] order = fastestFirst(own, opp, Bitboards.moves(own, opp));
+		if (table != null) {
+			long entry = table.probe(Zobrist.hash(own, opp) ^ SOLVE_KEY);
+			if (entry != TranspositionTable.NONE) {
+				moveToFront(order, TranspositionTable.move(entry));
+			}
+		}
+
+		int alpha = -INFINITY;
+		int bestMove = order[0];
+		for (int i = 0; i < order.length; i++) {
+			int square = order[i];
+			long flips = Bitboards.flips(own, opp, square);
+			long nextOwn = opp & ~flips;
+			long nextOpp = own | flips | (1L << square);
+
+			int score;
+			if (i == 0) {
+				score = -solve(nextOwn, nextOpp, -INFINITY, INFINITY);
+			} else {
+				// Later moves only have to be shown to be no better than the
+				// best so far, and are searched again in full if they are.
+				score = -solve(nextOwn, nextOpp, -alpha - 1, -alpha);
+				if ((score > alpha) && !stopped) {
+					score = -solve(nextOwn, nextOpp, -INFINITY, -score);
+				}
+			}
+			if (stopped) {
+				break;
+			}
+			if (score > alpha) {
+				alpha = score;
+				bestMove = square;
+			}
+		}
+
+		int depth = Long.bitCount(~(own | opp));
+		if (stopped) {
+			depth = 0;
+		}
+		return new SearchResult(bestMove, alpha, depth, nodes,
+				elapsed(started));
+	}
+
+	/**
+	 * This is the recursive part of the exact solver. It works like
+	 * negamax() but never stops early and scores finished games by disc
+	 * difference, so it doesn't need the evaluator at all.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @param alpha
+	 *            is the score the player to move is already sure of.
+	 * @param beta
+	 *            is the score the other player won't allow more than.
+	 * @return is the final disc difference for the player to move.
+	 */
+	private int solve(long own, long opp, int alpha, int beta) {
+		nodes++;
+		if ((nodes % CLOCK_INTERVAL == 0)
+				&& (cancelled || (System.nanoTime() > deadline))) {
+			stopped = true;
+		}
+		if (stopped) {
+			return 0;
+		}
+		if (Long.bitCount(~(own | opp)) <= LATE_EMPTIES) {
+			return solveLate(own, opp, alpha, beta, false);
+		}
+
+		long legal = Bitboards.moves(own, opp);
+		if (legal == 0) {
+			if (Bitboards.moves(opp, own) == 0) {
+				return exactScore(own, opp);
+			}
+			return -solve(opp, own, -beta, -alpha);
+		}
+
+		// The other player's stable pieces are a floor on their final
+		// count, which caps how well the player to move can do.
+		int needed = (64 - alpha) / 2;
+		if ((alpha > -64) && (Long.bitCount(opp) >= needed)) {
+			int best = 64 - 2 * Stability.count(opp, own);
+			if (best <= alpha) {
+				return best;
+			}
+		}
+
+		int empties = Long.bitCount(~(own | opp));
+		int alphaStart = alpha;
+		long hash = 0;
+		int tableMove = Bitboards.PASS;
+		if ((table != null) && (empties >= TABLE_EMPTIES)) {
+			// The solver doesn't keep track of colours, but own and opp are
+			// the whole position with own to move, so hash them as they are.
+			hash = Zobrist.hash(own, opp) ^ SOLVE_KEY;
+			long entry = table.probe(hash);
+			if (entry != TranspositionTable.NONE) {
+				int score = TranspositionTable.score(entry);
+				int bound = TranspositionTable.bound(entry);
+				if ((bound == TranspositionTable.EXACT)
+						|| ((bound == TranspositionTable.LOWER)
+								&& (score >= beta))
+						|| ((bound == TranspositionTable.UPPER)
+								&& (score <= alpha))) {
+					return score;
+				}
+				tableMove = TranspositionTable.move(entry);
+			}
+		}
+
+		int[] order = null;
+		int count = Long.bitCount(legal);
+		if (empties > SORT_EMPTIES) {
+			order = fastestFirst(own, opp, legal);
+			moveToFront(order, tableMove);
+		} else if ((tableMove != Bitboards.PASS)
+				&& ((legal & (1L << tableMove)) != 0)) {
+			// Unsorted moves still try the table's move first.
+			legal &= ~(1L << tableMove);
+		} else {
+			tableMove = Bitboards.PASS;
+		}
+
+		int best = -INFINITY;
+		int bestMove = Bitboards.PASS;
+		for (int i = 0; i < count; i++) {
+			int square;
+			if (order != null) {
+				square = order[i];
+			} else if ((i == 0) && (tableMove != Bitboards.PASS)) {
+				square = tableMove;
+			} else {
+				square = Long.numberOfTrailingZeros(legal);
+				legal &= legal - 1;
+			}
+			long flips = Bitboards.flips(own, opp, square);
+			long nextOwn = opp & ~flips;
+			long nextOpp = own | flips | (1L << square);
+
+			// The first move is searched with the full window. The rest are
+			// first tested with an empty window, which is much cheaper, and
+			// only searched in full if they turn out better.
+			int score;
+			if (i == 0) {
+				score = -solve(nextOwn, nextOpp, -beta, -alpha);
+			} else {
+				score = -solve(nextOwn, nextOpp, -alpha - 1, -alpha);
+				if ((score > alpha) && (score < beta) && !stopped) {
+					score = -solve(nextOwn, nextOpp, -beta, -score);
+				}
+			}
+
+			if (score > best) {
+				best = score;
+				bestMove = square;
+				if (score > alpha) {
+					alpha = score;
+					if (alpha >= beta) {
+						break;
+					}
+				}
+			}
+		}
+
+		if ((hash != 0) && !stopped) {
+			table.store(hash, best, empties, bound(best, alphaStart, beta),
+					bestMove);
+		}
+		return best;
+	}
+
+	/**
+	 * This is the solver for the last few empty squares, where most of the
+	 * solver's positions are. Finding every legal move costs more than just
+	 * trying each empty square, so it tries them one at a time, and the last
+	 * square is scored without making the move at all.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @param alpha
+	 *            is the score the player to move is already sure of.
+	 * @param beta
+	 *            is the score the other player won't allow more than.
+	 * @param passed
+	 *            is true if the other player has just passed.
+	 * @return is the final disc difference for the player to move.
+	 */
+	private int solveLate(long own, long opp, int alpha, int beta,
+			boolean passed) {
+		long empty = ~(own | opp);
+		if (Long.bitCount(empty) == 1) {
+			return solveLast(own, opp, Long.numberOfTrailingZeros(empty));
+		}
+
+		int best = -INFINITY;
+		for (long bits = empty; bits != 0; bits &= bits - 1) {
+			int square = Long.numberOfTrailingZeros(bits);
+			if ((NEIGHBOURS[square] & opp) == 0) {
+				// A move has to be next to one of the other player's pieces.
+				continue;
+			}
+			long flips = Bitboards.flips(own, opp, square);
+			if (flips == 0) {
+				continue;
+			}
+			nodes++;
+			int score = -solveLate(opp & ~flips, own | flips | (1L << square),
+					-beta, -alpha, false);
+			if (score > best) {
+				best = score;
+				if (score > alpha) {
+					alpha = score;
+					if (alpha >= beta) {
+						break;
+					}
+				}
+			}
+		}
+
+		if (best == -INFINITY) {
+			if (passed) {
+				// Neither player can move, so the game is over.
+				return -exactScore(opp, own);
+			}
+			return -solveLate(opp, own, -beta, -alpha, true);
+		}
+		return best;
+	}
+
+	/**
+	 * This scores a position with one empty square left: whoever can play
+	 * there does, and the board is then full unless neither can.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @param square
+	 *            is the empty square.
+	 * @return is the final disc difference for the player to move.
+	 */
+	private int solveLast(long own, long opp, int square) {
+		nodes++;
+		long flips = Bitboards.flips(own, opp, square);
+		if (flips != 0) {
+			return 2 * (Long.bitCount(own | flips) + 1) - 64;
+		}
+		flips = Bitboards.flips(opp, own, square);
+		if (flips != 0) {
+			return 64 - 2 * (Long.bitCount(opp | flips) + 1);
+		}
+		return exactScore(own, opp);
+	}
+
+	/**
+	 * This sorts moves so the ones that leave the other player the fewest
+	 * replies come first. Those moves are the most likely to be best and
+	 * they have the smallest trees under them.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @param legal
+	 *            is the bitboard of legal moves.
+	 * @return is an int[] of squares in the order to try them.
+	 */
+	private static int[] fastestFirst(long own, long opp, long legal) {
+		int[] squares = squares(legal);
+		int[] replies = new int[squares.length];
+
+		for (int i = 0; i < squares.length; i++) {
+			long flips = Bitboards.flips(own, opp, squares[i]);
+			long nextOpp = opp & ~flips;
+			long nextOwn = own | flips | (1L << squares[i]);
+			long answers = Bitboards.moves(nextOpp, nextOwn);
+			replies[i] = 2 * Long.bitCount(answers)
+					+ Long.bitCount(answers & CORNERS);
+
+			// Insertion sort, which is fastest for a list this short.
+			for (int j = i; (j > 0) && (replies[j] < replies[j - 1]); j--) {
+				int swap = replies[j];
+				replies[j] = replies[j - 1];
+				replies[j - 1] = swap;
+				swap = squares[j];
+				squares[j] = squares[j - 1];
+				squares[j - 1] = swap;
+			}
+		}
+		return squares;
+	}
+
+	/**
+	 * @return is the evaluator this search scores positions with.
+	 */
+	public Evaluator getEvaluator() {
+		return evaluator;
+	}
+
+	/**
+	 * This is the recursive part of the search. Scores are always for the
+	 * player to move, so the score of a move is the negated score of the
+	 * position it leads to.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @param playerChar
+	 *            is the player to move.
+	 * @param hash
+	 *            is the position's hash, with the player to move.
+	 * @param depth
+	 *            is how many more moves to look ahead.
+	 * @param alpha
+	 *            is the score the player to move is already sure of.
+	 * @param beta
+	 *            is the score the other player won't allow more than.
+	 * @return is the score of the position for playerChar.
+	 */
+	private int negamax(long own, long opp, char playerChar, long hash,
+			int depth, int alpha, int beta) {
+		nodes++;
+		if ((nodes % CLOCK_INTERVAL == 0)
+				&& (cancelled || (System.nanoTime() > deadline))) {
+			stopped = true;
+		}
+		if (stopped) {
+			return 0;
+		}
+
+		char otherChar = other(playerChar);
+		long legal = Bitboards.moves(own, opp);
+		if (legal == 0) {
+			if (Bitboards.moves(opp, own) == 0) {
+				return finalScore(own, opp);
+			}
+			// The player has to pass, which doesn't use up any depth.
+			return -negamax(opp, own, otherChar,
+					hash ^ Zobrist.WHITE_TO_MOVE, depth, -beta, -alpha);
+		}
+		if (depth == 0) {
+			return evaluator.evaluate(playerChar);
+		}
+
+		int alphaStart = alpha;
+		int tableMove = Bitboards.PASS;
+		if (table != null) {
+			long entry = table.probe(hash);
+			if (entry != TranspositionTable.NONE) {
+				int score = TranspositionTable.score(entry);
+				int bound = TranspositionTable.bound(entry);
+				if ((TranspositionTable.depth(entry) >= depth)
+						&& ((bound == TranspositionTable.EXACT)
+								|| ((bound == TranspositionTable.LOWER)
+										&& (score >= beta))
+								|| ((bound == TranspositionTable.UPPER)
+										&& (score <= alpha)))) {
+					return score;
+				}
+				// Even when it was too shallow to use, the move that was best
+				// last time is the most likely to be best now.
+				tableMove = TranspositionTable.move(entry);
+			}
+		}
+
+		// If the other player has more than half the board locked up the
+		// game is lost however it goes, and the stable pieces cap the score.
+		if ((Long.bitCount(opp) > 32) && (alpha > -WIN)) {
+			int stable = Stability.count(opp, own);
+			if ((stable > 32) && (-WIN + 64 - 2 * stable <= alpha)) {
+				return -WIN + 64 - 2 * stable;
+			}
+		}
+
+		int best = -INFINITY;
+		int bestMove = Bitboards.PASS;
+		if ((tableMove != Bitboards.PASS)
+				&& ((legal & (1L << tableMove)) != 0)) {
+			legal &= ~(1L << tableMove);
+		} else {
+			tableMove = Bitboards.PASS;
+		}
+
+		// The table's move goes first, then the rest from lowest square up.
+		for (int square = tableMove; (square != Bitboards.PASS)
+				|| (legal != 0); square = Bitboards.PASS) {
+			if (square == Bitboards.PASS) {
+				square = Long.numberOfTrailingZeros(legal);
+				legal &= legal - 1;
+			}
+			long flips = Bitboards.flips(own, opp, square);
+
+			makeMove(square, flips, playerChar, otherChar);
+			int score = -negamax(opp & ~flips, own | flips | (1L << square),
+					otherChar, child(hash, square, flips, playerChar),
+					depth - 1, -beta, -alpha);
+			undoMove(square, flips, playerChar, otherChar);
+
+			if (score > best) {
+				best = score;
+				bestMove = square;
+				if (score > alpha) {
+					alpha = score;
+					if (alpha >= beta) {
+						break;
+					}
+				}
+			}
+		}
+
+		if ((table != null) && !stopped) {
+			table.store(hash, best, depth, bound(best, alphaStart, beta),
+					bestMove);
+		}
+		return best;
+	}
+
+	/**
+	 * This works out the hash of the position a move leads to.
+	 *
+	 * @param hash
+	 *            is the hash of the position the move is made from.
+	 * @param square
+	 *            is the square the piece is placed on.
+	 * @param flips
+	 *            is the bitboard of flipped pieces.
+	 * @param playerChar
+	 *            is the player making the move.
+	 * @return is the hash of the new position, with the other player to
+	 *         move.
+	 */
+	private static long child(long hash, int square, long flips,
+			char playerChar) {
+		return hash ^ Zobrist.piece(square, playerChar) ^ Zobrist.flips(flips)
+				^ Zobrist.WHITE_TO_MOVE;
+	}
+
+	/**
+	 * This works out what a score found with an alpha-beta window says
+	 * about the real score.
+	 *
+	 * @param score
+	 *            is the score found.
+	 * @param alpha
+	 *            is the alpha the position was searched with.
+	 * @param beta
+	 *            is the beta the position was searched with.
+	 * @return is TranspositionTable.LOWER, UPPER or EXACT.
+	 */
+	private static int bound(int score, int alpha, int beta) {
+		if (score <= alpha) {
+			return TranspositionTable.UPPER;
+		} else if (score >= beta) {
+			return TranspositionTable.LOWER;
+		}
+		return TranspositionTable.EXACT;
+	}
+
+	/**
+	 * This moves one square to the front of a move list, keeping the order
+	 * of the rest.
+	 *
+	 * @param squares
+	 *            is the move list.
+	 * @param square
+	 *            is the square to move, or Bitboards.PASS to leave the list
+	 *            as it is.
+	 */
+	private static void moveToFront(int[] squares, int square) {
+		for (int i = 0; i < squares.length; i++) {
+			if (squares[i] == square) {
+				System.arraycopy(squares, 0, squares, 1, i);
+				squares[0] = square;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * This tells the evaluator about a move.
+	 *
+	 * @param square
+	 *            is the square the piece is placed on.
+	 * @param flips
+	 *            is the bitboard of flipped pieces.
+	 * @param playerChar
+	 *            is the player making the move.
+	 * @param otherChar
+	 *            is the other player.
+	 */
+	private void makeMove(int square, long flips, char playerChar,
+			char otherChar) {
+		evaluator.update(square & 7, square >> 3, '_', playerChar);
+		for (long bits = flips; bits != 0; bits &= bits - 1) {
+			int flipped = Long.numberOfTrailingZeros(bits);
+			evaluator.update(flipped & 7, flipped >> 3, otherChar, playerChar);
+		}
+	}
+
+	/**
+	 * This tells the evaluator a move has been taken back.
+	 *
+	 * @param square
+	 *            is the square the piece was placed on.
+	 * @param flips
+	 *            is the bitboard of flipped pieces.
+	 * @param playerChar
+	 *            is the player who made the move.
+	 * @param otherChar
+	 *            is the other player.
+	 */
+	private void undoMove(int square, long flips, char playerChar,
+			char otherChar) {
+		evaluator.update(square & 7, square >> 3, playerChar, '_');
+		for (long bits = flips; bits != 0; bits &= bits - 1) {
+			int flipped = Long.numberOfTrailingZeros(bits);
+			evaluator.update(flipped & 7, flipped >> 3, playerChar, otherChar);
+		}
+	}
+
+	/**
+	 * This scores a finished game for the player to move.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @return is WIN plus the disc difference for a win, minus WIN plus the
+	 *         disc difference for a loss and 0 for a tie.
+	 */
+	private static int finalScore(long own, long opp) {
+		int difference = Long.bitCount(own) - Long.bitCount(opp);
+		if (difference > 0) {
+			return WIN + difference;
+		} else if (difference < 0) {
+			return -WIN + difference;
+		}
+		return 0;
+	}
+
+	/**
+	 * This scores a finished game by disc difference, with the empty squares
+	 * going to the winner as in tournament play.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @return is the final disc difference for the player to move.
+	 */
+	private static int exactScore(long own, long opp) {
+		int difference = Long.bitCount(own) - Long.bitCount(opp);
+		int empties = Long.bitCount(~(own | opp));
+		if (difference > 0) {
+			return difference + empties;
+		} else if (difference < 0) {
+			return difference - empties;
+		}
+		return 0;
+	}
+
+	/**
+	 * This lists the squares set on a bitboard.
+	 *
+	 * @param bits
+	 *            is the bitboard.
+	 * @return is an int[] of squares from lowest to highest.
+	 */
+	private static int[] squares(long bits) {
+		int[] squares = new int[Long.bitCount(bits)];
+		for (int i = 0; bits != 0; i++, bits &= bits - 1) {
+			squares[i] = Long.numberOfTrailingZeros(bits);
+		}
+		return squares;
+	}
+
+	/**
+	 * @param playerChar
+	 *            is 'B' or 'W'.
+	 * @return is the other player's char.
+	 */
+	private static char other(char playerChar) {
+		if (playerChar == 'B') {
+			return 'W';
+		}
+		return 'B';
+	}
+
+	/**
+	 * @param started
+	 *            is the System.nanoTime() the search started at.
+	 * @return is how many milliseconds have gone by since then.
+	 */
+	private static long elapsed(long started) {
+		return (System.nanoTime() - started) / 1000000L;
+	}
+
+}
@@ -0,0 +1,88 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This holds what a search found: the move it picked, the
+ *         score it gave that move and how much work it took to get there.
+ *
+ */
+public class SearchResult {
+	private final int move;
+	private final int score;
+	private final int depth;
+	private final long nodes;
+	private final long millis;
+
+	/**
+	 * This is the constructor for a search result.
+	 *
+	 * @param move
+	 *            is the chosen square, or Bitboards.PASS.
+	 * @param score
+	 *            is the score of the chosen move for the player to move.
+	 * @param depth
+	 *            is the deepest search that finished.
+	 * @param nodes
+	 *            is how many positions were searched.
+	 * @param millis
+	 *            is how long the search took in milliseconds.
+	 */
+	public SearchResult(int move, int score, int depth, long nodes,
+			long millis) {
+		this.move = move;
+		this.score = score;
+		this.depth = depth;
+		this.nodes = nodes;
+		this.millis = millis;
+	}
+
+	/**
+	 * @return is the chosen square (y * 8 + x), or Bitboards.PASS.
+	 */
+	public int getMove() {
+		return move;
+	}
+
+	/**
+	 * @return is the score of the chosen move for the player to move.
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * @return is the deepest search that finished.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return is how many positions were searched.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return is how long the search took in milliseconds.
+	 */
+	public long getMillis() {
+		return millis;
+	}
+
+	/**
+	 * This describes the result in one line, like "d3 12 (depth 6, 41234
+	 * nodes, 18 ms)".
+	 *
+	 * @return is the description.
+	 */
+	@Override
+	public String toString() {
+		return Bitboards.name(move) + " " + score + " (depth " + depth + ", "
+				+ nodes + " nodes, " + millis + " ms)";
+	}
+
+}
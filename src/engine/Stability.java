@@ -0,0 +1,118 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This finds pieces that can never be flipped for the rest
+ *         of the game. A piece can only be flipped along one of its four lines
+ *         (across, down and the two diagonals), and it is safe along a line if
+ *         the line is full or if the square next to it on that line is the
+ *         edge of the board or another safe piece of the same colour. Pieces
+ *         that are safe along all four lines are stable. Starting from the
+ *         edges and full lines, stability spreads inward until nothing
+ *         changes.
+ *
+ */
+public final class Stability {
+	private static final long FILE_A = 0x0101010101010101L;
+	private static final long FILE_H = FILE_A << 7;
+	private static final long RANK_1 = 0xFFL;
+	private static final long RANK_8 = RANK_1 << 56;
+	private static final long EDGES = FILE_A | FILE_H | RANK_1 | RANK_8;
+
+	// The 15 diagonals going down-right and the 15 going up-right.
+	private static final long[] DOWN_RIGHT = new long[15];
+	private static final long[] UP_RIGHT = new long[15];
+
+	static {
+		for (int square = 0; square < 64; square++) {
+			int x = square & 7;
+			int y = square >> 3;
+			DOWN_RIGHT[x - y + 7] |= 1L << square;
+			UP_RIGHT[x + y] |= 1L << square;
+		}
+	}
+
+	/**
+	 * This class only holds static helpers.
+	 */
+	private Stability() {
+
+	}
+
+	/**
+	 * This finds the stable pieces of one player.
+	 *
+	 * @param own
+	 *            is the bitboard of the player whose pieces are checked.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @return is a bitboard of own's pieces that can never be flipped.
+	 */
+	public static long stable(long own, long opp) {
+		long occupied = own | opp;
+
+		long fullAcross = 0;
+		long fullDown = 0;
+		for (int i = 0; i < 8; i++) {
+			long row = RANK_1 << (i * 8);
+			long column = FILE_A << i;
+			if ((occupied & row) == row) {
+				fullAcross |= row;
+			}
+			if ((occupied & column) == column) {
+				fullDown |= column;
+			}
+		}
+
+		long fullDownRight = 0;
+		long fullUpRight = 0;
+		for (int i = 0; i < 15; i++) {
+			if ((occupied & DOWN_RIGHT[i]) == DOWN_RIGHT[i]) {
+				fullDownRight |= DOWN_RIGHT[i];
+			}
+			if ((occupied & UP_RIGHT[i]) == UP_RIGHT[i]) {
+				fullUpRight |= UP_RIGHT[i];
+			}
+		}
+
+		// These never change, so work them out before spreading.
+		long safeAcross = fullAcross | FILE_A | FILE_H;
+		long safeDown = fullDown | RANK_1 | RANK_8;
+		long safeDownRight = fullDownRight | EDGES;
+		long safeUpRight = fullUpRight | EDGES;
+
+		long stable = 0;
+		long previous = -1;
+		while (stable != previous) {
+			previous = stable;
+			// The direction flags match Bitboards: 0 up, 1 down, 2 right,
+			// 3 left, 4 down-right, 5 up-left, 6 up-right and 7 down-left.
+			long across = safeAcross | Bitboards.shift(stable, 2)
+					| Bitboards.shift(stable, 3);
+			long down = safeDown | Bitboards.shift(stable, 0)
+					| Bitboards.shift(stable, 1);
+			long downRight = safeDownRight | Bitboards.shift(stable, 4)
+					| Bitboards.shift(stable, 5);
+			long upRight = safeUpRight | Bitboards.shift(stable, 6)
+					| Bitboards.shift(stable, 7);
+			stable = own & across & down & downRight & upRight;
+		}
+		return stable;
+	}
+
+	/**
+	 * This counts the stable pieces of one player.
+	 *
+	 * @param own
+	 *            is the bitboard of the player whose pieces are counted.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @return is the number of own's pieces that can never be flipped.
+	 */
+	public static int count(long own, long opp) {
+		return Long.bitCount(stable(own, opp));
+	}
+
+}
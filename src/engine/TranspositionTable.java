@@ -0,0 +1,410 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This remembers what the search found out about positions
+ *         it has already searched, so a position reached by a different order
+ *         of moves, or searched again one move deeper, doesn't start from
+ *         nothing. Each entry is the position's hash and one long packing the
+ *         score, the depth it was searched to, what kind of bound the score
+ *         is and the best move.
+ *
+ *         Entries sit in buckets of two. A new entry replaces the shallower
+ *         of the two so deep results stick around. The key is stored XORed
+ *         with the data, so if two threads write the same entry at once the
+ *         torn entry just fails to match instead of giving a wrong answer,
+ *         and the table can be shared by parallel searches without locks.
+ *
+ *         A table can be saved to a snapshot file and loaded back when the
+ *         program starts again, so it doesn't have to relearn every position
+ *         it already knew.
+ *
+ */
+public class TranspositionTable {
+
+	/**
+	 * This is what probe() returns when the position isn't in the table.
+	 */
+	public static final long NONE = 0;
+
+	/**
+	 * The score is a lower bound: the real score is at least this.
+	 */
+	public static final int LOWER = 1;
+
+	/**
+	 * The score is an upper bound: the real score is at most this.
+	 */
+	public static final int UPPER = 2;
+
+	/**
+	 * The score is exact.
+	 */
+	public static final int EXACT = 3;
+
+	private static final int WAYS = 2;
+
+	// "RVTS" at the start of a snapshot file.
+	private static final int MAGIC = 0x52565453;
+	private static final int VERSION = 2;
+	private static final int HEADER = 32;
+
+	// Snapshots are copied through mapped pieces of at most this many longs.
+	private static final int CHUNK = 1 << 27;
+
+	private final int bucketMask;
+	private final long[] keys;
+	private final long[] data;
+
+	/**
+	 * This is the constructor for an empty table.
+	 *
+	 * @param maxBytes
+	 *            is the most memory the table may use. The number of buckets
+	 *            is rounded down to a power of two so it may use less.
+	 */
+	public TranspositionTable(long maxBytes) {
+		long buckets = Long.highestOneBit(Math.max(1, maxBytes / (16 * WAYS)));
+		buckets = Math.min(buckets, 1L << 29);
+
+		this.bucketMask = (int) buckets - 1;
+		this.keys = new long[(int) buckets * WAYS];
+		this.data = new long[(int) buckets * WAYS];
+	}
+
+	/**
+	 * This reads a table back from a snapshot file written by save(). The
+	 * file is memory-mapped and copied into the table in bulk.
+	 *
+	 * The file is big-endian and laid out as the magic number and the
+	 * version (ints), the number of entries, a check hash and the
+	 * evaluator's fingerprint (longs), then every key followed by every
+	 * entry. The check hash is the hash of the starting position, so a
+	 * snapshot made with other Zobrist numbers is turned down instead of
+	 * giving wrong scores, and the fingerprint does the same for a snapshot
+	 * whose scores came from another evaluator.
+	 *
+	 * @param file
+	 *            is the path of the snapshot file.
+	 * @param fingerprint
+	 *            is Evaluator.fingerprint() of the evaluator the table will
+	 *            be searched with.
+	 * @return is a TranspositionTable holding the snapshot's entries.
+	 * @throws IOException
+	 *             This is thrown when the file can't be read or doesn't match
+	 *             this version of the program.
+	 */
+	public static TranspositionTable load(Path file, long fingerprint)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			channel.read(header, 0);
+			header.flip();
+
+			if ((header.remaining() < HEADER) || (header.getInt() != MAGIC)) {
+				throw new IOException(file + " is not a table snapshot.");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException(
+						"Unsupported table snapshot version " + version + ".");
+			}
+			long capacity = header.getLong();
+			if (header.getLong() != checkHash()) {
+				throw new IOException(
+						file + " was made with different hash numbers.");
+			}
+			if (header.getLong() != fingerprint) {
+				throw new IOException(
+						file + " was made with a different evaluator.");
+			}
+			if ((capacity < WAYS) || (capacity > (1L << 30))
+					|| (Long.bitCount(capacity) != 1)
+					|| (channel.size() != HEADER + capacity * 16)) {
+				throw new IOException(file + " is the wrong size.");
+			}
+
+			TranspositionTable table = new TranspositionTable(capacity * 16);
+			table.copy(channel, FileChannel.MapMode.READ_ONLY);
+			return table;
+		}
+	}
+
+	/**
+	 * This writes the table to a snapshot file that load() can read back.
+	 * The snapshot is written next to the file and then moved over it, so a
+	 * crash part way through never leaves a broken snapshot behind.
+	 *
+	 * @param file
+	 *            is the path of the snapshot file.
+	 * @param fingerprint
+	 *            is Evaluator.fingerprint() of the evaluator the table's
+	 *            scores came from.
+	 * @throws IOException
+	 *             This is thrown when the file can't be written.
+	 */
+	public void save(Path file, long fingerprint) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent == null) {
+			parent = Paths.get(".");
+		}
+		Path temp = Files.createTempFile(parent, "table", ".tmp");
+
+		try {
+			try (FileChannel channel = FileChannel.open(temp,
+					StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER);
+				header.putInt(MAGIC);
+				header.putInt(VERSION);
+				header.putLong(keys.length);
+				header.putLong(checkHash());
+				header.putLong(fingerprint);
+				header.rewind();
+				channel.write(header, 0);
+
+				copy(channel, FileChannel.MapMode.READ_WRITE);
+				channel.force(true);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * This looks up a position.
+	 *
+	 * @param hash
+	 *            is the position's hash.
+	 * @return is the packed entry, or NONE if the position isn't stored.
+	 */
+	public long probe(long hash) {
+		int base = ((int) hash & bucketMask) * WAYS;
+		for (int i = base; i < base + WAYS; i++) {
+			long entry = data[i];
+			if ((entry != NONE) && ((keys[i] ^ entry) == hash)) {
+				return entry;
+			}
+		}
+
+		long entry = missed(hash);
+		if (entry != NONE) {
+			put(hash, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * This stores what the search found out about a position.
+	 *
+	 * @param hash
+	 *            is the position's hash.
+	 * @param score
+	 *            is the score.
+	 * @param depth
+	 *            is how deep the position was searched, from 0 to 255.
+	 * @param bound
+	 *            is LOWER, UPPER or EXACT.
+	 * @param move
+	 *            is the best move found, or Bitboards.PASS.
+	 */
+	public void store(long hash, int score, int depth, int bound, int move) {
+		put(hash, pack(score, depth, bound, move));
+	}
+
+	/**
+	 * This empties the table.
+	 */
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(data, NONE);
+	}
+
+	/**
+	 * @return is the number of entries the table can hold.
+	 */
+	public int getCapacity() {
+		return keys.length;
+	}
+
+	/**
+	 * @param entry
+	 *            is a packed entry.
+	 * @return is the entry's score.
+	 */
+	public static int score(long entry) {
+		return (int) entry;
+	}
+
+	/**
+	 * @param entry
+	 *            is a packed entry.
+	 * @return is how deep the entry's position was searched.
+	 */
+	public static int depth(long entry) {
+		return (int) (entry >>> 32) & 0xFF;
+	}
+
+	/**
+	 * @param entry
+	 *            is a packed entry.
+	 * @return is LOWER, UPPER or EXACT.
+	 */
+	public static int bound(long entry) {
+		return (int) (entry >>> 40) & 0x3;
+	}
+
+	/**
+	 * @param entry
+	 *            is a packed entry.
+	 * @return is the entry's best move, or Bitboards.PASS.
+	 */
+	public static int move(long entry) {
+		return ((int) (entry >>> 42) & 0xFF) - 1;
+	}
+
+	/**
+	 * This is called with an entry that has been pushed out of the table to
+	 * make room for a new one. It does nothing here; a table with somewhere
+	 * else to keep old entries overrides it.
+	 *
+	 * @param hash
+	 *            is the evicted position's hash.
+	 * @param entry
+	 *            is the evicted packed entry.
+	 */
+	protected void evicted(long hash, long entry) {
+
+	}
+
+	/**
+	 * This is called when a position isn't in the table. It finds nothing
+	 * here; a table with somewhere else to keep old entries overrides it.
+	 *
+	 * @param hash
+	 *            is the position's hash.
+	 * @return is a packed entry from elsewhere, or NONE.
+	 */
+	protected long missed(long hash) {
+		return NONE;
+	}
+
+	/**
+	 * This gets the raw key and entry stored in one slot, for subclasses
+	 * that copy the whole table somewhere.
+	 *
+	 * @param slot
+	 *            is the slot, from 0 to getCapacity() - 1.
+	 * @param out
+	 *            is a long[2] the hash and entry are written into. The entry
+	 *            is NONE for an empty slot.
+	 */
+	protected void slot(int slot, long[] out) {
+		long entry = data[slot];
+		out[0] = keys[slot] ^ entry;
+		out[1] = entry;
+	}
+
+	/**
+	 * This is a helper that puts a packed entry into its bucket.
+	 *
+	 * @param hash
+	 *            is the position's hash.
+	 * @param entry
+	 *            is the packed entry.
+	 */
+	protected void put(long hash, long entry) {
+		int base = ((int) hash & bucketMask) * WAYS;
+		int victim = base;
+
+		for (int i = base; i < base + WAYS; i++) {
+			long current = data[i];
+			if ((current == NONE) || ((keys[i] ^ current) == hash)) {
+				victim = i;
+				break;
+			}
+			if (depth(current) < depth(data[victim])) {
+				victim = i;
+			}
+		}
+
+		long old = data[victim];
+		long oldHash = keys[victim] ^ old;
+		keys[victim] = hash ^ entry;
+		data[victim] = entry;
+
+		if ((old != NONE) && (oldHash != hash)) {
+			evicted(oldHash, old);
+		}
+	}
+
+	/**
+	 * This is a helper that copies the keys and entries between the table
+	 * and a snapshot file, a mapped piece at a time.
+	 *
+	 * @param channel
+	 *            is the open snapshot file.
+	 * @param mode
+	 *            is READ_ONLY to copy from the file into the table, or
+	 *            READ_WRITE to copy from the table into the file.
+	 * @throws IOException
+	 *             This is thrown when the file can't be mapped.
+	 */
+	private void copy(FileChannel channel, FileChannel.MapMode mode)
+			throws IOException {
+		long position = HEADER;
+		for (long[] array : new long[][]{keys, data}) {
+			for (int start = 0; start < array.length; start += CHUNK) {
+				int length = Math.min(CHUNK, array.length - start);
+				ByteBuffer mapped = channel.map(mode, position, length * 8L);
+				if (mode == FileChannel.MapMode.READ_ONLY) {
+					mapped.asLongBuffer().get(array, start, length);
+				} else {
+					mapped.asLongBuffer().put(array, start, length);
+				}
+				position += length * 8L;
+			}
+		}
+	}
+
+	/**
+	 * @return is the hash of the starting position, which changes if the
+	 *         Zobrist numbers ever do.
+	 */
+	private static long checkHash() {
+		return Zobrist.hash(Bitboards.START_BLACK, Bitboards.START_WHITE);
+	}
+
+	/**
+	 * This is a helper that packs an entry into a long.
+	 *
+	 * @param score
+	 *            is the score.
+	 * @param depth
+	 *            is the search depth.
+	 * @param bound
+	 *            is LOWER, UPPER or EXACT.
+	 * @param move
+	 *            is the best move, or Bitboards.PASS.
+	 * @return is the packed entry. It is never NONE since bound is never 0.
+	 */
+	private static long pack(int score, int depth, int bound, int move) {
+		return (score & 0xFFFFFFFFL) | ((long) (depth & 0xFF) << 32)
+				| ((long) bound << 40) | ((long) (move + 1) << 42);
+	}
+
+}
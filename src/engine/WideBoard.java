@@ -0,0 +1,313 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: These are bitboard helpers for boards of any even size up
+ *         to 16x16. A board with more than 64 squares doesn't fit in a long,
+ *         so a bitboard here is a long[] where square = y * size + x is bit
+ *         (square % 64) of word (square / 64). The board size is fixed when
+ *         the WideBoard is made and it works out its edge masks once.
+ *
+ *         Moves are found a whole direction at a time by shifting every word
+ *         at once, so the cost grows with the number of words rather than the
+ *         number of squares. The methods reuse scratch arrays, so a WideBoard
+ *         should only be used by one thread.
+ *
+ */
+public class WideBoard {
+
+	/**
+	 * This is the biggest board size supported.
+	 */
+	public static final int MAX_SIZE = 16;
+
+	private final int size;
+	private final int words;
+	private final int[] shifts;
+	private final int[] stepX;
+	private final int[] stepY;
+	private final long[] valid;
+	private final long[][] masks;
+
+	private final long[] empty;
+	private final long[] line;
+	private final long[] shifted;
+
+	/**
+	 * This is the constructor for the helpers of one board size.
+	 *
+	 * @param size
+	 *            is the number of squares along each side. It must be even
+	 *            and between 4 and MAX_SIZE.
+	 */
+	public WideBoard(int size) {
+		if ((size < 4) || (size > MAX_SIZE) || (size % 2 != 0)) {
+			throw new IllegalArgumentException("Board size must be even and "
+					+ "between 4 and " + MAX_SIZE + ".");
+		}
+		this.size = size;
+		this.words = (size * size + 63) / 64;
+
+		// The same eight directions, in the same order, as the direction
+		// flags in the controller and Bitboards.
+		this.shifts = new int[]{-size, size, 1, -1, size + 1, -size - 1,
+				-size + 1, size - 1};
+		this.stepX = new int[]{0, 0, 1, -1, 1, -1, 1, -1};
+		this.stepY = new int[]{-1, 1, 0, 0, 1, -1, -1, 1};
+
+		this.valid = new long[words];
+		long[] notFirstColumn = new long[words];
+		long[] notLastColumn = new long[words];
+		for (int square = 0; square < size * size; square++) {
+			set(valid, square);
+			if (square % size != 0) {
+				set(notFirstColumn, square);
+			}
+			if (square % size != size - 1) {
+				set(notLastColumn, square);
+			}
+		}
+
+		// A shift that moves pieces to the right wraps them into the first
+		// column of the next row, and one to the left wraps into the last
+		// column, so those columns are cleared after the shift.
+		this.masks = new long[8][];
+		for (int direction = 0; direction < 8; direction++) {
+			if (stepX[direction] > 0) {
+				masks[direction] = notFirstColumn;
+			} else if (stepX[direction] < 0) {
+				masks[direction] = notLastColumn;
+			} else {
+				masks[direction] = valid;
+			}
+		}
+
+		this.empty = new long[words];
+		this.line = new long[words];
+		this.shifted = new long[words];
+	}
+
+	/**
+	 * @return is the number of squares along each side.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return is the number of longs in a bitboard of this size.
+	 */
+	public int getWords() {
+		return words;
+	}
+
+	/**
+	 * @return is a new empty bitboard of this size.
+	 */
+	public long[] newBits() {
+		return new long[words];
+	}
+
+	/**
+	 * This moves every piece on a bitboard one square in a direction. Pieces
+	 * that would fall off the board are dropped. in and out may be the same
+	 * array.
+	 *
+	 * @param in
+	 *            is the bitboard to shift.
+	 * @param direction
+	 *            is a direction flag from 0 to 7.
+	 * @param out
+	 *            is where the shifted bitboard is written.
+	 */
+	public void shift(long[] in, int direction, long[] out) {
+		int amount = shifts[direction];
+		long[] mask = masks[direction];
+
+		if (amount > 0) {
+			// Bits move up into higher words, so work from the top down to
+			// read each word before it is overwritten.
+			for (int i = words - 1; i >= 0; i--) {
+				long carry = 0;
+				if (i > 0) {
+					carry = in[i - 1] >>> (64 - amount);
+				}
+				out[i] = ((in[i] << amount) | carry) & mask[i];
+			}
+		} else {
+			int down = -amount;
+			for (int i = 0; i < words; i++) {
+				long carry = 0;
+				if (i + 1 < words) {
+					carry = in[i + 1] << (64 - down);
+				}
+				out[i] = ((in[i] >>> down) | carry) & mask[i];
+			}
+		}
+	}
+
+	/**
+	 * This finds every square the player to move could place a piece on.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @param out
+	 *            is where the bitboard of legal moves is written.
+	 */
+	public void moves(long[] own, long[] opp, long[] out) {
+		for (int i = 0; i < words; i++) {
+			empty[i] = valid[i] & ~(own[i] | opp[i]);
+			out[i] = 0;
+		}
+
+		for (int direction = 0; direction < 8; direction++) {
+			shift(own, direction, line);
+			for (int i = 0; i < words; i++) {
+				line[i] &= opp[i];
+			}
+			// A line can hold at most size - 2 of the other player's pieces.
+			for (int step = 3; step < size; step++) {
+				shift(line, direction, shifted);
+				for (int i = 0; i < words; i++) {
+					line[i] |= shifted[i] & opp[i];
+				}
+			}
+			shift(line, direction, shifted);
+			for (int i = 0; i < words; i++) {
+				out[i] |= shifted[i] & empty[i];
+			}
+		}
+	}
+
+	/**
+	 * This checks whether the player to move has any legal move.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @param scratch
+	 *            is a bitboard the moves are written into along the way.
+	 * @return is true if there is at least one legal move.
+	 */
+	public boolean hasMove(long[] own, long[] opp, long[] scratch) {
+		moves(own, opp, scratch);
+		return !isEmpty(scratch);
+	}
+
+	/**
+	 * This finds every piece that would be flipped by a move.
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @param square
+	 *            is the square the piece is placed on.
+	 * @param out
+	 *            is where the bitboard of flipped pieces is written.
+	 * @return is how many pieces are flipped, which is 0 if the move is not
+	 *         legal.
+	 */
+	public int flips(long[] own, long[] opp, int square, long[] out) {
+		for (int i = 0; i < words; i++) {
+			out[i] = 0;
+		}
+		int count = 0;
+		int startX = square % size;
+		int startY = square / size;
+
+		for (int direction = 0; direction < 8; direction++) {
+			int x = startX + stepX[direction];
+			int y = startY + stepY[direction];
+			int run = 0;
+
+			while ((x >= 0) && (x < size) && (y >= 0) && (y < size)
+					&& get(opp, y * size + x)) {
+				run++;
+				x += stepX[direction];
+				y += stepY[direction];
+			}
+			if ((run == 0) || (x < 0) || (x >= size) || (y < 0) || (y >= size)
+					|| !get(own, y * size + x)) {
+				continue;
+			}
+
+			// Walk back over the run, marking each piece as flipped.
+			for (int i = 0; i < run; i++) {
+				x -= stepX[direction];
+				y -= stepY[direction];
+				set(out, y * size + x);
+			}
+			count += run;
+		}
+		return count;
+	}
+
+	/**
+	 * @param bits
+	 *            is a bitboard.
+	 * @param square
+	 *            is a square on it.
+	 * @return is true if the square's bit is set.
+	 */
+	public static boolean get(long[] bits, int square) {
+		return (bits[square >>> 6] & (1L << square)) != 0;
+	}
+
+	/**
+	 * This sets a square's bit.
+	 *
+	 * @param bits
+	 *            is a bitboard.
+	 * @param square
+	 *            is a square on it.
+	 */
+	public static void set(long[] bits, int square) {
+		bits[square >>> 6] |= 1L << square;
+	}
+
+	/**
+	 * This clears a square's bit.
+	 *
+	 * @param bits
+	 *            is a bitboard.
+	 * @param square
+	 *            is a square on it.
+	 */
+	public static void clear(long[] bits, int square) {
+		bits[square >>> 6] &= ~(1L << square);
+	}
+
+	/**
+	 * @param bits
+	 *            is a bitboard.
+	 * @return is the number of bits set.
+	 */
+	public static int count(long[] bits) {
+		int count = 0;
+		for (long word : bits) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * @param bits
+	 *            is a bitboard.
+	 * @return is true if no bits are set.
+	 */
+	public static boolean isEmpty(long[] bits) {
+		for (long word : bits) {
+			if (word != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,266 @@
+package engine;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is the look-ahead for boards that aren't 8x8. It is
+ *         the same iterative deepening alpha-beta search as Search, but works
+ *         on WideBoard bitboards and scores positions by disc difference,
+ *         since the evaluators are trained for 8x8 only.
+ *
+ *         Every level of the search has its own preallocated bitboards, so
+ *         searching doesn't create any garbage however big the board is.
+ *
+ */
+public class WideSearch {
+	// How many positions are searched between looks at the clock.
+	private static final int CLOCK_INTERVAL = 1024;
+
+	private final WideBoard geometry;
+	private final int squares;
+
+	private long[][] owns;
+	private long[][] opps;
+	private long[][] legals;
+	private long[][] flips;
+
+	private long nodes;
+	private long deadline;
+	private boolean stopped;
+
+	/**
+	 * This is the constructor for a search on one board size.
+	 *
+	 * @param size
+	 *            is the number of squares along each side.
+	 */
+	public WideSearch(int size) {
+		this.geometry = new WideBoard(size);
+		this.squares = size * size;
+		allocate(1);
+	}
+
+	/**
+	 * This finds the best move for a player.
+	 *
+	 * @param black
+	 *            is the bitset of black pieces.
+	 * @param white
+	 *            is the bitset of white pieces.
+	 * @param playerChar
+	 *            is the player to move, 'B' or 'W'.
+	 * @param maxDepth
+	 *            is how many moves ahead to look.
+	 * @param millis
+	 *            is how long the search may take, or 0 for no limit.
+	 * @return is a SearchResult whose move is y * size + x, or
+	 *         Bitboards.PASS.
+	 */
+	public SearchResult search(long[] black, long[] white, char playerChar,
+			int maxDepth, long millis) {
+		long started = System.nanoTime();
+		deadline = Long.MAX_VALUE;
+		if (millis > 0) {
+			deadline = started + millis * 1000000L;
+		}
+		stopped = false;
+		nodes = 0;
+
+		int empties = squares - WideBoard.count(black)
+				- WideBoard.count(white);
+		maxDepth = Math.min(maxDepth, empties);
+		// Passes don't use up depth, so leave room for one after each move.
+		allocate(2 * maxDepth + 2);
+
+		long[] own = owns[0];
+		long[] opp = opps[0];
+		if (playerChar == 'B') {
+			System.arraycopy(black, 0, own, 0, own.length);
+			System.arraycopy(white, 0, opp, 0, opp.length);
+		} else {
+			System.arraycopy(white, 0, own, 0, own.length);
+			System.arraycopy(black, 0, opp, 0, opp.length);
+		}
+
+		geometry.moves(own, opp, legals[0]);
+		int[] rootMoves = new int[WideBoard.count(legals[0])];
+		int count = 0;
+		for (int square = 0; square < squares; square++) {
+			if (WideBoard.get(legals[0], square)) {
+				rootMoves[count] = square;
+				count++;
+			}
+		}
+		if (count == 0) {
+			return new SearchResult(Bitboards.PASS, evaluate(own, opp), 0, 0,
+					elapsed(started));
+		}
+
+		int bestMove = rootMoves[0];
+		int bestScore = evaluate(own, opp);
+		int finishedDepth = 0;
+
+		for (int depth = 1; depth <= maxDepth; depth++) {
+			int alpha = -Search.INFINITY;
+			int depthBest = 0;
+
+			for (int i = 0; i < count; i++) {
+				play(0, rootMoves[i]);
+				int score = -negamax(1, depth - 1, -Search.INFINITY, -alpha);
+				if (stopped) {
+					break;
+				}
+				if (score > alpha) {
+					alpha = score;
+					depthBest = i;
+				}
+			}
+			if (stopped) {
+				break;
+			}
+
+			bestMove = rootMoves[depthBest];
+			bestScore = alpha;
+			finishedDepth = depth;
+			System.arraycopy(rootMoves, 0, rootMoves, 1, depthBest);
+			rootMoves[0] = bestMove;
+		}
+
+		return new SearchResult(bestMove, bestScore, finishedDepth, nodes,
+				elapsed(started));
+	}
+
+	/**
+	 * This is the recursive part of the search. The position to search is
+	 * owns[ply] and opps[ply], with owns[ply] to move.
+	 *
+	 * @param ply
+	 *            is how far below the root the position is.
+	 * @param depth
+	 *            is how many more moves to look ahead.
+	 * @param alpha
+	 *            is the score the player to move is already sure of.
+	 * @param beta
+	 *            is the score the other player won't allow more than.
+	 * @return is the score of the position for the player to move.
+	 */
+	private int negamax(int ply, int depth, int alpha, int beta) {
+		nodes++;
+		if ((nodes % CLOCK_INTERVAL == 0) && (System.nanoTime() > deadline)) {
+			stopped = true;
+		}
+		if (stopped) {
+			return 0;
+		}
+
+		long[] own = owns[ply];
+		long[] opp = opps[ply];
+		long[] legal = legals[ply];
+
+		geometry.moves(own, opp, legal);
+		if (WideBoard.isEmpty(legal)) {
+			if (!geometry.hasMove(opp, own, legal)) {
+				int difference = WideBoard.count(own) - WideBoard.count(opp);
+				if (difference > 0) {
+					return Search.WIN + difference;
+				} else if (difference < 0) {
+					return -Search.WIN + difference;
+				}
+				return 0;
+			}
+			// The player has to pass, which doesn't use up any depth.
+			System.arraycopy(opp, 0, owns[ply + 1], 0, own.length);
+			System.arraycopy(own, 0, opps[ply + 1], 0, opp.length);
+			return -negamax(ply + 1, depth, -beta, -alpha);
+		}
+		if (depth == 0) {
+			return evaluate(own, opp);
+		}
+
+		int best = -Search.INFINITY;
+		for (int word = 0; word < legal.length; word++) {
+			for (long bits = legal[word]; bits != 0; bits &= bits - 1) {
+				int square = word * 64 + Long.numberOfTrailingZeros(bits);
+				play(ply, square);
+				int score = -negamax(ply + 1, depth - 1, -beta, -alpha);
+
+				if (score > best) {
+					best = score;
+					if (score > alpha) {
+						alpha = score;
+						if (alpha >= beta) {
+							return best;
+						}
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * This makes a move from the position at ply and writes the position it
+	 * leads to at ply + 1, from the other player's side.
+	 *
+	 * @param ply
+	 *            is the level of the position the move is made from.
+	 * @param square
+	 *            is the square the piece is placed on.
+	 */
+	private void play(int ply, int square) {
+		long[] own = owns[ply];
+		long[] opp = opps[ply];
+		long[] flipped = flips[ply];
+		long[] nextOwn = owns[ply + 1];
+		long[] nextOpp = opps[ply + 1];
+
+		geometry.flips(own, opp, square, flipped);
+		for (int i = 0; i < own.length; i++) {
+			nextOwn[i] = opp[i] & ~flipped[i];
+			nextOpp[i] = own[i] | flipped[i];
+		}
+		WideBoard.set(nextOpp, square);
+	}
+
+	/**
+	 * This scores a position by disc difference.
+	 *
+	 * @param own
+	 *            is the bitset of the player to move.
+	 * @param opp
+	 *            is the bitset of the other player.
+	 * @return is the player's pieces minus the other player's pieces.
+	 */
+	private static int evaluate(long[] own, long[] opp) {
+		return WideBoard.count(own) - WideBoard.count(opp);
+	}
+
+	/**
+	 * This makes sure there are bitboards for enough levels of search. They
+	 * are kept between searches so only a deeper search allocates.
+	 *
+	 * @param plies
+	 *            is the number of levels needed.
+	 */
+	private void allocate(int plies) {
+		if ((owns != null) && (owns.length > plies)) {
+			return;
+		}
+		int words = geometry.getWords();
+		owns = new long[plies + 1][words];
+		opps = new long[plies + 1][words];
+		legals = new long[plies + 1][words];
+		flips = new long[plies + 1][words];
+	}
+
+	/**
+	 * @param started
+	 *            is the System.nanoTime() the search started at.
+	 * @return is how many milliseconds have gone by since then.
+	 */
+	private static long elapsed(long started) {
+		return (System.nanoTime() - started) / 1000000L;
+	}
+
+}
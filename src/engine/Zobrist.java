@@ -0,0 +1,136 @@
+package engine;
+
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: These are the random numbers used to give every position a
+ *         64 bit hash. The hash of a position is every piece's number XORed
+ *         together, so placing or flipping a piece only changes the hash by
+ *         one or two XORs. The numbers come from a fixed seed so hashes are
+ *         the same every time the program runs.
+ *
+ */
+public final class Zobrist {
+
+	/**
+	 * This is XORed into the hash when white is the player to move.
+	 */
+	public static final long WHITE_TO_MOVE;
+
+	// One number for a black piece and one for a white piece on every
+	// square, with square = y * 8 + x.
+	private static final long[] BLACK = new long[64];
+	private static final long[] WHITE = new long[64];
+
+	static {
+		SplittableRandom random = new SplittableRandom(0x5EED_2E7E_25L);
+		for (int i = 0; i < 64; i++) {
+			BLACK[i] = random.nextLong();
+			WHITE[i] = random.nextLong();
+		}
+		WHITE_TO_MOVE = random.nextLong();
+	}
+
+	/**
+	 * This class only holds static helpers.
+	 */
+	private Zobrist() {
+
+	}
+
+	/**
+	 * This gets the number for one piece on one square.
+	 *
+	 * @param x
+	 *            is the x position of the square.
+	 * @param y
+	 *            is the y position of the square.
+	 * @param piece
+	 *            is 'B', 'W' or '_'.
+	 * @return is the number for the piece, or 0 for an empty square.
+	 */
+	public static long piece(int x, int y, char piece) {
+		if (piece == 'B') {
+			return BLACK[y * 8 + x];
+		} else if (piece == 'W') {
+			return WHITE[y * 8 + x];
+		}
+		return 0;
+	}
+
+	/**
+	 * This gets the number for one piece on one square of a bitboard.
+	 *
+	 * @param square
+	 *            is the square, y * 8 + x.
+	 * @param piece
+	 *            is 'B' or 'W'.
+	 * @return is the number for the piece.
+	 */
+	public static long piece(int square, char piece) {
+		if (piece == 'B') {
+			return BLACK[square];
+		}
+		return WHITE[square];
+	}
+
+	/**
+	 * This gets how the hash changes when pieces are flipped. Flipping a
+	 * piece either way takes out one colour's number and puts in the
+	 * other's, so it is the same XOR for both players.
+	 *
+	 * @param flips
+	 *            is the bitboard of flipped pieces.
+	 * @return is the value to XOR into the hash.
+	 */
+	public static long flips(long flips) {
+		long change = 0;
+		for (long bits = flips; bits != 0; bits &= bits - 1) {
+			int square = Long.numberOfTrailingZeros(bits);
+			change ^= BLACK[square] ^ WHITE[square];
+		}
+		return change;
+	}
+
+	/**
+	 * This hashes a whole board.
+	 *
+	 * @param board
+	 *            is the char[][] representation of an 8x8 board.
+	 * @return is the hash of the pieces on the board.
+	 */
+	public static long hash(char[][] board) {
+		long hash = 0;
+		for (int y = 0; y < 8; y++) {
+			for (int x = 0; x < 8; x++) {
+				hash ^= piece(x, y, board[y][x]);
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * This hashes a position held as bitboards.
+	 *
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @return is the hash of the pieces, the same as hash(char[][]) gives
+	 *         for the same board.
+	 */
+	public static long hash(long black, long white) {
+		long hash = 0;
+		for (long bits = black; bits != 0; bits &= bits - 1) {
+			hash ^= BLACK[Long.numberOfTrailingZeros(bits)];
+		}
+		for (long bits = white; bits != 0; bits &= bits - 1) {
+			hash ^= WHITE[Long.numberOfTrailingZeros(bits)];
+		}
+		return hash;
+	}
+
+}
@@ -0,0 +1,240 @@
+package model;
+
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         This is one update to a board, for sending games to spectators. A
+ *         delta is the square a piece was placed on and a bitset of the
+ *         pieces it flipped, which is all a spectator who has the board
+ *         before the move needs. A keyframe is the whole board, for
+ *         spectators who are just starting or who fell too far behind.
+ *
+ *         Like BoardSnapshot it never changes, so one update is made per move
+ *         and handed to every spectator. Its wire form is only worked out
+ *         once too, however many spectators it is sent to. A delta on an 8x8
+ *         board is 19 bytes: the type, the version, the player, the square
+ *         and the flips.
+ *
+ */
+public final class BoardDelta {
+	private static final byte KEYFRAME = 'K';
+	private static final byte DELTA = 'D';
+
+	private final long version;
+	private final BoardSnapshot snapshot;
+	private final int square;
+	private final char player;
+	private final long[] flips;
+	private volatile byte[] encoded;
+
+	/**
+	 * This is the constructor used by keyframe() and between().
+	 *
+	 * @param version
+	 *            is the version of the board after the update.
+	 * @param snapshot
+	 *            is the whole board for a keyframe, or null for a delta.
+	 * @param square
+	 *            is the placed square, or -1 for a keyframe.
+	 * @param player
+	 *            is the player who placed the piece, or '_'.
+	 * @param flips
+	 *            is the bitset of flipped pieces, or null for a keyframe.
+	 */
+	private BoardDelta(long version, BoardSnapshot snapshot, int square,
+			char player, long[] flips) {
+		this.version = version;
+		this.snapshot = snapshot;
+		this.square = square;
+		this.player = player;
+		this.flips = flips;
+	}
+
+	/**
+	 * This makes a keyframe holding a whole board.
+	 *
+	 * @param snapshot
+	 *            is the board.
+	 * @return is the keyframe.
+	 */
+	public static BoardDelta keyframe(BoardSnapshot snapshot) {
+		return new BoardDelta(snapshot.getVersion(), snapshot, -1, '_', null);
+	}
+
+	/**
+	 * This works out the move between two boards.
+	 *
+	 * @param before
+	 *            is the board before the move.
+	 * @param after
+	 *            is the board after it.
+	 * @return is the delta, or null if the boards aren't one move apart.
+	 */
+	public static BoardDelta between(BoardSnapshot before,
+			BoardSnapshot after) {
+		if ((before.getSize() != after.getSize())
+				|| (after.getVersion() != before.getVersion() + 1)) {
+			return null;
+		}
+		long[] oldBlack = before.getBits('B');
+		long[] oldWhite = before.getBits('W');
+		long[] newBlack = after.getBits('B');
+		long[] newWhite = after.getBits('W');
+
+		int placed = -1;
+		long[] flips = new long[newBlack.length];
+		for (int i = 0; i < flips.length; i++) {
+			long added = (newBlack[i] | newWhite[i])
+					& ~(oldBlack[i] | oldWhite[i]);
+			if (added != 0) {
+				if ((placed >= 0) || (Long.bitCount(added) != 1)) {
+					return null;
+				}
+				placed = i * 64 + Long.numberOfTrailingZeros(added);
+			}
+			flips[i] = (oldBlack[i] & newWhite[i])
+					| (oldWhite[i] & newBlack[i]);
+			if ((oldBlack[i] | oldWhite[i]) != ((newBlack[i] | newWhite[i])
+					& ~added)) {
+				// A piece was taken off the board, which no move does.
+				return null;
+			}
+		}
+		if (placed < 0) {
+			return null;
+		}
+
+		int size = after.getSize();
+		return new BoardDelta(after.getVersion(), null, placed,
+				after.getAt(placed % size, placed / size), flips);
+	}
+
+	/**
+	 * This checks if the update is a keyframe.
+	 *
+	 * @return is true for a keyframe and false for a delta.
+	 */
+	public boolean isKeyframe() {
+		return snapshot != null;
+	}
+
+	/**
+	 * This returns the version of the board after the update.
+	 *
+	 * @return is the version.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * This returns the whole board of a keyframe.
+	 *
+	 * @return is the BoardSnapshot, or null for a delta.
+	 */
+	public BoardSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * This returns the square a delta's piece was placed on, as y * size +
+	 * x.
+	 *
+	 * @return is the square, or -1 for a keyframe.
+	 */
+	public int getSquare() {
+		return square;
+	}
+
+	/**
+	 * This returns who placed a delta's piece.
+	 *
+	 * @return is 'B' or 'W', or '_' for a keyframe.
+	 */
+	public char getPlayer() {
+		return player;
+	}
+
+	/**
+	 * This returns the bitset of pieces a delta flipped, laid out like the
+	 * model's.
+	 *
+	 * @return is a new long[] the caller may change, or null for a keyframe.
+	 */
+	public long[] getFlips() {
+		if (flips == null) {
+			return null;
+		}
+		return flips.clone();
+	}
+
+	/**
+	 * This brings a spectator's copy of the board up to date. A delta must
+	 * be applied to the board of the version before it.
+	 *
+	 * @param black
+	 *            is the spectator's black bitset, which is changed.
+	 * @param white
+	 *            is the spectator's white bitset, which is changed.
+	 */
+	public void applyTo(long[] black, long[] white) {
+		if (snapshot != null) {
+			long[] newBlack = snapshot.getBits('B');
+			long[] newWhite = snapshot.getBits('W');
+			System.arraycopy(newBlack, 0, black, 0, newBlack.length);
+			System.arraycopy(newWhite, 0, white, 0, newWhite.length);
+			return;
+		}
+		long[] own = (player == 'B') ? black : white;
+		long[] opp = (player == 'B') ? white : black;
+		own[square >>> 6] |= 1L << square;
+		for (int i = 0; i < flips.length; i++) {
+			own[i] |= flips[i];
+			opp[i] &= ~flips[i];
+		}
+	}
+
+	/**
+	 * This returns the update's wire form. A keyframe is 'K', the version,
+	 * the board size and both bitsets. A delta is 'D', the version, the
+	 * player, the square and the flips. Numbers are big-endian.
+	 *
+	 * @return is the encoded update. It is shared, so it must not be
+	 *         changed.
+	 */
+	public byte[] encode() {
+		byte[] bytes = encoded;
+		if (bytes != null) {
+			return bytes;
+		}
+
+		ByteBuffer buffer;
+		if (snapshot != null) {
+			long[] black = snapshot.getBits('B');
+			long[] white = snapshot.getBits('W');
+			buffer = ByteBuffer.allocate(10 + 16 * black.length);
+			buffer.put(KEYFRAME).putLong(version)
+					.put((byte) snapshot.getSize());
+			for (int i = 0; i < black.length; i++) {
+				buffer.putLong(black[i]);
+			}
+			for (int i = 0; i < white.length; i++) {
+				buffer.putLong(white[i]);
+			}
+		} else {
+			buffer = ByteBuffer.allocate(11 + 8 * flips.length);
+			buffer.put(DELTA).putLong(version).put((byte) player)
+					.put((byte) square);
+			for (int i = 0; i < flips.length; i++) {
+				buffer.putLong(flips[i]);
+			}
+		}
+		// Two threads may both encode it, but they get the same bytes.
+		encoded = buffer.array();
+		return encoded;
+	}
+
+}
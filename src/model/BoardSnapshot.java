@@ -0,0 +1,127 @@
+package model;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         This is a picture of the board at one moment that never changes.
+ *         The controller makes a new one after every move and hands it out
+ *         through a volatile field, so any number of other threads, like
+ *         spectators, can read whole boards while the game goes on without
+ *         locking and without ever seeing a move half made.
+ *
+ *         It only holds a bitset of each player's pieces, laid out like the
+ *         model's, so making one costs two small array copies.
+ *
+ */
+public final class BoardSnapshot {
+	private final int size;
+	private final long[] blackBits;
+	private final long[] whiteBits;
+	private final long version;
+
+	/**
+	 * This is the constructor for a snapshot of a model.
+	 *
+	 * @param model
+	 *            is the ReversiModel to take the picture of.
+	 * @param version
+	 *            is how many snapshots of this game came before this one.
+	 */
+	public BoardSnapshot(ReversiModel model, long version) {
+		this.size = model.getSize();
+		this.blackBits = model.getBits('B').clone();
+		this.whiteBits = model.getBits('W').clone();
+		this.version = version;
+	}
+
+	/**
+	 * This gets the character at a given position on the board.
+	 *
+	 * @param x
+	 *            is the x coordinate of a position.
+	 * @param y
+	 *            is the y coordinate of a position
+	 * @return is 'B', 'W' or '_'.
+	 */
+	public char getAt(int x, int y) {
+		int square = y * size + x;
+		long bit = 1L << square;
+		if ((blackBits[square >>> 6] & bit) != 0) {
+			return 'B';
+		} else if ((whiteBits[square >>> 6] & bit) != 0) {
+			return 'W';
+		}
+		return '_';
+	}
+
+	/**
+	 * This counts one player's pieces.
+	 *
+	 * @param piece
+	 *            is 'B' or 'W'.
+	 * @return is the number of that player's pieces.
+	 */
+	public int count(char piece) {
+		long[] bits = whiteBits;
+		if (piece == 'B') {
+			bits = blackBits;
+		}
+		int count = 0;
+		for (long word : bits) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * This returns a copy of one player's bitset, with square = y * size + x
+	 * as bit (square % 64) of word (square / 64).
+	 *
+	 * @param piece
+	 *            is 'B' or 'W'.
+	 * @return is a new long[] the caller may change.
+	 */
+	public long[] getBits(char piece) {
+		if (piece == 'B') {
+			return blackBits.clone();
+		}
+		return whiteBits.clone();
+	}
+
+	/**
+	 * This builds the char[][] representation of the board, for readers
+	 * that want it.
+	 *
+	 * @return is a new char[][] indexed board[y][x].
+	 */
+	public char[][] toBoard() {
+		char[][] board = new char[size][size];
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				board[y][x] = getAt(x, y);
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * This returns the number of squares along each side of the board.
+	 *
+	 * @return is the board size.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * This returns how many snapshots of the game came before this one, so a
+	 * reader can tell whether the board has changed since it last looked.
+	 *
+	 * @return is the snapshot's version.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+}
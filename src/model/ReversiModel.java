@@ -1,40 +1,74 @@
 package model;
 
 /**
- * 
+ *
  * @author Ryan Munin
- * 
+ *
  *         This is the model for my reversi board. It is only ever called by the
- *         controller, or by testers. The board is represented as an 8x8
- *         char[][] array.
+ *         controller, or by testers. The board is represented as a square
+ *         char[][] array, 8x8 unless another size is asked for.
+ *
+ *         Alongside the char[][] the model keeps a bitset of each player's
+ *         pieces, where square = y * size + x is bit (square % 64) of word
+ *         (square / 64). These are kept up to date by setAt() so the
+ *         controller can count and search the board without looking at every
+ *         square.
+ *
+ *         It also counts every change made through setAt(), so the
+ *         controller can tell whether anything it worked out from the board
+ *         is still up to date.
  *
  */
 public class ReversiModel {
 	private char[][] board;
+	private int size;
+	private long[] blackBits;
+	private long[] whiteBits;
+	private long modCount;
 
 	/**
 	 * This is a constructor for the model
 	 */
 	public ReversiModel() {
-		this.board = new char[8][8];
+		this(8);
+	}
+
+	/**
+	 * This is a constructor for a model with a board of a different size.
+	 *
+	 * @param size
+	 *            is the number of squares along each side. It must be even so
+	 *            the starting pieces sit in the middle.
+	 */
+	public ReversiModel(int size) {
+		if ((size < 4) || (size % 2 != 0)) {
+			throw new IllegalArgumentException(
+					"The board size must be an even number of at least 4.");
+		}
+		this.size = size;
+		this.board = new char[size][size];
+		this.blackBits = new long[(size * size + 63) / 64];
+		this.whiteBits = new long[blackBits.length];
 
 		// These loops create the board. It is initially blank.
-		for (int i = 0; i < 8; i++) {
-			for (int j = 0; j < 8; j++) {
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
 				this.board[i][j] = '_';
 			}
 		}
 		// This sets the initial positions of the pieces
-		this.board[3][3] = 'W';
-		this.board[3][4] = 'B';
-		this.board[4][3] = 'B';
-		this.board[4][4] = 'W';
+		int low = size / 2 - 1;
+		int high = size / 2;
+		setAt(low, low, 'W');
+		setAt(high, low, 'B');
+		setAt(low, high, 'B');
+		setAt(high, high, 'W');
 
 	}
 
 	/**
 	 * This gets the character at a given position on the board.
-	 * 
+	 *
 	 * @param x
 	 *            is the x coordinate of a position.
 	 * @param y
@@ -47,7 +81,7 @@ public class ReversiModel {
 
 	/**
 	 * This places a piece at a given position on the board.
-	 * 
+	 *
 	 * @param x
 	 *            is the x position
 	 * @param y
@@ -57,12 +91,23 @@ public class ReversiModel {
 	 */
 	public void setAt(int x, int y, char piece) {
 		board[y][x] = piece;
+		modCount++;
+
+		int square = y * size + x;
+		long bit = 1L << square;
+		blackBits[square >>> 6] &= ~bit;
+		whiteBits[square >>> 6] &= ~bit;
+		if (piece == 'B') {
+			blackBits[square >>> 6] |= bit;
+		} else if (piece == 'W') {
+			whiteBits[square >>> 6] |= bit;
+		}
 	}
 
 	/**
 	 * This returns the char[][] representation of the board as it currently
 	 * stands.
-	 * 
+	 *
 	 * @return is the char[][] representation of the board as it currently
 	 *         stands.
 	 */
@@ -70,4 +115,38 @@ public class ReversiModel {
 		return board;
 	}
 
+	/**
+	 * This returns the number of squares along each side of the board.
+	 *
+	 * @return is the board size.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * This returns the bitset of one player's pieces. It is the model's own
+	 * array, so it must not be changed.
+	 *
+	 * @param piece
+	 *            is 'B' or 'W'.
+	 * @return is the long[] bitset of that player's pieces.
+	 */
+	public long[] getBits(char piece) {
+		if (piece == 'B') {
+			return blackBits;
+		}
+		return whiteBits;
+	}
+
+	/**
+	 * This returns how many times setAt() has been called. It changes
+	 * whenever the board might have changed.
+	 *
+	 * @return is the number of changes made to the board.
+	 */
+	public long getModCount() {
+		return modCount;
+	}
+
 }
@@ -0,0 +1,267 @@
+package tests;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import controller.ReversiController;
+import customExceptions.ReversiCantPlaceException;
+import engine.Bitboards;
+import engine.DiscCountEvaluator;
+import engine.Search;
+import engine.SearchResult;
+import engine.TranspositionTable;
+import engine.WideBoard;
+import model.BoardSnapshot;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: These tests check that the parts of the program that run
+ *         the most don't start making more garbage than they do now. Each one
+ *         counts the bytes the test thread allocates while it runs a hot path
+ *         many times, using the JVM's per-thread allocation counter, and
+ *         fails if the average goes over a budget.
+ *
+ *         Every path is run once before it is measured so class loading and
+ *         the JIT compiler don't count against it. The budgets have room to
+ *         spare over what was measured when they were set, so they only trip
+ *         on a real change.
+ *
+ */
+public class AllocationTests {
+	// How many times each cheap call is repeated for one measurement.
+	private static final int CALLS = 100000;
+
+	// A position with 14 empty squares and white to move, for the solver.
+	private static final long SOLVE_BLACK = 0x72674A95D3F0000L;
+	private static final long SOLVE_WHITE = 0x38188A1622C07F70L;
+
+	private com.sun.management.ThreadMXBean threads;
+
+	/**
+	 * This finds the allocation counter, and skips the tests on a JVM that
+	 * doesn't have one.
+	 */
+	@BeforeEach
+	void findCounter() {
+		Assumptions.assumeTrue(ManagementFactory
+				.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	/**
+	 * Finding moves and flips on bitboards shouldn't allocate at all.
+	 */
+	@Test
+	void testBitboardsAllocateNothing() {
+		bitboardCalls();
+		long before = allocated();
+		long sink = bitboardCalls();
+		long bytes = allocated() - before;
+
+		assertTrue("Bitboards allocated " + bytes + " bytes " + sink,
+				bytes < CALLS / 100);
+	}
+
+	/**
+	 * Checking whether a player can move, on the normal board and a bigger
+	 * one, shouldn't allocate at all.
+	 */
+	@Test
+	void testCanMoveAllocatesNothing() {
+		ReversiController testController = new ReversiController();
+		WideBoard wide = new WideBoard(10);
+		long[] own = wide.newBits();
+		long[] opp = wide.newBits();
+		long[] out = wide.newBits();
+		WideBoard.set(own, 44);
+		WideBoard.set(opp, 45);
+
+		canMoveCalls(testController, wide, own, opp, out);
+		long before = allocated();
+		int sink = canMoveCalls(testController, wide, own, opp, out);
+		long bytes = allocated() - before;
+
+		assertTrue("canMove allocated " + bytes + " bytes " + sink,
+				bytes < CALLS / 100);
+	}
+
+	/**
+	 * Finding the legal moves and playing one, for the human and for the
+	 * computer, is held to a budget per move over whole games.
+	 */
+	@Test
+	void testMoveBudget() {
+		playGames(2);
+		long before = allocated();
+		int moves = playGames(20);
+		long perMove = (allocated() - before) / moves;
+
+		assertTrue("A move allocated " + perMove + " bytes", perMove < 8192);
+	}
+
+	/**
+	 * The look-ahead should only allocate at the root, so the bytes per
+	 * searched position are close to nothing, with or without a table.
+	 */
+	@Test
+	void testSearchBudget() {
+		for (boolean withTable : new boolean[]{false, true}) {
+			Search search = new Search(new DiscCountEvaluator());
+			search.setSolveEmpties(0);
+			if (withTable) {
+				search.setTable(new TranspositionTable(1 << 20));
+			}
+
+			searchNodes(search);
+			if (withTable) {
+				// Start cold again so the table doesn't answer everything.
+				search.getTable().clear();
+			}
+			long before = allocated();
+			long nodes = searchNodes(search);
+			double perNode = (allocated() - before) / (double) nodes;
+
+			assertTrue("A searched position allocated " + perNode + " bytes",
+					perNode < 4);
+		}
+	}
+
+	/**
+	 * The endgame solver only allocates to sort moves far from the end, so
+	 * it is held to the same budget per position.
+	 */
+	@Test
+	void testSolverBudget() {
+		solveNodes();
+		long before = allocated();
+		long nodes = solveNodes();
+		double perNode = (allocated() - before) / (double) nodes;
+
+		assertTrue("A solved position allocated " + perNode + " bytes",
+				perNode < 4);
+	}
+
+	/**
+	 * @return is how many bytes the test thread has allocated so far.
+	 */
+	private long allocated() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * This is a helper that finds moves and flips many times.
+	 *
+	 * @return is a sum of the results so the calls can't be optimized away.
+	 */
+	private static long bitboardCalls() {
+		long sink = 0;
+		for (int i = 0; i < CALLS; i++) {
+			sink += Bitboards.moves(Bitboards.START_WHITE,
+					Bitboards.START_BLACK | ((long) (i & 0xFF) << 40));
+			sink += Bitboards.flips(Bitboards.START_WHITE,
+					Bitboards.START_BLACK, 20);
+		}
+		return sink;
+	}
+
+	/**
+	 * This is a helper that checks for moves many times.
+	 *
+	 * @param testController
+	 *            is a controller at the start of a game.
+	 * @param wide
+	 *            is the geometry of a bigger board.
+	 * @param own
+	 *            is a position on the bigger board.
+	 * @param opp
+	 *            is the other player's pieces on it.
+	 * @param out
+	 *            is scratch space for the moves.
+	 * @return is a count of the results so the calls can't be optimized away.
+	 */
+	private static int canMoveCalls(ReversiController testController,
+			WideBoard wide, long[] own, long[] opp, long[] out) {
+		int sink = 0;
+		for (int i = 0; i < CALLS; i++) {
+			if (testController.canMove((i % 2 == 0) ? 'W' : 'B')) {
+				sink++;
+			}
+			if (wide.hasMove(own, opp, out)) {
+				sink++;
+			}
+		}
+		return sink;
+	}
+
+	/**
+	 * This is a helper that plays whole games, with the human always taking
+	 * its lowest legal square and the computer counting flips.
+	 *
+	 * @param games
+	 *            is how many games to play.
+	 * @return is how many moves were made.
+	 */
+	private static int playGames(int games) {
+		int moves = 0;
+		for (int game = 0; game < games; game++) {
+			ReversiController testController = new ReversiController();
+			while (!testController.isGameOver()) {
+				if (testController.canMove('W')) {
+					BoardSnapshot board = testController.getSnapshot();
+					int square = Long.numberOfTrailingZeros(Bitboards.moves(
+							board.getBits('W')[0], board.getBits('B')[0]));
+					try {
+						testController.humanTurn(square % 8, square / 8);
+					} catch (ReversiCantPlaceException e) {
+						throw new IllegalStateException(e);
+					}
+					moves++;
+				} else {
+					testController.humanSkipped();
+				}
+				if (testController.canMove('B')) {
+					testController.computerTurn();
+					moves++;
+				} else {
+					testController.computerSkipped();
+				}
+			}
+		}
+		return moves;
+	}
+
+	/**
+	 * This is a helper that runs a fixed depth search from the start.
+	 *
+	 * @param search
+	 *            is the Search to run.
+	 * @return is how many positions were searched.
+	 */
+	private static long searchNodes(Search search) {
+		SearchResult result = search.search(Bitboards.START_BLACK,
+				Bitboards.START_WHITE, 'W', 8, 0);
+		return result.getNodes();
+	}
+
+	/**
+	 * This is a helper that solves a position with 14 empty squares.
+	 *
+	 * @return is how many positions were searched.
+	 */
+	private static long solveNodes() {
+		Search search = new Search(new DiscCountEvaluator());
+		search.setSolveEmpties(20);
+		return search.search(SOLVE_BLACK, SOLVE_WHITE, 'W', 64, 0).getNodes();
+	}
+
+}
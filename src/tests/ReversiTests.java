@@ -4,12 +4,49 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import controller.DeltaBroadcaster;
+import controller.GameJournal;
 import controller.ReversiController;
+import controller.SessionStore;
 import customExceptions.ReversiCantPlaceException;
+import engine.BatchMoveGenerator;
+import engine.BatchMoves;
+import engine.Bitboards;
+import engine.BookEngine;
+import engine.DiscCountEvaluator;
+import engine.DiskTranspositionTable;
+import engine.Engine;
+import engine.Engines;
+import engine.EvalCache;
+import engine.GreedyEngine;
+import engine.NeuralEvaluator;
+import engine.NeuralKernel;
+import engine.OpeningBook;
+import engine.Search;
+import engine.SearchResult;
+import engine.Stability;
+import engine.TranspositionTable;
+import model.BoardDelta;
+import model.BoardSnapshot;
 import model.ReversiModel;
+import view.BoardRenderer;
+import tools.MatchHarness;
+import view.ScriptedGames;
 
 //TODO block comment for class. 
 public class ReversiTests {
@@ -389,4 +426,767 @@ public class ReversiTests {
 
 	}
 
+	/**
+	 * This checks that pieces anchored to a corner are found to be stable and
+	 * that a piece in the middle of the board is not.
+	 */
+	@Test
+	void testStability() {
+		// Black on a1, b1 and a2, white in the middle of the board.
+		long black = (1L << 0) | (1L << 1) | (1L << 8);
+		long white = (1L << 27) | (1L << 36);
+
+		assertEquals(Stability.stable(black, white), black);
+		assertEquals(Stability.stable(white, black), 0L);
+
+		// A full row in the middle of the board can still be flipped up and
+		// down, but a full row along the edge can't be flipped at all.
+		assertEquals(Stability.stable(0xFFL << 24, 0L), 0L);
+		assertEquals(Stability.stable(0xFFL, 1L << 9), 0xFFL);
+	}
+
+	/**
+	 * This checks that boards of other sizes are set up with the starting
+	 * pieces in the middle and that moves can be made on them.
+	 */
+	@Test
+	void testBoardSizes() {
+		for (int size : new int[]{6, 10, 16}) {
+			ReversiController testController = new ReversiController(size);
+			char[][] myBoard = testController.getBoard();
+
+			assertEquals(myBoard.length, size);
+			assertEquals(myBoard[size / 2][size / 2], 'W');
+			assertEquals(myBoard[size / 2 - 1][size / 2], 'B');
+			assertTrue(testController.canMove('W'));
+			assertTrue(testController.canMove('B'));
+
+			// The square above the top right starting piece captures that
+			// black piece.
+			try {
+				testController.humanTurn(size / 2, size / 2 - 2);
+			} catch (ReversiCantPlaceException e) {
+				System.out.println("Board size test made an invalid move");
+				System.out.println();
+			}
+
+			int[] score = testController.getScore();
+			assertEquals(score[0], 4);
+			assertEquals(score[1], 1);
+		}
+	}
+
+	/**
+	 * This checks that a snapshot keeps showing the board it was taken of
+	 * after a move is made, and that the next snapshot shows the move.
+	 */
+	@Test
+	void testSnapshot() {
+		ReversiController testController = new ReversiController();
+		BoardSnapshot before = testController.getSnapshot();
+
+		try {
+			testController.humanTurn(4, 2);
+		} catch (ReversiCantPlaceException e) {
+			System.out.println("Snapshot test made an invalid move");
+			System.out.println();
+		}
+
+		BoardSnapshot after = testController.getSnapshot();
+		assertEquals(before.getAt(4, 3), 'B');
+		assertEquals(before.count('W'), 2);
+		assertEquals(after.getAt(4, 3), 'W');
+		assertEquals(after.getAt(4, 2), 'W');
+		assertEquals(after.count('W'), 4);
+		assertEquals(after.getVersion(), before.getVersion() + 1);
+	}
+
+	/**
+	 * This checks that a network scores the same after being saved and
+	 * loaded, and that keeping it up to date one square at a time through a
+	 * game gives the same score as rebuilding it from the whole board.
+	 */
+	@Test
+	void testNeuralEvaluator() throws IOException {
+		SplittableRandom random = new SplittableRandom(3);
+		int hidden = 16;
+		short[] biases = new short[hidden];
+		short[] featureWeights = new short[NeuralEvaluator.FEATURES * hidden];
+		byte[] outputWeights = new byte[hidden];
+		for (int i = 0; i < hidden; i++) {
+			biases[i] = (short) random.nextInt(-32, 33);
+			outputWeights[i] = (byte) random.nextInt(-100, 101);
+		}
+		for (int i = 0; i < featureWeights.length; i++) {
+			featureWeights[i] = (short) random.nextInt(-16, 17);
+		}
+		NeuralEvaluator network = new NeuralEvaluator(biases, featureWeights,
+				outputWeights, 50, 4);
+
+		Path file = Files.createTempFile("weights", ".bin");
+		NeuralEvaluator loaded;
+		try {
+			network.save(file);
+			loaded = NeuralEvaluator.load(file);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+		assertEquals(loaded.fingerprint(), network.fingerprint());
+		NeuralEvaluator fresh = network.copy();
+
+		// Play a random game, telling the network about every square that
+		// changes, and rebuild a copy from the board after each move.
+		long black = Bitboards.START_BLACK;
+		long white = Bitboards.START_WHITE;
+		char player = 'B';
+		network.reset(Bitboards.toBoard(black, white));
+		int moves = 0;
+		while (true) {
+			long own = (player == 'B') ? black : white;
+			long opp = (player == 'B') ? white : black;
+			long legal = Bitboards.moves(own, opp);
+			if (legal == 0) {
+				if (Bitboards.moves(opp, own) == 0) {
+					break;
+				}
+				player = (player == 'B') ? 'W' : 'B';
+				continue;
+			}
+			for (int pick = random.nextInt(Long.bitCount(legal)); pick > 0;
+					pick--) {
+				legal &= legal - 1;
+			}
+			int square = Long.numberOfTrailingZeros(legal);
+			long flips = Bitboards.flips(own, opp, square);
+			char other = (player == 'B') ? 'W' : 'B';
+			network.update(square % 8, square / 8, '_', player);
+			for (long bits = flips; bits != 0; bits &= bits - 1) {
+				int flipped = Long.numberOfTrailingZeros(bits);
+				network.update(flipped % 8, flipped / 8, other, player);
+			}
+			own |= flips | (1L << square);
+			opp &= ~flips;
+			black = (player == 'B') ? own : opp;
+			white = (player == 'B') ? opp : own;
+			player = other;
+			moves++;
+
+			char[][] board = Bitboards.toBoard(black, white);
+			fresh.reset(board);
+			loaded.reset(board);
+			assertEquals(network.evaluate('B'), fresh.evaluate('B'));
+			assertEquals(network.evaluate('W'), fresh.evaluate('W'));
+			assertEquals(loaded.evaluate('B'), fresh.evaluate('B'));
+		}
+		assertTrue(moves > 50);
+	}
+
+	/**
+	 * This checks that the fastest network kernel this JVM has gives the
+	 * same answers as the plain loops, with a length that doesn't fill a
+	 * whole vector and values that run past the int16 range.
+	 */
+	@Test
+	void testNeuralKernel() {
+		SplittableRandom random = new SplittableRandom(5);
+		int count = 203;
+		short[] weights = new short[count + 7];
+		byte[] outputWeights = new byte[count];
+		short[] scalar = new short[count];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = (short) random.nextInt(-20000, 20001);
+		}
+		for (int i = 0; i < count; i++) {
+			outputWeights[i] = (byte) random.nextInt(-128, 128);
+			scalar[i] = (short) random.nextInt(-300, 300);
+		}
+		short[] best = scalar.clone();
+
+		NeuralKernel kernel = NeuralEvaluator.best();
+		for (int round = 0; round < 3; round++) {
+			NeuralEvaluator.SCALAR.add(scalar, weights, 7, count);
+			kernel.add(best, weights, 7, count);
+			assertTrue(Arrays.equals(best, scalar));
+			assertEquals(kernel.dot(best, outputWeights, 127, count),
+					NeuralEvaluator.SCALAR.dot(scalar, outputWeights, 127,
+							count));
+		}
+		NeuralEvaluator.SCALAR.subtract(scalar, weights, 3, count);
+		kernel.subtract(best, weights, 3, count);
+		assertTrue(Arrays.equals(best, scalar));
+		assertEquals(kernel.dot(best, outputWeights, 127, count),
+				NeuralEvaluator.SCALAR.dot(scalar, outputWeights, 127, count));
+	}
+
+	/**
+	 * This checks the match harness's log-likelihood ratio against values
+	 * worked out by hand, including matches with no losses or no wins.
+	 */
+	@Test
+	void testLogLikelihoodRatio() {
+		// +30 =20 -10 plus half a game of each is 61.5 games scoring
+		// 40.75, with a variance per game of 0.1402. Testing 0 against 5
+		// Elo that gives 0.5017.
+		assertEquals(MatchHarness.logLikelihoodRatio(30, 20, 10, 0, 5),
+				0.5017487685, 1e-9);
+		assertEquals(MatchHarness.logLikelihoodRatio(10, 20, 30, 0, 5),
+				-0.5244533637, 1e-9);
+
+		// No losses yet still moves the test, and enough wins decide it.
+		assertEquals(MatchHarness.logLikelihoodRatio(20, 0, 0, 0, 5),
+				2.5632632493, 1e-9);
+		double upper = Math.log(0.95 / 0.05);
+		assertTrue(MatchHarness.logLikelihoodRatio(26, 0, 0, 0, 5) > upper);
+		assertTrue(MatchHarness.logLikelihoodRatio(0, 0, 26, 0, 5) < -upper);
+		assertEquals(MatchHarness.logLikelihoodRatio(0, 0, 0, 0, 5), 0, 0);
+	}
+
+	/**
+	 * This checks the evaluation cache's counters, and that when its set is
+	 * full it throws out an entry that hasn't been used since the clock
+	 * hand last passed it.
+	 */
+	@Test
+	void testEvalCache() {
+		// Just enough memory for one set of four entries.
+		EvalCache cache = new EvalCache(53);
+		assertEquals(cache.getCapacity(), 4);
+		assertEquals(cache.get(1), EvalCache.MISS);
+
+		for (int i = 1; i <= 4; i++) {
+			cache.put(i, i * 10);
+		}
+		for (int i = 1; i <= 4; i++) {
+			assertEquals(cache.get(i), i * 10);
+		}
+		assertEquals(cache.getEvictions(), 0);
+
+		// Every entry has been used, so the hand goes all the way around
+		// and throws out the first one.
+		cache.put(5, 50);
+		assertEquals(cache.getEvictions(), 1);
+		assertEquals(cache.get(1), EvalCache.MISS);
+		assertEquals(cache.get(5), 50);
+
+		// 3 is used again, so 2 is the one thrown out next.
+		assertEquals(cache.get(3), 30);
+		cache.put(6, 60);
+		assertEquals(cache.getEvictions(), 2);
+		assertEquals(cache.get(2), EvalCache.MISS);
+		assertEquals(cache.get(3), 30);
+		assertEquals(cache.get(4), 40);
+
+		assertEquals(cache.getHits(), 8);
+		assertEquals(cache.getMisses(), 3);
+
+		// Emptying the cache leaves the counters alone.
+		cache.clear();
+		assertEquals(cache.get(3), EvalCache.MISS);
+		assertEquals(cache.getHits(), 8);
+		assertEquals(cache.getMisses(), 4);
+	}
+
+	/**
+	 * This checks that a table snapshot loads back with its entries, and is
+	 * turned down when it is loaded for a different evaluator.
+	 */
+	@Test
+	void testTableSnapshot() throws IOException {
+		long fingerprint = new DiscCountEvaluator().fingerprint();
+		TranspositionTable table = new TranspositionTable(1 << 16);
+		table.store(12345L, -7, 5, TranspositionTable.EXACT, 19);
+
+		Path file = Files.createTempFile("table", ".bin");
+		try {
+			table.save(file, fingerprint);
+			long entry = TranspositionTable.load(file, fingerprint)
+					.probe(12345L);
+			assertEquals(TranspositionTable.score(entry), -7);
+			assertEquals(TranspositionTable.depth(entry), 5);
+			assertEquals(TranspositionTable.move(entry), 19);
+
+			Assertions.assertThrows(IOException.class,
+					() -> TranspositionTable.load(file, fingerprint + 1));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * This checks that entries pushed out of a tiny in-memory table are
+	 * found again in the file, and that the file still has them when it is
+	 * opened again.
+	 */
+	@Test
+	void testDiskTable() throws IOException {
+		Path file = Files.createTempFile("cold", ".bin");
+		try {
+			// Room for four entries in memory and 65536 in the file. Each
+			// position gets its own slot in the file.
+			DiskTranspositionTable table = new DiskTranspositionTable(128,
+					file, 1 << 20);
+			for (int i = 1; i <= 100; i++) {
+				table.store(((long) i << 32) | i, -i, 4,
+						TranspositionTable.LOWER, i % 64);
+			}
+			table.flush();
+			for (int i = 1; i <= 100; i++) {
+				long entry = table.probe(((long) i << 32) | i);
+				assertEquals(TranspositionTable.score(entry), -i);
+				assertEquals(TranspositionTable.move(entry), i % 64);
+			}
+			table.close();
+
+			table = new DiskTranspositionTable(128, file, 0);
+			assertEquals(table.getColdCapacity(), 65536);
+			for (int i = 1; i <= 100; i++) {
+				long entry = table.probe(((long) i << 32) | i);
+				assertEquals(TranspositionTable.score(entry), -i);
+				assertEquals(TranspositionTable.bound(entry),
+						TranspositionTable.LOWER);
+			}
+			assertEquals(table.probe((101L << 32) | 101),
+					TranspositionTable.NONE);
+			table.close();
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * This checks that finding moves and flips for a batch of positions gives
+	 * the same answers as doing them one at a time, including a move that
+	 * flips along the edge and one that isn't legal.
+	 */
+	@Test
+	void testBatchMoves() {
+		long[] own = {Bitboards.START_WHITE, Bitboards.START_BLACK,
+				0x0000000000000001L, 0x0000000000000080L};
+		long[] opp = {Bitboards.START_BLACK, Bitboards.START_WHITE,
+				0x000000000000007EL, 0x0000000000000100L};
+		int[] squares = {20, 19, 7, 63};
+		long[] out = new long[4];
+
+		BatchMoves.moves(own, opp, out, 4);
+		for (int i = 0; i < 4; i++) {
+			assertEquals(out[i], Bitboards.moves(own[i], opp[i]));
+		}
+		assertEquals(out[2], 1L << 7);
+
+		BatchMoves.flips(own, opp, squares, out, 4);
+		for (int i = 0; i < 4; i++) {
+			assertEquals(out[i], Bitboards.flips(own[i], opp[i], squares[i]));
+		}
+		assertEquals(out[2], 0x7EL);
+		assertEquals(out[3], 0L);
+
+		// The best generator is the vector one if this JVM has the module.
+		BatchMoveGenerator best = BatchMoves.best();
+		best.moves(own, opp, out, 4);
+		for (int i = 0; i < 4; i++) {
+			assertEquals(out[i], Bitboards.moves(own[i], opp[i]));
+		}
+		best.flips(own, opp, squares, out, 4);
+		for (int i = 0; i < 4; i++) {
+			assertEquals(out[i], Bitboards.flips(own[i], opp[i], squares[i]));
+		}
+	}
+
+	/**
+	 * This checks that the controller's saved list of the computer's legal
+	 * moves is thrown away when the board changes, whether by a move or
+	 * behind the controller's back.
+	 */
+	@Test
+	void testMoveCache() {
+		ReversiModel testModel = new ReversiModel();
+		ReversiController testController = new ReversiController(testModel);
+
+		for (int i = 0; i < 8; i++) {
+			for (int j = 0; j < 8; j++) {
+				testModel.setAt(j, i, '_');
+			}
+		}
+
+		// Black's only move is (2, 0), which takes the last white piece.
+		// Finding it saves black's moves for the board before the move.
+		testModel.setAt(0, 0, 'B');
+		testModel.setAt(1, 0, 'W');
+		int[] chosenMove = testController.computerTurn();
+		assertEquals(chosenMove[0], 2);
+		assertEquals(chosenMove[1], 0);
+		assertFalse(testController.canMove('B'));
+
+		// A white piece put down behind the controller's back gives black a
+		// new move at (4, 0).
+		testModel.setAt(3, 0, 'W');
+		assertTrue(testController.canMove('B'));
+		chosenMove = testController.computerTurn();
+		assertEquals(chosenMove[0], 4);
+		assertEquals(chosenMove[1], 0);
+		assertEquals(testModel.getAt(3, 0), 'B');
+		assertFalse(testController.canMove('B'));
+	}
+
+	/**
+	 * This checks what getFlips() finds for one square, for a legal move and
+	 * for squares that can't be played.
+	 */
+	@Test
+	void testGetFlips() {
+		ReversiController testController = new ReversiController();
+
+		ArrayList<int[]> flips = testController.getFlips(4, 2, 'W');
+		assertEquals(flips.size(), 1);
+		assertTrue(Arrays.equals(flips.get(0), new int[]{4, 4, 4, 2, 1, 0}));
+
+		assertTrue(testController.getFlips(0, 0, 'W').isEmpty());
+		assertTrue(testController.getFlips(3, 3, 'W').isEmpty());
+		assertTrue(testController.getFlips(-1, 8, 'B').isEmpty());
+	}
+
+	/**
+	 * This checks that a script of games is replayed and summed up, with a
+	 * game that has a move that can't be played counted as bad.
+	 */
+	@Test
+	void testScriptedGames() throws IOException {
+		StringWriter out = new StringWriter();
+		ScriptedGames games = new ScriptedGames(8, true, null, out);
+		games.playAll(new BufferedReader(
+				new StringReader("# two games\ne3 f5\n\nf4 a1\n")));
+
+		String[] lines = out.toString().split("\n");
+		assertEquals(lines.length, 3);
+		assertEquals(lines[0], "game 1: W 3 B 3, unfinished, 2 moves");
+		assertEquals(lines[1], "game 2: bad move \"a1\" after 1 moves");
+		assertTrue(lines[2].startsWith("2 games: W won 0, B won 0, 0 ties, "
+				+ "1 unfinished, 1 bad. 3 moves in "));
+	}
+
+	/**
+	 * This checks that the renderer draws the whole board in plain mode, and
+	 * only the changed squares and score in ANSI mode.
+	 */
+	@Test
+	void testBoardRenderer() throws IOException, ReversiCantPlaceException {
+		ReversiController testController = new ReversiController(4);
+		StringWriter plain = new StringWriter();
+		new BoardRenderer(4, false, plain)
+				.render(testController.getSnapshot());
+		assertEquals(plain.toString(), "1_ _ _ _ \n2_ W B _ \n3_ B W _ \n"
+				+ "4_ _ _ _ \n a b c d\n\nThe score is 2-2.\n");
+
+		StringWriter ansi = new StringWriter();
+		BoardRenderer renderer = new BoardRenderer(4, true, ansi);
+		renderer.render(testController.getSnapshot());
+		int first = ansi.toString().length();
+		testController.humanTurn(2, 0);
+		renderer.render(testController.getSnapshot());
+
+		// c1 and c2 become white, then the score line changes.
+		assertEquals(ansi.toString().substring(first),
+				"\u001b7\u001b[1;6HW\u001b[2;6HW\u001b[7;1H"
+						+ "The score is 4-1.\u001b[K\u001b8");
+	}
+
+	/**
+	 * This checks that engines are made from specs, and that the book engine
+	 * plays the move that did best in its book and asks its fallback engine
+	 * once the position isn't in it.
+	 */
+	@Test
+	void testEngines() throws IOException {
+		long black = Bitboards.START_BLACK;
+		long white = Bitboards.START_WHITE;
+
+		// All four first moves flip one piece, so greedy takes e3.
+		Engine greedy = Engines.create("greedy");
+		assertEquals(greedy.getName(), "greedy");
+		assertEquals(greedy.chooseMove(black, white, 'W').getMove(), 20);
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> Engines.create("depth:deep"));
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> Engines.create("oracle"));
+
+		// After f4 black scored 2 points in 10 games, after e3 10 points.
+		// c5 won its only game, which isn't enough to beat f4.
+		long afterF4 = OpeningBook.key(black & ~(1L << 28),
+				white | (1L << 28) | (1L << 29), 'B');
+		long afterE3 = OpeningBook.key(black & ~(1L << 28),
+				white | (1L << 28) | (1L << 20), 'B');
+		long afterC5 = OpeningBook.key(black & ~(1L << 35),
+				white | (1L << 35) | (1L << 34), 'B');
+		Path file = Files.createTempFile("book", ".bin");
+		try {
+			OpeningBook.write(file, new long[]{afterF4, afterE3, afterC5},
+					new int[]{10, 10, 1}, new int[]{2, 10, 0}, 3);
+			OpeningBook book = OpeningBook.open(file);
+			assertEquals(book.size(), 3);
+			assertEquals(book.getGames(book.find(afterF4)), 10);
+			assertEquals(book.getPoints(book.find(afterF4)), 2);
+			assertEquals(book.getPoints(book.find(afterE3)), 10);
+			assertEquals(book.find(afterF4 + 1), -1);
+
+			BookEngine engine = new BookEngine(book, new GreedyEngine());
+			assertEquals(engine.chooseMove(black, white, 'W').getMove(), 29);
+			assertEquals(engine.chooseMove(black, white, 'W').getScore(), 90);
+			// Black's replies aren't in the book.
+			assertEquals(engine.chooseMove(black, white, 'B').getMove(),
+					greedy.chooseMove(black, white, 'B').getMove());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * This checks that games packed into a SessionStore wake up as they were
+	 * left, including many games at once so the table has to grow and be
+	 * emptied again.
+	 */
+	@Test
+	void testSessionStore() throws ReversiCantPlaceException {
+		SessionStore store = new SessionStore();
+		ReversiController game = new ReversiController();
+		game.humanTurn(4, 2);
+		store.hibernate(7, game);
+		assertTrue(store.contains(7));
+		assertFalse(store.contains(8));
+
+		ReversiController woken = store.wake(7);
+		assertFalse(store.contains(7));
+		assertEquals(store.wake(7), null);
+		assertEquals(woken.getPlayerToMove(), 'B');
+		assertTrue(Arrays.deepEquals(woken.getBoard(), game.getBoard()));
+		assertTrue(Arrays.equals(woken.getScore(), new int[]{4, 1}));
+
+		for (long session = 0; session < 1000; session++) {
+			ReversiController other = new ReversiController();
+			if (session % 2 == 0) {
+				other.humanSkipped();
+			}
+			store.hibernate(session, other);
+		}
+		assertEquals(store.size(), 1000);
+		for (long session = 0; session < 1000; session += 3) {
+			ReversiController other = store.wake(session);
+			assertEquals(other.getPlayerToMove(),
+					(session % 2 == 0) ? 'B' : 'W');
+		}
+		assertEquals(store.size(), 666);
+		for (long session = 0; session < 1000; session++) {
+			assertEquals(store.contains(session), session % 3 != 0);
+		}
+	}
+
+	/**
+	 * This checks that games in a journal are rebuilt when it is opened
+	 * again, that an ended game isn't, and that a half-written record at the
+	 * end of the file is cut off.
+	 */
+	@Test
+	void testGameJournal() throws IOException, ReversiCantPlaceException {
+		Path file = Files.createTempFile("journal", ".bin");
+		try {
+			GameJournal journal = new GameJournal(file);
+			ReversiController first = new ReversiController();
+			long firstSession = journal.newSession(first);
+			first.humanTurn(4, 2);
+			first.computerTurn();
+			ReversiController second = new ReversiController(6);
+			long secondSession = journal.newSession(second);
+			second.humanSkipped();
+			ReversiController ended = new ReversiController();
+			long endedSession = journal.newSession(ended);
+			journal.endSession(endedSession);
+			journal.close();
+
+			// The program died part way through writing the next record.
+			long size = Files.size(file);
+			Files.write(file, new byte[]{1, 2, 3, 4, 5},
+					StandardOpenOption.APPEND);
+
+			journal = new GameJournal(file);
+			HashMap<Long, ReversiController> games = journal.recover();
+			journal.close();
+			assertEquals(Files.size(file), size);
+			assertEquals(games.size(), 2);
+			assertFalse(games.containsKey(endedSession));
+
+			ReversiController firstAgain = games.get(firstSession);
+			assertTrue(Arrays.deepEquals(firstAgain.getBoard(),
+					first.getBoard()));
+			assertEquals(firstAgain.getPlayerToMove(), 'W');
+			ReversiController secondAgain = games.get(secondSession);
+			assertEquals(secondAgain.getSize(), 6);
+			assertEquals(secondAgain.getPlayerToMove(), 'B');
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * This checks that spectators get a keyframe and then one delta per
+	 * move that rebuilds the board, and that a spectator whose ring is full
+	 * gets a keyframe instead.
+	 */
+	@Test
+	void testDeltaBroadcaster() throws ReversiCantPlaceException {
+		ReversiController testController = new ReversiController();
+		DeltaBroadcaster broadcaster = new DeltaBroadcaster(0);
+		DeltaBroadcaster.Subscription fast = broadcaster.subscribe(8);
+		testController.setBroadcaster(broadcaster);
+		DeltaBroadcaster.Subscription slow = broadcaster.subscribe(1);
+
+		long[] black = new long[1];
+		long[] white = new long[1];
+		BoardDelta first = fast.poll();
+		assertTrue(first.isKeyframe());
+		first.applyTo(black, white);
+
+		// e3 flips e4.
+		testController.humanTurn(4, 2);
+		BoardDelta move = fast.poll();
+		assertFalse(move.isKeyframe());
+		assertEquals(move.getSquare(), 20);
+		assertEquals(move.getPlayer(), 'W');
+		assertEquals(move.getFlips()[0], 1L << 28);
+		assertEquals(move.encode().length, 19);
+		move.applyTo(black, white);
+		assertEquals(fast.poll(), null);
+
+		BoardSnapshot snapshot = testController.getSnapshot();
+		assertEquals(black[0], snapshot.getBits('B')[0]);
+		assertEquals(white[0], snapshot.getBits('W')[0]);
+
+		assertEquals(slow.getCoalesced(), 1);
+		BoardDelta caughtUp = slow.poll();
+		assertTrue(caughtUp.isKeyframe());
+		assertEquals(caughtUp.getVersion(), 1);
+		assertEquals(slow.poll(), null);
+
+		slow.close();
+		assertEquals(broadcaster.getSubscriberCount(), 1);
+	}
+
+	/**
+	 * This checks the endgame solver against a position whose result is
+	 * known: FFO test #40, where black's best move is a2 and wins by 38.
+	 */
+	@Test
+	void testSolver() {
+		String position = "O--OOOOX-OOOOOOXOOXXOOOXOOXOOOXX"
+				+ "OOOOOOXX---OOOOX----O--X--------";
+		long black = 0;
+		long white = 0;
+		for (int square = 0; square < 64; square++) {
+			if (position.charAt(square) == 'X') {
+				black |= 1L << square;
+			} else if (position.charAt(square) == 'O') {
+				white |= 1L << square;
+			}
+		}
+		assertEquals(Long.bitCount(~(black | white)), 20);
+
+		Search search = new Search(new DiscCountEvaluator());
+		search.setSolveEmpties(20);
+		search.setTable(new TranspositionTable(16L << 20));
+		SearchResult result = search.search(black, white, 'B', 64, 0);
+		assertEquals(Bitboards.name(result.getMove()), "a2");
+		assertEquals(result.getScore(), 38);
+	}
+
+	/**
+	 * This checks that a fixed-depth search scores positions the same as a
+	 * plain minimax with no pruning, both with and without a table.
+	 */
+	@Test
+	void testSearchMatchesMinimax() {
+		SplittableRandom random = new SplittableRandom(11);
+		for (int position = 0; position < 6; position++) {
+			// A random opening of 8 to 20 moves.
+			long black = Bitboards.START_BLACK;
+			long white = Bitboards.START_WHITE;
+			char player = 'B';
+			for (int ply = 8 + random.nextInt(13); ply > 0; ply--) {
+				long own = (player == 'B') ? black : white;
+				long opp = (player == 'B') ? white : black;
+				long legal = Bitboards.moves(own, opp);
+				if (legal == 0) {
+					break;
+				}
+				for (int pick = random.nextInt(Long.bitCount(legal));
+						pick > 0; pick--) {
+					legal &= legal - 1;
+				}
+				int square = Long.numberOfTrailingZeros(legal);
+				long flips = Bitboards.flips(own, opp, square);
+				own |= flips | (1L << square);
+				opp &= ~flips;
+				black = (player == 'B') ? own : opp;
+				white = (player == 'B') ? opp : own;
+				player = (player == 'B') ? 'W' : 'B';
+			}
+
+			for (int depth = 1; depth <= 4; depth++) {
+				int expected = minimax(black, white, player, depth);
+				Search search = new Search(new DiscCountEvaluator());
+				search.setSolveEmpties(0);
+				assertEquals(search.search(black, white, player, depth, 0)
+						.getScore(), expected);
+				search.setTable(new TranspositionTable(1L << 20));
+				assertEquals(search.search(black, white, player, depth, 0)
+						.getScore(), expected);
+			}
+		}
+	}
+
+	/**
+	 * This is the plainest possible search, to check Search against. A pass
+	 * doesn't use up depth and a finished game is a win or a loss by Search.WIN
+	 * plus the disc difference, the same as Search.
+	 *
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @param player
+	 *            is the player to move.
+	 * @param depth
+	 *            is how many moves ahead to look.
+	 * @return is the score of the position for player.
+	 */
+	private static int minimax(long black, long white, char player,
+			int depth) {
+		long own = (player == 'B') ? black : white;
+		long opp = (player == 'B') ? white : black;
+		char other = (player == 'B') ? 'W' : 'B';
+		long legal = Bitboards.moves(own, opp);
+		if (legal == 0) {
+			if (Bitboards.moves(opp, own) == 0) {
+				int difference = Long.bitCount(own) - Long.bitCount(opp);
+				return difference + Integer.signum(difference) * Search.WIN;
+			}
+			return -minimax(black, white, other, depth);
+		}
+		if (depth == 0) {
+			DiscCountEvaluator evaluator = new DiscCountEvaluator();
+			evaluator.reset(Bitboards.toBoard(black, white));
+			return evaluator.evaluate(player);
+		}
+
+		int best = -Search.INFINITY;
+		for (; legal != 0; legal &= legal - 1) {
+			int square = Long.numberOfTrailingZeros(legal);
+			long flips = Bitboards.flips(own, opp, square);
+			long nextOwn = own | flips | (1L << square);
+			long nextOpp = opp & ~flips;
+			int score = (player == 'B')
+					? -minimax(nextOwn, nextOpp, other, depth - 1)
+					: -minimax(nextOpp, nextOwn, other, depth - 1);
+			best = Math.max(best, score);
+		}
+		return best;
+	}
+
 }
@@ -0,0 +1,455 @@
+package tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import engine.Bitboards;
+import engine.Engine;
+import engine.Engines;
+import engine.SearchResult;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is a small HTTP service that analyzes positions for
+ *         bots and other tools. GET /analyze?board=BOARD&side=B returns the
+ *         legal moves, the engine's best move and its score as JSON, like
+ *         {"side":"B","moves":["c4","d3"],"best":"d3","score":12,"depth":6,
+ *         "nodes":5321}. The board is 64 of 'B', 'W' and '_' (or '-') going
+ *         along each row from a1 to h8, like the BatchAnalyzer's input. GET
+ *         /stats returns how many requests were answered and how many of
+ *         them needed a search.
+ *
+ *         Every request gets its own thread, a virtual thread where the Java
+ *         version has them and a pooled one where it doesn't, so a request
+ *         waiting on a search holds nothing but its thread. Searches run on a
+ *         fixed number of engine copies, one per core unless told otherwise,
+ *         and requests past that wait their turn.
+ *
+ *         Requests for a position that is already being searched wait for
+ *         that search instead of starting another, and answers are kept for
+ *         --cache-ms milliseconds so a popular position is only searched once
+ *         in that time. At most --cache-size answers are kept.
+ *
+ *         Usage: java tools.AnalysisServer [--port P] [--bind ADDRESS]
+ *         [--engine SPEC] [--threads T] [--cache-ms MS] [--cache-size N]
+ *
+ */
+public class AnalysisServer {
+
+	/**
+	 * This is an answer, or a search that will give one, and when it stops
+	 * being fresh.
+	 */
+	private static final class Analysis {
+		private final CompletableFuture<String> result;
+		private volatile long expires;
+
+		/**
+		 * This is the constructor for a search that hasn't finished.
+		 */
+		Analysis() {
+			this.result = new CompletableFuture<String>();
+		}
+
+		/**
+		 * @param now
+		 *            is System.nanoTime().
+		 * @return is true while the search is running and until the answer
+		 *         expires.
+		 */
+		boolean isFresh(long now) {
+			return !result.isDone() || (expires - now > 0);
+		}
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final BlockingQueue<Engine> engines;
+	private final ConcurrentHashMap<String, Analysis> answers;
+	private final long cacheNanos;
+	private final int cacheSize;
+
+	private final LongAdder requests;
+	private final LongAdder searches;
+
+	/**
+	 * This is the constructor for a server. It doesn't answer requests until
+	 * start() is called.
+	 *
+	 * @param address
+	 *            is the address and port to listen on. Port 0 picks a free
+	 *            port.
+	 * @param engine
+	 *            is the Engine to analyze with. It is copied once for each
+	 *            search that may run at the same time.
+	 * @param threads
+	 *            is how many searches may run at the same time.
+	 * @param cacheMillis
+	 *            is how long an answer is kept.
+	 * @param cacheSize
+	 *            is how many answers are kept at most.
+	 * @throws IOException
+	 *             This is thrown if the server can't listen on the address.
+	 */
+	public AnalysisServer(InetSocketAddress address, Engine engine,
+			int threads, long cacheMillis, int cacheSize) throws IOException {
+		this.engines = new ArrayBlockingQueue<Engine>(threads);
+		this.engines.add(engine);
+		for (int i = 1; i < threads; i++) {
+			this.engines.add(engine.copy());
+		}
+		this.answers = new ConcurrentHashMap<String, Analysis>();
+		this.cacheNanos = cacheMillis * 1000000L;
+		this.cacheSize = cacheSize;
+		this.requests = new LongAdder();
+		this.searches = new LongAdder();
+
+		this.executor = newExecutor();
+		this.server = HttpServer.create(address, 0);
+		this.server.createContext("/analyze", this::handleAnalyze);
+		this.server.createContext("/stats", this::handleStats);
+		this.server.setExecutor(executor);
+	}
+
+	/**
+	 * This starts answering requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * This stops the server, letting requests already being answered finish
+	 * for up to a second.
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	/**
+	 * This returns the port the server listens on.
+	 *
+	 * @return is the port.
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * This analyzes a position, sharing a search already running for it or
+	 * an answer found for it recently.
+	 *
+	 * @param board
+	 *            is the board, as described at the top of the class.
+	 * @param side
+	 *            is the player to move, "B" or "W".
+	 * @return is the answer as JSON.
+	 * @throws InterruptedException
+	 *             This is thrown if the thread is interrupted while it waits.
+	 */
+	public String analyze(String board, String side)
+			throws InterruptedException {
+		if ((board == null) || (board.length() != 64)) {
+			throw new IllegalArgumentException(
+					"board must be 64 squares long.");
+		}
+		if (!"B".equals(side) && !"W".equals(side)) {
+			throw new IllegalArgumentException("side must be B or W.");
+		}
+		long black = 0;
+		long white = 0;
+		for (int square = 0; square < 64; square++) {
+			char piece = board.charAt(square);
+			if (piece == 'B') {
+				black |= 1L << square;
+			} else if (piece == 'W') {
+				white |= 1L << square;
+			} else if ((piece != '_') && (piece != '-')) {
+				throw new IllegalArgumentException("bad square " + piece);
+			}
+		}
+		requests.increment();
+
+		// Empty squares are written two ways, so key on the bitboards.
+		String key = Long.toHexString(black) + ":" + Long.toHexString(white)
+				+ side;
+		Analysis mine = new Analysis();
+		long now = System.nanoTime();
+		Analysis analysis = answers.compute(key,
+				(k, old) -> ((old != null) && old.isFresh(now)) ? old : mine);
+
+		if (analysis == mine) {
+			try {
+				String answer = search(black, white, side.charAt(0));
+				mine.expires = System.nanoTime() + cacheNanos;
+				mine.result.complete(answer);
+			} catch (RuntimeException | InterruptedException e) {
+				answers.remove(key, mine);
+				mine.result.completeExceptionally(e);
+				throw e;
+			}
+			if (answers.size() > cacheSize) {
+				prune();
+			}
+		}
+
+		try {
+			return analysis.result.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * This is a helper that searches a position on a free engine.
+	 *
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @param playerChar
+	 *            is the player to move, 'B' or 'W'.
+	 * @return is the answer as JSON.
+	 * @throws InterruptedException
+	 *             This is thrown if the thread is interrupted while it waits
+	 *             for an engine.
+	 */
+	private String search(long black, long white, char playerChar)
+			throws InterruptedException {
+		long own = (playerChar == 'B') ? black : white;
+		long opp = (playerChar == 'B') ? white : black;
+
+		StringBuilder json = new StringBuilder(160);
+		json.append("{\"side\":\"").append(playerChar).append("\",\"moves\":[");
+		long legal = Bitboards.moves(own, opp);
+		for (long bits = legal; bits != 0; bits &= bits - 1) {
+			if (bits != legal) {
+				json.append(',');
+			}
+			int square = Long.numberOfTrailingZeros(bits);
+			json.append('"').append(Bitboards.name(square)).append('"');
+		}
+
+		Engine engine = engines.take();
+		SearchResult result;
+		try {
+			result = engine.chooseMove(black, white, playerChar);
+		} finally {
+			engines.add(engine);
+		}
+		searches.increment();
+
+		json.append("],\"best\":\"").append(Bitboards.name(result.getMove()))
+				.append("\",\"score\":").append(result.getScore())
+				.append(",\"depth\":").append(result.getDepth())
+				.append(",\"nodes\":").append(result.getNodes()).append('}');
+		return json.toString();
+	}
+
+	/**
+	 * This is a helper that drops expired answers once too many are kept,
+	 * and every finished answer if that isn't enough.
+	 */
+	private void prune() {
+		long now = System.nanoTime();
+		answers.values().removeIf(analysis -> !analysis.isFresh(now));
+		if (answers.size() > cacheSize) {
+			answers.values().removeIf(analysis -> analysis.result.isDone());
+		}
+	}
+
+	/**
+	 * This answers a request to /analyze.
+	 *
+	 * @param exchange
+	 *            is the request and its response.
+	 * @throws IOException
+	 *             This is thrown if the response can't be sent.
+	 */
+	private void handleAnalyze(HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				send(exchange, 405, "Only GET is supported.");
+				return;
+			}
+			HashMap<String, String> query = parseQuery(
+					exchange.getRequestURI().getRawQuery());
+			String answer = analyze(query.get("board"), query.get("side"));
+			exchange.getResponseHeaders().set("Content-Type",
+					"application/json");
+			send(exchange, 200, answer);
+		} catch (IllegalArgumentException e) {
+			send(exchange, 400, e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			send(exchange, 503, "The server is stopping.");
+		} catch (RuntimeException e) {
+			send(exchange, 500, "The search failed.");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * This answers a request to /stats.
+	 *
+	 * @param exchange
+	 *            is the request and its response.
+	 * @throws IOException
+	 *             This is thrown if the response can't be sent.
+	 */
+	private void handleStats(HttpExchange exchange) throws IOException {
+		try {
+			send(exchange, 200, "requests " + requests.sum() + "\nsearches "
+					+ searches.sum() + "\ncached " + answers.size() + "\n");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * This is a helper that sends a whole response.
+	 *
+	 * @param exchange
+	 *            is the request and its response.
+	 * @param status
+	 *            is the HTTP status code.
+	 * @param body
+	 *            is the response body.
+	 * @throws IOException
+	 *             This is thrown if the response can't be sent.
+	 */
+	private static void send(HttpExchange exchange, int status, String body)
+			throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * This is a helper that reads the parameters out of a query string.
+	 *
+	 * @param query
+	 *            is the raw query, or null.
+	 * @return is a HashMap from parameter name to value.
+	 * @throws UnsupportedEncodingException
+	 *             This is never thrown, since UTF-8 is always supported.
+	 */
+	private static HashMap<String, String> parseQuery(String query)
+			throws UnsupportedEncodingException {
+		HashMap<String, String> parameters = new HashMap<String, String>();
+		if (query == null) {
+			return parameters;
+		}
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0) {
+				parameters.put(
+						URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+						URLDecoder.decode(pair.substring(equals + 1),
+								"UTF-8"));
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * This is a helper that makes the executor requests run on. Virtual
+	 * threads are looked up by reflection so the program still builds and
+	 * runs on Java versions from before them.
+	 *
+	 * @return is an executor with a virtual thread per task, or a cached
+	 *         thread pool.
+	 */
+	private static ExecutorService newExecutor() {
+		try {
+			Method factory = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * This runs the server from the command line until it is killed.
+	 *
+	 * @param args
+	 *            holds the options listed at the top of the class.
+	 * @throws IOException
+	 *             This is thrown if the server can't start or the engine's
+	 *             files can't be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = 8080;
+		String bind = "127.0.0.1";
+		String spec = "depth:6";
+		int threads = Runtime.getRuntime().availableProcessors();
+		long cacheMillis = 1000;
+		int cacheSize = 10000;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "--port" :
+					port = Integer.parseInt(value);
+					break;
+				case "--bind" :
+					bind = value;
+					break;
+				case "--engine" :
+					spec = value;
+					break;
+				case "--threads" :
+					threads = Integer.parseInt(value);
+					break;
+				case "--cache-ms" :
+					cacheMillis = Long.parseLong(value);
+					break;
+				case "--cache-size" :
+					cacheSize = Integer.parseInt(value);
+					break;
+				default :
+					System.out.println("Unknown option " + args[i]);
+					return;
+			}
+		}
+		if ((args.length % 2 != 0) || (threads < 1)) {
+			System.out.println("Usage: java tools.AnalysisServer [--port P] "
+					+ "[--bind ADDRESS] [--engine SPEC] [--threads T] "
+					+ "[--cache-ms MS] [--cache-size N]");
+			return;
+		}
+
+		AnalysisServer server = new AnalysisServer(
+				new InetSocketAddress(InetAddress.getByName(bind), port),
+				Engines.create(spec), threads, cacheMillis, cacheSize);
+		server.start();
+		System.out.println("Analyzing with " + spec + " on port "
+				+ server.getPort());
+	}
+
+}
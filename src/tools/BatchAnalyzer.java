@@ -0,0 +1,305 @@
+package tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import engine.Bitboards;
+import engine.DiscCountEvaluator;
+import engine.DiskTranspositionTable;
+import engine.Evaluator;
+import engine.NeuralEvaluator;
+import engine.Search;
+import engine.SearchResult;
+import engine.TranspositionTable;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This scores a whole file of positions at once, for things
+ *         like checking logged games for blunders. Positions are spread over
+ *         every core with a parallel stream, and every thread gets its own
+ *         Search and evaluator the first time it needs one. Results are
+ *         written as soon as they are ready, tagged with the position's id,
+ *         or in the order they were read with --ordered.
+ *
+ *         All the threads share one transposition table of --hash MB
+ *         megabytes. For deep solves --cold-file FILE backs it with a file of
+ *         --cold-mb MB megabytes, which is saved when the run ends and picked
+ *         up again by the next run given the same file. Without a cold file,
+ *         --hash-file FILE loads the table from a snapshot at the start and
+ *         saves it back at the end so the next run starts warm.
+ *
+ *         Usage: java tools.BatchAnalyzer [--in FILE] [--out FILE] [--depth
+ *         D] [--time MS] [--weights FILE] [--threads T] [--ordered] [--hash
+ *         MB] [--cold-file FILE] [--cold-mb MB] [--hash-file FILE]
+ *
+ *         Each input line is "id board side", where board is 64 of 'B', 'W'
+ *         and '_' (or '-') going along each row from a1 to h8 and side is
+ *         'B' or 'W'. Each output line is "id move score depth nodes", or
+ *         "id error reason" for a line that couldn't be read.
+ *
+ */
+public class BatchAnalyzer {
+	private final Evaluator evaluator;
+	private final int depth;
+	private final long millis;
+	private final ThreadLocal<Search> searches;
+	private volatile TranspositionTable table;
+
+	/**
+	 * This is the constructor for a batch analyzer.
+	 *
+	 * @param evaluator
+	 *            is the evaluator to score positions with. Each thread gets
+	 *            its own copy.
+	 * @param depth
+	 *            is how many moves ahead to search each position.
+	 * @param millis
+	 *            is how long each position may take, or 0 for no limit.
+	 */
+	public BatchAnalyzer(Evaluator evaluator, int depth, long millis) {
+		this.evaluator = evaluator;
+		this.depth = depth;
+		this.millis = millis;
+		this.searches = ThreadLocal.withInitial(() -> {
+			Search search = new Search(this.evaluator.copy());
+			search.setTable(this.table);
+			return search;
+		});
+	}
+
+	/**
+	 * This sets the table every thread's search shares. It must be set
+	 * before the first position is analyzed.
+	 *
+	 * @param table
+	 *            is the TranspositionTable, or null to use none.
+	 */
+	public void setTable(TranspositionTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * This analyzes every position in a stream and writes a line for each.
+	 *
+	 * @param positions
+	 *            is a stream of input lines. It is made parallel here.
+	 * @param out
+	 *            is where the results are written.
+	 * @param ordered
+	 *            is true to write results in input order instead of as soon
+	 *            as they are ready.
+	 * @param pool
+	 *            is the pool the positions are analyzed on.
+	 * @throws IOException
+	 *             This is thrown if a result can't be written.
+	 * @throws InterruptedException
+	 *             This is thrown if the analysis is interrupted.
+	 */
+	public void analyze(Stream<String> positions, Writer out, boolean ordered,
+			ForkJoinPool pool) throws IOException, InterruptedException {
+		Stream<String> results = positions.parallel()
+				.filter(line -> !line.trim().isEmpty()).map(this::analyzeLine);
+
+		try {
+			pool.submit(() -> {
+				if (ordered) {
+					results.forEachOrdered(result -> write(out, result));
+				} else {
+					results.forEach(result -> write(out, result));
+				}
+			}).get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		out.flush();
+	}
+
+	/**
+	 * This analyzes one input line.
+	 *
+	 * @param line
+	 *            is "id board side".
+	 * @return is the output line for it.
+	 */
+	private String analyzeLine(String line) {
+		String[] parts = line.trim().split("\\s+");
+		if ((parts.length != 3) || (parts[1].length() != 64)
+				|| !(parts[2].equals("B") || parts[2].equals("W"))) {
+			return parts[0] + " error expected \"id board side\"";
+		}
+
+		long black = 0;
+		long white = 0;
+		for (int square = 0; square < 64; square++) {
+			char piece = parts[1].charAt(square);
+			if (piece == 'B') {
+				black |= 1L << square;
+			} else if (piece == 'W') {
+				white |= 1L << square;
+			} else if ((piece != '_') && (piece != '-')) {
+				return parts[0] + " error bad square " + piece;
+			}
+		}
+
+		SearchResult result = searches.get().search(black, white,
+				parts[2].charAt(0), depth, millis);
+		return parts[0] + " " + Bitboards.name(result.getMove()) + " "
+				+ result.getScore() + " " + result.getDepth() + " "
+				+ result.getNodes();
+	}
+
+	/**
+	 * This writes one result line and flushes it, so each result can be read
+	 * as soon as it is ready instead of when the run ends. Threads take
+	 * turns so lines never mix.
+	 *
+	 * @param out
+	 *            is where the line is written.
+	 * @param result
+	 *            is the line.
+	 */
+	private static void write(Writer out, String result) {
+		try {
+			synchronized (out) {
+				out.write(result);
+				out.write(System.lineSeparator());
+				out.flush();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * This runs the analyzer from the command line.
+	 *
+	 * @param args
+	 *            holds the options listed at the top of the class.
+	 * @throws Exception
+	 *             This is thrown if the positions can't be read or the
+	 *             results can't be written.
+	 */
+	public static void main(String[] args) throws Exception {
+		String in = null;
+		String outFile = null;
+		String weights = null;
+		int depth = 0;
+		long millis = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean ordered = false;
+		long hashBytes = 64L << 20;
+		String coldFile = null;
+		String hashFile = null;
+		long coldBytes = 1024L << 20;
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--ordered")) {
+				ordered = true;
+				continue;
+			}
+			if (i + 1 >= args.length) {
+				System.out.println("Missing value for " + args[i]);
+				return;
+			}
+			String value = args[i + 1];
+			i++;
+			switch (args[i - 1]) {
+				case "--in" :
+					in = value;
+					break;
+				case "--out" :
+					outFile = value;
+					break;
+				case "--depth" :
+					depth = Integer.parseInt(value);
+					break;
+				case "--time" :
+					millis = Long.parseLong(value);
+					break;
+				case "--weights" :
+					weights = value;
+					break;
+				case "--threads" :
+					threads = Integer.parseInt(value);
+					break;
+				case "--hash" :
+					hashBytes = Long.parseLong(value) << 20;
+					break;
+				case "--cold-file" :
+					coldFile = value;
+					break;
+				case "--hash-file" :
+					hashFile = value;
+					break;
+				case "--cold-mb" :
+					coldBytes = Long.parseLong(value) << 20;
+					break;
+				default :
+					System.out.println("Unknown option " + args[i - 1]);
+					return;
+			}
+		}
+		if ((depth == 0) && (millis == 0)) {
+			System.out.println("Usage: java tools.BatchAnalyzer [--in FILE] "
+					+ "[--out FILE] [--depth D] [--time MS] "
+					+ "[--weights FILE] [--threads T] [--ordered] "
+					+ "[--hash MB] [--cold-file FILE] [--cold-mb MB] "
+					+ "[--hash-file FILE]");
+			return;
+		}
+		if (depth == 0) {
+			depth = 64;
+		}
+
+		Evaluator evaluator = new DiscCountEvaluator();
+		if (weights != null) {
+			evaluator = NeuralEvaluator.load(Paths.get(weights));
+		}
+
+		BatchAnalyzer analyzer = new BatchAnalyzer(evaluator, depth, millis);
+		TranspositionTable table = null;
+		if (coldFile != null) {
+			table = new DiskTranspositionTable(hashBytes, Paths.get(coldFile),
+					coldBytes);
+		} else if ((hashFile != null) && Files.exists(Paths.get(hashFile))) {
+			table = TranspositionTable.load(Paths.get(hashFile),
+					evaluator.fingerprint());
+		} else if (hashBytes > 0) {
+			table = new TranspositionTable(hashBytes);
+		}
+		analyzer.setTable(table);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+
+		try (BufferedReader reader = (in == null)
+				? new BufferedReader(new InputStreamReader(System.in))
+				: Files.newBufferedReader(Paths.get(in));
+				Writer out = (outFile == null)
+						? new BufferedWriter(new OutputStreamWriter(System.out))
+						: Files.newBufferedWriter(Paths.get(outFile))) {
+			analyzer.analyze(reader.lines(), out, ordered, pool);
+		} finally {
+			pool.shutdown();
+			if (table instanceof DiskTranspositionTable) {
+				((DiskTranspositionTable) table).close();
+			} else if ((table != null) && (hashFile != null)) {
+				table.save(Paths.get(hashFile), evaluator.fingerprint());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,428 @@
+package tools;
+
+import java.io.BufferedReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import engine.Bitboards;
+import engine.DiscCountEvaluator;
+import engine.Evaluator;
+import engine.NeuralEvaluator;
+import engine.OpeningBook;
+import engine.Search;
+import engine.SearchResult;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This builds an opening book from finished games. Every
+ *         position in the first --plies moves of every game is counted, along
+ *         with how the game ended for the player to move, and positions
+ *         reached by at least --min-games games are written as an
+ *         OpeningBook file.
+ *
+ *         Games are read in batches like the WeightTrainer does. Each batch
+ *         is split across every core and each core counts into its own
+ *         PositionCounts table, so the cores never wait on each other. Once
+ *         every game is counted the tables are added together, biggest first.
+ *
+ *         With --deepen D, positions reached by fewer than --trust games are
+ *         also searched D moves ahead, since a handful of games says little
+ *         about a position. The search's verdict, a win, draw or loss for the
+ *         player to move, counts as much as the games do. This keeps each
+ *         position's bitboards while counting, which doubles the memory used.
+ *
+ *         Usage: java tools.BookBuilder [--games FILE]... [--self-play N]
+ *         [--seed S] [--plies P] [--min-games M] [--deepen D] [--trust N]
+ *         [--weights FILE] [--batch GAMES] [--threads T] --out FILE
+ *
+ *         Game files are read like the WeightTrainer's: one game per line,
+ *         white first and passes left out. Games that don't reach the end are
+ *         skipped, since they have no result.
+ *
+ */
+public class BookBuilder {
+	private final int plies;
+	private final boolean keepBoards;
+	private final ForkJoinPool pool;
+	private final ConcurrentLinkedQueue<PositionCounts> tables;
+	private final ThreadLocal<PositionCounts> counts;
+
+	private final LongAdder counted;
+	private final LongAdder rejected;
+	private final LongAdder unfinished;
+
+	/**
+	 * This is the constructor for a book builder.
+	 *
+	 * @param plies
+	 *            is how many moves into each game positions are counted.
+	 * @param keepBoards
+	 *            is true to keep each position's bitboards so it can be
+	 *            searched with deepen().
+	 * @param threads
+	 *            is how many cores to count on.
+	 */
+	public BookBuilder(int plies, boolean keepBoards, int threads) {
+		this.plies = plies;
+		this.keepBoards = keepBoards;
+		this.pool = new ForkJoinPool(threads);
+		this.tables = new ConcurrentLinkedQueue<PositionCounts>();
+		this.counts = ThreadLocal.withInitial(() -> {
+			PositionCounts table = new PositionCounts(this.keepBoards);
+			tables.add(table);
+			return table;
+		});
+		this.counted = new LongAdder();
+		this.rejected = new LongAdder();
+		this.unfinished = new LongAdder();
+	}
+
+	/**
+	 * This counts the positions of a batch of games.
+	 *
+	 * @param games
+	 *            is an array of game transcripts.
+	 * @param count
+	 *            is how many entries of games are used.
+	 * @throws InterruptedException
+	 *             This is thrown if the builder is interrupted.
+	 */
+	public void addBatch(String[] games, int count)
+			throws InterruptedException {
+		int slices = Math.min(count, pool.getParallelism() * 4);
+		if (slices == 0) {
+			return;
+		}
+
+		try {
+			pool.submit(() -> IntStream.range(0, slices).parallel()
+					.forEach(slice -> countSlice(games,
+							count * slice / slices,
+							count * (slice + 1) / slices)))
+					.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * This adds every core's table together. No more games can be added
+	 * afterwards.
+	 *
+	 * @return is the PositionCounts holding every position counted.
+	 */
+	public PositionCounts merge() {
+		ArrayList<PositionCounts> parts = new ArrayList<PositionCounts>(
+				tables);
+		tables.clear();
+		if (parts.isEmpty()) {
+			return new PositionCounts(keepBoards);
+		}
+
+		// Adding into the biggest table saves it growing over and over.
+		PositionCounts merged = parts.get(0);
+		for (PositionCounts part : parts) {
+			if (part.size() > merged.size()) {
+				merged = part;
+			}
+		}
+		for (PositionCounts part : parts) {
+			if (part != merged) {
+				merged.addAll(part);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * This searches the positions reached by too few games to trust and
+	 * counts the search's verdict as much as the games. The table must have
+	 * been made with keepBoards and compacted.
+	 *
+	 * @param table
+	 *            is the compacted PositionCounts.
+	 * @param evaluator
+	 *            is the evaluator to search with. Each core gets its own
+	 *            copy.
+	 * @param depth
+	 *            is how many moves ahead to search.
+	 * @param trust
+	 *            is how many games a position needs to be left alone.
+	 * @return is the number of positions searched.
+	 * @throws InterruptedException
+	 *             This is thrown if the builder is interrupted.
+	 */
+	public int deepen(PositionCounts table, Evaluator evaluator, int depth,
+			int trust) throws InterruptedException {
+		long[] keys = table.getKeys();
+		int[] games = table.getGames();
+		int[] points = table.getPoints();
+		long[] blacks = table.getBlacks();
+		long[] whites = table.getWhites();
+		ThreadLocal<Search> searches = ThreadLocal
+				.withInitial(() -> new Search(evaluator.copy()));
+		LongAdder searched = new LongAdder();
+
+		try {
+			pool.submit(() -> IntStream.range(0, table.size()).parallel()
+					.filter(i -> games[i] < trust).forEach(i -> {
+						// The key tells whose turn it is.
+						char playerChar = (OpeningBook.key(blacks[i],
+								whites[i], 'W') == keys[i]) ? 'W' : 'B';
+						SearchResult result = searches.get().search(blacks[i],
+								whites[i], playerChar, depth, 0);
+						int verdict = 1 + Integer.signum(result.getScore());
+						points[i] = (points[i] + games[i] * verdict) / 2;
+						searched.increment();
+					})).get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		return searched.intValue();
+	}
+
+	/**
+	 * This is a helper that counts part of a batch. It runs on one core and
+	 * counts into that core's table.
+	 *
+	 * @param games
+	 *            is an array of game transcripts.
+	 * @param start
+	 *            is the first game in the slice.
+	 * @param end
+	 *            is one past the last game in the slice.
+	 */
+	private void countSlice(String[] games, int start, int end) {
+		PositionCounts table = counts.get();
+		long[] blacks = new long[plies + 1];
+		long[] whites = new long[plies + 1];
+		char[] sides = new char[plies + 1];
+
+		for (int i = start; i < end; i++) {
+			int[] moves = Bitboards.parseMoves(games[i]);
+			if (moves == null) {
+				rejected.increment();
+				continue;
+			}
+			int result = replay(moves, blacks, whites, sides);
+			if (result == Integer.MIN_VALUE) {
+				rejected.increment();
+				continue;
+			} else if (result == Integer.MAX_VALUE) {
+				unfinished.increment();
+				continue;
+			}
+
+			int positions = Math.min(plies, moves.length) + 1;
+			for (int ply = 0; ply < positions; ply++) {
+				// result is black's disc lead at the end of the game.
+				int lead = (sides[ply] == 'B') ? result : -result;
+				table.add(OpeningBook.key(blacks[ply], whites[ply], sides[ply]),
+						blacks[ply], whites[ply], 1, 1 + Integer.signum(lead));
+			}
+			counted.increment();
+		}
+	}
+
+	/**
+	 * This is a helper that plays a game through to the end, recording the
+	 * first positions of it. Each position's side to move is the player who
+	 * didn't make the last move, even if they then have to pass, since that
+	 * is how a BookEngine looks positions up.
+	 *
+	 * @param moves
+	 *            is the list of squares played.
+	 * @param blacks
+	 *            is filled with the black bitboard of the first positions.
+	 * @param whites
+	 *            is filled with the white bitboard of the first positions.
+	 * @param sides
+	 *            is filled with the side to move in the first positions.
+	 * @return is black's final disc lead, Integer.MIN_VALUE if a move was not
+	 *         legal or Integer.MAX_VALUE if the game didn't reach the end.
+	 */
+	private int replay(int[] moves, long[] blacks, long[] whites,
+			char[] sides) {
+		long own = Bitboards.START_WHITE;
+		long opp = Bitboards.START_BLACK;
+		boolean whiteToMove = true;
+		blacks[0] = opp;
+		whites[0] = own;
+		sides[0] = 'W';
+
+		for (int ply = 0; ply < moves.length; ply++) {
+			long legal = Bitboards.moves(own, opp);
+			if (legal == 0) {
+				// The player to move has to pass.
+				long swap = own;
+				own = opp;
+				opp = swap;
+				whiteToMove = !whiteToMove;
+				legal = Bitboards.moves(own, opp);
+			}
+			if ((legal & (1L << moves[ply])) == 0) {
+				return Integer.MIN_VALUE;
+			}
+
+			long flips = Bitboards.flips(own, opp, moves[ply]);
+			long next = opp & ~flips;
+			opp = own | flips | (1L << moves[ply]);
+			own = next;
+			whiteToMove = !whiteToMove;
+
+			if (ply < plies) {
+				blacks[ply + 1] = whiteToMove ? opp : own;
+				whites[ply + 1] = whiteToMove ? own : opp;
+				sides[ply + 1] = whiteToMove ? 'W' : 'B';
+			}
+		}
+
+		if ((Bitboards.moves(own, opp) != 0)
+				|| (Bitboards.moves(opp, own) != 0)) {
+			return Integer.MAX_VALUE;
+		}
+		long black = whiteToMove ? opp : own;
+		long white = whiteToMove ? own : opp;
+		return Long.bitCount(black) - Long.bitCount(white);
+	}
+
+	/**
+	 * This runs the builder from the command line.
+	 *
+	 * @param args
+	 *            holds the options listed at the top of the class.
+	 * @throws Exception
+	 *             This is thrown if the games can't be read or the book can't
+	 *             be written.
+	 */
+	public static void main(String[] args) throws Exception {
+		ArrayList<Path> gameFiles = new ArrayList<Path>();
+		Path out = null;
+		long selfPlay = 0;
+		long seed = 1;
+		int plies = 20;
+		int minGames = 2;
+		int deepen = 0;
+		int trust = 16;
+		String weights = null;
+		int batchSize = 4096;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "--games" :
+					gameFiles.add(Paths.get(value));
+					break;
+				case "--self-play" :
+					selfPlay = Long.parseLong(value);
+					break;
+				case "--seed" :
+					seed = Long.parseLong(value);
+					break;
+				case "--plies" :
+					plies = Integer.parseInt(value);
+					break;
+				case "--min-games" :
+					minGames = Integer.parseInt(value);
+					break;
+				case "--deepen" :
+					deepen = Integer.parseInt(value);
+					break;
+				case "--trust" :
+					trust = Integer.parseInt(value);
+					break;
+				case "--weights" :
+					weights = value;
+					break;
+				case "--batch" :
+					batchSize = Integer.parseInt(value);
+					break;
+				case "--threads" :
+					threads = Integer.parseInt(value);
+					break;
+				case "--out" :
+					out = Paths.get(value);
+					break;
+				default :
+					System.out.println("Unknown option " + args[i]);
+					return;
+			}
+		}
+		if ((out == null) || (gameFiles.isEmpty() && (selfPlay == 0))) {
+			System.out.println("Usage: java tools.BookBuilder "
+					+ "[--games FILE]... [--self-play N] [--seed S] "
+					+ "[--plies P] [--min-games M] [--deepen D] [--trust N] "
+					+ "[--weights FILE] [--batch GAMES] [--threads T] "
+					+ "--out FILE");
+			return;
+		}
+
+		long started = System.nanoTime();
+		BookBuilder builder = new BookBuilder(plies, deepen > 0, threads);
+		String[] batch = new String[batchSize];
+		int count = 0;
+
+		for (Path file : gameFiles) {
+			try (BufferedReader reader = Files.newBufferedReader(file)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if (line.isEmpty() || line.startsWith("#")) {
+						continue;
+					}
+					batch[count] = line;
+					count++;
+					if (count == batchSize) {
+						builder.addBatch(batch, count);
+						count = 0;
+					}
+				}
+			}
+		}
+		builder.addBatch(batch, count);
+
+		for (long game = 0; game < selfPlay; game += batchSize) {
+			int size = (int) Math.min(batchSize, selfPlay - game);
+			long first = (seed << 32) + game;
+			builder.pool.submit(() -> IntStream.range(0, size).parallel()
+					.forEach(i -> batch[i] = WeightTrainer
+							.selfPlayGame(first + i)))
+					.get();
+			builder.addBatch(batch, size);
+		}
+
+		PositionCounts table = builder.merge();
+		int positions = table.size();
+		int kept = table.compact(minGames);
+		int searched = 0;
+		if (deepen > 0) {
+			Evaluator evaluator = new DiscCountEvaluator();
+			if (weights != null) {
+				evaluator = NeuralEvaluator.load(Paths.get(weights));
+			}
+			searched = builder.deepen(table, evaluator, deepen, trust);
+		}
+		builder.pool.shutdown();
+
+		OpeningBook.write(out, table.getKeys(), table.getGames(),
+				table.getPoints(), kept);
+		System.out.printf(
+				"%d games, %d bad, %d unfinished, %d positions, %d kept, "
+						+ "%d searched, %.1f s%n",
+				builder.counted.sum(), builder.rejected.sum(),
+				builder.unfinished.sum(), positions, kept, searched,
+				(System.nanoTime() - started) / 1e9);
+		System.out.println("Wrote " + out);
+	}
+
+}
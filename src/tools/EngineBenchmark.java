@@ -0,0 +1,181 @@
+package tools;
+
+import java.util.ArrayList;
+
+import engine.Bitboards;
+import engine.Engine;
+import engine.Engines;
+import engine.SearchResult;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This times engines on the same set of positions, so the
+ *         one that fits a deployment's time and CPU budget can be picked. For
+ *         every engine it prints the average and slowest time per move and
+ *         the nodes per move and per second. What a node is depends on the
+ *         engine: a searched position for the look-ahead, a random game for
+ *         the tree search and a move looked at for the others.
+ *
+ *         The positions are taken from self-play games made from the seed,
+ *         spread from early in the game to late, so a run with the same
+ *         options always uses the same ones. Each engine plays every position
+ *         once to warm up before it is timed.
+ *
+ *         Usage: java tools.EngineBenchmark [--engine SPEC]... [--positions N]
+ *         [--seed S]
+ *
+ *         Without --engine every engine in Engines.getBenchmarks() is run.
+ *
+ */
+public class EngineBenchmark {
+	// Positions are taken from this many moves into a game up to this many
+	// moves before the end of a full game.
+	private static final int FIRST_PLY = 8;
+	private static final int LAST_PLY = 52;
+
+	private final long[] blacks;
+	private final long[] whites;
+	private final char[] players;
+	private final int count;
+
+	/**
+	 * This is the constructor for a benchmark over positions from self-play
+	 * games.
+	 *
+	 * @param count
+	 *            is how many positions to use.
+	 * @param seed
+	 *            is the seed for the games.
+	 */
+	public EngineBenchmark(int count, long seed) {
+		this.blacks = new long[count];
+		this.whites = new long[count];
+		this.players = new char[count];
+
+		int found = 0;
+		for (long game = 0; found < count; game++) {
+			int plies = FIRST_PLY
+					+ (LAST_PLY - FIRST_PLY) * found / Math.max(1, count - 1);
+			int[] moves = Bitboards.parseMoves(
+					WeightTrainer.selfPlayGame((seed << 32) + game));
+			if (moves.length <= plies) {
+				continue;
+			}
+
+			long own = Bitboards.START_WHITE;
+			long opp = Bitboards.START_BLACK;
+			char player = 'W';
+			for (int i = 0; i < plies; i++) {
+				if (Bitboards.moves(own, opp) == 0) {
+					// The player to move has to pass first.
+					long swap = own;
+					own = opp;
+					opp = swap;
+					player = (player == 'W') ? 'B' : 'W';
+				}
+				long flips = Bitboards.flips(own, opp, moves[i]);
+				long next = opp & ~flips;
+				opp = own | flips | (1L << moves[i]);
+				own = next;
+				player = (player == 'W') ? 'B' : 'W';
+			}
+			if (Bitboards.moves(own, opp) == 0) {
+				continue;
+			}
+
+			blacks[found] = (player == 'B') ? own : opp;
+			whites[found] = (player == 'B') ? opp : own;
+			players[found] = player;
+			found++;
+		}
+		this.count = count;
+	}
+
+	/**
+	 * This times one engine over every position and prints a line for it.
+	 *
+	 * @param engine
+	 *            is the Engine to time.
+	 */
+	public void run(Engine engine) {
+		for (int i = 0; i < count; i++) {
+			engine.chooseMove(blacks[i], whites[i], players[i]);
+		}
+
+		long totalNanos = 0;
+		long slowest = 0;
+		long nodes = 0;
+		int illegal = 0;
+		for (int i = 0; i < count; i++) {
+			long started = System.nanoTime();
+			SearchResult result = engine.chooseMove(blacks[i], whites[i],
+					players[i]);
+			long nanos = System.nanoTime() - started;
+
+			totalNanos += nanos;
+			slowest = Math.max(slowest, nanos);
+			nodes += result.getNodes();
+			long own = (players[i] == 'B') ? blacks[i] : whites[i];
+			long opp = (players[i] == 'B') ? whites[i] : blacks[i];
+			if ((result.getMove() < 0) || ((Bitboards.moves(own, opp)
+					& (1L << result.getMove())) == 0)) {
+				illegal++;
+			}
+		}
+
+		System.out.printf(
+				"%-24s %9.3f ms/move %9.3f ms max %12.0f nodes/move "
+						+ "%12.0f nodes/s%s%n",
+				engine.getName(), totalNanos / 1e6 / count, slowest / 1e6,
+				nodes / (double) count, nodes / (totalNanos / 1e9),
+				(illegal > 0) ? "  " + illegal + " ILLEGAL MOVES" : "");
+	}
+
+	/**
+	 * This runs the benchmark from the command line.
+	 *
+	 * @param args
+	 *            holds the options listed at the top of the class.
+	 * @throws Exception
+	 *             This is thrown if an engine's files can't be read.
+	 */
+	public static void main(String[] args) throws Exception {
+		ArrayList<String> specs = new ArrayList<String>();
+		int positions = 30;
+		long seed = 1;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "--engine" :
+					specs.add(value);
+					break;
+				case "--positions" :
+					positions = Integer.parseInt(value);
+					break;
+				case "--seed" :
+					seed = Long.parseLong(value);
+					break;
+				default :
+					System.out.println("Unknown option " + args[i]);
+					return;
+			}
+		}
+		if ((args.length % 2 != 0) || (positions < 1)) {
+			System.out.println("Usage: java tools.EngineBenchmark "
+					+ "[--engine SPEC]... [--positions N] [--seed S]");
+			return;
+		}
+		if (specs.isEmpty()) {
+			specs = Engines.getBenchmarks();
+		}
+
+		EngineBenchmark benchmark = new EngineBenchmark(positions, seed);
+		for (String spec : specs) {
+			benchmark.run(Engines.create(spec));
+		}
+	}
+
+}
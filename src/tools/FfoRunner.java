@@ -0,0 +1,287 @@
+package tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+import engine.Bitboards;
+import engine.DiscCountEvaluator;
+import engine.Search;
+import engine.SearchResult;
+import engine.TranspositionTable;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This runs an endgame test suite, like the FFO positions
+ *         #40 to #59 that every endgame solver is measured on. Each position
+ *         is solved exactly and checked against its known score and best
+ *         moves, and the time, positions searched and positions per second
+ *         are printed for each one and for the whole suite. The table is
+ *         cleared before every position so runs can be compared.
+ *
+ *         Usage: java tools.FfoRunner --file FILE [--number N] [--from N]
+ *         [--to N] [--hash MB] [--time MS]
+ *
+ *         The file is in the usual OBF layout, one position a line: 64
+ *         squares going along each row from a1 to h8, using 'X' or 'B' for
+ *         black, 'O' or 'W' for white and '-' or '_' for empty, then the
+ *         side to move, then the moves with their scores, like
+ *         "... X; G8:+18; H1:+12;". Scores are final disc differences for the
+ *         side to move, and every move sharing the best score counts as a
+ *         best move. Lines starting with '%' or '#' are comments.
+ *
+ *         Positions are numbered from --number (1 unless given, 40 for the
+ *         FFO file), and --from and --to pick which numbers are run. With
+ *         --time a position that isn't solved in time is counted as wrong.
+ *         A position with no known scores is solved but counted as
+ *         unchecked, not solved.
+ *
+ *         The solver solves #40 (20 empties) in about 2.5 seconds and #41
+ *         (22 empties) in about 13. Every extra empty square makes it two
+ *         to three times slower, so from about #45 on a position takes
+ *         minutes, and the last ones far longer. Run those with --time.
+ *
+ */
+public class FfoRunner {
+	private final Search search;
+	private final TranspositionTable table;
+	private final long millis;
+
+	private int solved;
+	private int unchecked;
+	private int wrong;
+	private long totalNodes;
+	private long totalNanos;
+
+	/**
+	 * This is the constructor for a suite runner.
+	 *
+	 * @param table
+	 *            is the TranspositionTable the solver uses, or null for none.
+	 * @param millis
+	 *            is how long each position may take, or 0 for no limit.
+	 */
+	public FfoRunner(TranspositionTable table, long millis) {
+		this.search = new Search(new DiscCountEvaluator());
+		this.search.setSolveEmpties(64);
+		this.search.setTable(table);
+		this.table = table;
+		this.millis = millis;
+	}
+
+	/**
+	 * This solves one line of a suite file and prints how it went.
+	 *
+	 * @param number
+	 *            is the position's number.
+	 * @param line
+	 *            is the line, as described at the top of the class.
+	 */
+	public void run(int number, String line) {
+		String[] fields = line.split(";");
+		String[] position = fields[0].trim().split("\\s+");
+		if ((position.length != 2) || (position[0].length() != 64)
+				|| (position[1].length() != 1)) {
+			System.out.println(
+					"#" + number + " error expected \"board side\"");
+			wrong++;
+			return;
+		}
+
+		long black = 0;
+		long white = 0;
+		for (int square = 0; square < 64; square++) {
+			char piece = Character.toUpperCase(position[0].charAt(square));
+			if ((piece == 'X') || (piece == 'B')) {
+				black |= 1L << square;
+			} else if ((piece == 'O') || (piece == 'W')) {
+				white |= 1L << square;
+			} else if ((piece != '-') && (piece != '_')) {
+				System.out.println(
+						"#" + number + " error bad square " + piece);
+				wrong++;
+				return;
+			}
+		}
+		char side = Character.toUpperCase(position[1].charAt(0));
+		if ("XOBW".indexOf(side) < 0) {
+			System.out.println("#" + number + " error bad side " + side);
+			wrong++;
+			return;
+		}
+		char playerChar = ((side == 'X') || (side == 'B')) ? 'B' : 'W';
+		long own = (playerChar == 'B') ? black : white;
+		long opp = (playerChar == 'B') ? white : black;
+		if (Bitboards.moves(own, opp) == 0) {
+			System.out.println("#" + number + " error no legal moves");
+			wrong++;
+			return;
+		}
+
+		// Read the known moves and keep every one with the best score.
+		int expected = -Search.INFINITY;
+		long bestMoves = 0;
+		for (int i = 1; i < fields.length; i++) {
+			String[] known = fields[i].trim().split(":");
+			if (known.length != 2) {
+				continue;
+			}
+			int[] square = Bitboards.parseMoves(known[0]);
+			int score;
+			try {
+				score = Integer.parseInt(known[1].trim().replace("+", ""));
+			} catch (NumberFormatException e) {
+				square = null;
+				score = 0;
+			}
+			if ((square == null) || (square.length != 1)) {
+				System.out.println("#" + number + " error bad move "
+						+ fields[i].trim());
+				wrong++;
+				return;
+			}
+			if (score > expected) {
+				expected = score;
+				bestMoves = 0;
+			}
+			if (score == expected) {
+				bestMoves |= 1L << square[0];
+			}
+		}
+
+		if (table != null) {
+			table.clear();
+		}
+		long started = System.nanoTime();
+		SearchResult result = search.search(black, white, playerChar, 64,
+				millis);
+		long nanos = System.nanoTime() - started;
+
+		totalNodes += result.getNodes();
+		totalNanos += nanos;
+		if (result.getDepth() == 0) {
+			System.out.printf("#%-3d timed out after %.3f s %d nodes%n",
+					number, nanos / 1e9, result.getNodes());
+			wrong++;
+			return;
+		}
+
+		String verdict = "ok";
+		if (bestMoves == 0) {
+			verdict = "unchecked";
+			unchecked++;
+		} else if ((result.getScore() != expected)
+				|| ((bestMoves & (1L << result.getMove())) == 0)) {
+			verdict = "WRONG";
+			wrong++;
+		} else {
+			solved++;
+		}
+
+		StringBuilder known = new StringBuilder();
+		for (long bits = bestMoves; bits != 0; bits &= bits - 1) {
+			if (known.length() > 0) {
+				known.append(',');
+			}
+			known.append(Bitboards.name(Long.numberOfTrailingZeros(bits)));
+		}
+		System.out.printf(
+				"#%-3d %2d empties  %-4s %+3d  expected %-8s %+3d  %-9s "
+						+ "%9.3f s %14d nodes %12.0f nodes/s%n",
+				number, Long.bitCount(~(black | white)),
+				Bitboards.name(result.getMove()), result.getScore(),
+				(bestMoves == 0) ? "?" : known.toString(),
+				(bestMoves == 0) ? 0 : expected, verdict, nanos / 1e9,
+				result.getNodes(), result.getNodes() / (nanos / 1e9));
+	}
+
+	/**
+	 * This prints the totals for every position run so far.
+	 */
+	public void printTotals() {
+		System.out.printf(
+				"%d positions, %d solved, %d unchecked, %d wrong  %9.3f s "
+						+ "%14d nodes %12.0f nodes/s%n",
+				solved + unchecked + wrong, solved, unchecked, wrong,
+				totalNanos / 1e9, totalNodes,
+				totalNodes / Math.max(1e-9, totalNanos / 1e9));
+	}
+
+	/**
+	 * This runs a suite from the command line.
+	 *
+	 * @param args
+	 *            holds the options listed at the top of the class.
+	 * @throws IOException
+	 *             This is thrown if the suite file can't be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		String file = null;
+		int number = 1;
+		int from = Integer.MIN_VALUE;
+		int to = Integer.MAX_VALUE;
+		long hashBytes = 64L << 20;
+		long millis = 0;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "--file" :
+					file = value;
+					break;
+				case "--number" :
+					number = Integer.parseInt(value);
+					break;
+				case "--from" :
+					from = Integer.parseInt(value);
+					break;
+				case "--to" :
+					to = Integer.parseInt(value);
+					break;
+				case "--hash" :
+					hashBytes = Long.parseLong(value) << 20;
+					break;
+				case "--time" :
+					millis = Long.parseLong(value);
+					break;
+				default :
+					System.out.println("Unknown option " + args[i]);
+					return;
+			}
+		}
+		if ((file == null) || (args.length % 2 != 0)) {
+			System.out.println("Usage: java tools.FfoRunner --file FILE "
+					+ "[--number N] [--from N] [--to N] [--hash MB] "
+					+ "[--time MS]");
+			return;
+		}
+
+		ArrayList<String> lines = new ArrayList<String>();
+		try (BufferedReader reader = Files.newBufferedReader(
+				Paths.get(file))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("%")
+						&& !line.startsWith("#")) {
+					lines.add(line);
+				}
+			}
+		}
+
+		FfoRunner runner = new FfoRunner(
+				(hashBytes > 0) ? new TranspositionTable(hashBytes) : null,
+				millis);
+		for (int i = 0; i < lines.size(); i++) {
+			if ((number + i >= from) && (number + i <= to)) {
+				runner.run(number + i, lines.get(i));
+			}
+		}
+		runner.printTotals();
+	}
+
+}
@@ -0,0 +1,507 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import engine.Bitboards;
+import engine.Engine;
+import engine.Engines;
+import engine.Zobrist;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This plays two versions of the computer player against
+ *         each other to find out whether a change made it stronger. Games are
+ *         played in pairs from the same opening with colours swapped, so an
+ *         opening that favours one side can't favour one player, and pairs
+ *         are spread over every core.
+ *
+ *         Instead of playing a fixed number of games it runs a sequential
+ *         probability ratio test after every pair: elo0 is the Elo difference
+ *         to reject and elo1 the one to accept. The match stops as soon as
+ *         the games played are enough to tell which is true with the error
+ *         rates asked for, which is usually far sooner than a fixed match.
+ *         Progress is printed as it goes.
+ *
+ *         Usage: java tools.MatchHarness --a SPEC --b SPEC [--pairs N]
+ *         [--openings FILE] [--plies P] [--seed S] [--elo0 E] [--elo1 E]
+ *         [--alpha A] [--beta B] [--threads T] [--report N]
+ *
+ *         A SPEC is any engine spec Engines.create() understands, like
+ *         "greedy", "depth:D", "time:MS:FILE" or "mcts:N". Opening files
+ *         hold one opening per line written like a game transcript; without
+ *         one, distinct random openings of P moves are made from the seed.
+ *
+ */
+public class MatchHarness {
+	private final Supplier<Player> playerA;
+	private final Supplier<Player> playerB;
+	private final ArrayList<int[]> openings;
+	private final double elo0;
+	private final double elo1;
+	private final double lower;
+	private final double upper;
+	private final int report;
+
+	private final AtomicInteger nextPair = new AtomicInteger();
+	private volatile boolean decided;
+	private int wins;
+	private int draws;
+	private int losses;
+	private double llr;
+	private long started;
+
+	/**
+	 * This is what both sides of a match are: something that picks a move.
+	 * Each game thread gets its own players.
+	 */
+	interface Player {
+
+		/**
+		 * @param own
+		 *            is the bitboard of the player to move.
+		 * @param opp
+		 *            is the bitboard of the other player.
+		 * @param playerChar
+		 *            is the player to move.
+		 * @return is the square to play. The player has at least one move.
+		 */
+		int move(long own, long opp, char playerChar);
+	}
+
+	/**
+	 * This is the constructor for a match.
+	 *
+	 * @param playerA
+	 *            makes the first player, the one being tested.
+	 * @param playerB
+	 *            makes the player it is tested against.
+	 * @param openings
+	 *            is the list of openings, each a list of squares from the
+	 *            starting position.
+	 * @param elo0
+	 *            is the Elo difference that means A isn't better.
+	 * @param elo1
+	 *            is the Elo difference that means A is better.
+	 * @param alpha
+	 *            is the chance allowed of accepting A when it isn't better.
+	 * @param beta
+	 *            is the chance allowed of rejecting A when it is better.
+	 * @param report
+	 *            is how many games go by between progress lines. Games are
+	 *            played in pairs, so an odd number is rounded up.
+	 */
+	public MatchHarness(Supplier<Player> playerA, Supplier<Player> playerB,
+			ArrayList<int[]> openings, double elo0, double elo1, double alpha,
+			double beta, int report) {
+		this.playerA = playerA;
+		this.playerB = playerB;
+		this.openings = openings;
+		this.elo0 = elo0;
+		this.elo1 = elo1;
+		this.lower = Math.log(beta / (1 - alpha));
+		this.upper = Math.log((1 - beta) / alpha);
+		this.report = report + (report % 2);
+	}
+
+	/**
+	 * This plays pairs of games on a number of threads until the test is
+	 * decided or maxPairs pairs have been played.
+	 *
+	 * @param maxPairs
+	 *            is the most pairs of games to play.
+	 * @param threads
+	 *            is how many games to play at once.
+	 * @return is 1 if A was accepted, -1 if it was rejected and 0 if the
+	 *         pairs ran out first.
+	 * @throws InterruptedException
+	 *             This is thrown if the match is interrupted.
+	 */
+	public int run(int maxPairs, int threads) throws InterruptedException {
+		started = System.nanoTime();
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(() -> playPairs(maxPairs), "match-" + i);
+			workers[i].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		synchronized (this) {
+			printProgress();
+			if (llr >= upper) {
+				return 1;
+			} else if (llr <= lower) {
+				return -1;
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * This is what each thread runs: it takes the next pair of games until
+	 * there are none left or the test is decided.
+	 *
+	 * @param maxPairs
+	 *            is the most pairs of games to play.
+	 */
+	private void playPairs(int maxPairs) {
+		Player a = playerA.get();
+		Player b = playerB.get();
+
+		while (!decided) {
+			int pair = nextPair.getAndIncrement();
+			if (pair >= maxPairs) {
+				return;
+			}
+			int[] opening = openings.get(pair % openings.size());
+			int first = playGame(opening, a, b);
+			int second = -playGame(opening, b, a);
+			record(first, second);
+		}
+	}
+
+	/**
+	 * This plays one game from an opening.
+	 *
+	 * @param opening
+	 *            is the list of opening squares.
+	 * @param white
+	 *            is the player who moves first after the start position.
+	 * @param black
+	 *            is the other player.
+	 * @return is 1 if white won, -1 if black won and 0 for a draw.
+	 */
+	static int playGame(int[] opening, Player white, Player black) {
+		long own = Bitboards.START_WHITE;
+		long opp = Bitboards.START_BLACK;
+		char playerChar = 'W';
+		int passes = 0;
+		int ply = 0;
+
+		while (passes < 2) {
+			long legal = Bitboards.moves(own, opp);
+			if (legal != 0) {
+				int move;
+				if ((ply < opening.length)
+						&& ((legal & (1L << opening[ply])) != 0)) {
+					move = opening[ply];
+				} else if (playerChar == 'W') {
+					move = white.move(own, opp, playerChar);
+				} else {
+					move = black.move(own, opp, playerChar);
+				}
+				long flips = Bitboards.flips(own, opp, move);
+				own |= flips | (1L << move);
+				opp &= ~flips;
+				passes = 0;
+				ply++;
+			} else {
+				passes++;
+			}
+			long swap = own;
+			own = opp;
+			opp = swap;
+			playerChar = (playerChar == 'W') ? 'B' : 'W';
+		}
+
+		// own is the player to move, so work out who that is.
+		int difference = Long.bitCount(own) - Long.bitCount(opp);
+		if (playerChar == 'B') {
+			difference = -difference;
+		}
+		return Integer.signum(difference);
+	}
+
+	/**
+	 * This adds a pair of results for A, updates the test and prints
+	 * progress.
+	 *
+	 * @param first
+	 *            is A's result with white.
+	 * @param second
+	 *            is A's result with black.
+	 */
+	private synchronized void record(int first, int second) {
+		for (int result : new int[]{first, second}) {
+			if (result > 0) {
+				wins++;
+			} else if (result < 0) {
+				losses++;
+			} else {
+				draws++;
+			}
+		}
+		llr = logLikelihoodRatio(wins, draws, losses, elo0, elo1);
+		if ((llr >= upper) || (llr <= lower)) {
+			decided = true;
+		}
+
+		int games = wins + draws + losses;
+		if (games % report == 0) {
+			printProgress();
+		}
+	}
+
+	/**
+	 * This works out how much more likely the results are if A is elo1
+	 * better than if it is elo0 better, using the normal approximation to
+	 * the score of a win-draw-loss match.
+	 *
+	 * Half a game is added to each of the counts. Without that a match with
+	 * no losses (or no wins) so far looks like it has no spread at all, and
+	 * the test could never decide it.
+	 *
+	 * @param wins
+	 *            is how many games A won.
+	 * @param draws
+	 *            is how many games were drawn.
+	 * @param losses
+	 *            is how many games A lost.
+	 * @param elo0
+	 *            is the Elo difference that means A isn't better.
+	 * @param elo1
+	 *            is the Elo difference that means A is better.
+	 * @return is the log of the likelihood ratio, or 0 before any games.
+	 */
+	public static double logLikelihoodRatio(int wins, int draws, int losses,
+			double elo0, double elo1) {
+		if (wins + draws + losses == 0) {
+			return 0;
+		}
+		double games = wins + draws + losses + 1.5;
+		double win = (wins + 0.5) / games;
+		double draw = (draws + 0.5) / games;
+		double score = win + draw / 2;
+		double variance = (win + draw / 4 - score * score) / games;
+
+		double score0 = expectedScore(elo0);
+		double score1 = expectedScore(elo1);
+		return (score1 - score0) * (2 * score - score0 - score1)
+				/ (2 * variance);
+	}
+
+	/**
+	 * This prints one line about how the match is going.
+	 */
+	private void printProgress() {
+		int games = wins + draws + losses;
+		if (games == 0) {
+			return;
+		}
+		double score = (wins + draws / 2.0) / games;
+		double spread = Math.sqrt(
+				(wins + draws / 4.0) / games - score * score)
+				/ Math.sqrt(games);
+		double elo = elo(score);
+		double margin = (elo(score + 1.96 * spread)
+				- elo(score - 1.96 * spread)) / 2;
+		long seconds = (System.nanoTime() - started) / 1000000000L;
+
+		System.out.println(String.format(
+				"%d games  +%d =%d -%d  elo %.1f +/- %.1f  "
+						+ "llr %.2f (%.2f, %.2f)  %ds",
+				games, wins, draws, losses, elo, margin, llr, lower, upper,
+				seconds));
+	}
+
+	/**
+	 * @param elo
+	 *            is an Elo difference.
+	 * @return is the score the stronger side expects per game.
+	 */
+	private static double expectedScore(double elo) {
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	/**
+	 * @param score
+	 *            is a score per game.
+	 * @return is the Elo difference that score means, kept finite for
+	 *         scores of 0 and 1.
+	 */
+	private static double elo(double score) {
+		score = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+		return -400 * Math.log10(1 / score - 1);
+	}
+
+	/**
+	 * This makes a list of distinct random openings.
+	 *
+	 * @param count
+	 *            is how many to make.
+	 * @param plies
+	 *            is how many moves long each one is.
+	 * @param seed
+	 *            is the seed for the random moves.
+	 * @return is the list of openings.
+	 */
+	static ArrayList<int[]> randomOpenings(int count, int plies, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		ArrayList<int[]> openings = new ArrayList<int[]>();
+		HashSet<Long> seen = new HashSet<Long>();
+
+		for (int tries = 0; (openings.size() < count)
+				&& (tries < count * 100); tries++) {
+			int[] opening = new int[plies];
+			long own = Bitboards.START_WHITE;
+			long opp = Bitboards.START_BLACK;
+			int ply = 0;
+			while (ply < plies) {
+				long legal = Bitboards.moves(own, opp);
+				if (legal == 0) {
+					break;
+				}
+				int skip = random.nextInt(Long.bitCount(legal));
+				for (int i = 0; i < skip; i++) {
+					legal &= legal - 1;
+				}
+				int move = Long.numberOfTrailingZeros(legal);
+				long flips = Bitboards.flips(own, opp, move);
+				long swap = own | flips | (1L << move);
+				own = opp & ~flips;
+				opp = swap;
+				opening[ply] = move;
+				ply++;
+			}
+			if ((ply == plies) && seen.add(Zobrist.hash(own, opp))) {
+				openings.add(opening);
+			}
+		}
+		return openings;
+	}
+
+	/**
+	 * This makes the players described by a SPEC.
+	 *
+	 * @param spec
+	 *            is an engine spec for Engines.create().
+	 * @return is something that makes a new player of that kind.
+	 * @throws IOException
+	 *             This is thrown if a file named in the spec can't be read.
+	 */
+	static Supplier<Player> parsePlayer(String spec) throws IOException {
+		Engine engine = Engines.create(spec);
+		return () -> {
+			Engine copy = engine.copy();
+			return (own, opp, playerChar) -> {
+				long black = (playerChar == 'B') ? own : opp;
+				long white = (playerChar == 'B') ? opp : own;
+				return copy.chooseMove(black, white, playerChar).getMove();
+			};
+		};
+	}
+
+	/**
+	 * This runs a match from the command line.
+	 *
+	 * @param args
+	 *            holds the options listed at the top of the class.
+	 * @throws Exception
+	 *             This is thrown if a weight or opening file can't be read.
+	 */
+	public static void main(String[] args) throws Exception {
+		String specA = null;
+		String specB = null;
+		String openingFile = null;
+		int maxPairs = 100000;
+		int plies = 6;
+		long seed = 1;
+		double elo0 = 0;
+		double elo1 = 10;
+		double alpha = 0.05;
+		double beta = 0.05;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int report = 100;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "--a" :
+					specA = value;
+					break;
+				case "--b" :
+					specB = value;
+					break;
+				case "--pairs" :
+					maxPairs = Integer.parseInt(value);
+					break;
+				case "--openings" :
+					openingFile = value;
+					break;
+				case "--plies" :
+					plies = Integer.parseInt(value);
+					break;
+				case "--seed" :
+					seed = Long.parseLong(value);
+					break;
+				case "--elo0" :
+					elo0 = Double.parseDouble(value);
+					break;
+				case "--elo1" :
+					elo1 = Double.parseDouble(value);
+					break;
+				case "--alpha" :
+					alpha = Double.parseDouble(value);
+					break;
+				case "--beta" :
+					beta = Double.parseDouble(value);
+					break;
+				case "--threads" :
+					threads = Integer.parseInt(value);
+					break;
+				case "--report" :
+					report = Integer.parseInt(value);
+					break;
+				default :
+					System.out.println("Unknown option " + args[i]);
+					return;
+			}
+		}
+		if ((specA == null) || (specB == null) || (args.length % 2 != 0)) {
+			System.out.println("Usage: java tools.MatchHarness --a SPEC "
+					+ "--b SPEC [--pairs N] [--openings FILE] [--plies P] "
+					+ "[--seed S] [--elo0 E] [--elo1 E] [--alpha A] "
+					+ "[--beta B] [--threads T] [--report N]");
+			return;
+		}
+
+		ArrayList<int[]> openings = new ArrayList<int[]>();
+		if (openingFile != null) {
+			for (String line : Files.readAllLines(Paths.get(openingFile))) {
+				int[] opening = Bitboards.parseMoves(line);
+				if ((opening != null) && !line.trim().startsWith("#")) {
+					openings.add(opening);
+				}
+			}
+		} else {
+			openings = randomOpenings(Math.min(maxPairs, 10000), plies, seed);
+		}
+		if (openings.isEmpty()) {
+			System.out.println("No openings to play.");
+			return;
+		}
+
+		MatchHarness match = new MatchHarness(parsePlayer(specA),
+				parsePlayer(specB), openings, elo0, elo1, alpha, beta,
+				Math.max(2, report));
+		int result = match.run(maxPairs, threads);
+		if (result > 0) {
+			System.out.println("H1 accepted: A is stronger.");
+		} else if (result < 0) {
+			System.out.println("H0 accepted: A is not stronger.");
+		} else {
+			System.out.println("Undecided after " + maxPairs + " pairs.");
+		}
+	}
+
+}
@@ -0,0 +1,280 @@
+package tools;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+import engine.BatchMoveGenerator;
+import engine.BatchMoves;
+import engine.Bitboards;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is a small benchmark of the batch move finders
+ *         against Bitboards, the move finder used one position at a time. It
+ *         collects positions from random games, checks that every path gives
+ *         the same moves and flips for every one, then times each over the
+ *         whole set and prints the nanoseconds per position.
+ *
+ *         The paths are Bitboards one position at a time, the BatchMoves
+ *         loops, and VectorMoves when the JVM is started with
+ *         --add-modules jdk.incubator.vector. Without that module the vector
+ *         path is left out.
+ *
+ *         Usage: java tools.MoveGenBenchmark [--positions N] [--rounds R]
+ *         [--seed S]
+ *
+ */
+public class MoveGenBenchmark {
+	private final long[] own;
+	private final long[] opp;
+	private final int[] squares;
+	private final long[] out;
+	private final int count;
+
+	/**
+	 * This is the constructor for a benchmark over positions from random
+	 * games. Each position has the player to move's pieces, the other
+	 * player's pieces and one legal square to test flips with.
+	 *
+	 * @param count
+	 *            is how many positions to collect.
+	 * @param seed
+	 *            is the seed for the random games.
+	 */
+	public MoveGenBenchmark(int count, long seed) {
+		this.own = new long[count];
+		this.opp = new long[count];
+		this.squares = new int[count];
+		this.out = new long[count];
+		this.count = count;
+
+		SplittableRandom random = new SplittableRandom(seed);
+		long mover = Bitboards.START_WHITE;
+		long other = Bitboards.START_BLACK;
+		int found = 0;
+		while (found < count) {
+			long legal = Bitboards.moves(mover, other);
+			if (legal == 0) {
+				if (Bitboards.moves(other, mover) == 0) {
+					mover = Bitboards.START_WHITE;
+					other = Bitboards.START_BLACK;
+				} else {
+					long swap = mover;
+					mover = other;
+					other = swap;
+				}
+				continue;
+			}
+			int square = nth(legal, random.nextInt(Long.bitCount(legal)));
+			own[found] = mover;
+			opp[found] = other;
+			squares[found] = square;
+			found++;
+
+			long flips = Bitboards.flips(mover, other, square);
+			long next = other & ~flips;
+			other = mover | flips | (1L << square);
+			mover = next;
+		}
+	}
+
+	/**
+	 * This checks a batch move finder against Bitboards for every position.
+	 *
+	 * @param generator
+	 *            is the batch move finder to check.
+	 * @return is the number of positions where they differ.
+	 */
+	public int check(BatchMoveGenerator generator) {
+		int wrong = 0;
+		generator.moves(own, opp, out, count);
+		for (int i = 0; i < count; i++) {
+			if (out[i] != Bitboards.moves(own[i], opp[i])) {
+				wrong++;
+			}
+		}
+		generator.flips(own, opp, squares, out, count);
+		for (int i = 0; i < count; i++) {
+			if (out[i] != Bitboards.flips(own[i], opp[i], squares[i])) {
+				wrong++;
+			}
+		}
+		return wrong;
+	}
+
+	/**
+	 * This times finding moves one position at a time.
+	 *
+	 * @param rounds
+	 *            is how many times to go over every position.
+	 * @return is the nanoseconds per position.
+	 */
+	public double timeScalarMoves(int rounds) {
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			for (int i = 0; i < count; i++) {
+				out[i] = Bitboards.moves(own[i], opp[i]);
+			}
+		}
+		return perPosition(start, rounds);
+	}
+
+	/**
+	 * This times finding moves for every position at once.
+	 *
+	 * @param generator
+	 *            is the batch move finder to time.
+	 * @param rounds
+	 *            is how many times to go over every position.
+	 * @return is the nanoseconds per position.
+	 */
+	public double timeBatchMoves(BatchMoveGenerator generator, int rounds) {
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			generator.moves(own, opp, out, count);
+		}
+		return perPosition(start, rounds);
+	}
+
+	/**
+	 * This times finding flips one position at a time.
+	 *
+	 * @param rounds
+	 *            is how many times to go over every position.
+	 * @return is the nanoseconds per position.
+	 */
+	public double timeScalarFlips(int rounds) {
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			for (int i = 0; i < count; i++) {
+				out[i] = Bitboards.flips(own[i], opp[i], squares[i]);
+			}
+		}
+		return perPosition(start, rounds);
+	}
+
+	/**
+	 * This times finding flips for every position at once.
+	 *
+	 * @param generator
+	 *            is the batch move finder to time.
+	 * @param rounds
+	 *            is how many times to go over every position.
+	 * @return is the nanoseconds per position.
+	 */
+	public double timeBatchFlips(BatchMoveGenerator generator, int rounds) {
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			generator.flips(own, opp, squares, out, count);
+		}
+		return perPosition(start, rounds);
+	}
+
+	/**
+	 * This is a helper that turns a start time into nanoseconds per position.
+	 *
+	 * @param start
+	 *            is System.nanoTime() when the timing started.
+	 * @param rounds
+	 *            is how many times every position was done.
+	 * @return is the nanoseconds per position.
+	 */
+	private double perPosition(long start, int rounds) {
+		return (System.nanoTime() - start) / ((double) rounds * count);
+	}
+
+	/**
+	 * This is a helper that finds the square of the nth set bit.
+	 *
+	 * @param bits
+	 *            is a bitboard.
+	 * @param n
+	 *            is which set bit, counting from zero.
+	 * @return is the square of that bit.
+	 */
+	private static int nth(long bits, int n) {
+		for (int i = 0; i < n; i++) {
+			bits &= bits - 1;
+		}
+		return Long.numberOfTrailingZeros(bits);
+	}
+
+	/**
+	 * This runs the benchmark from the command line.
+	 *
+	 * @param args
+	 *            holds the options listed at the top of the class.
+	 */
+	public static void main(String[] args) {
+		int positions = 4096;
+		int rounds = 2000;
+		long seed = 1;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "--positions" :
+					positions = Integer.parseInt(value);
+					break;
+				case "--rounds" :
+					rounds = Integer.parseInt(value);
+					break;
+				case "--seed" :
+					seed = Long.parseLong(value);
+					break;
+				default :
+					System.out.println("Unknown option " + args[i]);
+					return;
+			}
+		}
+		if ((args.length % 2 != 0) || (positions < 1) || (rounds < 1)) {
+			System.out.println("Usage: java tools.MoveGenBenchmark "
+					+ "[--positions N] [--rounds R] [--seed S]");
+			return;
+		}
+
+		ArrayList<BatchMoveGenerator> generators =
+				new ArrayList<BatchMoveGenerator>();
+		generators.add(BatchMoves.SCALAR);
+		BatchMoveGenerator vector = BatchMoves.vector();
+		if (vector != null) {
+			generators.add(vector);
+		} else {
+			System.out.println("The vector path needs VectorMoves built and "
+					+ "--add-modules jdk.incubator.vector, so it is left out.");
+		}
+
+		MoveGenBenchmark benchmark = new MoveGenBenchmark(positions, seed);
+		for (BatchMoveGenerator generator : generators) {
+			int wrong = benchmark.check(generator);
+			if (wrong != 0) {
+				System.out.println(wrong + " " + generator.getName()
+						+ " results differ from Bitboards.");
+				return;
+			}
+		}
+
+		// The first pass warms up the JIT compiler and isn't printed.
+		for (int pass = 0; pass < 2; pass++) {
+			StringBuilder moves = new StringBuilder(String.format(
+					"moves: %.2f ns scalar", benchmark.timeScalarMoves(rounds)));
+			StringBuilder flips = new StringBuilder(String.format(
+					"flips: %.2f ns scalar", benchmark.timeScalarFlips(rounds)));
+			for (BatchMoveGenerator generator : generators) {
+				moves.append(String.format(", %.2f ns %s",
+						benchmark.timeBatchMoves(generator, rounds),
+						generator.getName()));
+				flips.append(String.format(", %.2f ns %s",
+						benchmark.timeBatchFlips(generator, rounds),
+						generator.getName()));
+			}
+			if (pass == 1) {
+				System.out.println(moves);
+				System.out.println(flips);
+			}
+		}
+	}
+
+}
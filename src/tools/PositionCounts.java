@@ -0,0 +1,235 @@
+package tools;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This counts how often positions were reached and how well
+ *         the player to move did from them, for the BookBuilder. It is an
+ *         open addressing hash table in parallel arrays of primitives, so a
+ *         table of a hundred million positions is a few big arrays instead of
+ *         a hundred million boxed map entries, and it can be handed straight
+ *         to OpeningBook.write() once it is compacted.
+ *
+ *         Keys are the book's Zobrist keys, which are already random, so
+ *         their low bits are used as the slot. A slot with no games is empty.
+ *         The table doubles once it is two thirds full.
+ *
+ *         It can also keep each position's bitboards, for when positions are
+ *         to be searched after counting. That doubles the memory used, so it
+ *         is only done when asked for.
+ *
+ */
+class PositionCounts {
+	private long[] keys;
+	private int[] games;
+	private int[] points;
+	private long[] blacks;
+	private long[] whites;
+	private int size;
+
+	/**
+	 * This is the constructor for an empty table.
+	 *
+	 * @param keepBoards
+	 *            is true to keep each position's bitboards as well.
+	 */
+	PositionCounts(boolean keepBoards) {
+		this.keys = new long[1024];
+		this.games = new int[1024];
+		this.points = new int[1024];
+		if (keepBoards) {
+			this.blacks = new long[1024];
+			this.whites = new long[1024];
+		}
+	}
+
+	/**
+	 * This adds games to a position's count.
+	 *
+	 * @param key
+	 *            is the position's key, from OpeningBook.key().
+	 * @param black
+	 *            is the bitboard of black pieces, kept if boards are kept.
+	 * @param white
+	 *            is the bitboard of white pieces, kept if boards are kept.
+	 * @param gameCount
+	 *            is how many games reached the position.
+	 * @param pointCount
+	 *            is the points the player to move scored in them.
+	 */
+	void add(long key, long black, long white, int gameCount,
+			int pointCount) {
+		int slot = find(key);
+		if (games[slot] == 0) {
+			if ((size + 1) * 3 > keys.length * 2) {
+				resize(keys.length * 2);
+				slot = find(key);
+			}
+			keys[slot] = key;
+			if (blacks != null) {
+				blacks[slot] = black;
+				whites[slot] = white;
+			}
+			size++;
+		}
+		games[slot] += gameCount;
+		points[slot] += pointCount;
+	}
+
+	/**
+	 * This adds every count in another table to this one.
+	 *
+	 * @param other
+	 *            is the table to add. It is left as it was.
+	 */
+	void addAll(PositionCounts other) {
+		for (int i = 0; i < other.keys.length; i++) {
+			if (other.games[i] != 0) {
+				add(other.keys[i], (other.blacks == null) ? 0 : other.blacks[i],
+						(other.whites == null) ? 0 : other.whites[i],
+						other.games[i], other.points[i]);
+			}
+		}
+	}
+
+	/**
+	 * This drops every position reached by too few games and moves the rest
+	 * to the front of the arrays. The table can't be added to afterwards.
+	 *
+	 * @param minGames
+	 *            is the fewest games a position must have been reached by to
+	 *            be kept.
+	 * @return is the number of positions kept.
+	 */
+	int compact(int minGames) {
+		int kept = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (games[i] >= Math.max(1, minGames)) {
+				keys[kept] = keys[i];
+				games[kept] = games[i];
+				points[kept] = points[i];
+				if (blacks != null) {
+					blacks[kept] = blacks[i];
+					whites[kept] = whites[i];
+				}
+				kept++;
+			}
+		}
+		Arrays.fill(games, kept, games.length, 0);
+		size = kept;
+		return kept;
+	}
+
+	/**
+	 * This returns the number of positions in the table.
+	 *
+	 * @return is the number of positions.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * This returns the key array. After compact() the first size() entries
+	 * are the positions kept.
+	 *
+	 * @return is the table's own array.
+	 */
+	long[] getKeys() {
+		return keys;
+	}
+
+	/**
+	 * This returns the games array, laid out like getKeys().
+	 *
+	 * @return is the table's own array.
+	 */
+	int[] getGames() {
+		return games;
+	}
+
+	/**
+	 * This returns the points array, laid out like getKeys().
+	 *
+	 * @return is the table's own array.
+	 */
+	int[] getPoints() {
+		return points;
+	}
+
+	/**
+	 * This returns the black bitboards, laid out like getKeys().
+	 *
+	 * @return is the table's own array, or null if boards aren't kept.
+	 */
+	long[] getBlacks() {
+		return blacks;
+	}
+
+	/**
+	 * This returns the white bitboards, laid out like getKeys().
+	 *
+	 * @return is the table's own array, or null if boards aren't kept.
+	 */
+	long[] getWhites() {
+		return whites;
+	}
+
+	/**
+	 * This is a helper that finds a key's slot.
+	 *
+	 * @param key
+	 *            is the key.
+	 * @return is the slot holding it, or the empty slot it would go in.
+	 */
+	private int find(long key) {
+		int mask = keys.length - 1;
+		int slot = (int) key & mask;
+		while ((games[slot] != 0) && (keys[slot] != key)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * This is a helper that makes the table bigger and puts every position
+	 * back in.
+	 *
+	 * @param capacity
+	 *            is the new number of slots, a power of two.
+	 */
+	private void resize(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalStateException("Too many positions to count.");
+		}
+		long[] oldKeys = keys;
+		int[] oldGames = games;
+		int[] oldPoints = points;
+		long[] oldBlacks = blacks;
+		long[] oldWhites = whites;
+		keys = new long[capacity];
+		games = new int[capacity];
+		points = new int[capacity];
+		if (oldBlacks != null) {
+			blacks = new long[capacity];
+			whites = new long[capacity];
+		}
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldGames[i] != 0) {
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				games[slot] = oldGames[i];
+				points[slot] = oldPoints[i];
+				if (oldBlacks != null) {
+					blacks[slot] = oldBlacks[i];
+					whites[slot] = oldWhites[i];
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,522 @@
+package tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This plays a large number of self-play games across several
+ *         worker JVMs on the same machine and collects them into one game
+ *         file that WeightTrainer can read. Each worker has its own small
+ *         heap, so a big run isn't held up by one huge heap and its garbage
+ *         collection.
+ *
+ *         The games are split into batches. Workers pull a new batch whenever
+ *         they finish one, so fast workers do more of them. When there are no
+ *         batches left to hand out, an idle worker takes a copy of a batch
+ *         another worker is still playing, and whichever finishes first
+ *         counts, and the worker still playing the other copy is stopped
+ *         and started again. A batch's games are only kept once its worker
+ *         says the whole batch is done, so if a worker dies, or takes longer
+ *         than --timeout seconds over one batch, it is stopped, its batch
+ *         goes back to be played again and the worker is started again.
+ *
+ *         Workers are this same class started with --worker SEED. They talk
+ *         to the coordinator over their stdin and stdout, one line at a time:
+ *         "BATCH id first count" plays games first to first + count - 1 and
+ *         answers with a "GAME moves" line for each game and then "DONE id".
+ *         "QUIT" ends the worker. Game n is played with the seed
+ *         (seed << 32) + n, the same as WeightTrainer's own self-play, and
+ *         the file is written in game order, so a run gives the same file
+ *         whatever happens to the workers.
+ *
+ *         Usage: java tools.SelfPlayCoordinator --games N --out FILE
+ *         [--workers W] [--batch B] [--seed S] [--heap MB] [--timeout S]
+ *
+ *         The timeout is 600 seconds a batch unless it is given, and 0 turns
+ *         it off.
+ *
+ */
+public class SelfPlayCoordinator {
+	// A worker that keeps dying is given up on after this many restarts.
+	private static final int MAX_RESTARTS = 3;
+
+	// These are the ways serve() can end.
+	private static final int QUIT = 0;
+	private static final int DIED = 1;
+	private static final int BEATEN = 2;
+
+	private final long games;
+	private final int batchSize;
+	private final long seed;
+	private final int heapMegabytes;
+	private final long timeoutSeconds;
+	private final int batches;
+	private final BufferedWriter out;
+	private ScheduledExecutorService watchdog;
+
+	// Everything below is guarded by this. running maps each busy worker to
+	// its batch, oldest first.
+	private final ArrayDeque<Integer> queue;
+	private final LinkedHashMap<Process, Integer> running;
+	private final boolean[] done;
+	private final HashMap<Integer, ArrayList<String>> finished;
+	private int remaining;
+	private int nextToWrite;
+	private long written;
+	private int crashes;
+	private IOException failure;
+
+	/**
+	 * This is the constructor for a coordinator.
+	 *
+	 * @param games
+	 *            is how many games to play.
+	 * @param batchSize
+	 *            is how many games go in each batch.
+	 * @param seed
+	 *            is the seed the game seeds are made from.
+	 * @param heapMegabytes
+	 *            is the largest heap of each worker, or 0 for the default.
+	 * @param timeoutSeconds
+	 *            is how long a worker may take over one batch before it is
+	 *            stopped, or 0 for no limit.
+	 * @param out
+	 *            is where the games are written.
+	 */
+	public SelfPlayCoordinator(long games, int batchSize, long seed,
+			int heapMegabytes, long timeoutSeconds, BufferedWriter out) {
+		this.games = games;
+		this.batchSize = batchSize;
+		this.seed = seed;
+		this.heapMegabytes = heapMegabytes;
+		this.timeoutSeconds = timeoutSeconds;
+		this.batches = (int) ((games + batchSize - 1) / batchSize);
+		this.out = out;
+
+		this.queue = new ArrayDeque<Integer>();
+		this.running = new LinkedHashMap<Process, Integer>();
+		this.done = new boolean[batches];
+		this.finished = new HashMap<Integer, ArrayList<String>>();
+		this.remaining = batches;
+		for (int i = 0; i < batches; i++) {
+			queue.addLast(i);
+		}
+	}
+
+	/**
+	 * This starts the workers and waits for every batch to be played.
+	 *
+	 * @param workers
+	 *            is how many worker JVMs to run at once.
+	 * @return is how many games were written.
+	 * @throws IOException
+	 *             This is thrown if the games can't be written, or if every
+	 *             worker died before all the batches were played.
+	 * @throws InterruptedException
+	 *             This is thrown if the wait is interrupted.
+	 */
+	public long run(int workers) throws IOException, InterruptedException {
+		watchdog = Executors.newSingleThreadScheduledExecutor();
+		try {
+			Thread[] threads = new Thread[workers];
+			for (int i = 0; i < workers; i++) {
+				int slot = i;
+				threads[i] = new Thread(() -> superviseWorker(slot),
+						"worker-" + i);
+				threads[i].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} finally {
+			watchdog.shutdownNow();
+		}
+
+		synchronized (this) {
+			if (failure != null) {
+				throw failure;
+			}
+			if (remaining > 0) {
+				throw new IOException(remaining + " batches weren't played "
+						+ "because the workers kept dying.");
+			}
+			return written;
+		}
+	}
+
+	/**
+	 * This returns how many times a worker died or stopped answering.
+	 *
+	 * @return is the number of crashed workers.
+	 */
+	public synchronized int getCrashes() {
+		return crashes;
+	}
+
+	/**
+	 * This is the thread that looks after one worker. It starts the worker
+	 * again whenever it dies or is stopped, until the work is done or it has
+	 * died too many times. A worker stopped because another finished its
+	 * batch first didn't do anything wrong, so that isn't counted.
+	 *
+	 * @param slot
+	 *            is the worker's number, for messages.
+	 */
+	private void superviseWorker(int slot) {
+		int restarts = 0;
+		while (restarts <= MAX_RESTARTS) {
+			Process process;
+			try {
+				process = startWorker();
+			} catch (IOException e) {
+				System.err.println("Worker " + slot + " couldn't start: "
+						+ e.getMessage());
+				return;
+			}
+			int ended = serve(process);
+			if (ended == QUIT) {
+				return;
+			}
+			synchronized (this) {
+				if (ended == DIED) {
+					crashes++;
+				}
+				if (remaining == 0) {
+					return;
+				}
+			}
+			if (ended == DIED) {
+				System.err.println(
+						"Worker " + slot + " died, restarting it.");
+				restarts++;
+			}
+		}
+		System.err.println("Worker " + slot + " died too often, giving up.");
+	}
+
+	/**
+	 * This is a helper that starts a worker JVM with the same class path as
+	 * this one.
+	 *
+	 * @return is the worker's Process.
+	 * @throws IOException
+	 *             This is thrown if the JVM can't be started.
+	 */
+	private Process startWorker() throws IOException {
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+				.toString());
+		if (heapMegabytes > 0) {
+			command.add("-Xmx" + heapMegabytes + "m");
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(SelfPlayCoordinator.class.getName());
+		command.add("--worker");
+		command.add(Long.toString(seed));
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return builder.start();
+	}
+
+	/**
+	 * This hands batches to one running worker and collects its games until
+	 * there is no work left or the worker dies. A worker that takes too long
+	 * over a batch is stopped by the watchdog, which ends its output, so it
+	 * is handled the same as one that died.
+	 *
+	 * @param process
+	 *            is the worker.
+	 * @return is QUIT if the worker was told to quit, BEATEN if it was
+	 *         stopped because a copy of its batch finished first, and DIED
+	 *         if it died or ran out of time.
+	 */
+	private int serve(Process process) {
+		int batch = -1;
+		ScheduledFuture<?> deadline = null;
+		try (BufferedWriter toWorker = new BufferedWriter(
+				new OutputStreamWriter(process.getOutputStream(),
+						StandardCharsets.UTF_8));
+				BufferedReader fromWorker = new BufferedReader(
+						new InputStreamReader(process.getInputStream(),
+								StandardCharsets.UTF_8))) {
+			while (true) {
+				batch = nextBatch(process);
+				if (batch < 0) {
+					toWorker.write("QUIT\n");
+					toWorker.flush();
+					process.waitFor();
+					return QUIT;
+				}
+				if (timeoutSeconds > 0) {
+					int late = batch;
+					deadline = watchdog.schedule(() -> {
+						System.err.println("Batch " + late + " took over "
+								+ timeoutSeconds + " s, stopping its worker.");
+						process.destroyForcibly();
+					}, timeoutSeconds, TimeUnit.SECONDS);
+				}
+
+				long first = (long) batch * batchSize;
+				long count = Math.min(batchSize, games - first);
+				toWorker.write("BATCH " + batch + " " + first + " " + count
+						+ "\n");
+				toWorker.flush();
+
+				ArrayList<String> played = new ArrayList<String>();
+				String line;
+				while (((line = fromWorker.readLine()) != null)
+						&& line.startsWith("GAME ")) {
+					played.add(line.substring(5));
+				}
+				if ((line == null) || !line.equals("DONE " + batch)
+						|| (played.size() != count)) {
+					throw new IOException("Worker stopped mid-batch.");
+				}
+				if (deadline != null) {
+					deadline.cancel(false);
+				}
+				finish(process, batch, played);
+				batch = -1;
+			}
+		} catch (IOException e) {
+			process.destroyForcibly();
+			if (deadline != null) {
+				deadline.cancel(false);
+			}
+			if ((batch >= 0) && giveBack(process, batch)) {
+				return BEATEN;
+			}
+			return DIED;
+		} catch (InterruptedException e) {
+			process.destroyForcibly();
+			Thread.currentThread().interrupt();
+			return QUIT;
+		}
+	}
+
+	/**
+	 * This is a helper that picks the next batch for an idle worker. It takes
+	 * a batch nobody has started if there is one, and otherwise a copy of
+	 * the oldest batch still being played by only one worker. If neither
+	 * exists it waits, since a running batch might be given back.
+	 *
+	 * @param process
+	 *            is the worker the batch is for.
+	 * @return is the batch number, or -1 when every batch is done.
+	 */
+	private synchronized int nextBatch(Process process) {
+		while (remaining > 0) {
+			Integer batch = queue.pollFirst();
+			if (batch == null) {
+				for (Integer other : running.values()) {
+					if (Collections.frequency(running.values(), other) == 1) {
+						batch = other;
+						break;
+					}
+				}
+			}
+			if (batch != null) {
+				running.put(process, batch);
+				return batch;
+			}
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * This is a helper that keeps a finished batch, unless a copy of it has
+	 * already finished, and writes out every batch that is now next in game
+	 * order. Any worker still playing a copy of the batch is stopped, since
+	 * its games would be thrown away.
+	 *
+	 * @param process
+	 *            is the worker that played the batch.
+	 * @param batch
+	 *            is the batch number.
+	 * @param played
+	 *            is the batch's games.
+	 */
+	private synchronized void finish(Process process, int batch,
+			ArrayList<String> played) {
+		running.remove(process);
+		if (!done[batch]) {
+			done[batch] = true;
+			remaining--;
+			finished.put(batch, played);
+			for (Map.Entry<Process, Integer> other : running.entrySet()) {
+				if (other.getValue() == batch) {
+					other.getKey().destroyForcibly();
+				}
+			}
+			try {
+				while (finished.containsKey(nextToWrite)) {
+					for (String game : finished.remove(nextToWrite)) {
+						out.write(game);
+						out.newLine();
+						written++;
+					}
+					nextToWrite++;
+				}
+			} catch (IOException e) {
+				// Stop everything; run() reports the failure.
+				failure = e;
+				remaining = 0;
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * This is a helper that puts the batch of a dead worker back to be
+	 * played again, unless it is already done or another worker is playing
+	 * a copy of it.
+	 *
+	 * @param process
+	 *            is the worker that was playing the batch.
+	 * @param batch
+	 *            is the batch number.
+	 * @return is true if the batch was already done, so the worker was only
+	 *         stopped because a copy beat it.
+	 */
+	private synchronized boolean giveBack(Process process, int batch) {
+		running.remove(process);
+		if (!done[batch] && !running.containsValue(batch)) {
+			queue.addFirst(batch);
+		}
+		notifyAll();
+		return done[batch];
+	}
+
+	/**
+	 * This is the worker side. It reads batches from stdin, plays their games
+	 * and writes them to stdout until it is told to quit.
+	 *
+	 * @param seed
+	 *            is the seed the game seeds are made from.
+	 * @throws IOException
+	 *             This is thrown if stdin or stdout fails.
+	 */
+	private static void work(long seed) throws IOException {
+		BufferedReader in = new BufferedReader(
+				new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		BufferedWriter toCoordinator = new BufferedWriter(
+				new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+		String line;
+		while (((line = in.readLine()) != null) && line.startsWith("BATCH ")) {
+			String[] parts = line.split(" ");
+			long first = Long.parseLong(parts[2]);
+			long count = Long.parseLong(parts[3]);
+			for (long game = first; game < first + count; game++) {
+				toCoordinator.write("GAME ");
+				toCoordinator.write(
+						WeightTrainer.selfPlayGame((seed << 32) + game));
+				toCoordinator.newLine();
+			}
+			toCoordinator.write("DONE " + parts[1]);
+			toCoordinator.newLine();
+			toCoordinator.flush();
+		}
+	}
+
+	/**
+	 * This runs the coordinator, or a worker, from the command line.
+	 *
+	 * @param args
+	 *            holds the options listed at the top of the class.
+	 * @throws Exception
+	 *             This is thrown if the game file can't be written.
+	 */
+	public static void main(String[] args) throws Exception {
+		if ((args.length == 2) && args[0].equals("--worker")) {
+			work(Long.parseLong(args[1]));
+			return;
+		}
+
+		long games = 0;
+		Path outFile = null;
+		int workers = Runtime.getRuntime().availableProcessors();
+		int batchSize = 100;
+		long seed = 1;
+		int heap = 0;
+		long timeout = 600;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "--games" :
+					games = Long.parseLong(value);
+					break;
+				case "--out" :
+					outFile = Paths.get(value);
+					break;
+				case "--workers" :
+					workers = Integer.parseInt(value);
+					break;
+				case "--batch" :
+					batchSize = Integer.parseInt(value);
+					break;
+				case "--seed" :
+					seed = Long.parseLong(value);
+					break;
+				case "--heap" :
+					heap = Integer.parseInt(value);
+					break;
+				case "--timeout" :
+					timeout = Long.parseLong(value);
+					break;
+				default :
+					System.out.println("Unknown option " + args[i]);
+					return;
+			}
+		}
+		if ((games <= 0) || (outFile == null) || (workers < 1)
+				|| (batchSize < 1) || (args.length % 2 != 0)) {
+			System.out.println("Usage: java tools.SelfPlayCoordinator "
+					+ "--games N --out FILE [--workers W] [--batch B] "
+					+ "[--seed S] [--heap MB] [--timeout S]");
+			return;
+		}
+
+		long started = System.nanoTime();
+		long written;
+		int crashes;
+		try (BufferedWriter out = Files.newBufferedWriter(outFile)) {
+			SelfPlayCoordinator coordinator = new SelfPlayCoordinator(games,
+					batchSize, seed, heap, timeout, out);
+			written = coordinator.run(workers);
+			crashes = coordinator.getCrashes();
+		}
+		double seconds = (System.nanoTime() - started) / 1e9;
+		System.out.printf("Wrote %d games to %s in %.1f s (%d worker "
+				+ "crashes)%n", written, outFile, seconds, crashes);
+	}
+
+}
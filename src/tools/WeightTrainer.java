@@ -0,0 +1,581 @@
+package tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import engine.Bitboards;
+import engine.NeuralEvaluator;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This is the tool that fits evaluation weights from finished
+ *         games. It fits one weight for every colour on every square so that
+ *         the weights added up for a position predict how the game ended, and
+ *         writes them as a weight file the NeuralEvaluator can load.
+ *
+ *         Games are read in batches so memory use does not depend on how many
+ *         games there are. Each batch is split across every core, each core
+ *         replays its games and adds up its own gradient, and the gradients
+ *         are summed for a single step. Positions are never stored; they are
+ *         rebuilt from the moves as they are needed.
+ *
+ *         Usage: java tools.WeightTrainer [--games FILE]... [--self-play N]
+ *         [--seed S] [--epochs E] [--rate R] [--loss logistic|squares]
+ *         [--batch GAMES] [--skip PLIES] [--threads T] --out FILE
+ *
+ *         Game files hold one game per line, written the way the player types
+ *         moves ("d3c5f6..." or "d3 c5 f6 ..."). White moves first and passes
+ *         are left out. Lines starting with '#' are ignored. Games with an
+ *         illegal move or that stop before the end are skipped and counted
+ *         as rejected.
+ *
+ *         Self-play games are played once, before the first epoch, and
+ *         written to a temporary game file that is read with the others
+ *         every epoch, so every epoch trains on the same games.
+ *
+ */
+public class WeightTrainer {
+	// Scores in the weight file are in hundredths of a logit for the
+	// logistic loss and hundredths of a disc for least squares.
+	private static final double SCORE_SCALE = 100.0;
+
+	// Every weight, followed by the bias.
+	private static final int WEIGHTS = NeuralEvaluator.FEATURES + 1;
+
+	// The gradient slots are followed by the loss and the number of
+	// positions that went into it.
+	private static final int LOSS = WEIGHTS;
+	private static final int COUNT = WEIGHTS + 1;
+
+	// A game can't last longer than this many moves, passes included.
+	private static final int MAX_PLIES = 128;
+
+	private final boolean logistic;
+	private final double rate;
+	private final int skipPlies;
+	private final ForkJoinPool pool;
+	private final double[] weights;
+
+	private long positions;
+	private long rejected;
+	private double epochLoss;
+
+	/**
+	 * This is the constructor for a trainer that starts from all zero weights.
+	 *
+	 * @param logistic
+	 *            is true to fit the chance that black wins and false to fit
+	 *            the final disc difference by least squares.
+	 * @param rate
+	 *            is the learning rate.
+	 * @param skipPlies
+	 *            is how many moves at the start of each game are left out.
+	 * @param threads
+	 *            is how many cores to train on.
+	 */
+	public WeightTrainer(boolean logistic, double rate, int skipPlies,
+			int threads) {
+		this.logistic = logistic;
+		this.rate = rate;
+		this.skipPlies = skipPlies;
+		this.pool = new ForkJoinPool(threads);
+		this.weights = new double[WEIGHTS];
+	}
+
+	/**
+	 * This takes one gradient step over a batch of games.
+	 *
+	 * @param games
+	 *            is an array of game transcripts.
+	 * @param count
+	 *            is how many entries of games are used.
+	 * @throws InterruptedException
+	 *             This is thrown if the trainer is interrupted.
+	 */
+	public void trainBatch(String[] games, int count)
+			throws InterruptedException {
+		int slices = Math.min(count, pool.getParallelism() * 4);
+		if (slices == 0) {
+			return;
+		}
+
+		double[] gradient;
+		try {
+			gradient = pool.submit(() -> IntStream.range(0, slices).parallel()
+					.mapToObj(slice -> sliceGradient(games,
+							count * slice / slices,
+							count * (slice + 1) / slices))
+					.reduce(WeightTrainer::add).get()).get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+
+		double seen = gradient[COUNT];
+		if (seen > 0) {
+			for (int i = 0; i < WEIGHTS; i++) {
+				weights[i] -= rate * gradient[i] / seen;
+			}
+		}
+		positions += (long) seen;
+		epochLoss += gradient[LOSS];
+	}
+
+	/**
+	 * This writes the fitted weights as a weight file.
+	 *
+	 * @param file
+	 *            is the path of the weight file.
+	 * @throws IOException
+	 *             This is thrown when the file can't be written.
+	 */
+	public void save(Path file) throws IOException {
+		double[] scaled = new double[NeuralEvaluator.FEATURES];
+		for (int i = 0; i < scaled.length; i++) {
+			scaled[i] = weights[i] * SCORE_SCALE;
+		}
+		NeuralEvaluator
+				.fromLinear(scaled, weights[NeuralEvaluator.FEATURES]
+						* SCORE_SCALE)
+				.save(file);
+	}
+
+	/**
+	 * This works out the gradient for part of a batch. It runs on one core.
+	 *
+	 * @param games
+	 *            is an array of game transcripts.
+	 * @param start
+	 *            is the first game in the slice.
+	 * @param end
+	 *            is one past the last game in the slice.
+	 * @return is the summed gradient, loss and position count of the slice.
+	 */
+	private double[] sliceGradient(String[] games, int start, int end) {
+		double[] gradient = new double[WEIGHTS + 2];
+		long[] blacks = new long[MAX_PLIES];
+		long[] whites = new long[MAX_PLIES];
+
+		for (int i = start; i < end; i++) {
+			int[] moves = Bitboards.parseMoves(games[i]);
+			int plies = -1;
+			if (moves != null) {
+				plies = replay(moves, blacks, whites);
+			}
+			if (plies < 0) {
+				synchronized (this) {
+					rejected++;
+				}
+				continue;
+			}
+
+			int result = Long.bitCount(blacks[plies])
+					- Long.bitCount(whites[plies]);
+			double target = result;
+			if (logistic) {
+				target = Math.signum(result) * 0.5 + 0.5;
+			}
+
+			for (int ply = skipPlies; ply < plies; ply++) {
+				addPosition(gradient, blacks[ply], whites[ply], target);
+			}
+		}
+		return gradient;
+	}
+
+	/**
+	 * This adds the gradient for one position to a running total.
+	 *
+	 * @param gradient
+	 *            is the running total.
+	 * @param black
+	 *            is the bitboard of black pieces.
+	 * @param white
+	 *            is the bitboard of white pieces.
+	 * @param target
+	 *            is what the weights should predict for the position.
+	 */
+	private void addPosition(double[] gradient, long black, long white,
+			double target) {
+		double sum = weights[NeuralEvaluator.FEATURES];
+		for (long bits = black; bits != 0; bits &= bits - 1) {
+			sum += weights[Long.numberOfTrailingZeros(bits)];
+		}
+		for (long bits = white; bits != 0; bits &= bits - 1) {
+			sum += weights[Long.numberOfTrailingZeros(bits) + 64];
+		}
+
+		double error;
+		if (logistic) {
+			double prediction = 1.0 / (1.0 + Math.exp(-sum));
+			error = prediction - target;
+			gradient[LOSS] -= target * Math.log(prediction + 1e-12)
+					+ (1 - target) * Math.log(1 - prediction + 1e-12);
+		} else {
+			error = sum - target;
+			gradient[LOSS] += error * error;
+		}
+
+		for (long bits = black; bits != 0; bits &= bits - 1) {
+			gradient[Long.numberOfTrailingZeros(bits)] += error;
+		}
+		for (long bits = white; bits != 0; bits &= bits - 1) {
+			gradient[Long.numberOfTrailingZeros(bits) + 64] += error;
+		}
+		gradient[NeuralEvaluator.FEATURES] += error;
+		gradient[COUNT]++;
+	}
+
+	/**
+	 * This plays a game through from the start, recording the board before
+	 * every move and the board at the end. A game that stops before neither
+	 * player can move is turned down, since its final count isn't the
+	 * result.
+	 *
+	 * @param moves
+	 *            is the list of squares played.
+	 * @param blacks
+	 *            is filled with the black bitboard of each position.
+	 * @param whites
+	 *            is filled with the white bitboard of each position.
+	 * @return is the number of moves played, or -1 if a move was not legal
+	 *         or the game didn't reach the end.
+	 */
+	private static int replay(int[] moves, long[] blacks, long[] whites) {
+		long own = Bitboards.START_WHITE;
+		long opp = Bitboards.START_BLACK;
+		boolean whiteToMove = true;
+
+		if (moves.length >= MAX_PLIES) {
+			return -1;
+		}
+		for (int ply = 0; ply < moves.length; ply++) {
+			long legal = Bitboards.moves(own, opp);
+			if (legal == 0) {
+				// The player to move has to pass.
+				long swap = own;
+				own = opp;
+				opp = swap;
+				whiteToMove = !whiteToMove;
+				legal = Bitboards.moves(own, opp);
+			}
+			if ((legal & (1L << moves[ply])) == 0) {
+				return -1;
+			}
+
+			blacks[ply] = whiteToMove ? opp : own;
+			whites[ply] = whiteToMove ? own : opp;
+
+			long flips = Bitboards.flips(own, opp, moves[ply]);
+			long swap = opp & ~flips;
+			own = own | flips | (1L << moves[ply]);
+			opp = own;
+			own = swap;
+			whiteToMove = !whiteToMove;
+		}
+
+		if ((Bitboards.moves(own, opp) != 0)
+				|| (Bitboards.moves(opp, own) != 0)) {
+			return -1;
+		}
+		blacks[moves.length] = whiteToMove ? opp : own;
+		whites[moves.length] = whiteToMove ? own : opp;
+		return moves.length;
+	}
+
+	/**
+	 * This plays a quick game against itself so there is something to train
+	 * on without a game archive. Each player takes the move that flips the
+	 * most pieces, like the computer does, but plays at random for the first
+	 * few moves and now and then after that so no two games are alike.
+	 *
+	 * @param seed
+	 *            is the seed for the random choices.
+	 * @return is the transcript of the game.
+	 */
+	static String selfPlayGame(long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		StringBuilder transcript = new StringBuilder(120);
+		long own = Bitboards.START_WHITE;
+		long opp = Bitboards.START_BLACK;
+		int passes = 0;
+		int ply = 0;
+
+		while (passes < 2) {
+			long legal = Bitboards.moves(own, opp);
+			if (legal != 0) {
+				int move = pickMove(own, opp, legal,
+						(ply < 8) || (random.nextInt(10) == 0), random);
+				long flips = Bitboards.flips(own, opp, move);
+				own |= flips | (1L << move);
+				opp &= ~flips;
+				transcript.append(Bitboards.name(move));
+				passes = 0;
+				ply++;
+			} else {
+				passes++;
+			}
+			long swap = own;
+			own = opp;
+			opp = swap;
+		}
+		return transcript.toString();
+	}
+
+	/**
+	 * This is a helper that plays self-play games a batch at a time across
+	 * every core and writes them to a game file. Game n is played with the
+	 * seed (seed << 32) + n, the same as SelfPlayCoordinator.
+	 *
+	 * @param file
+	 *            is the game file to write.
+	 * @param games
+	 *            is how many games to play.
+	 * @param seed
+	 *            is the seed the game seeds are made from.
+	 * @param batchSize
+	 *            is how many games to play at once.
+	 * @throws IOException
+	 *             This is thrown if the file can't be written.
+	 * @throws InterruptedException
+	 *             This is thrown if the wait for a batch is interrupted.
+	 * @throws ExecutionException
+	 *             This is thrown if a game fails to play.
+	 */
+	private void writeSelfPlay(Path file, long games, long seed,
+			int batchSize) throws IOException, InterruptedException,
+			ExecutionException {
+		String[] batch = new String[batchSize];
+		try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+			for (long game = 0; game < games; game += batchSize) {
+				int count = (int) Math.min(batchSize, games - game);
+				long first = (seed << 32) + game;
+				pool.submit(() -> IntStream.range(0, count).parallel()
+						.forEach(i -> batch[i] = selfPlayGame(first + i)))
+						.get();
+				for (int i = 0; i < count; i++) {
+					writer.write(batch[i]);
+					writer.newLine();
+				}
+			}
+		}
+	}
+
+	/**
+	 * This is a helper method that picks a move for selfPlayGame().
+	 *
+	 * @param own
+	 *            is the bitboard of the player to move.
+	 * @param opp
+	 *            is the bitboard of the other player.
+	 * @param legal
+	 *            is the bitboard of legal moves.
+	 * @param randomMove
+	 *            is true to pick any legal move at random.
+	 * @param random
+	 *            is the source of random choices.
+	 * @return is the chosen square.
+	 */
+	private static int pickMove(long own, long opp, long legal,
+			boolean randomMove, SplittableRandom random) {
+		if (randomMove) {
+			int skip = random.nextInt(Long.bitCount(legal));
+			for (int i = 0; i < skip; i++) {
+				legal &= legal - 1;
+			}
+			return Long.numberOfTrailingZeros(legal);
+		}
+
+		int best = Long.numberOfTrailingZeros(legal);
+		int bestFlips = -1;
+		for (long bits = legal; bits != 0; bits &= bits - 1) {
+			int square = Long.numberOfTrailingZeros(bits);
+			int flips = Long.bitCount(Bitboards.flips(own, opp, square));
+			if (flips > bestFlips) {
+				best = square;
+				bestFlips = flips;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * This adds two gradients together.
+	 *
+	 * @param first
+	 *            is the gradient the sum is written into.
+	 * @param second
+	 *            is the gradient to add.
+	 * @return is first, now holding the sum.
+	 */
+	private static double[] add(double[] first, double[] second) {
+		for (int i = 0; i < first.length; i++) {
+			first[i] += second[i];
+		}
+		return first;
+	}
+
+	/**
+	 * This runs the trainer from the command line.
+	 *
+	 * @param args
+	 *            holds the options listed at the top of the class.
+	 * @throws Exception
+	 *             This is thrown if the games can't be read or the weights
+	 *             can't be written.
+	 */
+	public static void main(String[] args) throws Exception {
+		ArrayList<Path> gameFiles = new ArrayList<Path>();
+		Path out = null;
+		long selfPlay = 0;
+		long seed = 1;
+		int epochs = 1;
+		double rate = -1;
+		boolean logistic = true;
+		int batchSize = 1024;
+		int skipPlies = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "--games" :
+					gameFiles.add(Paths.get(value));
+					break;
+				case "--self-play" :
+					selfPlay = Long.parseLong(value);
+					break;
+				case "--seed" :
+					seed = Long.parseLong(value);
+					break;
+				case "--epochs" :
+					epochs = Integer.parseInt(value);
+					break;
+				case "--rate" :
+					rate = Double.parseDouble(value);
+					break;
+				case "--loss" :
+					logistic = !value.equals("squares");
+					break;
+				case "--batch" :
+					batchSize = Integer.parseInt(value);
+					break;
+				case "--skip" :
+					skipPlies = Integer.parseInt(value);
+					break;
+				case "--threads" :
+					threads = Integer.parseInt(value);
+					break;
+				case "--out" :
+					out = Paths.get(value);
+					break;
+				default :
+					System.out.println("Unknown option " + args[i]);
+					return;
+			}
+		}
+		if ((out == null) || (gameFiles.isEmpty() && (selfPlay == 0))) {
+			System.out.println("Usage: java tools.WeightTrainer "
+					+ "[--games FILE]... [--self-play N] [--seed S] "
+					+ "[--epochs E] [--rate R] [--loss logistic|squares] "
+					+ "[--batch GAMES] [--skip PLIES] [--threads T] "
+					+ "--out FILE");
+			return;
+		}
+		if (rate < 0) {
+			// Disc differences are much bigger numbers than win chances.
+			rate = logistic ? 0.3 : 0.01;
+		}
+
+		WeightTrainer trainer = new WeightTrainer(logistic, rate, skipPlies,
+				threads);
+		String[] batch = new String[batchSize];
+		Path selfPlayFile = null;
+		if (selfPlay > 0) {
+			selfPlayFile = Files.createTempFile("selfplay", ".txt");
+			trainer.writeSelfPlay(selfPlayFile, selfPlay, seed, batchSize);
+			gameFiles.add(selfPlayFile);
+		}
+
+		try {
+			trainEpochs(trainer, gameFiles, batch, epochs);
+		} finally {
+			if (selfPlayFile != null) {
+				Files.deleteIfExists(selfPlayFile);
+			}
+		}
+
+		trainer.save(out);
+		trainer.pool.shutdown();
+		System.out.println("Wrote " + out);
+	}
+
+	/**
+	 * This is a helper that trains over every game file once per epoch and
+	 * prints how each epoch went.
+	 *
+	 * @param trainer
+	 *            is the trainer to step.
+	 * @param gameFiles
+	 *            is the game files to read.
+	 * @param batch
+	 *            is room for one batch of games.
+	 * @param epochs
+	 *            is how many times to go over the games.
+	 * @throws IOException
+	 *             This is thrown if a game file can't be read.
+	 * @throws InterruptedException
+	 *             This is thrown if the trainer is interrupted.
+	 */
+	private static void trainEpochs(WeightTrainer trainer,
+			ArrayList<Path> gameFiles, String[] batch, int epochs)
+			throws IOException, InterruptedException {
+		int batchSize = batch.length;
+		for (int epoch = 1; epoch <= epochs; epoch++) {
+			long started = System.nanoTime();
+			trainer.positions = 0;
+			trainer.rejected = 0;
+			trainer.epochLoss = 0;
+			int count = 0;
+
+			for (Path file : gameFiles) {
+				try (BufferedReader reader = Files.newBufferedReader(file)) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						line = line.trim();
+						if (line.isEmpty() || line.startsWith("#")) {
+							continue;
+						}
+						batch[count] = line;
+						count++;
+						if (count == batchSize) {
+							trainer.trainBatch(batch, count);
+							count = 0;
+						}
+					}
+				}
+			}
+
+			trainer.trainBatch(batch, count);
+
+			double seconds = (System.nanoTime() - started) / 1e9;
+			System.out.printf(
+					"epoch %d: %d positions, loss %.5f, %d bad games, "
+							+ "%.1f s (%.0f positions/s)%n",
+					epoch, trainer.positions,
+					trainer.epochLoss / Math.max(1, trainer.positions),
+					trainer.rejected, seconds, trainer.positions / seconds);
+		}
+	}
+
+}
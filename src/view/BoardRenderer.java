@@ -0,0 +1,278 @@
+package view;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import model.BoardSnapshot;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This draws the board and the score. Each frame is built in
+ *         one char[] that is kept from frame to frame and handed to the
+ *         Writer in a single call, instead of printing every square on its
+ *         own.
+ *
+ *         In plain mode every frame is the whole board, as it has always been
+ *         printed. In ANSI mode, for terminals, the first frame clears the
+ *         screen, draws the board at the top and keeps it there by making
+ *         only the lines under it scroll. Every later frame only moves the
+ *         cursor to the squares that changed since the last frame and redraws
+ *         those, so a move costs a few dozen characters instead of the whole
+ *         board. Anything else printed scrolls by underneath.
+ *
+ */
+public class BoardRenderer {
+	private static final char ESC = 27;
+
+	private final int size;
+	private final boolean ansi;
+	private final Writer out;
+	private final int labelWidth;
+
+	// The frame being built, and what is on screen in ANSI mode.
+	private char[] frame;
+	private int length;
+	private char[] shown;
+	private int shownWhite;
+	private int shownBlack;
+
+	/**
+	 * This is the constructor for a renderer.
+	 *
+	 * @param size
+	 *            is the number of squares along each side of the board.
+	 * @param ansi
+	 *            is true to redraw the board in place with ANSI escape codes,
+	 *            and false to print the whole board every time.
+	 * @param out
+	 *            is where frames are written. It isn't flushed until flush()
+	 *            is called.
+	 */
+	public BoardRenderer(int size, boolean ansi, Writer out) {
+		this.size = size;
+		this.ansi = ansi;
+		this.out = out;
+		this.labelWidth = String.valueOf(size).length();
+		this.frame = new char[(size + 3) * (labelWidth + 2 * size + 16)];
+	}
+
+	/**
+	 * This draws a board and its score.
+	 *
+	 * @param board
+	 *            is the BoardSnapshot to draw.
+	 * @throws IOException
+	 *             This is thrown if the frame can't be written.
+	 */
+	public void render(BoardSnapshot board) throws IOException {
+		length = 0;
+		if (!ansi) {
+			putBoard(board);
+		} else if (shown == null) {
+			shown = new char[size * size];
+			put(ESC).put("[2J").put(ESC).put("[H");
+			putBoard(board);
+			// Only the lines under the board scroll from now on.
+			put(ESC).put('[').put(size + 4).put('r');
+			put(ESC).put('[').put(size + 4).put(";1H");
+		} else {
+			putChanges(board);
+		}
+
+		for (int y = 0; (shown != null) && (y < size); y++) {
+			for (int x = 0; x < size; x++) {
+				shown[y * size + x] = board.getAt(x, y);
+			}
+		}
+		shownWhite = board.count('W');
+		shownBlack = board.count('B');
+
+		if (length > 0) {
+			out.write(frame, 0, length);
+		}
+	}
+
+	/**
+	 * This sends everything drawn so far on to the screen.
+	 *
+	 * @throws IOException
+	 *             This is thrown if the Writer can't be flushed.
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * This lets the whole screen scroll again in ANSI mode, for when nothing
+	 * more will be drawn. The board is left where it is.
+	 *
+	 * @throws IOException
+	 *             This is thrown if the Writer fails.
+	 */
+	public void finish() throws IOException {
+		if (shown != null) {
+			length = 0;
+			put(ESC).put('7').put(ESC).put("[r").put(ESC).put('8');
+			out.write(frame, 0, length);
+			shown = null;
+		}
+		out.flush();
+	}
+
+	/**
+	 * This is a helper that adds the whole board, with grid coordinates on
+	 * the left side and bottom, and the score under it.
+	 *
+	 * @param board
+	 *            is the board to draw.
+	 */
+	private void putBoard(BoardSnapshot board) {
+		for (int y = 0; y < size; y++) {
+			putLabel(y + 1);
+			for (int x = 0; x < size; x++) {
+				put(board.getAt(x, y)).put(' ');
+			}
+			put('\n');
+		}
+		for (int pad = 0; pad < labelWidth; pad++) {
+			put(' ');
+		}
+		// The letters line up under the pieces, with no space after the last.
+		for (int x = 0; x < size; x++) {
+			if (x > 0) {
+				put(' ');
+			}
+			put((char) ('a' + x));
+		}
+		put("\n\n");
+		putScore(board.count('W'), board.count('B'));
+		put('\n');
+	}
+
+	/**
+	 * This is a helper that adds only what changed since the last frame.
+	 * The cursor is saved first and put back after, so it stays wherever
+	 * the other output left it.
+	 *
+	 * @param board
+	 *            is the board to draw.
+	 */
+	private void putChanges(BoardSnapshot board) {
+		put(ESC).put('7');
+		int saved = length;
+
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				char piece = board.getAt(x, y);
+				if (piece != shown[y * size + x]) {
+					moveTo(y + 1, labelWidth + 2 * x + 1);
+					put(piece);
+				}
+			}
+		}
+		int white = board.count('W');
+		int black = board.count('B');
+		if ((white != shownWhite) || (black != shownBlack)) {
+			moveTo(size + 3, 1);
+			putScore(white, black);
+			// This clears what is left of the old, maybe longer, score.
+			put(ESC).put("[K");
+		}
+
+		if (length == saved) {
+			// Nothing changed, so nothing is written at all.
+			length = 0;
+		} else {
+			put(ESC).put('8');
+		}
+	}
+
+	/**
+	 * This is a helper that adds the score line.
+	 *
+	 * @param white
+	 *            is the number of white pieces.
+	 * @param black
+	 *            is the number of black pieces.
+	 */
+	private void putScore(int white, int black) {
+		put("The score is ").put(white).put('-').put(black).put('.');
+	}
+
+	/**
+	 * This is a helper that adds a row number, padded so the columns line up
+	 * on boards with more than nine rows.
+	 *
+	 * @param row
+	 *            is the row number.
+	 */
+	private void putLabel(int row) {
+		int digits = (row >= 10) ? 2 : 1;
+		for (int pad = digits; pad < labelWidth; pad++) {
+			put(' ');
+		}
+		put(row);
+	}
+
+	/**
+	 * This is a helper that adds the escape code that moves the cursor.
+	 *
+	 * @param line
+	 *            is the screen line, counting from 1.
+	 * @param column
+	 *            is the screen column, counting from 1.
+	 */
+	private void moveTo(int line, int column) {
+		put(ESC).put('[').put(line).put(';').put(column).put('H');
+	}
+
+	/**
+	 * This is a helper that adds one character to the frame.
+	 *
+	 * @param c
+	 *            is the character.
+	 * @return is this renderer, so calls can be chained.
+	 */
+	private BoardRenderer put(char c) {
+		if (length == frame.length) {
+			char[] bigger = new char[frame.length * 2];
+			System.arraycopy(frame, 0, bigger, 0, length);
+			frame = bigger;
+		}
+		frame[length] = c;
+		length++;
+		return this;
+	}
+
+	/**
+	 * This is a helper that adds text to the frame.
+	 *
+	 * @param text
+	 *            is the text.
+	 * @return is this renderer, so calls can be chained.
+	 */
+	private BoardRenderer put(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			put(text.charAt(i));
+		}
+		return this;
+	}
+
+	/**
+	 * This is a helper that adds a number that isn't negative to the frame
+	 * without making a String.
+	 *
+	 * @param number
+	 *            is the number.
+	 * @return is this renderer, so calls can be chained.
+	 */
+	private BoardRenderer put(int number) {
+		if (number >= 10) {
+			put(number / 10);
+		}
+		return put((char) ('0' + number % 10));
+	}
+
+}
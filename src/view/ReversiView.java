@@ -1,10 +1,15 @@
 package view;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Scanner;
 
 import controller.ReversiController;
 import customExceptions.ReversiCantPlaceException;
+import engine.Search;
 
 /**
  * 
@@ -18,7 +23,11 @@ import customExceptions.ReversiCantPlaceException;
  *
  */
 public class ReversiView {
+	// How many moves a hint lists.
+	private static final int HINT_MOVES = 3;
+
 	private ReversiController myController;
+	private BoardRenderer renderer;
 
 	// These exist to translate the user input and computer output into int
 	// coordinates.
@@ -31,18 +40,41 @@ public class ReversiView {
 	 * representation of the x values of the board that the user will input.
 	 */
 	public ReversiView() {
-		this.myController = new ReversiController();
+		this(new ReversiController());
+	}
+
+	/**
+	 * This is a constructor for a view around a controller that has already
+	 * been set up, for example with an evaluator for the computer.
+	 * 
+	 * @param myController
+	 *            is the ReversiController the game is played through.
+	 */
+	public ReversiView(ReversiController myController) {
+		this(myController, false);
+	}
+
+	/**
+	 * This is a constructor for a view that can keep the board in place at
+	 * the top of a terminal, redrawing only the squares that change.
+	 * 
+	 * @param myController
+	 *            is the ReversiController the game is played through.
+	 * @param ansi
+	 *            is true to draw the board with ANSI escape codes.
+	 */
+	public ReversiView(ReversiController myController, boolean ansi) {
+		this.myController = myController;
+		this.renderer = new BoardRenderer(myController.getSize(), ansi,
+				new OutputStreamWriter(System.out));
 		this.colMap = new HashMap<Character, Integer>();
-		colMap.put('a', 0);
-		colMap.put('b', 1);
-		colMap.put('c', 2);
-		colMap.put('d', 3);
-		colMap.put('e', 4);
-		colMap.put('f', 5);
-		colMap.put('g', 6);
-		colMap.put('h', 7);
+		this.charCols = new char[myController.getSize()];
 
-		this.charCols = new char[]{'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h'};
+		// Columns are lettered from 'a' for as many columns as the board has.
+		for (int i = 0; i < charCols.length; i++) {
+			charCols[i] = (char) ('a' + i);
+			colMap.put(charCols[i], i);
+		}
 
 	}
 
@@ -59,68 +91,62 @@ public class ReversiView {
 		System.out.println();
 
 		displayBoard();
-		displayScore();
+
+		// A game picked up from a journal may stop with the computer to move.
+		if (myController.getPlayerToMove() == 'B') {
+			computerTurn();
+		}
 
 		while (!(myController.isGameOver())) {
 
 			if (myController.canMove('W')) {
 				takeHumanMove(myInput);
 				displayBoard();
-				displayScore();
 
 			} else {
 				myController.humanSkipped();
 				System.out.println("No move possible. You have been skipped.");
 			}
 
-			if (myController.canMove('B')) {
-				makeComputerMove();
-				displayBoard();
-				displayScore();
-
-			} else {
-				myController.computerSkipped();
-				System.out.println("No move possible. Computer has skipped.");
-			}
+			computerTurn();
 
 		}
 		finalScore();
+		try {
+			renderer.finish();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 		myInput.close();
 
 	}
 
 	/**
-	 * This gets the char[][] representation of the board from the controller,
-	 * which gets it from the model. It then prints the board as it currently
-	 * stands and adds grid coordinates to the left side and bottom.
+	 * This has the computer move if it can, or skip its turn if it can't.
 	 */
-	private void displayBoard() {
-		char[][] myBoard = myController.getBoard();
-		for (int i = 0; i < 8; i++) {
-			System.out.print(i + 1);
-			for (int j = 0; j < 8; j++) {
-				System.out.print(myBoard[i][j]);
-				System.out.print(" ");
-			}
-			System.out.println();
-		}
-		System.out.println(" a b c d e f g h");
-		System.out.println();
+	private void computerTurn() {
+		if (myController.canMove('B')) {
+			makeComputerMove();
+			displayBoard();
 
+		} else {
+			myController.computerSkipped();
+			System.out.println("No move possible. Computer has skipped.");
+		}
 	}
 
 	/**
-	 * This gets the score from the controller and prints it for the player.
+	 * This draws the board as of the last move, with grid coordinates on the
+	 * left side and bottom, and the score under it. The whole frame goes out
+	 * in one write.
 	 */
-	private void displayScore() {
-		int[] score = myController.getScore();
-		System.out.print("The score is ");
-		System.out.print(score[0]);
-		System.out.print('-');
-		System.out.print(score[1]);
-		System.out.print('.');
-		System.out.println();
-
+	private void displayBoard() {
+		try {
+			renderer.render(myController.getSnapshot());
+			renderer.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
 	/**
@@ -132,15 +158,23 @@ public class ReversiView {
 	 * a valid number as the second item. This also ensures that the input is of
 	 * the correct length.
 	 * 
+	 * While the user thinks, the controller looks for the best moves in the
+	 * background. Typing "hint" shows the best ones it has found so far.
+	 * 
 	 * @param myInput
 	 *            is a scanner instance that takes input from the user.
 	 */
 	private void takeHumanMove(Scanner myInput) {
 		boolean badInput = true;
+		boolean hintsRunning = myController.getSize() == 8;
+		if (hintsRunning) {
+			myController.startHints(HINT_MOVES);
+		}
 
 		while (badInput) {
 
-			System.out.println("Where would you like to place your token? ");
+			System.out.println("Where would you like to place your token? "
+					+ "(or \"hint\")");
 			String move = myInput.next();
 
 			// makes input case insensitive and allows for space on either side
@@ -148,7 +182,18 @@ public class ReversiView {
 			move = move.toLowerCase();
 			move = move.strip();
 
-			if (move.length() != 2) {
+			if (move.equals("hint")) {
+				if (hintsRunning) {
+					displayHints();
+				} else {
+					System.out.println("Hints only work on an 8x8 board.");
+				}
+				continue;
+			}
+
+			if ((move.length() < 2) || (move.length() > 3)
+					|| !(move.substring(1).chars()
+							.allMatch(Character::isDigit))) {
 				System.out.println(
 						"Invalid move. Ensure your move is one letter and one "
 								+ "number, in that order, "
@@ -162,16 +207,16 @@ public class ReversiView {
 			// input.
 			if (!(colMap.containsKey(colChar))) {
 				System.out.println("Invalid move. Please ensure your move "
-						+ "is in column a-h");
+						+ "is in column a-" + charCols[charCols.length - 1]);
 				continue;
 			}
 			int col = colMap.get(colChar);
 
-			// Checks that the second character is a number in the valid range.
-			int row = Character.getNumericValue(move.charAt(1)) - 1;
-			if ((row < 0) || (row > 7)) {
+			// Checks that the number is a row in the valid range.
+			int row = Integer.parseInt(move.substring(1)) - 1;
+			if ((row < 0) || (row >= charCols.length)) {
 				System.out.println("Invalid input. Please ensure your "
-						+ "move is in a row from 1-8");
+						+ "move is in a row from 1-" + charCols.length);
 				continue;
 			}
 
@@ -191,6 +236,35 @@ public class ReversiView {
 
 	}
 
+	/**
+	 * This prints the best moves the controller has found for the user so
+	 * far, with how good each one looks.
+	 */
+	private void displayHints() {
+		ArrayList<int[]> hints = myController.getHints();
+		if (hints.isEmpty()) {
+			System.out.println("Still thinking. Ask again in a moment.");
+			return;
+		}
+
+		System.out.print("Best moves, looking ");
+		System.out.print(hints.get(0)[3]);
+		System.out.println(" moves ahead:");
+		for (int[] hint : hints) {
+			System.out.print("  ");
+			System.out.print(charCols[hint[0]]);
+			System.out.print(hint[1] + 1);
+			System.out.print("  ");
+			if (hint[2] >= Search.WIN) {
+				System.out.println("wins by " + (hint[2] - Search.WIN));
+			} else if (hint[2] <= -Search.WIN) {
+				System.out.println("loses by " + (-Search.WIN - hint[2]));
+			} else {
+				System.out.println(hint[2]);
+			}
+		}
+	}
+
 	/**
 	 * This makes the computer take its turn using the computerTurn() method in
 	 * the controller. It also prints the computer's move for the user to see.
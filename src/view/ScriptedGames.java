@@ -0,0 +1,226 @@
+package view;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+
+import controller.ReversiController;
+import customExceptions.ReversiCantPlaceException;
+
+/**
+ *
+ * @author Ryan Munin
+ *
+ *         purpose: This replays games from a script instead of having a
+ *         person type them in, for checking a pile of logged games quickly.
+ *         Every move goes through the controller, so it is checked the same
+ *         way a typed move is.
+ *
+ *         A script holds one game per line, written the way the player types
+ *         moves ("d3c5f6..." or "d3 c5 f6 ..."). White moves first and passes
+ *         are left out, since they are never a choice. Empty lines and lines
+ *         starting with '#' are skipped.
+ *
+ *         Each game gets a one line summary, or nothing if only the totals
+ *         are wanted, and the board is only drawn after every move if that
+ *         is asked for. Everything is written through one Writer, so the
+ *         output costs little next to playing the moves.
+ *
+ */
+public class ScriptedGames {
+	private final int size;
+	private final boolean summaries;
+	private final BoardRenderer boards;
+	private final Writer out;
+	private final StringBuilder text;
+
+	private int games;
+	private int whiteWins;
+	private int blackWins;
+	private int ties;
+	private int unfinished;
+	private int bad;
+	private long moves;
+
+	/**
+	 * This is the constructor for a replayer.
+	 *
+	 * @param size
+	 *            is the number of squares along each side of the board.
+	 * @param summaries
+	 *            is true to write a line for every game, and false to only
+	 *            write the totals.
+	 * @param boards
+	 *            is a BoardRenderer writing to the same Writer to draw the
+	 *            board after every move, or null to not draw it.
+	 * @param out
+	 *            is where everything is written.
+	 */
+	public ScriptedGames(int size, boolean summaries, BoardRenderer boards,
+			Writer out) {
+		this.size = size;
+		this.summaries = summaries;
+		this.boards = boards;
+		this.out = out;
+		this.text = new StringBuilder(256);
+	}
+
+	/**
+	 * This replays every game in a script and then writes the totals.
+	 *
+	 * @param in
+	 *            is the script to read.
+	 * @throws IOException
+	 *             This is thrown if the script can't be read or the output
+	 *             can't be written.
+	 */
+	public void playAll(BufferedReader in) throws IOException {
+		long started = System.nanoTime();
+		String line;
+		while ((line = in.readLine()) != null) {
+			line = line.strip();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			games++;
+			text.setLength(0);
+			replay(line);
+			out.append(text);
+			if (boards != null) {
+				// Flush each game so a board drawn in place is seen moving.
+				boards.flush();
+			}
+		}
+
+		double seconds = (System.nanoTime() - started) / 1e9;
+		text.setLength(0);
+		text.append(games).append(" games: W won ").append(whiteWins)
+				.append(", B won ").append(blackWins).append(", ")
+				.append(ties).append(" ties, ").append(unfinished)
+				.append(" unfinished, ").append(bad).append(" bad. ")
+				.append(moves).append(" moves in ")
+				.append(String.format("%.2f", seconds)).append(" s.\n");
+		out.append(text);
+		if (boards != null) {
+			boards.finish();
+		}
+		out.flush();
+	}
+
+	/**
+	 * This is a helper that replays one game and adds its summary to the
+	 * text.
+	 *
+	 * @param line
+	 *            is the game's moves.
+	 * @throws IOException
+	 *             This is thrown if a board can't be drawn.
+	 */
+	private void replay(String line) throws IOException {
+		ReversiController game = new ReversiController(size);
+		int ply = 0;
+		int i = 0;
+
+		while (i < line.length()) {
+			if (Character.isWhitespace(line.charAt(i))) {
+				i++;
+				continue;
+			}
+			int x = Character.toLowerCase(line.charAt(i)) - 'a';
+			int end = i + 1;
+			while ((end < line.length())
+					&& Character.isDigit(line.charAt(end))) {
+				end++;
+			}
+			if ((x < 0) || (x >= size) || (end == i + 1) || (end > i + 3)) {
+				badGame(line.substring(i, end), ply);
+				return;
+			}
+			int y = Integer.parseInt(line.substring(i + 1, end)) - 1;
+
+			char player = game.getPlayerToMove();
+			if (!game.canMove(player)) {
+				pass(game, player);
+				player = game.getPlayerToMove();
+			}
+			try {
+				game.replayMove(player, x, y);
+			} catch (ReversiCantPlaceException e) {
+				badGame(line.substring(i, end), ply);
+				return;
+			}
+			ply++;
+			moves++;
+			if (boards != null) {
+				boards.render(game.getSnapshot());
+			}
+			i = end;
+		}
+
+		// Passes at the very end aren't written, so play them out here.
+		for (int passes = 0; (passes < 2) && !game.isGameOver(); passes++) {
+			char player = game.getPlayerToMove();
+			if (game.canMove(player)) {
+				break;
+			}
+			pass(game, player);
+		}
+
+		int[] score = game.getScore();
+		String result;
+		if (!game.isGameOver()) {
+			unfinished++;
+			result = "unfinished";
+		} else if (score[0] > score[1]) {
+			whiteWins++;
+			result = "W wins";
+		} else if (score[0] < score[1]) {
+			blackWins++;
+			result = "B wins";
+		} else {
+			ties++;
+			result = "tie";
+		}
+		if (summaries) {
+			text.append("game ").append(games).append(": W ").append(score[0])
+					.append(" B ").append(score[1]).append(", ")
+					.append(result).append(", ").append(ply)
+					.append(" moves\n");
+		}
+	}
+
+	/**
+	 * This is a helper that records a game with a move that can't be read or
+	 * can't be played.
+	 *
+	 * @param move
+	 *            is the text of the move.
+	 * @param ply
+	 *            is how many moves were played before it.
+	 */
+	private void badGame(String move, int ply) {
+		bad++;
+		if (summaries) {
+			text.append("game ").append(games).append(": bad move \"")
+					.append(move).append("\" after ").append(ply)
+					.append(" moves\n");
+		}
+	}
+
+	/**
+	 * This is a helper that has a player pass.
+	 *
+	 * @param game
+	 *            is the game's controller.
+	 * @param player
+	 *            is the player who has to pass.
+	 */
+	private static void pass(ReversiController game, char player) {
+		if (player == 'W') {
+			game.humanSkipped();
+		} else {
+			game.computerSkipped();
+		}
+	}
+
+}